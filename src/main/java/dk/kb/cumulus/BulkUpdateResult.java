@@ -0,0 +1,80 @@
+package dk.kb.cumulus;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of a bulk update of records, with the number of records updated and skipped, and the failures of the
+ * records, which could not be updated.
+ * The number of failures is exact, but only the first failures are kept.
+ */
+public class BulkUpdateResult {
+    /** The number of records found.*/
+    protected final long recordCount;
+    /** The number of records updated.*/
+    protected final long updatedCount;
+    /** The number of records skipped, since they already had the new values.*/
+    protected final long skippedCount;
+    /** The number of records, which could not be updated.*/
+    protected final long failedCount;
+    /** The first failures, mapped by the IDs of the records.*/
+    protected final Map<Integer, Throwable> failures;
+
+    /**
+     * Constructor.
+     * @param recordCount The number of records found.
+     * @param updatedCount The number of records updated.
+     * @param skippedCount The number of records skipped, since they already had the new values.
+     * @param failedCount The number of records, which could not be updated.
+     * @param failures The first failures, mapped by the IDs of the records.
+     */
+    protected BulkUpdateResult(long recordCount, long updatedCount, long skippedCount, long failedCount,
+            Map<Integer, Throwable> failures) {
+        this.recordCount = recordCount;
+        this.updatedCount = updatedCount;
+        this.skippedCount = skippedCount;
+        this.failedCount = failedCount;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /** @return The number of records found.*/
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /** @return The number of records updated.*/
+    public long getUpdatedCount() {
+        return updatedCount;
+    }
+
+    /** @return The number of records skipped, since they already had the new values.*/
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /** @return The number of records, which could not be updated.*/
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /** @return The first failures, mapped by the IDs of the records.*/
+    public Map<Integer, Throwable> getFailures() {
+        return failures;
+    }
+
+    /** @return Whether all the records were updated or skipped.*/
+    public boolean isSuccess() {
+        return failedCount == 0L;
+    }
+
+    /** @return Whether only some of the failures are kept.*/
+    public boolean isTruncated() {
+        return failures.size() < failedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "[BulkUpdateResult: " + recordCount + " records, " + updatedCount + " updated, " + skippedCount
+                + " skipped, " + failedCount + " failed]";
+    }
+}
@@ -0,0 +1,187 @@
+package dk.kb.cumulus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.utils.RateLimiter;
+
+/**
+ * Applies the same field updates to many records in parallel.
+ *
+ * The records are updated by a number of workers, each with its own session from the session pool, which take the
+ * IDs of the records from a shared cursor. Each record is retrieved again by its ID and only saved, if any of its
+ * fields does not already have the new value, so an interrupted bulk update can be repeated.
+ * The rate of the updates can be limited across all the workers, to spare the Cumulus server.
+ * A record, which cannot be updated, is reported in the result instead of failing the other records.
+ */
+public class BulkUpdater {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(BulkUpdater.class);
+
+    /** The rate of updates, which means that the rate is not limited.*/
+    public static final double NO_RATE_LIMIT = 0.0;
+    /** The default maximum number of failures kept in the result.*/
+    public static final int DEFAULT_MAX_FAILURES = 1000;
+
+    /** The pool of sessions for the workers.*/
+    protected final CumulusSessionPool sessions;
+    /** The number of workers.*/
+    protected final int parallelism;
+    /** The limiter for the rate of the updates, or null if the rate is not limited.*/
+    protected final RateLimiter rateLimiter;
+
+    /**
+     * Constructor.
+     * @param sessions The pool of sessions for the workers.
+     * @param parallelism The number of workers. It is limited to the size of the session pool.
+     * @param maxRecordsPerSecond The maximum number of records updated per second, or NO_RATE_LIMIT.
+     */
+    public BulkUpdater(CumulusSessionPool sessions, int parallelism, double maxRecordsPerSecond) {
+        ArgumentCheck.checkNotNull(sessions, "CumulusSessionPool sessions");
+        ArgumentCheck.checkPositiveInt(parallelism, "int parallelism");
+        ArgumentCheck.checkTrue(maxRecordsPerSecond >= 0.0, "The maximum number of records per second must not be "
+                + "negative, but was " + maxRecordsPerSecond);
+        this.sessions = sessions;
+        this.parallelism = Math.min(parallelism, sessions.getMaxSize());
+        this.rateLimiter = maxRecordsPerSecond > NO_RATE_LIMIT ? new RateLimiter(maxRecordsPerSecond) : null;
+    }
+
+    /**
+     * Applies the updates to the records with the given IDs.
+     * @param catalogName The name of the catalog.
+     * @param ids The IDs of the records.
+     * @param updates The updates.
+     * @return The result of the bulk update.
+     */
+    public BulkUpdateResult update(final String catalogName, final int[] ids, final FieldUpdates updates) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(ids, "int[] ids");
+        ArgumentCheck.checkNotNull(updates, "FieldUpdates updates");
+        final Progress progress = new Progress(ids);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for(int i = 0; i < Math.min(parallelism, ids.length); i++) {
+            futures.add(sessions.submit(() -> {
+                work(catalogName, updates, progress);
+                return null;
+            }));
+        }
+
+        Throwable workerFailure = null;
+        for(Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.warn("A worker of the bulk update of the catalog '" + catalogName + "' failed.", e.getCause());
+                workerFailure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for(Future<Void> other : futures) {
+                    other.cancel(true);
+                }
+                throw new IllegalStateException("Interrupted while updating the records of the catalog '"
+                        + catalogName + "'.", e);
+            }
+        }
+        int index;
+        while((index = progress.next()) < ids.length) {
+            progress.failed(ids[index], workerFailure);
+        }
+        BulkUpdateResult res = progress.toResult();
+        log.info("Bulk update of the catalog '{}' with {}: {}", catalogName, updates, res);
+        return res;
+    }
+
+    /**
+     * Updates records with a borrowed session, until there are no more records to update.
+     * @param catalogName The name of the catalog.
+     * @param updates The updates.
+     * @param progress The progress of the bulk update.
+     */
+    protected void work(String catalogName, FieldUpdates updates, Progress progress) {
+        CumulusServer session = sessions.borrow();
+        try {
+            int index;
+            while((index = progress.next()) < progress.ids.length) {
+                int id = progress.ids[index];
+                if(rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                try {
+                    if(session.getRecordById(catalogName, id).update(updates)) {
+                        progress.updated.incrementAndGet();
+                    } else {
+                        progress.skipped.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Could not update the record " + id + " in the catalog '" + catalogName + "'.", e);
+                    progress.failed(id, e);
+                }
+            }
+        } finally {
+            sessions.release(session);
+        }
+    }
+
+    /**
+     * The progress of a bulk update, shared by the workers.
+     */
+    protected static class Progress {
+        /** The IDs of the records.*/
+        protected final int[] ids;
+        /** The index of the next record to update.*/
+        protected final AtomicInteger cursor = new AtomicInteger();
+        /** The number of records updated.*/
+        protected final AtomicLong updated = new AtomicLong();
+        /** The number of records skipped.*/
+        protected final AtomicLong skipped = new AtomicLong();
+        /** The number of records, which could not be updated.*/
+        protected final AtomicLong failed = new AtomicLong();
+        /** The first failures, mapped by the IDs of the records.*/
+        protected final Map<Integer, Throwable> failures = new LinkedHashMap<Integer, Throwable>();
+
+        /**
+         * Constructor.
+         * @param ids The IDs of the records.
+         */
+        protected Progress(int[] ids) {
+            this.ids = ids;
+        }
+
+        /** @return The index of the next record to update, which is at least the number of records when done.*/
+        protected int next() {
+            return cursor.getAndIncrement();
+        }
+
+        /**
+         * Registers a record, which could not be updated.
+         * @param id The ID of the record.
+         * @param failure The failure.
+         */
+        protected void failed(int id, Throwable failure) {
+            failed.incrementAndGet();
+            synchronized(failures) {
+                if(failures.size() < DEFAULT_MAX_FAILURES) {
+                    failures.put(id, failure);
+                }
+            }
+        }
+
+        /** @return The result of the bulk update.*/
+        protected BulkUpdateResult toResult() {
+            synchronized(failures) {
+                return new BulkUpdateResult(ids.length, updated.get(), skipped.get(), failed.get(),
+                        new LinkedHashMap<Integer, Throwable>(failures));
+            }
+        }
+    }
+}
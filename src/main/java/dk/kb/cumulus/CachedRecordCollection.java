@@ -0,0 +1,81 @@
+package dk.kb.cumulus;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Collection of records found by a cached query.
+ *
+ * Only the IDs of the records are cached, and each record is retrieved from Cumulus, when it is accessed.
+ * A record deleted after the query was cached cannot be retrieved.
+ */
+public class CachedRecordCollection implements Iterable<CumulusRecord> {
+    /** The Cumulus server.*/
+    protected final CumulusServer server;
+    /** The name of the catalog.*/
+    protected final String catalogName;
+    /** The IDs of the records.*/
+    protected final int[] ids;
+
+    /**
+     * Constructor.
+     * @param server The Cumulus server.
+     * @param catalogName The name of the catalog.
+     * @param ids The IDs of the records. The array is not copied, and must not be changed.
+     */
+    public CachedRecordCollection(CumulusServer server, String catalogName, int[] ids) {
+        ArgumentCheck.checkNotNull(server, "CumulusServer server");
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(ids, "int[] ids");
+        this.server = server;
+        this.catalogName = catalogName;
+        this.ids = ids;
+    }
+
+    /** @return The number of records.*/
+    public int getCount() {
+        return ids.length;
+    }
+
+    /** @return The IDs of the records.*/
+    public int[] getRecordIds() {
+        return Arrays.copyOf(ids, ids.length);
+    }
+
+    /**
+     * Retrieves a record of the collection from Cumulus.
+     * @param index The index of the record in the collection.
+     * @return The record.
+     */
+    public CumulusRecord getRecord(int index) {
+        if(index < 0 || index >= ids.length) {
+            throw new ArgumentCheck("The index " + index + " is outside the " + ids.length + " records.");
+        }
+        return new CumulusRecord(server.getFieldExtractor(catalogName),
+                server.getRecordItemByID(catalogName, ids[index]));
+    }
+
+    @Override
+    public Iterator<CumulusRecord> iterator() {
+        return new Iterator<CumulusRecord>() {
+            /** The index of the next record.*/
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < ids.length;
+            }
+
+            @Override
+            public CumulusRecord next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException("No more records in the collection.");
+                }
+                return getRecord(index++);
+            }
+        };
+    }
+}
@@ -1,7 +1,12 @@
 package dk.kb.cumulus;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.EnumSet;
 import java.util.Locale;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,8 +14,8 @@ import org.slf4j.LoggerFactory;
 import com.canto.cumulus.constants.CombineMode;
 import com.canto.cumulus.constants.FindFlag;
 
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
 import dk.kb.cumulus.utils.ArgumentCheck;
-import dk.kb.cumulus.utils.StringUtils;
 
 /**
  * Class for encapsulating the query for locating specific items in Cumulus.
@@ -28,6 +33,32 @@ public class CumulusQuery {
     /** The locale. Defaults to null.*/
     protected Locale locale;
 
+    /** The format of the dates in the queries. The dates are given in the time zone of the system.*/
+    protected static final DateTimeFormatter QUERY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    /** The template for the query for all the records in a catalog.*/
+    protected static final CumulusQueryTemplate ALL_IN_CATALOG = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+    /** The template for the query for the records with a specific record name in a catalog.*/
+    protected static final CumulusQueryTemplate SPECIFIC_RECORD_NAME = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.RECORD_NAME, Operator.IS)
+            .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+    /** The template for the query for the finished records with a specific GUID in a catalog.*/
+    protected static final CumulusQueryTemplate SPECIFIC_GUID = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.GUID, Operator.CONTAINS)
+            .and(Constants.FieldNames.REGISTRATIONSTATE, Operator.IS, 
+                    Constants.FieldValues.REGISTRATIONSTATE_FINISHED)
+            .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+    /** The template for the query for the records of a catalog modified after a given time.*/
+    protected static final CumulusQueryTemplate MODIFIED_SINCE = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.ITEM_MODIFICATION_DATE, Operator.IS_AFTER)
+            .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+
     /**
      * Constructor. 
      * Automatically sets the locale to null.
@@ -44,8 +75,10 @@ public class CumulusQuery {
         this.combineMode = combineMode;
         this.locale = null;
         
-        log.debug("Instantiated Cumulus query '" + query + "' with flags, '" + findFlags + "' and combine-mode: '" 
-                + combineMode.name() + "'");
+        if(log.isDebugEnabled()) {
+            log.debug("Instantiated Cumulus query '" + query + "' with flags, '" + findFlags + "' and combine-mode: '" 
+                    + combineMode.name() + "'");
+        }
     }
 
     /** @return The query string. */
@@ -83,6 +116,28 @@ public class CumulusQuery {
         return "[CumulusQuery: " + query + "]";
     }
 
+    /**
+     * Queries are equal, when they have the same query string, flags, combine mode and locale.
+     * NOTE: the locale can be changed, so a query should not be changed while it is used as key in a map.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(!(obj instanceof CumulusQuery)) {
+            return false;
+        }
+        CumulusQuery other = (CumulusQuery) obj;
+        return query.equals(other.query) && findFlags.equals(other.findFlags) && combineMode == other.combineMode
+                && Objects.equals(locale, other.locale);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(query, findFlags, combineMode, locale);
+    }
+
     /**
      * The query for extracting all the records in a Cumulus catalog.
      * 
@@ -93,14 +148,7 @@ public class CumulusQuery {
      */
     public static CumulusQuery getQueryForAllInCatalog(String catalogName) {
         ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
-        String query = String.format(StringUtils.replaceSpacesToTabs("%s is %s"),
-                Constants.FieldNames.CATALOG_NAME,
-                catalogName);        
-        EnumSet<FindFlag> findFlags = EnumSet.of(
-                FindFlag.FIND_MISSING_FIELDS_ARE_ERROR, 
-                FindFlag.FIND_MISSING_STRING_LIST_VALUES_ARE_ERROR);    
-
-        return new CumulusQuery(query, findFlags, CombineMode.FIND_NEW);
+        return ALL_IN_CATALOG.bind(catalogName);
     }
     
 
@@ -114,17 +162,7 @@ public class CumulusQuery {
     public static CumulusQuery getQueryForSpecificRecordName(String catalogName, String name) {
         ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
         ArgumentCheck.checkNotNullOrEmpty(name, "String name");
-        String query = String.format(
-                StringUtils.replaceSpacesToTabs("%s is %s\nand %s is %s"),
-                Constants.FieldNames.RECORD_NAME,
-                name,
-                Constants.FieldNames.CATALOG_NAME,
-                catalogName);
-        EnumSet<FindFlag> findFlags = EnumSet.of(
-                FindFlag.FIND_MISSING_FIELDS_ARE_ERROR, 
-                FindFlag.FIND_MISSING_STRING_LIST_VALUES_ARE_ERROR);    
-
-        return new CumulusQuery(query, findFlags, CombineMode.FIND_NEW);
+        return SPECIFIC_RECORD_NAME.bind(name, catalogName);
     }
     
     /**
@@ -141,18 +179,23 @@ public class CumulusQuery {
     public static CumulusQuery getQueryForSpecificGUID(String catalogName, String uuid) {
         ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
         ArgumentCheck.checkNotNullOrEmpty(uuid, "String uuid");
-        String query = String.format(
-                StringUtils.replaceSpacesToTabs("%s contains %s\nand %s is %s\nand %s is %s"),
-                Constants.FieldNames.GUID,
-                uuid,
-                Constants.FieldNames.REGISTRATIONSTATE,
-                Constants.FieldValues.REGISTRATIONSTATE_FINISHED,
-                Constants.FieldNames.CATALOG_NAME,
-                catalogName);
-        EnumSet<FindFlag> findFlags = EnumSet.of(
-                FindFlag.FIND_MISSING_FIELDS_ARE_ERROR, 
-                FindFlag.FIND_MISSING_STRING_LIST_VALUES_ARE_ERROR);    
-
-        return new CumulusQuery(query, findFlags, CombineMode.FIND_NEW);
+        return SPECIFIC_GUID.bind(uuid, catalogName);
+    }
+
+    /**
+     * The query for extracting the records of a catalog, which have been modified since a given time.
+     * 
+     * The dates in the queries only have a precision of seconds, so the query also includes the records modified 
+     * within the second of the given time. Thus records modified at exactly the given time are also found, and it
+     * is up to the caller to filter away the records, which have already been handled.
+     * 
+     * @param catalogName The name of the catalog.
+     * @param since The time of the last modification, which should not be included.
+     * @return The query for the records of the catalog, which have been modified at or since the given time.
+     */
+    public static CumulusQuery getQueryForModifiedSince(String catalogName, Instant since) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(since, "Instant since");
+        return MODIFIED_SINCE.bind(since.truncatedTo(ChronoUnit.SECONDS).minusSeconds(1), catalogName);
     }
 }
@@ -0,0 +1,306 @@
+package dk.kb.cumulus;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+import com.canto.cumulus.constants.CombineMode;
+import com.canto.cumulus.constants.FindFlag;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Builder for Cumulus queries.
+ *
+ * The query is built from conditions (field, operator and value), which are combined with 'and' or 'or', and can
+ * be grouped. The values of the conditions can either be given directly, or be left as parameters, which are bound
+ * when the query is used.
+ * The builder is compiled into a CumulusQueryTemplate, which can be reused for creating queries with different
+ * values for the parameters, without building the query string again.
+ *
+ * E.g. the query for a record name in a catalog:
+ * <pre>
+ * CumulusQueryTemplate template = new CumulusQueryBuilder()
+ *         .where(Constants.FieldNames.RECORD_NAME, Operator.IS)
+ *         .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+ *         .compile();
+ * CumulusQuery query = template.bind(recordName, catalogName);
+ * </pre>
+ */
+public class CumulusQueryBuilder {
+    /** The separator between the elements of a condition.*/
+    protected static final String ELEMENT_SEPARATOR = "\t";
+    /** The separator between the conditions.*/
+    protected static final String CONDITION_SEPARATOR = "\n";
+
+    /**
+     * The operators of the conditions.
+     */
+    public enum Operator {
+        /** The field has the value.*/
+        IS("is"),
+        /** The field does not have the value.*/
+        IS_NOT("is not"),
+        /** The field contains the value.*/
+        CONTAINS("contains"),
+        /** The field starts with the value.*/
+        STARTS_WITH("starts with"),
+        /** The field ends with the value.*/
+        ENDS_WITH("ends with"),
+        /** The date field is before the value.*/
+        IS_BEFORE("is before"),
+        /** The date field is after the value.*/
+        IS_AFTER("is after"),
+        /** The numeric field is greater than the value.*/
+        IS_GREATER_THAN("is greater than"),
+        /** The numeric field is less than the value.*/
+        IS_LESS_THAN("is less than");
+
+        /** The operator in the query string.*/
+        protected final String text;
+
+        /**
+         * Constructor.
+         * @param text The operator in the query string.
+         */
+        Operator(String text) {
+            this.text = text;
+        }
+
+        /** @return The operator in the query string.*/
+        public String getText() {
+            return text;
+        }
+    }
+
+    /** The elements of the query, which are either literal strings or the PARAMETER marker.*/
+    protected final List<Object> elements = new ArrayList<Object>();
+    /** The conditions of the query, in the order of the query string.*/
+    protected final List<CumulusQueryTemplate.Condition> conditions = new ArrayList<CumulusQueryTemplate.Condition>();
+    /** The find flags.*/
+    protected EnumSet<FindFlag> findFlags = EnumSet.of(
+            FindFlag.FIND_MISSING_FIELDS_ARE_ERROR,
+            FindFlag.FIND_MISSING_STRING_LIST_VALUES_ARE_ERROR);
+    /** The combine mode.*/
+    protected CombineMode combineMode = CombineMode.FIND_NEW;
+    /** The locale. Defaults to null.*/
+    protected Locale locale = null;
+
+    /**
+     * Adds the first condition with the given value.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @param value The value.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder where(String fieldName, Operator operator, String value) {
+        checkFirstCondition();
+        return addCondition(null, fieldName, operator, value);
+    }
+
+    /**
+     * Adds the first condition with a parameter as value.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder where(String fieldName, Operator operator) {
+        checkFirstCondition();
+        return addCondition(null, fieldName, operator, null);
+    }
+
+    /**
+     * Adds a condition with the given value, which must also be fulfilled.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @param value The value.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder and(String fieldName, Operator operator, String value) {
+        return addCondition("and", fieldName, operator, value);
+    }
+
+    /**
+     * Adds a condition with a parameter as value, which must also be fulfilled.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder and(String fieldName, Operator operator) {
+        return addCondition("and", fieldName, operator, null);
+    }
+
+    /**
+     * Adds a condition with the given value as an alternative.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @param value The value.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder or(String fieldName, Operator operator, String value) {
+        return addCondition("or", fieldName, operator, value);
+    }
+
+    /**
+     * Adds a condition with a parameter as value as an alternative.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder or(String fieldName, Operator operator) {
+        return addCondition("or", fieldName, operator, null);
+    }
+
+    /**
+     * Adds the conditions of another builder as a group, which must also be fulfilled.
+     * The parameters of the group are bound in their order in the query.
+     * @param group The builder with the conditions of the group.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder and(CumulusQueryBuilder group) {
+        return addGroup("and", group);
+    }
+
+    /**
+     * Adds the conditions of another builder as a group, which is an alternative.
+     * The parameters of the group are bound in their order in the query.
+     * @param group The builder with the conditions of the group.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder or(CumulusQueryBuilder group) {
+        return addGroup("or", group);
+    }
+
+    /**
+     * @param flags The find flags for the query.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder findFlags(EnumSet<FindFlag> flags) {
+        ArgumentCheck.checkNotNullOrEmpty(flags, "EnumSet<FindFlag> flags");
+        this.findFlags = EnumSet.copyOf(flags);
+        return this;
+    }
+
+    /**
+     * @param mode The combine mode for the query.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder combineMode(CombineMode mode) {
+        ArgumentCheck.checkNotNull(mode, "CombineMode mode");
+        this.combineMode = mode;
+        return this;
+    }
+
+    /**
+     * @param queryLocale The locale for the query. This can be null.
+     * @return This builder.
+     */
+    public CumulusQueryBuilder locale(Locale queryLocale) {
+        this.locale = queryLocale;
+        return this;
+    }
+
+    /**
+     * Compiles the query into a template, where only the parameters are missing.
+     * @return The template for the query.
+     */
+    public CumulusQueryTemplate compile() {
+        if(elements.isEmpty()) {
+            throw new IllegalStateException("The query does not have any conditions.");
+        }
+        List<CumulusQueryTemplate.Condition> compiled = new ArrayList<CumulusQueryTemplate.Condition>();
+        int parameterIndex = 0;
+        for(CumulusQueryTemplate.Condition condition : conditions) {
+            if(condition.getValue() == null) {
+                compiled.add(new CumulusQueryTemplate.Condition(condition.getFieldName(), condition.getOperator(),
+                        null, parameterIndex++));
+            } else {
+                compiled.add(condition);
+            }
+        }
+        List<String> parts = new ArrayList<String>();
+        StringBuilder part = new StringBuilder();
+        for(Object element : elements) {
+            if(element == CumulusQueryTemplate.PARAMETER) {
+                parts.add(part.toString());
+                part.setLength(0);
+            } else {
+                part.append((String) element);
+            }
+        }
+        parts.add(part.toString());
+        return new CumulusQueryTemplate(parts.toArray(new String[parts.size()]), compiled, findFlags, combineMode,
+                locale);
+    }
+
+    /**
+     * Builds the query, when it does not have any parameters.
+     * @return The query.
+     */
+    public CumulusQuery build() {
+        return compile().bind();
+    }
+
+    /**
+     * Validates that no conditions have been added yet.
+     */
+    protected void checkFirstCondition() {
+        if(!elements.isEmpty()) {
+            throw new IllegalStateException("The first condition has already been given. Use 'and' or 'or'.");
+        }
+    }
+
+    /**
+     * Adds a condition.
+     * @param connector The connector to the previous conditions ('and' or 'or'), or null for the first condition.
+     * @param fieldName The name of the field.
+     * @param operator The operator.
+     * @param value The value, or null if the value is a parameter.
+     * @return This builder.
+     */
+    protected CumulusQueryBuilder addCondition(String connector, String fieldName, Operator operator,
+            String value) {
+        ArgumentCheck.checkNotNullOrEmpty(fieldName, "String fieldName");
+        ArgumentCheck.checkNotNull(operator, "Operator operator");
+        if(value != null) {
+            CumulusQueryTemplate.checkValue(value);
+        }
+        addConnector(connector);
+        elements.add(fieldName + ELEMENT_SEPARATOR + operator.getText() + ELEMENT_SEPARATOR);
+        elements.add(value == null ? CumulusQueryTemplate.PARAMETER : value);
+        conditions.add(new CumulusQueryTemplate.Condition(fieldName, operator, value, -1));
+        return this;
+    }
+
+    /**
+     * Adds the conditions of another builder as a group.
+     * @param connector The connector to the previous conditions ('and' or 'or').
+     * @param group The builder with the conditions of the group.
+     * @return This builder.
+     */
+    protected CumulusQueryBuilder addGroup(String connector, CumulusQueryBuilder group) {
+        ArgumentCheck.checkNotNull(group, "CumulusQueryBuilder group");
+        ArgumentCheck.checkTrue(!group.elements.isEmpty(), "The group must have conditions.");
+        addConnector(connector);
+        elements.add("(");
+        elements.addAll(group.elements);
+        elements.add(")");
+        conditions.addAll(group.conditions);
+        return this;
+    }
+
+    /**
+     * Adds the connector between the previous conditions and a new condition.
+     * @param connector The connector ('and' or 'or'), or null for the first condition.
+     */
+    protected void addConnector(String connector) {
+        if(connector == null) {
+            return;
+        }
+        if(elements.isEmpty()) {
+            throw new IllegalStateException("The first condition must be given with 'where'.");
+        }
+        elements.add(CONDITION_SEPARATOR + connector + ELEMENT_SEPARATOR);
+    }
+}
@@ -0,0 +1,184 @@
+package dk.kb.cumulus;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+import com.canto.cumulus.constants.CombineMode;
+import com.canto.cumulus.constants.FindFlag;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Compiled Cumulus query, where the values of the parameters are bound for each use of the query.
+ *
+ * The query string is kept as the literal parts between the parameters, so binding the parameters only appends
+ * the parts and the values.
+ * The template is immutable, and can be shared between threads.
+ */
+public class CumulusQueryTemplate {
+    /** The marker for a parameter in the elements of a query.*/
+    protected static final Object PARAMETER = new Object();
+
+    /** The literal parts of the query string. There is a parameter between each part.*/
+    protected final String[] parts;
+    /** The conditions of the query, in the order of the query string.*/
+    protected final List<Condition> conditions;
+    /** The find flags.*/
+    protected final EnumSet<FindFlag> findFlags;
+    /** The combine mode.*/
+    protected final CombineMode combineMode;
+    /** The locale. This can be null.*/
+    protected final Locale locale;
+    /** The length of the literal parts.*/
+    protected final int literalLength;
+
+    /**
+     * Constructor.
+     * @param parts The literal parts of the query string.
+     * @param conditions The conditions of the query.
+     * @param findFlags The find flags.
+     * @param combineMode The combine mode.
+     * @param locale The locale. This can be null.
+     */
+    protected CumulusQueryTemplate(String[] parts, List<Condition> conditions, EnumSet<FindFlag> findFlags,
+            CombineMode combineMode, Locale locale) {
+        this.parts = parts;
+        this.conditions = Collections.unmodifiableList(conditions);
+        this.findFlags = EnumSet.copyOf(findFlags);
+        this.combineMode = combineMode;
+        this.locale = locale;
+        int length = 0;
+        for(String part : parts) {
+            length += part.length();
+        }
+        this.literalLength = length;
+    }
+
+    /** @return The conditions of the query, in the order of the query string.*/
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /** @return The number of parameters of the query.*/
+    public int getParameterCount() {
+        return parts.length - 1;
+    }
+
+    /**
+     * Creates the query with the given values for the parameters.
+     * The values are converted to strings, and dates (Instant or Date) are given in the date format of the
+     * queries, and date-only values (LocalDate) in the ISO format.
+     * @param values The values of the parameters, in the order of the parameters in the query.
+     * @return The query.
+     */
+    public CumulusQuery bind(Object... values) {
+        ArgumentCheck.checkNotNull(values, "Object... values");
+        if(values.length != getParameterCount()) {
+            throw new ArgumentCheck("The query has " + getParameterCount() + " parameters, but " + values.length
+                    + " values were given.");
+        }
+        String[] strings = new String[values.length];
+        int length = literalLength;
+        for(int i = 0; i < values.length; i++) {
+            strings[i] = toQueryValue(values[i]);
+            length += strings[i].length();
+        }
+        StringBuilder query = new StringBuilder(length);
+        query.append(parts[0]);
+        for(int i = 0; i < strings.length; i++) {
+            query.append(strings[i]);
+            query.append(parts[i + 1]);
+        }
+        CumulusQuery res = new CumulusQuery(query.toString(), EnumSet.copyOf(findFlags), combineMode);
+        res.setLocale(locale);
+        return res;
+    }
+
+    /**
+     * Converts the value of a parameter into its string in the query.
+     * @param value The value.
+     * @return The string of the value in the query.
+     */
+    protected static String toQueryValue(Object value) {
+        ArgumentCheck.checkNotNull(value, "Object value");
+        String res;
+        if(value instanceof Instant) {
+            res = CumulusQuery.QUERY_DATE_FORMAT.format((Instant) value);
+        } else if(value instanceof Date) {
+            res = CumulusQuery.QUERY_DATE_FORMAT.format(((Date) value).toInstant());
+        } else {
+            res = value.toString();
+        }
+        checkValue(res);
+        return res;
+    }
+
+    /**
+     * Validates that a value does not contain the separators of the query string.
+     * @param value The value.
+     */
+    protected static void checkValue(String value) {
+        ArgumentCheck.checkNotNullOrEmpty(value, "String value");
+        if(value.indexOf('\t') >= 0 || value.indexOf('\n') >= 0) {
+            throw new ArgumentCheck("The query value '" + value + "' must not contain tabs or newlines.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[CumulusQueryTemplate: " + String.join("?", parts) + "]";
+    }
+
+    /**
+     * A condition of the query.
+     */
+    public static class Condition {
+        /** The name of the field.*/
+        protected final String fieldName;
+        /** The operator.*/
+        protected final Operator operator;
+        /** The value, or null if the value is a parameter.*/
+        protected final String value;
+        /** The index of the parameter for the value, or -1 if the value is given.*/
+        protected final int parameterIndex;
+
+        /**
+         * Constructor.
+         * @param fieldName The name of the field.
+         * @param operator The operator.
+         * @param value The value, or null if the value is a parameter.
+         * @param parameterIndex The index of the parameter for the value, or -1 if the value is given.
+         */
+        protected Condition(String fieldName, Operator operator, String value, int parameterIndex) {
+            this.fieldName = fieldName;
+            this.operator = operator;
+            this.value = value;
+            this.parameterIndex = parameterIndex;
+        }
+
+        /** @return The name of the field.*/
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        /** @return The operator.*/
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /** @return The value, or null if the value is a parameter.*/
+        public String getValue() {
+            return value;
+        }
+
+        /** @return The index of the parameter for the value, or -1 if the value is given.*/
+        public int getParameterIndex() {
+            return parameterIndex;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package dk.kb.cumulus;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,10 +35,12 @@ import org.w3c.dom.Element;
 
 import com.canto.cumulus.ItemCollection;
 import com.canto.cumulus.Asset;
+import com.canto.cumulus.FieldTypes;
 import com.canto.cumulus.GUID;
 import com.canto.cumulus.RecordItem;
 import com.canto.cumulus.fieldvalue.AssetReference;
 import com.canto.cumulus.fieldvalue.AssetXRefFieldValue;
+import com.canto.cumulus.fieldvalue.DateOnlyFieldValue;
 import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
 
 import dk.kb.cumulus.field.AssetsField;
@@ -60,6 +69,10 @@ public class CumulusRecord {
 
     /** Constant for not allowing assert to be extracted from proxy.*/
     protected static final boolean ASSET_NOT_ALLOW_PROXY = false;
+    /** Constant for no limit on the size of the content of a field.*/
+    public static final long NO_SIZE_LIMIT = -1L;
+    /** The size of the chunks, when writing the content of a field to a stream.*/
+    protected static final int WRITE_CHUNK_SIZE = 64 * 1024;
 
     /** The field extractor.*/
     protected final FieldExtractor fe;
@@ -69,8 +82,12 @@ public class CumulusRecord {
     /** The GUID for the file and the Cumulus record. It is created and stored the first time it is needed.*/
     protected String guid = null;
     
-    /** A map between the value and the name of the fields already extracted.*/
-    protected Map<String, String> fieldValues = new HashMap<String, String>();
+    /** The string values of the fields already extracted, indexed by the ordinal of their field handle.
+     * It is created the first time a value is extracted.*/
+    protected String[] fieldValues = null;
+    /** The lines of the multi-value fields already extracted, indexed by the ordinal of their field handle.
+     * It is created the first time the lines of a field are extracted.*/
+    protected List<String>[] fieldLines = null;
     
     /**
      * Constructor.
@@ -98,6 +115,20 @@ public class CumulusRecord {
         return guid;
     }
 
+    /**
+     * @return The name of the catalog of the record.
+     */
+    public String getCatalogName() {
+        return fe.getCatalog();
+    }
+
+    /**
+     * @return The internal Cumulus identifier of the record within its catalog.
+     */
+    public int getID() {
+        return item.getID();
+    }
+
     /**
      * Extracts the value of the field with the given name.
      * If multiple fields have the given field name, then only the value of one of the fields are returned.
@@ -107,23 +138,35 @@ public class CumulusRecord {
      * @return The string value of the field. 
      */
     public String getFieldValue(String fieldname) {
-        if(!fieldValues.containsKey(fieldname)) {
-            GUID fieldGuid = fe.getFieldGUID(fieldname);
+        return getFieldValue(fe.getFieldHandle(fieldname));
+    }
+
+    /**
+     * Extracts the value of the field with the given handle.
+     * The result is in String format.
+     * It will throw an exception, if the field does not contain a value.
+     * @param field The handle for the field.
+     * @return The string value of the field.
+     */
+    public String getFieldValue(FieldHandle field) {
+        String value = getCachedValue(field);
+        if(value == null) {
+            GUID fieldGuid = field.getFieldUID();
             try {
-                fieldValues.put(fieldname, item.getStringValue(fieldGuid));
+                value = field.getReader().intern(item.getStringValue(fieldGuid));
             } catch (CumulusException e) {
                 log.warn("\nCumulus failed to extract the following field value:" +
-                                " \n Fieldname: {}\n fieldGuid: {}\n item: {}\n fieldValues: {}\n",
-                        fieldname, fieldGuid, item, fieldValues);
+                                " \n Fieldname: {}\n fieldGuid: {}\n item: {}\n",
+                        field.getName(), fieldGuid, item);
                 throw new IllegalStateException("<br/>Cumulus failed to extract the following field value:" +
-                        "<br/> Fieldname: " + fieldname +
+                        "<br/> Fieldname: " + field.getName() +
                         "<br/> fieldGuid: " + fieldGuid +
                         "<br/> item: " + item +
-                        "<br/> fieldValues:" + fieldValues +
                         "<br/>", e);
             }
+            setCachedValue(field, value);
         }
-        return fieldValues.get(fieldname);
+        return value;
     }
     
     /**
@@ -133,15 +176,26 @@ public class CumulusRecord {
      * @return The value of the field, or null if field is empty.
      */
     public String getFieldValueOrNull(String fieldname) {
-        if(!fieldValues.containsKey(fieldname)) {
-            GUID fieldGuid = fe.getFieldGUID(fieldname);
-            if(item.hasValue(fieldGuid)) {
-                fieldValues.put(fieldname, item.getStringValue(fieldGuid));    
-            } else {
+        return getFieldValueOrNull(fe.getFieldHandle(fieldname));
+    }
+
+    /**
+     * Extracts the string value of the field with the given handle.
+     * It will return a null, if the field does not have a value.
+     * @param field The handle for the field.
+     * @return The value of the field, or null if field is empty.
+     */
+    public String getFieldValueOrNull(FieldHandle field) {
+        String value = getCachedValue(field);
+        if(value == null) {
+            GUID fieldGuid = field.getFieldUID();
+            if(!item.hasValue(fieldGuid)) {
                 return null;
             }
+            value = field.getReader().intern(item.getStringValue(fieldGuid));
+            setCachedValue(field, value);
         }
-        return fieldValues.get(fieldname);
+        return value;
     }
     
     /**
@@ -150,10 +204,51 @@ public class CumulusRecord {
      * @param value The new value of the field.
      */
     public void setStringValueInField(String fieldName, String value) {
-        GUID fieldGuid = fe.getFieldGUID(fieldName);
-        setStringValueInField(fieldGuid, value);
-        
-        fieldValues.put(fieldName, value);
+        setStringValueInField(fe.getFieldHandle(fieldName), value);
+    }
+
+    /**
+     * Set the string value of the Cumulus field with the given handle.
+     * @param field The handle for the field.
+     * @param value The new value of the field.
+     */
+    public void setStringValueInField(FieldHandle field, String value) {
+        fe.checkHandle(field);
+        setStringValueInField(field.getFieldUID(), value);
+        setCachedValue(field, value);
+    }
+
+    /**
+     * Retrieves the already extracted string value of a field.
+     * @param field The handle for the field.
+     * @return The extracted value, or null if the value of the field has not been extracted yet.
+     */
+    protected String getCachedValue(FieldHandle field) {
+        fe.checkHandle(field);
+        if(fieldValues == null) {
+            return null;
+        }
+        return fieldValues[field.getOrdinal()];
+    }
+
+    /**
+     * Stores the extracted string value of a field.
+     * A null value removes the value, so it will be extracted again the next time it is needed.
+     * @param field The handle for the field.
+     * @param value The extracted value.
+     */
+    protected void setCachedValue(FieldHandle field, String value) {
+        fe.checkHandle(field);
+        if(fieldLines != null) {
+            fieldLines[field.getOrdinal()] = null;
+        }
+        if(fieldValues == null) {
+            if(value == null) {
+                return;
+            }
+            fieldValues = new String[fe.getFieldCount()];
+        }
+        fieldValues[field.getOrdinal()] = value;
     }
     
     /**
@@ -165,7 +260,7 @@ public class CumulusRecord {
      * @return The long value of the field. 
      */
     public Long getFieldLongValue(String fieldname) {
-        GUID fieldGuid = fe.getFieldGUID(fieldname);
+        GUID fieldGuid = fe.getFieldHandle(fieldname).getFieldUID();
         return item.getLongValue(fieldGuid);
     }
     
@@ -178,10 +273,125 @@ public class CumulusRecord {
      * @return The long value of the field. 
      */
     public Integer getFieldIntValue(String fieldname) {
-        GUID fieldGuid = fe.getFieldGUID(fieldname);
+        GUID fieldGuid = fe.getFieldHandle(fieldname).getFieldUID();
+        return item.getIntValue(fieldGuid);
+    }
+
+    /**
+     * Extracts the value of an integer or long field as a primitive long.
+     * @param field The handle for the field.
+     * @param defaultValue The value to return, if the field does not have a value.
+     * @return The value of the field, or the default value if the field is empty.
+     */
+    public long getLong(FieldHandle field, long defaultValue) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        boolean integerField = field.getFieldType() == FieldTypes.FieldTypeInteger;
+        if(!integerField) {
+            checkFieldType(field, FieldTypes.FieldTypeLong);
+        }
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return defaultValue;
+        }
+        if(integerField) {
+            return item.getIntValue(fieldGuid);
+        }
+        return item.getLongValue(fieldGuid);
+    }
+
+    /**
+     * Extracts the value of an integer field as a primitive int.
+     * @param field The handle for the field.
+     * @param defaultValue The value to return, if the field does not have a value.
+     * @return The value of the field, or the default value if the field is empty.
+     */
+    public int getInt(FieldHandle field, int defaultValue) {
+        checkFieldType(field, FieldTypes.FieldTypeInteger);
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return defaultValue;
+        }
         return item.getIntValue(fieldGuid);
     }
 
+    /**
+     * Extracts the value of a double field as a primitive double.
+     * @param field The handle for the field.
+     * @param defaultValue The value to return, if the field does not have a value.
+     * @return The value of the field, or the default value if the field is empty.
+     */
+    public double getDouble(FieldHandle field, double defaultValue) {
+        checkFieldType(field, FieldTypes.FieldTypeDouble);
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return defaultValue;
+        }
+        return item.getDoubleValue(fieldGuid);
+    }
+
+    /**
+     * Extracts the value of a boolean field as a primitive boolean.
+     * @param field The handle for the field.
+     * @param defaultValue The value to return, if the field does not have a value.
+     * @return The value of the field, or the default value if the field is empty.
+     */
+    public boolean getBoolean(FieldHandle field, boolean defaultValue) {
+        checkFieldType(field, FieldTypes.FieldTypeBool);
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return defaultValue;
+        }
+        return item.getBooleanValue(fieldGuid);
+    }
+
+    /**
+     * Extracts the value of a date field as an instant.
+     * @param field The handle for the field.
+     * @return The instant of the date, or null if the field is empty.
+     */
+    public Instant getInstant(FieldHandle field) {
+        checkFieldType(field, FieldTypes.FieldTypeDate);
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return null;
+        }
+        return item.getDateValue(fieldGuid).toInstant();
+    }
+
+    /**
+     * Extracts the value of a date-only field (an integer field with the DATE_ONLY value interpretation).
+     * The month of the DateOnlyFieldValue is 1-based (1 is January), as in its universal display string.
+     * @param field The handle for the field.
+     * @return The date, or null if the field is empty.
+     */
+    public LocalDate getLocalDate(FieldHandle field) {
+        fe.checkHandle(field);
+        ArgumentCheck.checkTrue(field.getFieldType() == FieldTypes.FieldTypeInteger
+                && field.getValueInterpretation() == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY,
+                "The field '" + field.getName() + "' is not a date-only field.");
+        GUID fieldGuid = field.getFieldUID();
+        if(!item.hasValue(fieldGuid)) {
+            return null;
+        }
+        DateOnlyFieldValue date = item.getDateOnlyValue(fieldGuid);
+        return LocalDate.of(date.getYear(), date.getMonth(), date.getDay());
+    }
+
+    /**
+     * Checks that the field has the expected field type.
+     * @param field The handle for the field.
+     * @param expectedFieldType The expected field type, as defined in FieldTypes.
+     * @throws ArgumentCheck If the field does not have the expected type.
+     */
+    protected void checkFieldType(FieldHandle field, int expectedFieldType) {
+        fe.checkHandle(field);
+        if(field.getFieldType() != expectedFieldType) {
+            throw new ArgumentCheck("The field '" + field.getName() + "' has the type '"
+                    + field.getReader().getTypeName() + "', and cannot be extracted as '"
+                    + fe.getFieldTypeName(expectedFieldType) + "'.");
+        }
+    }
+
     /**
      * Extracts the asset reference of a given field.
      * It will return a null, if the field does not have a value.
@@ -189,8 +399,17 @@ public class CumulusRecord {
      * @return The asset reference value of the field.
      */
     public AssetReference getAssetReference(String fieldname) {
-        GUID fieldGuid = fe.getFieldGUID(fieldname);
-        return item.getAssetReferenceValue(fieldGuid);
+        return getAssetReference(fe.getFieldHandle(fieldname));
+    }
+
+    /**
+     * Extracts the asset reference of the field with the given handle.
+     * @param field The handle for the field.
+     * @return The asset reference value of the field.
+     */
+    public AssetReference getAssetReference(FieldHandle field) {
+        fe.checkHandle(field);
+        return item.getAssetReferenceValue(field.getFieldUID());
     }
 
     /**
@@ -246,6 +465,91 @@ public class CumulusRecord {
         }        
     }
     
+    /**
+     * Writes the content of a picture, audio or binary field to the output stream.
+     * Pictures (e.g. the thumbnail) are written in JPEG format.
+     * @param field The handle for the field.
+     * @param out The output stream to write the content to.
+     * @param maxBytes The maximum number of bytes of the content, or NO_SIZE_LIMIT.
+     * @return The number of bytes written, or 0 if the field does not have a value.
+     * @throws IOException If it fails to write to the output stream.
+     * @throws IllegalStateException If the content is larger than the maximum number of bytes.
+     */
+    public long writeFieldContent(FieldHandle field, OutputStream out, long maxBytes) throws IOException {
+        ArgumentCheck.checkNotNull(out, "OutputStream out");
+        byte[] content = readRawBytes(field, maxBytes);
+        if(content == null) {
+            return 0L;
+        }
+        for(int offset = 0; offset < content.length; offset += WRITE_CHUNK_SIZE) {
+            out.write(content, offset, Math.min(WRITE_CHUNK_SIZE, content.length - offset));
+        }
+        out.flush();
+        return content.length;
+    }
+
+    /**
+     * Writes the content of a picture, audio or binary field to the channel.
+     * Pictures (e.g. the thumbnail) are written in JPEG format.
+     * @param field The handle for the field.
+     * @param channel The channel to write the content to.
+     * @param maxBytes The maximum number of bytes of the content, or NO_SIZE_LIMIT.
+     * @return The number of bytes written, or 0 if the field does not have a value.
+     * @throws IOException If it fails to write to the channel.
+     * @throws IllegalStateException If the content is larger than the maximum number of bytes.
+     */
+    public long writeFieldContent(FieldHandle field, WritableByteChannel channel, long maxBytes) 
+            throws IOException {
+        ArgumentCheck.checkNotNull(channel, "WritableByteChannel channel");
+        byte[] content = readRawBytes(field, maxBytes);
+        if(content == null) {
+            return 0L;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return content.length;
+    }
+
+    /**
+     * Reads the raw content of a picture, audio or binary field.
+     * NOTE: Cumulus delivers the content as a single byte array, which is written directly without any further 
+     * copies.
+     * @param field The handle for the field.
+     * @param maxBytes The maximum number of bytes of the content, or NO_SIZE_LIMIT.
+     * @return The content of the field, or null if the field does not have a value.
+     */
+    protected byte[] readRawBytes(FieldHandle field, long maxBytes) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        GUID fieldGuid = field.getFieldUID();
+        int fieldType = field.getFieldType();
+        if((fieldType != FieldTypes.FieldTypePicture && fieldType != FieldTypes.FieldTypeAudio 
+                && fieldType != FieldTypes.FieldTypeBinary) || FieldExtractor.isAssetRelationField(field.getName())) {
+            throw new ArgumentCheck("The field '" + field.getName() + "' of type '" 
+                    + field.getReader().getTypeName() + "' does not have any picture, audio or binary content.");
+        }
+        if(!item.hasValue(fieldGuid)) {
+            return null;
+        }
+        byte[] res;
+        try {
+            if(fieldType == FieldTypes.FieldTypePicture) {
+                res = item.getPictureValue(fieldGuid).getAsJPEG();
+            } else {
+                res = item.getBinaryValue(fieldGuid);
+            }
+        } catch (CumulusException e) {
+            throw new IllegalStateException("Cumulus failed to extract the content of the field '" 
+                    + field.getName() + "' for the item: " + item, e);
+        }
+        if(res != null && maxBytes != NO_SIZE_LIMIT && res.length > maxBytes) {
+            throw new IllegalStateException("The content of the field '" + field.getName() + "' is " + res.length 
+                    + " bytes, which is more than the limit of " + maxBytes + " bytes.");
+        }
+        return res;
+    }
+    
     /**
      * Set the given file as new asset reference for this cumulus record.
      * NOTE: Be careful with this method, since it overrides the reference to the current asset.
@@ -255,7 +559,7 @@ public class CumulusRecord {
         try {
             AssetReference newAssetRef = new AssetReference(item.getCumulusSession(), f.getAbsolutePath(), null);
             item.setAssetReferenceValue(GUID.UID_REC_ASSET_REFERENCE, newAssetRef);
-            item.save();
+            save();
         } catch (Exception e) {
             throw new IllegalStateException("Cannot update the asset reference with file '" + f.getAbsolutePath() 
                     + "'.", e);
@@ -267,7 +571,7 @@ public class CumulusRecord {
      */
     public void updateAssetReference() {
         item.updateAssetReference();
-        item.save();
+        save();
     }
     
     /**
@@ -284,11 +588,20 @@ public class CumulusRecord {
         Element rootElement = doc.createElement("record");
         doc.appendChild(rootElement);
         
-        Map<String, Field> fields = fe.getFields(item);
+        // As for the map of the fields, only the last of the fields with the same name is written.
+        Map<String, Field> fields = new HashMap<String, Field>();
+        Map<String, FieldHandle> handles = new HashMap<String, FieldHandle>();
+        for(FieldHandle handle : fe.getHandles()) {
+            Field f = handle.getReader().read(item, true);
+            if(f != null) {
+                fields.put(f.getName(), f);
+                handles.put(f.getName(), handle);
+            }
+        }
 
-        for(Field f : fields.values()) {
-            if(!f.isEmpty()) {
-                addCumulusFieldToMetadataOutput(f, doc, rootElement);
+        for(Map.Entry<String, Field> f : fields.entrySet()) {
+            if(!f.getValue().isEmpty()) {
+                addCumulusFieldToMetadataOutput(handles.get(f.getKey()), f.getValue(), doc, rootElement);
             }
         }
         
@@ -306,22 +619,23 @@ public class CumulusRecord {
     
     /**
      * Adds the given Cumulus field to the given metadata output document.
+     * @param handle The handle for the field.
      * @param f The Cumulus Field.
      * @param doc The metadata output document.
      * @param rootElement The root element for the field.
      */
-    protected void addCumulusFieldToMetadataOutput(Field f, Document doc, Element rootElement) {
+    protected void addCumulusFieldToMetadataOutput(FieldHandle handle, Field f, Document doc, 
+            Element rootElement) {
         Element field = doc.createElement("field");
         rootElement.appendChild(field);
         field.setAttribute("data-type", f.getType());
         field.setAttribute("name", f.getName());
         
         if(f instanceof StringField) {
-            StringField sf = (StringField) f;
-            for(String v : getValues(sf.getStringValue())) {
+            for(String v : getValues(handle, (StringField) f)) {
                 Element value = doc.createElement("value");
                 field.appendChild(value);
-                value.appendChild(doc.createTextNode(v));
+                value.appendChild(doc.createTextNode(StringUtils.xmlEncode(v)));
             }
         } else if(f instanceof TableField) {
             Element table = doc.createElement("table");
@@ -373,8 +687,53 @@ public class CumulusRecord {
      * @return Get values as an array.
      */
     protected String[] getValues(String value) {
-        String encodedValue = StringUtils.xmlEncode(value);
-        return encodedValue.split("\n");
+        List<String> lines = StringUtils.splitLines(StringUtils.xmlEncode(value));
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Extracts the individual values (lines) of a multi-value field.
+     * The string value of the field is only split once for each record. 
+     * @param field The handle for the field.
+     * @return The immutable list of the values of the field. It is empty, if the field does not have a value.
+     * @throws ArgumentCheck If the field cannot be extracted as a string, e.g. tables.
+     */
+    public List<String> getValues(FieldHandle field) {
+        fe.checkHandle(field);
+        if(fieldLines != null && fieldLines[field.getOrdinal()] != null) {
+            return fieldLines[field.getOrdinal()];
+        }
+        Field f = field.getReader().read(item, true);
+        if(f == null) {
+            return Collections.emptyList();
+        }
+        if(!(f instanceof StringField)) {
+            throw new ArgumentCheck("The field '" + field.getName() + "' of type '" 
+                    + field.getReader().getTypeName() + "' does not have any string values.");
+        }
+        return getValues(field, (StringField) f);
+    }
+
+    /**
+     * Splits the string value of an extracted field into its individual values, and caches them.
+     * @param field The handle for the field.
+     * @param f The extracted field.
+     * @return The immutable list of the values of the field.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<String> getValues(FieldHandle field, StringField f) {
+        if(fieldLines == null) {
+            fieldLines = new List[fe.getFieldCount()];
+        }
+        List<String> res = fieldLines[field.getOrdinal()];
+        if(res == null) {
+            if(f.getStringValue() == null) {
+                return Collections.emptyList();
+            }
+            res = Collections.unmodifiableList(StringUtils.splitLines(f.getStringValue()));
+            fieldLines[field.getOrdinal()] = res;
+        }
+        return res;
     }
 
     /**
@@ -433,20 +792,167 @@ public class CumulusRecord {
      * @param value The new enum value for the field.
      */
     public void setStringEnumValueForField(String fieldName, String value) {
+        setStringEnumValueForField(fe.getFieldHandle(fieldName), value);
+    }
+
+    /**
+     * Sets a given String Enum value for the field with the given handle.
+     * @param field The handle for the field.
+     * @param value The new enum value for the field.
+     */
+    public void setStringEnumValueForField(FieldHandle field, String value) {
+        fe.checkHandle(field);
         try {
-            GUID fieldGuid = fe.getFieldGUID(fieldName);
+            GUID fieldGuid = field.getFieldUID();
             StringEnumFieldValue enumValue = item.getStringEnumValue(fieldGuid);
             enumValue.setFromDisplayString(value);
             item.setStringEnumValue(fieldGuid, enumValue);
 
-            item.save();
+            save();
+            setCachedValue(field, null);
         } catch(Exception e) {
-            String errMsg = "Could not set the value '" + value + "' for field '" + fieldName + "'.";
+            String errMsg = "Could not set the value '" + value + "' for field '" + field.getName() + "'.";
             log.error(errMsg, e);
             throw new IllegalStateException(errMsg, e);
         }
     }
     
+    /**
+     * Sets the value of a string or enumerator field, but only if the field still has the expected value.
+     * @param fieldName The name of the field.
+     * @param expected The expected current value, or null if the field is expected to be empty.
+     * @param newValue The new value.
+     * @return Whether the value was set, or false if the field did not have the expected value.
+     */
+    public boolean compareAndSet(String fieldName, String expected, String newValue) {
+        return compareAndSet(fe.getFieldHandle(fieldName), expected, newValue);
+    }
+
+    /**
+     * Sets the value of a string or enumerator field, but only if the field still has the expected value.
+     * The record is read again from the Cumulus server right before the new value is saved, so a value, which has
+     * been changed by another worker or node since this record was retrieved, is not overwritten. On a conflict
+     * the cached value of the field is replaced with the current value, and the conflict is counted by the server.
+     * NOTE: Cumulus does not have conditional writes, so a change made between the read and the save is still
+     * overwritten.
+     * @param field The handle for the field.
+     * @param expected The expected current value, or null if the field is expected to be empty.
+     * @param newValue The new value.
+     * @return Whether the value was set, or false if the field did not have the expected value.
+     */
+    public boolean compareAndSet(FieldHandle field, String expected, String newValue) {
+        fe.checkHandle(field);
+        checkStringOrEnumField(field);
+        ArgumentCheck.checkNotNull(newValue, "String newValue");
+        CumulusServer server = fe.getServer();
+        if(server == null) {
+            throw new IllegalStateException("Cannot read the record again without a Cumulus server.");
+        }
+        RecordItem current = server.getRecordItemByID(fe.getCatalog(), getID());
+        String actual = getStringOrEnumValue(current, field);
+        if(expected == null ? actual != null : !expected.equals(actual)) {
+            log.debug("The field '{}' of the record {} is '{}', not '{}'.", field.getName(), getID(), actual,
+                    expected);
+            setCachedValue(field, actual);
+            server.compareAndSetPerformed(true);
+            return false;
+        }
+        try {
+            setStringOrEnumValue(current, field, newValue);
+            save(current);
+        } catch (Exception e) {
+            String errMsg = "Could not set the value '" + newValue + "' for field '" + field.getName() + "'.";
+            log.error(errMsg, e);
+            throw new IllegalStateException(errMsg, e);
+        }
+        setCachedValue(field, newValue);
+        server.compareAndSetPerformed(false);
+        return true;
+    }
+
+    /**
+     * Checks that the field is a string or an enumerator field, which can be set from a string value.
+     * @param field The handle for the field.
+     * @throws ArgumentCheck If the field is neither a string nor an enumerator field.
+     */
+    protected static void checkStringOrEnumField(FieldHandle field) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        if(field.getFieldType() != FieldTypes.FieldTypeString && field.getFieldType() != FieldTypes.FieldTypeEnum) {
+            throw new ArgumentCheck("Only string and enumerator fields can be set from a string value, not '"
+                    + field.getName() + "' of type '" + field.getReader().getTypeName() + "'.");
+        }
+    }
+
+    /**
+     * Reads the value of a string or enumerator field of a record item. The value of an enumerator field is read as
+     * its display string, as it is extracted by the FieldReader.
+     * @param recordItem The record item, e.g. this record or a fresh copy of it.
+     * @param field The handle for the field.
+     * @return The value, or null if the field is empty.
+     */
+    protected static String getStringOrEnumValue(RecordItem recordItem, FieldHandle field) {
+        GUID fieldGuid = field.getFieldUID();
+        if(!recordItem.hasValue(fieldGuid)) {
+            return null;
+        }
+        if(field.getFieldType() == FieldTypes.FieldTypeEnum) {
+            return recordItem.getStringEnumValue(fieldGuid).getDisplayString();
+        }
+        return recordItem.getStringValue(fieldGuid);
+    }
+
+    /**
+     * Sets the value of a string or enumerator field of a record item, without saving it.
+     * @param recordItem The record item, e.g. this record or a fresh copy of it.
+     * @param field The handle for the field.
+     * @param value The new value.
+     */
+    protected void setStringOrEnumValue(RecordItem recordItem, FieldHandle field, String value) {
+        GUID fieldGuid = field.getFieldUID();
+        if(field.getFieldType() == FieldTypes.FieldTypeEnum) {
+            StringEnumFieldValue enumValue = recordItem.getStringEnumValue(fieldGuid);
+            enumValue.setFromDisplayString(value);
+            recordItem.setStringEnumValue(fieldGuid, enumValue);
+        } else {
+            recordItem.setStringValue(fieldGuid, value);
+        }
+    }
+
+    /**
+     * Applies the updates to the fields of this record, and saves the record once, if any field was changed.
+     * The fields, which already have their new value, are not changed.
+     * @param updates The updates.
+     * @return Whether any field was changed, or false if all the fields already had their new values.
+     */
+    public boolean update(FieldUpdates updates) {
+        ArgumentCheck.checkNotNull(updates, "FieldUpdates updates");
+        Map<FieldHandle, String> changed = new LinkedHashMap<FieldHandle, String>();
+        try {
+            for(Map.Entry<String, String> update : updates.getValues().entrySet()) {
+                FieldHandle field = fe.getFieldHandle(update.getKey());
+                checkStringOrEnumField(field);
+                if(update.getValue().equals(getStringOrEnumValue(item, field))) {
+                    continue;
+                }
+                setStringOrEnumValue(item, field, update.getValue());
+                changed.put(field, update.getValue());
+            }
+            if(!changed.isEmpty()) {
+                save();
+            }
+        } catch (ArgumentCheck e) {
+            throw e;
+        } catch (Exception e) {
+            String errMsg = "Could not update the record " + getID() + " with " + updates + ".";
+            log.error(errMsg, e);
+            throw new IllegalStateException(errMsg, e);
+        }
+        for(Map.Entry<FieldHandle, String> change : changed.entrySet()) {
+            setCachedValue(change.getKey(), change.getValue());
+        }
+        return !changed.isEmpty();
+    }
+
     /**
      * Sets the value of the field with the given GUID.
      * @param fieldGuid The GUID of the field.
@@ -455,7 +961,7 @@ public class CumulusRecord {
     protected void setStringValueInField(GUID fieldGuid, String value) {
         try {
             item.setStringValue(fieldGuid, value);
-            item.save();
+            save();
         } catch (Exception e) {
             String errMsg = "Could not set the value '" + value + "' for the field '" + fieldGuid + "'";
             log.error(errMsg, e);
@@ -469,12 +975,23 @@ public class CumulusRecord {
      * @param dateValue The new date value for the field.
      */
     public void setDateValueInField(String fieldName, Date dateValue) {
-        GUID fieldGuid = fe.getFieldGUID(fieldName);
+        setDateValueInField(fe.getFieldHandle(fieldName), dateValue);
+    }
+
+    /**
+     * Sets the date value for the date field with the given handle.
+     * @param field The handle for the field.
+     * @param dateValue The new date value for the field.
+     */
+    public void setDateValueInField(FieldHandle field, Date dateValue) {
+        fe.checkHandle(field);
         try {
-            item.setDateValue(fieldGuid, dateValue);
-            item.save();
+            item.setDateValue(field.getFieldUID(), dateValue);
+            save();
+            setCachedValue(field, null);
         } catch (Exception e) {
-            String errMsg = "Could not set the date value '" + dateValue + "' for the field '" + fieldName + "'";
+            String errMsg = "Could not set the date value '" + dateValue + "' for the field '" + field.getName() 
+                    + "'";
             log.error(errMsg, e);
             throw new IllegalStateException(errMsg, e);
         }        
@@ -486,12 +1003,23 @@ public class CumulusRecord {
      * @param value The new boolean value for the field.
      */
     public void setBooleanValueInField(String fieldName, Boolean value) {
-        GUID fieldGuid = fe.getFieldGUID(fieldName);
+        setBooleanValueInField(fe.getFieldHandle(fieldName), value);
+    }
+
+    /**
+     * Sets the boolean value for the boolean field with the given handle.
+     * @param field The handle for the field.
+     * @param value The new boolean value for the field.
+     */
+    public void setBooleanValueInField(FieldHandle field, Boolean value) {
+        fe.checkHandle(field);
         try {
-            item.setBooleanValue(fieldGuid, value);
-            item.save();
+            item.setBooleanValue(field.getFieldUID(), value);
+            save();
+            setCachedValue(field, null);
         } catch (Exception e) {
-            String errMsg = "Could not set the boolean value '" + value + "' for the field '" + fieldName + "'";
+            String errMsg = "Could not set the boolean value '" + value + "' for the field '" + field.getName() 
+                    + "'";
             log.error(errMsg, e);
             throw new IllegalStateException(errMsg, e);
         }        
@@ -522,7 +1050,7 @@ public class CumulusRecord {
      * @return Whether or not this record is a sub-asset.
      */
     public boolean isSubAsset() {
-        GUID fieldGuid = fe.getFieldGUID(Constants.FieldNames.RELATED_MASTER_ASSETS);
+        GUID fieldGuid = fe.getFieldHandle(Constants.FieldNames.RELATED_MASTER_ASSETS).getFieldUID();
         return item.hasValue(fieldGuid);
     }
     
@@ -550,11 +1078,42 @@ public class CumulusRecord {
      * @param relation The type of relation.
      */
     public void createRelationToRecord(CumulusRecord record, String fieldName, GUID relation) {
-        GUID fieldGuid = fe.getFieldGUID(fieldName);
+        createRelationToRecord(record, fe.getFieldHandle(fieldName), relation);
+    }
+
+    /**
+     * Create a relation to another record.
+     * @param record The record to create a relationship to.
+     * @param field The handle for the field for the relation.
+     * @param relation The type of relation.
+     */
+    public void createRelationToRecord(CumulusRecord record, FieldHandle field, GUID relation) {
+        GUID fieldGuid = field.getFieldUID();
         AssetXRefFieldValue assetXRef = item.getAssetXRefValue(fieldGuid);
         assetXRef.addReference(relation, record.item.getID(), record.item.getDisplayString());
         item.setAssetXRefValue(fieldGuid, assetXRef);
-        item.save();
+        save();
+    }
+
+    /**
+     * Saves the changes of the record in Cumulus, and notifies the server, so the cached query results for the
+     * catalog are invalidated.
+     */
+    protected void save() {
+        save(item);
+    }
+
+    /**
+     * Saves the changes of a record item in Cumulus, and notifies the server, so the cached query results for the
+     * catalog are invalidated.
+     * @param recordItem The record item, e.g. this record or a fresh copy of it.
+     */
+    protected void save(RecordItem recordItem) {
+        recordItem.save();
+        CumulusServer server = fe.getServer();
+        if(server != null) {
+            server.recordChanged(fe.getCatalog());
+        }
     }
 
     @Override
@@ -1,15 +1,33 @@
 package dk.kb.cumulus;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
 
 import com.canto.cumulus.Item;
 import com.canto.cumulus.RecordItem;
 import com.canto.cumulus.RecordItemCollection;
 
+import dk.kb.cumulus.batch.BooleanColumn;
+import dk.kb.cumulus.batch.Column;
+import dk.kb.cumulus.batch.DoubleColumn;
+import dk.kb.cumulus.batch.LongColumn;
+import dk.kb.cumulus.batch.RecordBatch;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
 /**
  * Class for encapsulating the result set of a Cumulus extraction.
  */
 public class CumulusRecordCollection implements Iterable<CumulusRecord> {
+    /** The number of records in each batch, when finding the top records.*/
+    protected static final int TOP_K_BATCH_SIZE = 1000;
     /** The field extractor for this result set.*/
     protected final FieldExtractor extractor;
     /** Cumulus item collection.*/
@@ -51,6 +69,233 @@ public class CumulusRecordCollection implements Iterable<CumulusRecord> {
         return itemCollection.getItemCount();
     }
     
+    /**
+     * Extracts the IDs of the records in this collection, without extracting the records.
+     * @return The IDs of the records, in the order of the collection.
+     */
+    public int[] getRecordIds() {
+        int[] res = new int[itemCollection.getItemCount()];
+        int count = 0;
+        for(Item item : itemCollection) {
+            if(count == res.length) {
+                res = Arrays.copyOf(res, count * 2 + 1);
+            }
+            res[count++] = item.getID();
+        }
+        return count == res.length ? res : Arrays.copyOf(res, count);
+    }
+    
+    /**
+     * Picks a reproducible random sample of the records, without iterating the collection.
+     * The indices of the sample are picked directly from the number of records, and only the records at those
+     * indices are retrieved.
+     * @param n The number of records in the sample. If the collection has fewer records, then all are returned.
+     * @param seed The seed for the random picks. The same seed gives the same sample of the same collection.
+     * @return The sampled records, in the order of the collection.
+     */
+    public List<CumulusRecord> sample(int n, long seed) {
+        ArgumentCheck.checkNotNegativeInt(n, "int n");
+        int[] indices = pickIndices(getCount(), n, new Random(seed));
+        List<CumulusRecord> res = new ArrayList<CumulusRecord>(indices.length);
+        for(int index : indices) {
+            res.add(new CumulusRecord(extractor, (RecordItem) itemCollection.getItemByIndex(index)));
+        }
+        return res;
+    }
+
+    /**
+     * Picks a reproducible random sample of a fraction of the records, without iterating the collection.
+     * @param fraction The fraction of the records in the sample, between 0 and 1.
+     * @param seed The seed for the random picks. The same seed gives the same sample of the same collection.
+     * @return The sampled records, in the order of the collection.
+     */
+    public List<CumulusRecord> sampleFraction(double fraction, long seed) {
+        ArgumentCheck.checkTrue(fraction >= 0.0 && fraction <= 1.0, "The fraction must be between 0 and 1, but was "
+                + fraction);
+        return sample((int) Math.round(getCount() * fraction), seed);
+    }
+
+    /**
+     * Picks distinct random indices with Floyd's algorithm, which only uses memory for the picked indices.
+     * @param count The number of indices to pick from.
+     * @param n The number of indices to pick.
+     * @param random The random generator.
+     * @return The picked indices, in ascending order.
+     */
+    protected static int[] pickIndices(int count, int n, Random random) {
+        if(n >= count) {
+            int[] res = new int[count];
+            for(int i = 0; i < count; i++) {
+                res[i] = i;
+            }
+            return res;
+        }
+        Set<Integer> picked = new HashSet<Integer>(n * 2);
+        for(int j = count - n; j < count; j++) {
+            int index = random.nextInt(j + 1);
+            if(!picked.add(index)) {
+                picked.add(j);
+            }
+        }
+        int[] res = new int[picked.size()];
+        int i = 0;
+        for(int index : picked) {
+            res[i++] = index;
+        }
+        Arrays.sort(res);
+        return res;
+    }
+    
+    /**
+     * Finds the records with the highest or lowest values of a field, e.g. the most recently modified records.
+     * Only the sort field is extracted from the records while searching, and only the best k candidates are kept
+     * in a heap. The full records are only retrieved for the found records.
+     * Records without a value for the field are ignored, and records with equal values are kept in the order of
+     * the collection.
+     * @param sortField The handle for the field to sort by.
+     * @param k The number of records to find.
+     * @param descending Whether to find the highest values, instead of the lowest.
+     * @return The found records, ordered by the sort field.
+     */
+    public List<CumulusRecord> topK(FieldHandle sortField, int k, final boolean descending) {
+        ArgumentCheck.checkNotNull(sortField, "FieldHandle sortField");
+        ArgumentCheck.checkPositiveInt(k, "int k");
+        final Comparator<SortKey> rank = (a, b) -> {
+            int res = a.compareValue(b);
+            if(descending) {
+                res = -res;
+            }
+            return res != 0 ? res : Integer.compare(a.index, b.index);
+        };
+        PriorityQueue<SortKey> heap = new PriorityQueue<SortKey>(k + 1, rank.reversed());
+        SortKey probe = new SortKey();
+        int index = 0;
+        Iterator<RecordBatch> batches = getBatches(TOP_K_BATCH_SIZE, sortField);
+        while(batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            Column column = batch.getColumn(sortField);
+            for(int row = 0; row < batch.size(); row++, index++) {
+                if(column.isNull(row)) {
+                    continue;
+                }
+                probe.set(column, row, index);
+                if(heap.size() < k) {
+                    heap.add(probe);
+                    probe = new SortKey();
+                } else if(rank.compare(probe, heap.peek()) < 0) {
+                    SortKey worst = heap.poll();
+                    heap.add(probe);
+                    probe = worst;
+                }
+            }
+        }
+
+        List<SortKey> winners = new ArrayList<SortKey>(heap);
+        winners.sort(rank);
+        List<CumulusRecord> res = new ArrayList<CumulusRecord>(winners.size());
+        for(SortKey winner : winners) {
+            res.add(new CumulusRecord(extractor, (RecordItem) itemCollection.getItemByIndex(winner.index)));
+        }
+        return res;
+    }
+
+    /**
+     * The value of the sort field for a record at an index of the collection.
+     * The numeric values are kept as primitives, and the instances are reused for the rejected records, so
+     * searching does not create objects for every record.
+     */
+    protected static class SortKey {
+        /** The index of the record in the collection.*/
+        protected int index;
+        /** The value of a long, integer, date or boolean field.*/
+        protected long longValue;
+        /** The value of a double field.*/
+        protected double doubleValue;
+        /** The value of any other field, in its string format.*/
+        protected String stringValue;
+
+        /**
+         * Sets the value from a row of a column.
+         * @param column The column.
+         * @param row The row of the record in the column.
+         * @param recordIndex The index of the record in the collection.
+         */
+        protected void set(Column column, int row, int recordIndex) {
+            this.index = recordIndex;
+            if(column instanceof LongColumn) {
+                longValue = ((LongColumn) column).getLong(row);
+            } else if(column instanceof DoubleColumn) {
+                doubleValue = ((DoubleColumn) column).getDouble(row);
+            } else if(column instanceof BooleanColumn) {
+                longValue = ((BooleanColumn) column).getBoolean(row) ? 1L : 0L;
+            } else {
+                stringValue = column.getString(row);
+            }
+        }
+
+        /**
+         * Compares the values of two keys from the same column.
+         * @param other The other key.
+         * @return The comparison of the values.
+         */
+        protected int compareValue(SortKey other) {
+            int res = Long.compare(longValue, other.longValue);
+            if(res == 0) {
+                res = Double.compare(doubleValue, other.doubleValue);
+            }
+            if(res == 0 && stringValue != null) {
+                res = stringValue.compareTo(other.stringValue);
+            }
+            return res;
+        }
+    }
+    
+    /**
+     * Resolves the handle for the field with the given name in the layout of this collection.
+     * The handle can be used for accessing the field of every record in this collection, without looking up the
+     * field by its name for each record.
+     * @param fieldName The name of the field.
+     * @return The handle for the field.
+     */
+    public FieldHandle handle(String fieldName) {
+        return extractor.getFieldHandle(fieldName);
+    }
+    
+    /**
+     * Extracts the given fields of the records in this collection as columnar batches.
+     * Each batch is only extracted, when the iterator reaches it, so only one batch needs to be in memory at a time.
+     * @param batchSize The maximum number of records in each batch.
+     * @param fields The handles for the fields to extract. They must be for the layout of this collection.
+     * @return The iterator of the batches.
+     * @throws ArgumentCheck If a field is not from the layout of this collection.
+     */
+    public Iterator<RecordBatch> getBatches(final int batchSize, final FieldHandle... fields) {
+        ArgumentCheck.checkPositiveInt(batchSize, "int batchSize");
+        ArgumentCheck.checkNotNull(fields, "FieldHandle... fields");
+        for(FieldHandle field : fields) {
+            extractor.checkHandle(field);
+        }
+        final Iterator<Item> items = itemCollection.iterator();
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if(!items.hasNext()) {
+                    throw new NoSuchElementException("No more records in the collection.");
+                }
+                RecordBatch res = new RecordBatch(batchSize, fields);
+                while(res.size() < batchSize && items.hasNext()) {
+                    res.add(items.next());
+                }
+                return res;
+            }
+        };
+    }
+    
     /**
      * @return The FieldExtractor the this collection of CumulusRecords.
      */
@@ -2,11 +2,20 @@ package dk.kb.cumulus;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,11 +23,21 @@ import org.slf4j.LoggerFactory;
 import com.canto.cumulus.Catalog;
 import com.canto.cumulus.CategoryItem;
 import com.canto.cumulus.Cumulus;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.RecordItem;
 import com.canto.cumulus.RecordItemCollection;
 import com.canto.cumulus.Server;
+import com.canto.cumulus.constants.CombineMode;
 
 import dk.kb.cumulus.config.CumulusConfiguration;
+import dk.kb.cumulus.facet.DistinctValueCounter;
+import dk.kb.cumulus.facet.DistinctValues;
+import dk.kb.cumulus.facet.FacetCounter;
+import dk.kb.cumulus.facet.FacetResult;
 import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.utils.ValueDictionary;
+import dk.kb.cumulus.validation.RequiredFieldsValidator;
+import dk.kb.cumulus.validation.ValidationReport;
 
 /**
  * Wrapper for accessing the Cumulus server.
@@ -27,22 +46,71 @@ public class CumulusServer implements Closeable {
     /** The logger.*/
     private static final Logger log = LoggerFactory.getLogger(CumulusServer.class);
 
+    /** The number of records in each batch, when counting facets.*/
+    protected static final int FACET_BATCH_SIZE = 1000;
+
     /** The configuraiton for the Cumulus server. */
     protected final CumulusConfiguration configuration;
     /** Map between the catalog name and the catalog object.*/
     protected final Map<String, Catalog> catalogs = new HashMap<String, Catalog>();
+    /** Map between the catalog name and the field extractor for the layout of the catalog.*/
+    protected final Map<String, FieldExtractor> layouts = new HashMap<String, FieldExtractor>();
+    /** Map between the catalog name and the collection for retrieving the records of the catalog by their ID.*/
+    protected final Map<String, RecordItemCollection> lookups = new HashMap<String, RecordItemCollection>();
+    /** The cache for the results of the queries.*/
+    protected final QueryResultCache queryResultCache;
+    /** The dictionaries for the values of the enumerator and date-only fields, by catalog name and field GUID.*/
+    protected final ConcurrentMap<String, ConcurrentMap<GUID, ValueDictionary>> valueDictionaries =
+            new ConcurrentHashMap<String, ConcurrentMap<GUID, ValueDictionary>>();
+    /** The number of compare-and-set updates of the records.*/
+    protected final AtomicLong compareAndSetCount = new AtomicLong();
+    /** The number of compare-and-set updates, which were rejected since the value had been changed by others.*/
+    protected final AtomicLong compareAndSetConflicts = new AtomicLong();
 
     /** The cumulus server access point.*/
     protected Server server;
+    /** Whether this instance started Cumulus, and thus has to stop it again.*/
+    protected final boolean startedCumulus;
+    /** The pool of sessions for parallel requests. It is created the first time it is needed.*/
+    protected CumulusSessionPool sessionPool = null;
 
     /** 
      * Constructor.
      * @param configuration The configuration for Cumulus.
      */
     public CumulusServer(CumulusConfiguration configuration) {
+        this(configuration, true);
+    }
+
+    /**
+     * Constructor.
+     * @param configuration The configuration for Cumulus.
+     * @param startCumulus Whether to start Cumulus, or it has already been started, e.g. for an additional
+     * session to the server.
+     */
+    protected CumulusServer(CumulusConfiguration configuration, boolean startCumulus) {
+        this(configuration, startCumulus, new QueryResultCache(QueryResultCache.DEFAULT_TIME_TO_LIVE,
+                QueryResultCache.DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Constructor.
+     * @param configuration The configuration for Cumulus.
+     * @param startCumulus Whether to start Cumulus, or it has already been started, e.g. for an additional
+     * session to the server.
+     * @param queryResultCache The cache for the results of the queries, e.g. shared with the server, which the
+     * session belongs to, so the changes made through the session invalidate the results of the server.
+     */
+    protected CumulusServer(CumulusConfiguration configuration, boolean startCumulus,
+            QueryResultCache queryResultCache) {
         ArgumentCheck.checkNotNull(configuration, "CumulusConfiguration configuration");
+        ArgumentCheck.checkNotNull(queryResultCache, "QueryResultCache queryResultCache");
         this.configuration = configuration;
-        Cumulus.CumulusStart();
+        this.queryResultCache = queryResultCache;
+        this.startedCumulus = startCumulus;
+        if(startCumulus) {
+            Cumulus.CumulusStart();
+        }
 
         try {
             this.server = Server.openConnection(configuration.getWriteAccess(), configuration.getServerUrl(), 
@@ -67,6 +135,9 @@ public class CumulusServer implements Closeable {
         ArgumentCheck.checkNotNull(userPassword, "String userPassword,");
         ArgumentCheck.checkNotNullOrEmpty(catalogs, "Collection<String> catalogs,");
         this.configuration = new CumulusConfiguration(writeAccess, serverUrl, userName, userPassword, catalogs);
+        this.queryResultCache = new QueryResultCache(QueryResultCache.DEFAULT_TIME_TO_LIVE,
+                QueryResultCache.DEFAULT_MAX_SIZE);
+        this.startedCumulus = true;
         Cumulus.CumulusStart();
 
         try {
@@ -119,6 +190,8 @@ public class CumulusServer implements Closeable {
     protected Catalog getCatalog(String catalogName) {
         if(!server.isAlive()) {
             catalogs.clear();
+            layouts.clear();
+            lookups.clear();
         }
         if(!catalogs.containsKey(catalogName)) {
             int catalogId = getServer().findCatalogID(catalogName);
@@ -127,6 +200,50 @@ public class CumulusServer implements Closeable {
         return catalogs.get(catalogName);
     }
 
+    /**
+     * Retrieves the field extractor for the layout with all the fields of a catalog.
+     * The layout is only retrieved from the Cumulus server the first time, and then cached.
+     * @param catalogName The name of the catalog.
+     * @return The field extractor for the layout of the catalog.
+     */
+    public FieldExtractor getFieldExtractor(String catalogName) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        Catalog catalog = getCatalog(catalogName);
+        FieldExtractor res = layouts.get(catalogName);
+        if(res == null) {
+            res = new FieldExtractor(catalog.newRecordItemCollection(true).getLayout(), this, catalogName);
+            layouts.put(catalogName, res);
+        }
+        return res;
+    }
+
+    /**
+     * Retrieves the dictionary for deduplicating the values of a field in a catalog.
+     * The dictionary is shared by all the field extractors for the catalog, so the values are shared across the
+     * results of the queries. It is kept when reconnecting, since the values are still valid.
+     * @param catalogName The name of the catalog.
+     * @param fieldUID The GUID of the field.
+     * @return The dictionary for the values of the field.
+     */
+    public ValueDictionary getValueDictionary(String catalogName, GUID fieldUID) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(fieldUID, "GUID fieldUID");
+        ConcurrentMap<GUID, ValueDictionary> dictionaries = valueDictionaries.computeIfAbsent(catalogName,
+                name -> new ConcurrentHashMap<GUID, ValueDictionary>());
+        return dictionaries.computeIfAbsent(fieldUID, uid -> new ValueDictionary(ValueDictionary.DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Prepares a query for a catalog, where the fields and values of the query are validated against the layout
+     * of the catalog.
+     * @param catalogName The name of the catalog.
+     * @param template The compiled query.
+     * @return The prepared query.
+     */
+    public PreparedCumulusQuery prepare(String catalogName, CumulusQueryTemplate template) {
+        return new PreparedCumulusQuery(this, catalogName, template);
+    }
+
     /**
      * Extracts the collection of record items from a given catalog limiting by the given query.
      * @param catalogName The name of the catalog.
@@ -143,6 +260,419 @@ public class CumulusServer implements Closeable {
         return new CumulusRecordCollection(recordCollection, this, catalogName);
     }
     
+    /**
+     * Extracts the records from a given catalog limiting by the given query, using the cached result of the query
+     * when it has not expired.
+     * Only the IDs of the records are cached, and the records are retrieved from Cumulus when they are accessed.
+     * The cached results of a catalog are invalidated, when a record of the catalog is changed through this
+     * library.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the desired items.
+     * @return The records found by the query.
+     */
+    public CachedRecordCollection getCachedItems(String catalogName, CumulusQuery query) {
+        QueryResultCache.Key key = new QueryResultCache.Key(catalogName, query);
+        int[] ids = queryResultCache.get(key);
+        if(ids == null) {
+            long generation = queryResultCache.getGeneration(catalogName);
+            ids = getItems(catalogName, query).getRecordIds();
+            queryResultCache.put(key, ids, generation);
+        }
+        return new CachedRecordCollection(this, catalogName, ids);
+    }
+
+    /**
+     * Extracts the records from a given catalog, which are found by all the given queries.
+     * The queries are combined on the server, by narrowing the result of the first query with each of the other
+     * queries, so only the final result is transferred.
+     * @param catalogName The name of the catalog.
+     * @param queries The queries, which must all find the records.
+     * @return The records found by all the queries.
+     */
+    public CumulusRecordCollection getItemsMatchingAll(String catalogName, CumulusQuery... queries) {
+        return getItemsCombined(catalogName, CombineMode.FIND_NARROW, queries);
+    }
+
+    /**
+     * Extracts the records from a given catalog, which are found by any of the given queries.
+     * The queries are combined on the server, by widening the result of the first query with each of the other
+     * queries, so only the final result is transferred.
+     * @param catalogName The name of the catalog.
+     * @param queries The queries, of which at least one must find the records.
+     * @return The records found by any of the queries.
+     */
+    public CumulusRecordCollection getItemsMatchingAny(String catalogName, CumulusQuery... queries) {
+        return getItemsCombined(catalogName, CombineMode.FIND_WIDEN, queries);
+    }
+
+    /**
+     * Extracts the records from a given catalog found by the first query, combined on the server with the records
+     * found by each of the other queries.
+     * @param catalogName The name of the catalog.
+     * @param combineMode The mode for combining the results of the other queries with the result so far.
+     * @param queries The queries.
+     * @return The records of the combined result.
+     */
+    protected CumulusRecordCollection getItemsCombined(String catalogName, CombineMode combineMode,
+            CumulusQuery... queries) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(queries, "CumulusQuery... queries");
+        ArgumentCheck.checkTrue(queries.length > 0, "At least one query must be given.");
+        Catalog catalog = getCatalog(catalogName);
+        RecordItemCollection recordCollection = catalog.newRecordItemCollection(true);
+        for(int i = 0; i < queries.length; i++) {
+            CumulusQuery query = queries[i];
+            recordCollection.find(query.getQuery(), query.getFindFlags(),
+                    i == 0 ? CombineMode.FIND_NEW : combineMode, query.getLocale());
+        }
+        return new CumulusRecordCollection(recordCollection, this, catalogName);
+    }
+
+    /**
+     * Extracts the IDs of the records from a given catalog found by the given query, using the cached result of
+     * the query when it has not expired.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the desired items.
+     * @return The set of the IDs of the records found by the query.
+     */
+    public RecordIdSet getRecordIds(String catalogName, CumulusQuery query) {
+        return RecordIdSet.of(catalogName, getCachedItems(catalogName, query).ids);
+    }
+
+    /**
+     * Retrieves the records with the IDs of a set, e.g. the combined result of several queries.
+     * The records are retrieved from Cumulus, when they are accessed.
+     * @param catalogName The name of the catalog.
+     * @param ids The set of the IDs of the records, which must be of the catalog.
+     * @return The records.
+     */
+    public CachedRecordCollection getRecords(String catalogName, RecordIdSet ids) {
+        ArgumentCheck.checkNotNull(ids, "RecordIdSet ids");
+        ArgumentCheck.checkTrue(ids.getCatalogName().equals(catalogName), "The record IDs of the catalog '"
+                + ids.getCatalogName() + "' cannot be retrieved from the catalog '" + catalogName + "'.");
+        return new CachedRecordCollection(this, catalogName, ids.toArray());
+    }
+
+    /**
+     * @return The cache for the results of the queries.
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Notifies that a record of a catalog has been changed, which invalidates the cached query results for the
+     * catalog.
+     * @param catalogName The name of the catalog.
+     */
+    public void recordChanged(String catalogName) {
+        queryResultCache.invalidate(catalogName);
+    }
+
+    /**
+     * Notifies that a compare-and-set update of a record has been performed.
+     * @param conflict Whether the update was rejected, since the value had been changed by others.
+     */
+    protected void compareAndSetPerformed(boolean conflict) {
+        compareAndSetCount.incrementAndGet();
+        if(conflict) {
+            compareAndSetConflicts.incrementAndGet();
+        }
+    }
+
+    /** @return The number of compare-and-set updates of the records through this server.*/
+    public long getCompareAndSetCount() {
+        return compareAndSetCount.get();
+    }
+
+    /** @return The number of compare-and-set updates, which were rejected since the value had been changed.*/
+    public long getCompareAndSetConflicts() {
+        return compareAndSetConflicts.get();
+    }
+
+    /**
+     * Retrieves the record item with the given ID from a catalog.
+     * @param catalogName The name of the catalog.
+     * @param id The ID of the record.
+     * @return The record item.
+     */
+    protected RecordItem getRecordItemByID(String catalogName, int id) {
+        try {
+            return getLookupCollection(catalogName).getRecordItemByID(id);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not retrieve the record with the ID " + id + " from the catalog '"
+                    + catalogName + "'.", e);
+        }
+    }
+
+    /**
+     * Retrieves the collection for retrieving the records of a catalog by their ID.
+     * The collection is created the first time it is needed, and then reused.
+     * @param catalogName The name of the catalog.
+     * @return The collection for the catalog.
+     */
+    protected RecordItemCollection getLookupCollection(String catalogName) {
+        Catalog catalog = getCatalog(catalogName);
+        RecordItemCollection res = lookups.get(catalogName);
+        if(res == null) {
+            res = catalog.newRecordItemCollection(true);
+            lookups.put(catalogName, res);
+        }
+        return res;
+    }
+
+    /**
+     * Retrieves the record with the given ID directly, without searching for it.
+     * The IDs of records are e.g. given by the relations between records.
+     * @param catalogName The name of the catalog.
+     * @param id The ID of the record.
+     * @return The record.
+     */
+    public CumulusRecord getRecordById(String catalogName, int id) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        return new CumulusRecord(getFieldExtractor(catalogName), getRecordItemByID(catalogName, id));
+    }
+
+    /**
+     * Retrieves the records with the given IDs directly, without searching for them.
+     * @param catalogName The name of the catalog.
+     * @param ids The IDs of the records.
+     * @return The records, in the order of the IDs.
+     */
+    public List<CumulusRecord> getRecordsByIds(String catalogName, int[] ids) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(ids, "int[] ids");
+        FieldExtractor fe = getFieldExtractor(catalogName);
+        List<CumulusRecord> res = new ArrayList<CumulusRecord>(ids.length);
+        for(int id : ids) {
+            res.add(new CumulusRecord(fe, getRecordItemByID(catalogName, id)));
+        }
+        return res;
+    }
+
+    /**
+     * Extracts the records from several catalogs, which are found by the given query.
+     * The query is performed in parallel on the catalogs, each with its own session from the session pool.
+     * If the query fails for a catalog, then the failure is reported in the result instead of failing the
+     * other catalogs.
+     * The result holds a session for each catalog, and must be closed when it is no longer used, so the sessions
+     * are released. The size of the session pool is configured with CumulusConfiguration.setSessionPoolSize.
+     * @param catalogNames The names of the catalogs.
+     * @param template The compiled query, where the name of the catalog is not a parameter.
+     * @param values The values of the parameters of the query.
+     * @return The merged result sets of the catalogs.
+     * @throws ArgumentCheck If there are more catalogs than sessions in the session pool.
+     */
+    public MultiCatalogRecordCollection getItems(Collection<String> catalogNames, CumulusQueryTemplate template,
+            Object... values) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogNames, "Collection<String> catalogNames");
+        ArgumentCheck.checkNotNull(template, "CumulusQueryTemplate template");
+        final CumulusQuery query = template.bind(values);
+        final CumulusSessionPool pool = getSessionPool();
+        Set<String> uniqueCatalogNames = new LinkedHashSet<String>(catalogNames);
+        if(uniqueCatalogNames.size() > pool.getMaxSize()) {
+            throw new ArgumentCheck("Cannot query " + uniqueCatalogNames.size() + " catalogs in parallel with a "
+                    + "session pool of " + pool.getMaxSize() + " sessions.");
+        }
+        final List<CumulusServer> sessions = new ArrayList<CumulusServer>();
+        Map<String, Future<CumulusRecordCollection>> futures =
+                new LinkedHashMap<String, Future<CumulusRecordCollection>>();
+        for(final String catalogName : uniqueCatalogNames) {
+            futures.put(catalogName, pool.submit(() -> {
+                CumulusServer session = pool.borrow();
+                try {
+                    CumulusRecordCollection res = session.getItems(catalogName, query);
+                    synchronized(sessions) {
+                        sessions.add(session);
+                    }
+                    return res;
+                } catch (RuntimeException e) {
+                    pool.release(session);
+                    throw e;
+                }
+            }));
+        }
+
+        Map<String, CumulusRecordCollection> results = new LinkedHashMap<String, CumulusRecordCollection>();
+        Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+        for(Map.Entry<String, Future<CumulusRecordCollection>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                log.warn("The query " + query + " failed for the catalog '" + future.getKey() + "'.", e.getCause());
+                failures.put(future.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.getValue().cancel(true);
+                failures.put(future.getKey(), e);
+            }
+        }
+        return new MultiCatalogRecordCollection(results, failures, sessions, pool);
+    }
+
+    /**
+     * Retrieves the pool of sessions for parallel requests. The size of the pool is given by the configuration, and
+     * it is created the first time it is needed.
+     * @return The pool of sessions.
+     */
+    protected synchronized CumulusSessionPool getSessionPool() {
+        if(sessionPool == null) {
+            sessionPool = createSessionPool(configuration.getSessionPoolSize());
+        }
+        return sessionPool;
+    }
+
+    /**
+     * Creates a new pool of sessions, which share the cache for the results of the queries with this server.
+     * @param size The maximum number of sessions.
+     * @return The pool of sessions.
+     */
+    protected CumulusSessionPool createSessionPool(int size) {
+        return new CumulusSessionPool(configuration, size, CumulusSessionPool.DEFAULT_BORROW_TIMEOUT,
+                queryResultCache);
+    }
+
+    /**
+     * Applies the same updates to all the records found by a query, in parallel with as many sessions as the
+     * configured size of the session pool, and without limiting the rate of the updates.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param updates The updates.
+     * @return The result of the bulk update.
+     */
+    public BulkUpdateResult bulkUpdate(String catalogName, CumulusQuery query, FieldUpdates updates) {
+        return bulkUpdate(catalogName, query, updates, configuration.getSessionPoolSize(), BulkUpdater.NO_RATE_LIMIT);
+    }
+
+    /**
+     * Applies the same updates to all the records found by a query, in parallel with the sessions of a dedicated
+     * session pool, which is closed afterwards, so the sessions of the shared pool are not held by the update.
+     * The records, which already have the new values, are skipped, and the records, which cannot be updated,
+     * are reported in the result.
+     * The query is performed without the cache, and the cached query results of the catalog are invalidated
+     * afterwards, since the records are changed through other sessions.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param updates The updates.
+     * @param parallelism The number of records updated in parallel.
+     * @param maxRecordsPerSecond The maximum number of records updated per second, or BulkUpdater.NO_RATE_LIMIT.
+     * @return The result of the bulk update.
+     */
+    public BulkUpdateResult bulkUpdate(String catalogName, CumulusQuery query, FieldUpdates updates,
+            int parallelism, double maxRecordsPerSecond) {
+        ArgumentCheck.checkNotNull(updates, "FieldUpdates updates");
+        updates.validate(getFieldExtractor(catalogName));
+        ArgumentCheck.checkPositiveInt(parallelism, "int parallelism");
+        int[] ids = getItems(catalogName, query).getRecordIds();
+        CumulusSessionPool pool = createSessionPool(parallelism);
+        try {
+            return new BulkUpdater(pool, parallelism, maxRecordsPerSecond).update(catalogName, ids, updates);
+        } finally {
+            pool.close();
+            recordChanged(catalogName);
+        }
+    }
+
+    /**
+     * Counts the records found by a query for each value of the given fields.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param fieldNames The names of the fields to count.
+     * @return The facets for the fields.
+     */
+    public FacetResult facet(String catalogName, CumulusQuery query, String... fieldNames) {
+        return facet(catalogName, query, 1, fieldNames);
+    }
+
+    /**
+     * Counts the records found by a query for each value of the given fields.
+     * Only the given fields are extracted from the records, in batches, which can be counted in parallel.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param parallelism The number of threads for counting the batches.
+     * @param fieldNames The names of the fields to count.
+     * @return The facets for the fields.
+     */
+    public FacetResult facet(String catalogName, CumulusQuery query, int parallelism, String... fieldNames) {
+        ArgumentCheck.checkNotNull(fieldNames, "String... fieldNames");
+        CumulusRecordCollection items = getItems(catalogName, query);
+        FieldHandle[] fields = new FieldHandle[fieldNames.length];
+        for(int i = 0; i < fieldNames.length; i++) {
+            fields[i] = items.handle(fieldNames[i]);
+        }
+        FacetCounter counter = new FacetCounter(parallelism, fields);
+        return counter.count(items.getBatches(FACET_BATCH_SIZE, fields));
+    }
+
+    /**
+     * Finds the distinct values of a field in the records found by a query, and their counts.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param fieldName The name of the field.
+     * @return The distinct values of the field.
+     */
+    public DistinctValues distinctValues(String catalogName, CumulusQuery query, String fieldName) {
+        return distinctValues(catalogName, query, fieldName, DistinctValueCounter.DEFAULT_MAX_VALUES);
+    }
+
+    /**
+     * Finds the distinct values of a field in the records found by a query, and their counts.
+     * Only the field is extracted from the records. If there are more distinct values than the maximum, then the
+     * number of distinct values is estimated, and only the first values are counted.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param fieldName The name of the field.
+     * @param maxValues The maximum number of distinct values to count.
+     * @return The distinct values of the field.
+     */
+    public DistinctValues distinctValues(String catalogName, CumulusQuery query, String fieldName, int maxValues) {
+        CumulusRecordCollection items = getItems(catalogName, query);
+        FieldHandle field = items.handle(fieldName);
+        return new DistinctValueCounter(field, maxValues).count(items.getBatches(FACET_BATCH_SIZE, field));
+    }
+
+    /**
+     * Validates that the records found by a query have values for the required fields.
+     * The rules are compiled once against the layout, and each record is only checked for whether it has values for
+     * the required fields, so no field values are extracted.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param requiredFields The names of the required fields.
+     * @return The report of the validation.
+     */
+    public ValidationReport validateRequiredFields(String catalogName, CumulusQuery query,
+            Collection<String> requiredFields) {
+        CumulusRecordCollection items = getItems(catalogName, query);
+        RequiredFieldsValidator validator = new RequiredFieldsValidator(items.getFieldExtractor(), requiredFields,
+                true);
+        return validator.validate(items);
+    }
+
+    /**
+     * Picks a reproducible random sample of the records found by a query, without iterating all the records.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param n The number of records in the sample.
+     * @param seed The seed for the random picks.
+     * @return The sampled records.
+     */
+    public List<CumulusRecord> sample(String catalogName, CumulusQuery query, int n, long seed) {
+        return getItems(catalogName, query).sample(n, seed);
+    }
+
+    /**
+     * Picks a reproducible random sample of a fraction of the records found by a query, without iterating all the
+     * records.
+     * @param catalogName The name of the catalog.
+     * @param query The query for finding the records.
+     * @param fraction The fraction of the records in the sample, between 0 and 1.
+     * @param seed The seed for the random picks.
+     * @return The sampled records.
+     */
+    public List<CumulusRecord> sampleFraction(String catalogName, CumulusQuery query, double fraction, long seed) {
+        return getItems(catalogName, query).sampleFraction(fraction, seed);
+    }
+
     /**
      * Find the Cumulus record containing a given UUID and belonging to a given catalog.
      * Will only return the first found result. And it will return a null if no results were found. 
@@ -198,6 +728,16 @@ public class CumulusServer implements Closeable {
 
     @Override
     public void close() throws IOException {
-        Cumulus.CumulusStop();
+        synchronized(this) {
+            if(sessionPool != null) {
+                sessionPool.close();
+                sessionPool = null;
+            }
+        }
+        if(startedCumulus) {
+            Cumulus.CumulusStop();
+        } else {
+            server.close();
+        }
     }    
 }
@@ -0,0 +1,188 @@
+package dk.kb.cumulus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.config.CumulusConfiguration;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Pool of sessions to the Cumulus server, for performing requests in parallel.
+ *
+ * A Cumulus session must only be used by one thread at a time, so each parallel request borrows its own session
+ * from the pool, and releases it when it is done. The sessions are opened the first time they are needed, and
+ * reused afterwards.
+ */
+public class CumulusSessionPool implements Closeable {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(CumulusSessionPool.class);
+
+    /** The default time to wait for a session, in milliseconds.*/
+    public static final long DEFAULT_BORROW_TIMEOUT = 60000L;
+
+    /** The configuration for the sessions.*/
+    protected final CumulusConfiguration configuration;
+    /** The maximum number of sessions.*/
+    protected final int maxSize;
+    /** The sessions, which are not borrowed.*/
+    protected final BlockingQueue<CumulusServer> idle = new LinkedBlockingQueue<CumulusServer>();
+    /** The number of sessions opened.*/
+    protected final AtomicInteger opened = new AtomicInteger();
+    /** The executor for the parallel requests.*/
+    protected final ExecutorService executor;
+    /** The time to wait for a session, in milliseconds.*/
+    protected final long borrowTimeout;
+    /** The cache for the results of the queries shared by the sessions, or null if each session has its own.*/
+    protected final QueryResultCache queryResultCache;
+    /** Whether the pool has been closed.*/
+    protected volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     * @param configuration The configuration for the sessions.
+     * @param maxSize The maximum number of sessions.
+     * @param borrowTimeout The time to wait for a session, in milliseconds.
+     */
+    public CumulusSessionPool(CumulusConfiguration configuration, int maxSize, long borrowTimeout) {
+        this(configuration, maxSize, borrowTimeout, null);
+    }
+
+    /**
+     * Constructor.
+     * @param configuration The configuration for the sessions.
+     * @param maxSize The maximum number of sessions.
+     * @param borrowTimeout The time to wait for a session, in milliseconds.
+     * @param queryResultCache The cache for the results of the queries shared by the sessions, e.g. the cache of
+     * the server, or null if each session has its own cache.
+     */
+    public CumulusSessionPool(CumulusConfiguration configuration, int maxSize, long borrowTimeout,
+            QueryResultCache queryResultCache) {
+        ArgumentCheck.checkNotNull(configuration, "CumulusConfiguration configuration");
+        ArgumentCheck.checkPositiveInt(maxSize, "int maxSize");
+        ArgumentCheck.checkPositiveLong(borrowTimeout, "long borrowTimeout");
+        this.configuration = configuration;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.queryResultCache = queryResultCache;
+        this.executor = Executors.newFixedThreadPool(maxSize, runnable -> {
+            Thread res = new Thread(runnable, "cumulus-session-pool");
+            res.setDaemon(true);
+            return res;
+        });
+    }
+
+    /**
+     * Borrows a session from the pool. A new session is opened, if all the opened sessions are borrowed and the
+     * pool is not full. Otherwise it waits for a session to be released.
+     * The session must be released again, when it is no longer used.
+     * @return The session.
+     */
+    public CumulusServer borrow() {
+        if(closed) {
+            throw new IllegalStateException("The session pool is closed.");
+        }
+        CumulusServer res = idle.poll();
+        if(res != null) {
+            return res;
+        }
+        if(opened.incrementAndGet() <= maxSize) {
+            try {
+                return openSession();
+            } catch (RuntimeException e) {
+                opened.decrementAndGet();
+                throw e;
+            }
+        }
+        opened.decrementAndGet();
+        try {
+            res = idle.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Cumulus session.", e);
+        }
+        if(res == null) {
+            throw new IllegalStateException("No Cumulus session was released within " + borrowTimeout + " ms.");
+        }
+        return res;
+    }
+
+    /**
+     * Releases a borrowed session, so it can be used by others.
+     * @param session The session.
+     */
+    public void release(CumulusServer session) {
+        ArgumentCheck.checkNotNull(session, "CumulusServer session");
+        if(closed) {
+            closeSession(session);
+        } else {
+            idle.offer(session);
+        }
+    }
+
+    /**
+     * Performs a task on a thread of the pool.
+     * @param task The task.
+     * @return The future result of the task.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /** @return The maximum number of sessions.*/
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return The number of sessions opened.*/
+    public int getOpenedCount() {
+        return opened.get();
+    }
+
+    /**
+     * Opens a new session.
+     * @return The session.
+     */
+    protected CumulusServer openSession() {
+        log.debug("Opening a new session to the Cumulus server '{}'.", configuration.getServerUrl());
+        if(queryResultCache != null) {
+            return new CumulusServer(configuration, false, queryResultCache);
+        }
+        return new CumulusServer(configuration, false);
+    }
+
+    /**
+     * Closes a session.
+     * @param session The session.
+     */
+    protected void closeSession(CumulusServer session) {
+        try {
+            session.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not close the Cumulus session.", e);
+        }
+    }
+
+    /**
+     * Closes the idle sessions, and the borrowed sessions when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        CumulusServer session;
+        while((session = idle.poll()) != null) {
+            closeSession(session);
+        }
+    }
+}
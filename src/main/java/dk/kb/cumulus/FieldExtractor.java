@@ -2,11 +2,14 @@ package dk.kb.cumulus;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,10 +22,10 @@ import com.canto.cumulus.Layout;
 import com.canto.cumulus.fieldvalue.AssetXRefFieldValue;
 
 import dk.kb.cumulus.field.AssetsField;
-import dk.kb.cumulus.field.EmptyField;
 import dk.kb.cumulus.field.Field;
 import dk.kb.cumulus.field.StringField;
-import dk.kb.cumulus.field.TableField;
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.utils.ValueDictionary;
 
 /**
  * Class for extracting the values of all the fields of an item according to the layout.
@@ -44,6 +47,17 @@ public class FieldExtractor {
      * It is used for optimization, so we don't have to locate a field GUID every time we use the field.*/
     protected final Map<String, GUID> fieldGuids;
 
+    /** The compiled readers for the fields of the layout. They are compiled the first time they are needed.*/
+    protected volatile FieldReader[] readers;
+
+    /** The handles for the fields of the layout. They are created the first time they are needed.*/
+    protected volatile FieldHandle[] handles;
+    /** The field handles indexed by the lower case name of the field. Created the first time it is needed.*/
+    protected volatile Map<String, FieldHandle> handleIndex;
+
+    /** The extractors for the layouts of the table fields, by the GUID of the table field.*/
+    protected final ConcurrentMap<GUID, FieldExtractor> nestedExtractors;
+
     /**
      * Constructor.
      * @param layout The field-layout for the extractor.
@@ -55,6 +69,7 @@ public class FieldExtractor {
         this.server = server;
         this.catalog = catalog;
         this.fieldGuids = new HashMap<String, GUID>();
+        this.nestedExtractors = new ConcurrentHashMap<GUID, FieldExtractor>();
     }
 
     /**
@@ -93,6 +108,31 @@ public class FieldExtractor {
         return catalog;
     }
 
+    /**
+     * Retrieves the extractor for the rows of a table field.
+     * The layout of a table field is the same for all the records, so the extractor is created for the first table
+     * of the field, and then reused for the tables of the field in all the other records extracted with this
+     * extractor.
+     * @param tableField The definition of the table field.
+     * @param tableLayout The layout of the table.
+     * @return The extractor for the rows of the table.
+     */
+    public FieldExtractor getNestedExtractor(FieldDefinition tableField, Layout tableLayout) {
+        GUID fieldUID = tableField.getFieldUID();
+        if(fieldUID == null) {
+            return new FieldExtractor(tableLayout, server, catalog);
+        }
+        FieldExtractor res = nestedExtractors.get(fieldUID);
+        if(res == null) {
+            FieldExtractor created = new FieldExtractor(tableLayout, server, catalog);
+            res = nestedExtractors.putIfAbsent(fieldUID, created);
+            if(res == null) {
+                res = created;
+            }
+        }
+        return res;
+    }
+
     /**
      * Extracts the fields for the item.
      * @param item The item to extract the fields from.
@@ -101,8 +141,8 @@ public class FieldExtractor {
      */
     protected Map<String, Field> getFields(Item item, boolean ignoreEmptyFields) {
         Map<String, Field> res = new HashMap<String, Field>();
-        for(FieldDefinition fd : layout) {
-            Field f = getFieldValue(fd, item, ignoreEmptyFields);
+        for(FieldReader reader : getReaders()) {
+            Field f = reader.read(item, ignoreEmptyFields);
             if(f != null) {
                 res.put(f.getName(), f);
             }
@@ -118,8 +158,8 @@ public class FieldExtractor {
      */
     public Map<String, String> getMap(Item item) {
         Map<String, String> res = new HashMap<String, String>();
-        for(FieldDefinition fd : layout) {
-            StringField f = (StringField) getFieldValue(fd, item, true);
+        for(FieldReader reader : getReaders()) {
+            StringField f = (StringField) reader.read(item, true);
             if(f != null) {
                 res.put(f.getName(), f.getStringValue());
             }
@@ -129,6 +169,8 @@ public class FieldExtractor {
 
     /**
      * Extracts the value of a specific field from the given item.
+     * NOTE: This compiles a reader for the field definition for every call. When extracting the fields of many items
+     * use the compiled readers of this extractor instead, e.g. through getFields or getMap.
      * @param fd The definition of the field.
      * @param item The item to have its field value extracted.
      * @param ignoreEmptyFields Whether or not to ignore empty fields.
@@ -136,68 +178,137 @@ public class FieldExtractor {
      * converted into a string.
      */
     protected Field getFieldValue(FieldDefinition fd, Item item, boolean ignoreEmptyFields) {
-        if(!item.hasValue(fd.getFieldUID())) {
-            log.trace("No element at uid " + fd.getFieldUID());
-            if(ignoreEmptyFields) {
-                return null;
-            } else {
-                return new EmptyField(fd, getFieldTypeName(fd.getFieldType()));
+        return FieldReader.compile(fd, this).read(item, ignoreEmptyFields);
+    }
+
+    /**
+     * Retrieves the readers for the fields of the layout.
+     * The readers are compiled the first time they are needed, and then reused for all the items.
+     * @return The readers for the fields of the layout, in the order of the layout.
+     */
+    protected FieldReader[] getReaders() {
+        FieldReader[] res = readers;
+        if(res == null) {
+            synchronized(this) {
+                res = readers;
+                if(res == null) {
+                    List<FieldReader> compiled = new ArrayList<FieldReader>();
+                    for(FieldDefinition fd : layout) {
+                        compiled.add(FieldReader.compile(fd, this));
+                    }
+                    res = compiled.toArray(new FieldReader[compiled.size()]);
+                    log.debug("Compiled readers for the {} fields of the layout.", res.length);
+                    readers = res;
+                }
             }
         }
+        return res;
+    }
 
-        switch(fd.getFieldType()) {
-        case FieldTypes.FieldTypeBool:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    String.valueOf(item.getBooleanValue(fd.getFieldUID())));
-        case FieldTypes.FieldTypeDate:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            // TOOD: figure out about how to format the date.
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    item.getDateValue(fd.getFieldUID()).toString());
-        case FieldTypes.FieldTypeDouble:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()),
-                    String.valueOf(item.getDoubleValue(fd.getFieldUID())));
-        case FieldTypes.FieldTypeEnum:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    item.getStringEnumValue(fd.getFieldUID()).getDisplayString());
-        case FieldTypes.FieldTypeInteger:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            // Note that DATE_ONLY is not under FieldTypeDate but FieldTypeInteger
-            if ( fd.getValueInterpretation() == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY){
-                log.debug("^VALUE_INTERPRETATION_DATE_ONLY");
-//                int day = item.getDateOnlyValue(fd.getFieldUID()).getDay();
-//                int month = item.getDateOnlyValue(fd.getFieldUID()).getMonth();
-//                int year = item.getDateOnlyValue(fd.getFieldUID()).getYear();
-                return new StringField(fd, getFieldTypeName(fd.getFieldType()),
-                        item.getDateOnlyValue(fd.getFieldUID()).getUniversalDisplayString());
-            } else {
-                return new StringField(fd, getFieldTypeName(fd.getFieldType()),
-                        String.valueOf(item.getIntValue(fd.getFieldUID())));
+    /**
+     * Retrieves the handles for the fields of the layout.
+     * @return The handles for the fields of the layout, in the order of the layout.
+     */
+    protected FieldHandle[] getHandles() {
+        FieldHandle[] res = handles;
+        if(res == null) {
+            FieldReader[] fieldReaders = getReaders();
+            res = new FieldHandle[fieldReaders.length];
+            for(int i = 0; i < fieldReaders.length; i++) {
+                res[i] = new FieldHandle(this, i, fieldReaders[i]);
             }
-        case FieldTypes.FieldTypeLong:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    String.valueOf(item.getLongValue(fd.getFieldUID())));
-        case FieldTypes.FieldTypeString:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    item.getStringValue(fd.getFieldUID()));
-        case FieldTypes.FieldTypeBinary:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            log.trace("Issue handling the field '" + fd.getName() + "' of type " + getFieldTypeName(fd.getFieldType())
-                    + ", tries to extracts it as the path of the Asset Reference");
-            return extractBinaryField(fd, item);
-        case FieldTypes.FieldTypeTable:
-            log.debug("Reading field '{}' with type '{}'", fd.getName(), getFieldTypeName(fd.getFieldType()));
-            return new TableField(fd, getFieldTypeName(fd.getFieldType()), item.getTableValue(fd.getFieldUID()), this);
-        default:
-            log.debug("Currently does not handle field value for type " + getFieldTypeName(fd.getFieldType())
-                    + ", returning an empty field for " + fd.getName());
-            return new EmptyField(fd, getFieldTypeName(fd.getFieldType()));
+            handles = res;
+        }
+        return res;
+    }
+
+    /**
+     * Resolves the handle for the field with the given name.
+     * NOTE: If there is multiple fields with the name (ignore case), only the first found is returned.
+     *
+     * @param fieldName The name of the field.
+     * @return The handle for the field.
+     * @throws IllegalStateException If the layout does not contain a field with the given name.
+     */
+    public FieldHandle getFieldHandle(String fieldName) {
+        ArgumentCheck.checkNotNull(fieldName, "String fieldName");
+        FieldHandle res = getHandleIndex().get(fieldName.toLowerCase(Locale.ROOT));
+        if(res == null) {
+            throw new IllegalStateException("Could not find field: " + fieldName);
+        }
+        return res;
+    }
+
+    /**
+     * Checks that a field handle can be used with the records of this extractor. That is the case, if the handle
+     * belongs to this extractor, or if the layout of this extractor has the same field at the position of the
+     * handle, e.g. when the handle is resolved by another extractor for the same catalog.
+     * @param field The handle for the field.
+     * @throws ArgumentCheck If the handle is for another layout.
+     */
+    public void checkHandle(FieldHandle field) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        if(field.getExtractor() == this) {
+            return;
+        }
+        FieldHandle[] own = getHandles();
+        int ordinal = field.getOrdinal();
+        if(ordinal < 0 || ordinal >= own.length || !Objects.equals(own[ordinal].getFieldUID(), field.getFieldUID())) {
+            throw new ArgumentCheck("The field handle " + field + " does not belong to the layout of the catalog '"
+                    + catalog + "'.");
+        }
+    }
+
+    /**
+     * @param fieldName The name of the field.
+     * @return Whether the layout contains a field with the given name (ignore case).
+     */
+    public boolean hasField(String fieldName) {
+        ArgumentCheck.checkNotNull(fieldName, "String fieldName");
+        return getHandleIndex().containsKey(fieldName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Retrieves the index of the field handles by their name in lower case.
+     * It is created the first time it is needed.
+     * NOTE: If there is multiple fields with the same name (ignore case), only the first in the layout is indexed.
+     * @return The map between the lower case field names and their handles.
+     */
+    protected Map<String, FieldHandle> getHandleIndex() {
+        Map<String, FieldHandle> res = handleIndex;
+        if(res == null) {
+            res = new HashMap<String, FieldHandle>();
+            for(FieldHandle handle : getHandles()) {
+                String key = handle.getName().toLowerCase(Locale.ROOT);
+                if(!res.containsKey(key)) {
+                    res.put(key, handle);
+                }
+            }
+            handleIndex = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return The number of fields in the layout.
+     */
+    public int getFieldCount() {
+        return getReaders().length;
+    }
+
+    /**
+     * Retrieves the dictionary for deduplicating the values of a field.
+     * The dictionaries are owned by the server for each catalog, so the values are shared by all the extractors
+     * for the catalog, e.g. the extractors for the results of different queries.
+     * @param fieldUID The GUID of the field.
+     * @return The dictionary for the field. A new dictionary, if the server does not provide one.
+     */
+    protected ValueDictionary getValueDictionary(GUID fieldUID) {
+        ValueDictionary res = server == null ? null : server.getValueDictionary(catalog, fieldUID);
+        if(res == null) {
+            res = new ValueDictionary(ValueDictionary.DEFAULT_MAX_SIZE);
         }
+        return res;
     }
 
     /**
@@ -266,9 +377,9 @@ public class FieldExtractor {
      * @return The string value.
      */
     public String getStringValueForField(String fieldName, Item item) {
-        for(FieldDefinition fd : layout) {
-            if(fd.getName().equalsIgnoreCase(fieldName)) {
-                Field f = getFieldValue(fd, item, false);
+        for(FieldReader reader : getReaders()) {
+            if(reader.getFieldName().equalsIgnoreCase(fieldName)) {
+                Field f = reader.read(item, false);
                 if(f instanceof StringField) {
                     return ((StringField) f).getStringValue();
                 } else {
@@ -288,50 +399,86 @@ public class FieldExtractor {
     protected Field extractBinaryField(FieldDefinition fd, Item item) {
         log.trace("KB-API: Extracting the binary value for field: " + fd.getName());
 
-        if(fd.getName().equals("Related Sub Assets") || fd.getName().equals("Related Master Assets")) {
+        if(isAssetRelationField(fd.getName())) {
+            return extractAssetsField(fd, getFieldTypeName(fd.getFieldType()), item);
+        } else {
+            return extractAssetReferenceField(fd, getFieldTypeName(fd.getFieldType()), item);
+        }
+    }
+
+    /**
+     * Checks whether a binary field with the given name contains the related sub or master assets.
+     * @param fieldName The name of the binary field.
+     * @return Whether or not the field contains related assets.
+     */
+    protected static boolean isAssetRelationField(String fieldName) {
+        return fieldName.equals(Constants.FieldNames.RELATED_SUB_ASSETS) 
+                || fieldName.equals(Constants.FieldNames.RELATED_MASTER_ASSETS);
+    }
+
+    /**
+     * Extracts the field with the related sub or master assets.
+     * @param fd The definition of the field.
+     * @param fieldType The name of the type of the field.
+     * @param item The item to extract the related assets from.
+     * @return The field with the related assets.
+     */
+    protected Field extractAssetsField(FieldDefinition fd, String fieldType, Item item) {
+        if(log.isTraceEnabled()) {
             log.trace("extractBinaryField, Stack traces: " +
                     Arrays.toString(Thread.currentThread().getStackTrace()).replace(',', '\n'));
-            AssetXRefFieldValue subAssets = item.getAssetXRefValue(fd.getFieldUID());
+        }
+        AssetXRefFieldValue subAssets = item.getAssetXRefValue(fd.getFieldUID());
 
-            List<String> names = new ArrayList<String>();
-            for(GUID g : subAssets.getRelations()) {
-                names.addAll(subAssets.getReferencedItemNames(subAssets.getReferences(g)).values());
-            }
-            Collections.sort(names);
+        List<Map.Entry<Integer, String>> references = new ArrayList<Map.Entry<Integer, String>>();
+        for(GUID g : subAssets.getRelations()) {
+            references.addAll(subAssets.getReferencedItemNames(subAssets.getReferences(g)).entrySet());
+        }
+        references.sort(Map.Entry.comparingByValue());
 
-            AssetsField res = new AssetsField(fd, getFieldTypeName(fd.getFieldType()));
-            for(String name : names) {
-                CumulusRecord cr = server.findCumulusRecordByName(catalog, name);
-                if(cr == null) {
-                    log.warn("Could not find sub-asset: '" + name + "'.");
-                    res.addAsset(name, "N/A");
+        AssetsField res = new AssetsField(fd, fieldType);
+        for(Map.Entry<Integer, String> reference : references) {
+            String name = reference.getValue();
+            CumulusRecord cr;
+            try {
+                cr = server.getRecordById(catalog, reference.getKey());
+            } catch (IllegalStateException e) {
+                log.warn("Could not find sub-asset: '" + name + "'.", e);
+                res.addAsset(name, "N/A");
 
-                    continue;
-                }
-                // initialize the RelatedObjectIdentifierValue for the intellectual entity
-                // This is needed for the preservation. Perhaps move?
-                String uuid =
-                        cr.getFieldValueOrNull(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY);
-                if(uuid == null || uuid.isEmpty()) {
-                    uuid = UUID.randomUUID().toString();
-                    log.debug("KB-API, set UUID: " + uuid + " in: "
-                            + Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY + ". Record name: " + name);
-
-                    cr.setStringValueInField(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY,
-                            uuid);
-                }
-                log.debug("KB-API, Add asset with name " + name + ", relatedObjectIdentifierValue uuid value: " + cr.getFieldValueOrNull(
-                        Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY));
+                continue;
+            }
+            // initialize the RelatedObjectIdentifierValue for the intellectual entity
+            // This is needed for the preservation. Perhaps move?
+            String uuid =
+                    cr.getFieldValueOrNull(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY);
+            if(uuid == null || uuid.isEmpty()) {
+                uuid = UUID.randomUUID().toString();
+                log.debug("KB-API, set UUID: " + uuid + " in: "
+                        + Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY + ". Record name: " + name);
 
-                res.addAsset(name, cr.getFieldValue(
-                        Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY));
+                cr.setStringValueInField(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY,
+                        uuid);
             }
+            log.debug("KB-API, Add asset with name " + name + ", relatedObjectIdentifierValue uuid value: " + cr.getFieldValueOrNull(
+                    Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY));
 
-            return res;
-        } else {
-            // Extract the AssetReference display string (usually the path)
-            return new StringField(fd, getFieldTypeName(fd.getFieldType()), 
-                    item.getAssetReferenceValue(fd.getFieldUID()).getPart(0).getDisplayString());
+            res.addAsset(name, cr.getFieldValue(
+                    Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY));
         }
+
+        return res;
+    }
+
+    /**
+     * Extracts the AssetReference display string (usually the path) of a binary field.
+     * @param fd The definition of the field.
+     * @param fieldType The name of the type of the field.
+     * @param item The item to extract the asset reference from.
+     * @return The field with the asset reference display string.
+     */
+    protected Field extractAssetReferenceField(FieldDefinition fd, String fieldType, Item item) {
+        return new StringField(fd, fieldType, 
+                item.getAssetReferenceValue(fd.getFieldUID()).getPart(0).getDisplayString());
     }
 }
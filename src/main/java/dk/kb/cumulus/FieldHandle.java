@@ -0,0 +1,78 @@
+package dk.kb.cumulus;
+
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.GUID;
+
+/**
+ * Handle for a field in the layout of a FieldExtractor.
+ *
+ * The handle is resolved once from the name of the field, and can then be used for accessing the field of
+ * every record extracted with the same layout, without looking up the field by its name again.
+ * The handle belongs to the extractor, which resolved it, and can only be used with the records of other
+ * extractors, if their layout has the same field at the same position.
+ */
+public class FieldHandle {
+    /** The extractor, which the handle belongs to.*/
+    protected final FieldExtractor extractor;
+    /** The position of the field in the layout.*/
+    protected final int ordinal;
+    /** The compiled reader for the field.*/
+    protected final FieldReader reader;
+
+    /**
+     * Constructor.
+     * @param extractor The extractor, which the handle belongs to.
+     * @param ordinal The position of the field in the layout.
+     * @param reader The compiled reader for the field.
+     */
+    protected FieldHandle(FieldExtractor extractor, int ordinal, FieldReader reader) {
+        this.extractor = extractor;
+        this.ordinal = ordinal;
+        this.reader = reader;
+    }
+
+    /** @return The extractor, which the handle belongs to.*/
+    public FieldExtractor getExtractor() {
+        return extractor;
+    }
+
+    /** @return The position of the field in the layout.*/
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /** @return The name of the field.*/
+    public String getName() {
+        return reader.getFieldName();
+    }
+
+    /** @return The GUID of the field.*/
+    public GUID getFieldUID() {
+        return reader.getFieldUID();
+    }
+
+    /** @return The field type ordinal, as defined in FieldTypes.*/
+    public int getFieldType() {
+        return reader.getFieldType();
+    }
+
+    /** @return The value interpretation of the field, as defined in FieldTypes.*/
+    public int getValueInterpretation() {
+        return reader.getValueInterpretation();
+    }
+
+    /** @return The definition of the field.*/
+    public FieldDefinition getDefinition() {
+        return reader.getDefinition();
+    }
+
+    /** @return The compiled reader for the field.*/
+    public FieldReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public String toString() {
+        return "[FieldHandle: " + getName() + " (" + reader.getTypeName() + ") at " + ordinal + "]";
+    }
+}
@@ -0,0 +1,332 @@
+package dk.kb.cumulus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.field.EmptyField;
+import dk.kb.cumulus.field.Field;
+import dk.kb.cumulus.field.StringField;
+import dk.kb.cumulus.field.TableField;
+import dk.kb.cumulus.utils.ValueDictionary;
+
+/**
+ * Reader for the value of a single field in a layout.
+ *
+ * The reader is compiled once for each field definition of the layout, so the field type, the value
+ * interpretation and the name of the field type are only resolved once, instead of for every field of every item.
+ */
+public abstract class FieldReader {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(FieldReader.class);
+
+    /** The definition of the field.*/
+    protected final FieldDefinition definition;
+    /** The name of the field.*/
+    protected final String fieldName;
+    /** The GUID of the field.*/
+    protected final GUID fieldUID;
+    /** The field type ordinal, as defined in FieldTypes.*/
+    protected final int fieldType;
+    /** The value interpretation of the field, as defined in FieldTypes.*/
+    protected final int valueInterpretation;
+    /** The name of the type of field.*/
+    protected final String typeName;
+    /** The dictionary for deduplicating the values of the field. It is null for fields, which are not interned.*/
+    protected final ValueDictionary dictionary;
+
+    /**
+     * Constructor for a reader, which does not deduplicate the values.
+     * @param definition The definition of the field.
+     * @param fieldType The field type ordinal.
+     * @param valueInterpretation The value interpretation of the field.
+     * @param typeName The name of the type of field.
+     */
+    protected FieldReader(FieldDefinition definition, int fieldType, int valueInterpretation, String typeName) {
+        this(definition, fieldType, valueInterpretation, typeName, null);
+    }
+
+    /**
+     * Constructor.
+     * @param definition The definition of the field.
+     * @param fieldType The field type ordinal.
+     * @param valueInterpretation The value interpretation of the field.
+     * @param typeName The name of the type of field.
+     * @param dictionary The dictionary for deduplicating the values, or null if the values are not deduplicated.
+     */
+    protected FieldReader(FieldDefinition definition, int fieldType, int valueInterpretation, String typeName,
+            ValueDictionary dictionary) {
+        this.definition = definition;
+        this.fieldName = definition.getName();
+        this.fieldUID = definition.getFieldUID();
+        this.fieldType = fieldType;
+        this.valueInterpretation = valueInterpretation;
+        this.typeName = typeName;
+        this.dictionary = dictionary;
+    }
+
+    /** @return The definition of the field.*/
+    public FieldDefinition getDefinition() {
+        return definition;
+    }
+
+    /** @return The name of the field.*/
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /** @return The GUID of the field.*/
+    public GUID getFieldUID() {
+        return fieldUID;
+    }
+
+    /** @return The field type ordinal, as defined in FieldTypes.*/
+    public int getFieldType() {
+        return fieldType;
+    }
+
+    /** @return The value interpretation of the field, as defined in FieldTypes.*/
+    public int getValueInterpretation() {
+        return valueInterpretation;
+    }
+
+    /** @return The name of the type of field.*/
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /** @return The dictionary for the values of the field, or null if the values of the field are not interned.*/
+    public ValueDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Deduplicates a string value of the field against the previously extracted values of the field.
+     * Only the values of the fields with few distinct values (enumerators and date-only fields) are deduplicated.
+     * @param value The string value of the field.
+     * @return The shared instance of the value, or the value itself if it is not deduplicated.
+     */
+    public String intern(String value) {
+        if(dictionary == null) {
+            return value;
+        }
+        return dictionary.intern(value);
+    }
+
+    /**
+     * Reads the field from the given item.
+     * @param item The item to read the field from.
+     * @param ignoreEmptyFields Whether or not to ignore empty fields.
+     * @return The field, or null if the field is empty and empty fields are ignored.
+     */
+    public Field read(Item item, boolean ignoreEmptyFields) {
+        if(!item.hasValue(fieldUID)) {
+            log.trace("No element at uid {}", fieldUID);
+            if(ignoreEmptyFields) {
+                return null;
+            } else {
+                return new EmptyField(definition, typeName);
+            }
+        }
+        return readValue(item);
+    }
+
+    /**
+     * Reads the value of the field from an item, which is known to have a value for the field.
+     * @param item The item to read the field from.
+     * @return The field.
+     */
+    protected abstract Field readValue(Item item);
+
+    /**
+     * Determines whether the values of a field is deduplicated in a dictionary.
+     * @param fieldType The field type ordinal.
+     * @param valueInterpretation The value interpretation of the field.
+     * @return Whether the field is an enumerator (including string lists) or date-only field.
+     */
+    protected static boolean isDictionaryField(int fieldType, int valueInterpretation) {
+        return fieldType == FieldTypes.FieldTypeEnum || (fieldType == FieldTypes.FieldTypeInteger
+                && valueInterpretation == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY);
+    }
+
+    /**
+     * Compiles the reader for the given field definition.
+     * The readers of the enumerators and date-only fields use the dictionary of the extractor for the field, so
+     * the values are shared with the other extractors for the catalog.
+     * @param fd The definition of the field.
+     * @param extractor The field extractor, which the reader belongs to.
+     * @return The reader for the field.
+     */
+    protected static FieldReader compile(FieldDefinition fd, FieldExtractor extractor) {
+        final int fieldType = fd.getFieldType();
+        final int interpretation = fd.getValueInterpretation();
+        final String typeName = extractor.getFieldTypeName(fieldType);
+        final ValueDictionary dictionary = isDictionaryField(fieldType, interpretation)
+                ? extractor.getValueDictionary(fd.getFieldUID()) : null;
+
+        switch(fieldType) {
+        case FieldTypes.FieldTypeBool:
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> String.valueOf(item.getBooleanValue(uid)));
+        case FieldTypes.FieldTypeDate:
+            // TOOD: figure out about how to format the date.
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> item.getDateValue(uid).toString());
+        case FieldTypes.FieldTypeDouble:
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> String.valueOf(item.getDoubleValue(uid)));
+        case FieldTypes.FieldTypeEnum:
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> item.getStringEnumValue(uid).getDisplayString());
+        case FieldTypes.FieldTypeInteger:
+            // Note that DATE_ONLY is not under FieldTypeDate but FieldTypeInteger
+            if(interpretation == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY) {
+                return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                        (item, uid) -> item.getDateOnlyValue(uid).getUniversalDisplayString());
+            }
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> String.valueOf(item.getIntValue(uid)));
+        case FieldTypes.FieldTypeLong:
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> String.valueOf(item.getLongValue(uid)));
+        case FieldTypes.FieldTypeString:
+            return new StringValueReader(fd, fieldType, interpretation, typeName, dictionary,
+                    (item, uid) -> item.getStringValue(uid));
+        case FieldTypes.FieldTypeBinary:
+            return new BinaryReader(fd, fieldType, interpretation, typeName, extractor);
+        case FieldTypes.FieldTypeTable:
+            return new TableReader(fd, fieldType, interpretation, typeName, extractor);
+        default:
+            log.debug("Currently does not handle field value for type " + typeName
+                    + ", will return an empty field for " + fd.getName());
+            return new UnhandledReader(fd, fieldType, interpretation, typeName);
+        }
+    }
+
+    /**
+     * Conversion of the value of a field into a string.
+     */
+    protected interface StringConversion {
+        /**
+         * @param item The item with the value.
+         * @param uid The GUID of the field.
+         * @return The value of the field as a string.
+         */
+        String convert(Item item, GUID uid);
+    }
+
+    /**
+     * Reader for the fields, which can be converted into a string value.
+     */
+    protected static class StringValueReader extends FieldReader {
+        /** The conversion of the field value into a string.*/
+        protected final StringConversion conversion;
+
+        /**
+         * Constructor.
+         * @param definition The definition of the field.
+         * @param fieldType The field type ordinal.
+         * @param valueInterpretation The value interpretation of the field.
+         * @param typeName The name of the type of field.
+         * @param dictionary The dictionary for deduplicating the values, or null if they are not deduplicated.
+         * @param conversion The conversion of the field value into a string.
+         */
+        protected StringValueReader(FieldDefinition definition, int fieldType, int valueInterpretation,
+                String typeName, ValueDictionary dictionary, StringConversion conversion) {
+            super(definition, fieldType, valueInterpretation, typeName, dictionary);
+            this.conversion = conversion;
+        }
+
+        @Override
+        protected Field readValue(Item item) {
+            return new StringField(definition, typeName, intern(conversion.convert(item, fieldUID)));
+        }
+    }
+
+    /**
+     * Reader for the binary fields, which are either asset relations or asset references.
+     */
+    protected static class BinaryReader extends FieldReader {
+        /** The field extractor for the extraction of the related assets.*/
+        protected final FieldExtractor extractor;
+        /** Whether or not the field contains the related assets, instead of an asset reference.*/
+        protected final boolean assetRelation;
+
+        /**
+         * Constructor.
+         * @param definition The definition of the field.
+         * @param fieldType The field type ordinal.
+         * @param valueInterpretation The value interpretation of the field.
+         * @param typeName The name of the type of field.
+         * @param extractor The field extractor.
+         */
+        protected BinaryReader(FieldDefinition definition, int fieldType, int valueInterpretation, String typeName,
+                FieldExtractor extractor) {
+            super(definition, fieldType, valueInterpretation, typeName);
+            this.extractor = extractor;
+            this.assetRelation = FieldExtractor.isAssetRelationField(fieldName);
+        }
+
+        @Override
+        protected Field readValue(Item item) {
+            if(assetRelation) {
+                return extractor.extractAssetsField(definition, typeName, item);
+            } else {
+                return extractor.extractAssetReferenceField(definition, typeName, item);
+            }
+        }
+    }
+
+    /**
+     * Reader for the table fields.
+     */
+    protected static class TableReader extends FieldReader {
+        /** The field extractor.*/
+        protected final FieldExtractor extractor;
+
+        /**
+         * Constructor.
+         * @param definition The definition of the field.
+         * @param fieldType The field type ordinal.
+         * @param valueInterpretation The value interpretation of the field.
+         * @param typeName The name of the type of field.
+         * @param extractor The field extractor.
+         */
+        protected TableReader(FieldDefinition definition, int fieldType, int valueInterpretation, String typeName,
+                FieldExtractor extractor) {
+            super(definition, fieldType, valueInterpretation, typeName);
+            this.extractor = extractor;
+        }
+
+        @Override
+        protected Field readValue(Item item) {
+            return new TableField(definition, typeName, item.getTableValue(fieldUID), extractor);
+        }
+    }
+
+    /**
+     * Reader for the field types, which are not handled. They are always extracted as empty fields.
+     */
+    protected static class UnhandledReader extends FieldReader {
+        /**
+         * Constructor.
+         * @param definition The definition of the field.
+         * @param fieldType The field type ordinal.
+         * @param valueInterpretation The value interpretation of the field.
+         * @param typeName The name of the type of field.
+         */
+        protected UnhandledReader(FieldDefinition definition, int fieldType, int valueInterpretation,
+                String typeName) {
+            super(definition, fieldType, valueInterpretation, typeName);
+        }
+
+        @Override
+        protected Field readValue(Item item) {
+            return new EmptyField(definition, typeName);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dk.kb.cumulus;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * The new values of a set of string and enumerator fields, which are applied to records with
+ * {@link CumulusRecord#update(FieldUpdates)}, e.g. in a bulk update across the result of a query.
+ * The values of enumerator fields are given as their display strings.
+ */
+public class FieldUpdates {
+    /** The new values, mapped by the names of the fields.*/
+    protected final Map<String, String> values = new LinkedHashMap<String, String>();
+
+    /**
+     * Sets the new value of a field.
+     * @param fieldName The name of the string or enumerator field.
+     * @param value The new value.
+     * @return This, for chaining the updates.
+     */
+    public FieldUpdates set(String fieldName, String value) {
+        ArgumentCheck.checkNotNullOrEmpty(fieldName, "String fieldName");
+        ArgumentCheck.checkNotNull(value, "String value");
+        values.put(fieldName, value);
+        return this;
+    }
+
+    /** @return The new values, mapped by the names of the fields.*/
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    /** @return Whether no new values have been set.*/
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Checks that the fields exist in the layout of a catalog, and that they are string or enumerator fields.
+     * @param fe The field extractor for the catalog.
+     */
+    public void validate(FieldExtractor fe) {
+        ArgumentCheck.checkNotNull(fe, "FieldExtractor fe");
+        ArgumentCheck.checkTrue(!values.isEmpty(), "At least one field must be updated.");
+        for(String fieldName : values.keySet()) {
+            ArgumentCheck.checkTrue(fe.hasField(fieldName), "The field '" + fieldName + "' does not exist.");
+            CumulusRecord.checkStringOrEnumField(fe.getFieldHandle(fieldName));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[FieldUpdates: " + values + "]";
+    }
+}
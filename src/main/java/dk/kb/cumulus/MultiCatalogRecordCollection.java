@@ -0,0 +1,116 @@
+package dk.kb.cumulus;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The merged result sets of a query on several catalogs.
+ *
+ * The records are iterated catalog by catalog, and they are only extracted when the iterator reaches them.
+ * The catalog of a record is given by CumulusRecord.getCatalogName().
+ * The catalogs, where the query failed, are reported with the failure instead of a result.
+ *
+ * The result sets belong to sessions of the session pool, which are kept until the collection is closed.
+ */
+public class MultiCatalogRecordCollection implements Iterable<CumulusRecord>, Closeable {
+    /** The result sets by the name of their catalog, in the order of the catalogs.*/
+    protected final Map<String, CumulusRecordCollection> results;
+    /** The failures by the name of their catalog.*/
+    protected final Map<String, Throwable> failures;
+    /** The sessions used by the result sets.*/
+    protected final List<CumulusServer> sessions;
+    /** The pool of the sessions.*/
+    protected final CumulusSessionPool pool;
+
+    /**
+     * Constructor.
+     * @param results The result sets by the name of their catalog.
+     * @param failures The failures by the name of their catalog.
+     * @param sessions The sessions used by the result sets.
+     * @param pool The pool of the sessions.
+     */
+    protected MultiCatalogRecordCollection(Map<String, CumulusRecordCollection> results,
+            Map<String, Throwable> failures, List<CumulusServer> sessions, CumulusSessionPool pool) {
+        this.results = Collections.unmodifiableMap(results);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.sessions = sessions;
+        this.pool = pool;
+    }
+
+    /** @return The names of the catalogs, which have a result.*/
+    public Set<String> getCatalogs() {
+        return results.keySet();
+    }
+
+    /**
+     * @param catalogName The name of the catalog.
+     * @return The result set of the catalog, or null if the catalog was not queried or the query failed.
+     */
+    public CumulusRecordCollection getResult(String catalogName) {
+        return results.get(catalogName);
+    }
+
+    /** @return The failures by the name of their catalog.*/
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /** @return Whether the query failed for any of the catalogs.*/
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /** @return The number of records in all the result sets.*/
+    public int getCount() {
+        int res = 0;
+        for(CumulusRecordCollection result : results.values()) {
+            res += result.getCount();
+        }
+        return res;
+    }
+
+    @Override
+    public Iterator<CumulusRecord> iterator() {
+        final Iterator<CumulusRecordCollection> collections = new ArrayList<CumulusRecordCollection>(
+                results.values()).iterator();
+        return new Iterator<CumulusRecord>() {
+            /** The records of the current catalog.*/
+            Iterator<CumulusRecord> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while(!current.hasNext() && collections.hasNext()) {
+                    current = collections.next().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public CumulusRecord next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException("No more records in the collections.");
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Releases the sessions of the result sets to the pool. The records cannot be accessed afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized(sessions) {
+            for(CumulusServer session : sessions) {
+                pool.release(session);
+            }
+            sessions.clear();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package dk.kb.cumulus;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import com.canto.cumulus.FieldTypes;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Cumulus query prepared for a specific catalog.
+ *
+ * The fields and operators of the conditions, and the given values, are validated against the layout of the
+ * catalog once, when the query is prepared. The types of the parameter values are resolved at the same time, so
+ * each execution of the query only validates and binds the parameter values.
+ */
+public class PreparedCumulusQuery {
+    /** The Cumulus server.*/
+    protected final CumulusServer server;
+    /** The name of the catalog.*/
+    protected final String catalogName;
+    /** The compiled query.*/
+    protected final CumulusQueryTemplate template;
+    /** The handles for the fields of the conditions, in the order of the conditions.*/
+    protected final FieldHandle[] fields;
+    /** The expected types of the parameter values, in the order of the parameters.*/
+    protected final Class<?>[] parameterTypes;
+
+    /**
+     * Constructor.
+     * @param server The Cumulus server.
+     * @param catalogName The name of the catalog.
+     * @param template The compiled query.
+     */
+    public PreparedCumulusQuery(CumulusServer server, String catalogName, CumulusQueryTemplate template) {
+        ArgumentCheck.checkNotNull(server, "CumulusServer server");
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        ArgumentCheck.checkNotNull(template, "CumulusQueryTemplate template");
+        this.server = server;
+        this.catalogName = catalogName;
+        this.template = template;
+
+        FieldExtractor fe = server.getFieldExtractor(catalogName);
+        List<CumulusQueryTemplate.Condition> conditions = template.getConditions();
+        this.fields = new FieldHandle[conditions.size()];
+        this.parameterTypes = new Class<?>[template.getParameterCount()];
+        List<String> problems = new ArrayList<String>();
+        for(int i = 0; i < conditions.size(); i++) {
+            CumulusQueryTemplate.Condition condition = conditions.get(i);
+            FieldHandle field = fe.getHandleIndex().get(condition.getFieldName().toLowerCase(Locale.ROOT));
+            if(field == null) {
+                problems.add("The field '" + condition.getFieldName() + "' is not in the layout of the catalog '"
+                        + catalogName + "'.");
+                continue;
+            }
+            fields[i] = field;
+            if(!isOperatorSupported(field, condition.getOperator())) {
+                problems.add("The operator '" + condition.getOperator().getText() + "' cannot be used for the field '"
+                        + field.getName() + "' of type '" + getTypeName(field) + "'.");
+                continue;
+            }
+            if(condition.getParameterIndex() >= 0) {
+                parameterTypes[condition.getParameterIndex()] = getValueType(field);
+            } else if(!isValidValue(field, condition.getValue())) {
+                problems.add("The value '" + condition.getValue() + "' is not valid for the field '"
+                        + field.getName() + "' of type '" + getTypeName(field) + "'.");
+            }
+        }
+        if(!problems.isEmpty()) {
+            throw new ArgumentCheck("Cannot prepare the query " + template + " for the catalog '" + catalogName
+                    + "': " + String.join(" ", problems));
+        }
+    }
+
+    /** @return The name of the catalog.*/
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    /** @return The compiled query.*/
+    public CumulusQueryTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Creates the query with the given values for the parameters.
+     * @param values The values of the parameters, in the order of the parameters in the query.
+     * @return The query.
+     */
+    public CumulusQuery bind(Object... values) {
+        ArgumentCheck.checkNotNull(values, "Object... values");
+        if(values.length == parameterTypes.length) {
+            for(int i = 0; i < values.length; i++) {
+                if(values[i] != null && !isInstance(parameterTypes[i], values[i])) {
+                    throw new ArgumentCheck("The value for parameter " + i + " must be of type "
+                            + parameterTypes[i].getSimpleName() + ", but was " + values[i].getClass().getName());
+                }
+            }
+        }
+        return template.bind(values);
+    }
+
+    /**
+     * Executes the query with the given values for the parameters.
+     * @param values The values of the parameters, in the order of the parameters in the query.
+     * @return The records found by the query.
+     */
+    public CumulusRecordCollection execute(Object... values) {
+        return server.getItems(catalogName, bind(values));
+    }
+
+    /**
+     * Checks whether a value has the expected type of a parameter.
+     * Dates can be given both as Instant and as Date.
+     * @param type The expected type.
+     * @param value The value.
+     * @return Whether the value has the expected type.
+     */
+    protected static boolean isInstance(Class<?> type, Object value) {
+        if(type == Instant.class) {
+            return value instanceof Instant || value instanceof Date;
+        }
+        return type.isInstance(value);
+    }
+
+    /**
+     * Determines whether an operator can be used for the type of a field.
+     * @param field The field.
+     * @param operator The operator.
+     * @return Whether the operator can be used for the field.
+     */
+    protected static boolean isOperatorSupported(FieldHandle field, Operator operator) {
+        int type = field.getFieldType();
+        switch(operator) {
+        case IS:
+        case IS_NOT:
+            return type != FieldTypes.FieldTypeTable && type != FieldTypes.FieldTypeBinary
+                    && type != FieldTypes.FieldTypePicture && type != FieldTypes.FieldTypeAudio;
+        case CONTAINS:
+        case STARTS_WITH:
+        case ENDS_WITH:
+            return type == FieldTypes.FieldTypeString || type == FieldTypes.FieldTypeEnum;
+        case IS_BEFORE:
+        case IS_AFTER:
+            return type == FieldTypes.FieldTypeDate || isDateOnly(field);
+        case IS_GREATER_THAN:
+        case IS_LESS_THAN:
+            return type == FieldTypes.FieldTypeInteger || type == FieldTypes.FieldTypeLong
+                    || type == FieldTypes.FieldTypeDouble;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Determines the type of the parameter values for a field.
+     * @param field The field.
+     * @return The type of the values.
+     */
+    protected static Class<?> getValueType(FieldHandle field) {
+        if(isDateOnly(field)) {
+            return LocalDate.class;
+        }
+        switch(field.getFieldType()) {
+        case FieldTypes.FieldTypeInteger:
+        case FieldTypes.FieldTypeLong:
+        case FieldTypes.FieldTypeDouble:
+            return Number.class;
+        case FieldTypes.FieldTypeBool:
+            return Boolean.class;
+        case FieldTypes.FieldTypeDate:
+            return Instant.class;
+        default:
+            return Object.class;
+        }
+    }
+
+    /**
+     * Validates a value given directly in the query for a field.
+     * @param field The field.
+     * @param value The value.
+     * @return Whether the value is valid for the field.
+     */
+    protected static boolean isValidValue(FieldHandle field, String value) {
+        try {
+            if(isDateOnly(field)) {
+                LocalDate.parse(value);
+                return true;
+            }
+            switch(field.getFieldType()) {
+            case FieldTypes.FieldTypeDate:
+                return isValidDate(value);
+            case FieldTypes.FieldTypeInteger:
+            case FieldTypes.FieldTypeLong:
+                Long.parseLong(value);
+                return true;
+            case FieldTypes.FieldTypeDouble:
+                Double.parseDouble(value);
+                return true;
+            case FieldTypes.FieldTypeBool:
+                return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false");
+            default:
+                return true;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Validates a date given directly in the query for a date field.
+     * The date can either be in the date format of the queries, or an ISO date without the time of day.
+     * @param value The value.
+     * @return Whether the value is a valid date.
+     */
+    protected static boolean isValidDate(String value) {
+        try {
+            CumulusQuery.QUERY_DATE_FORMAT.parse(value);
+            return true;
+        } catch (DateTimeParseException e) {
+            LocalDate.parse(value);
+            return true;
+        }
+    }
+
+    /**
+     * @param field The field.
+     * @return The name of the type of the field, for the error messages.
+     */
+    protected static String getTypeName(FieldHandle field) {
+        String res = field.getReader().getTypeName();
+        return isDateOnly(field) ? res + " (date only)" : res;
+    }
+
+    /**
+     * @param field The field.
+     * @return Whether the field is an integer field with dates.
+     */
+    protected static boolean isDateOnly(FieldHandle field) {
+        return field.getFieldType() == FieldTypes.FieldTypeInteger
+                && field.getValueInterpretation() == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY;
+    }
+
+    @Override
+    public String toString() {
+        return "[PreparedCumulusQuery: catalog '" + catalogName + "', " + template + "]";
+    }
+}
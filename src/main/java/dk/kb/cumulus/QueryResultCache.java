@@ -0,0 +1,240 @@
+package dk.kb.cumulus;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Cache for the IDs of the records found by queries.
+ *
+ * The results are kept for a given time to live, and the least recently used results are removed, when the cache
+ * is full. The results for a catalog are invalidated, when a record of the catalog is changed through this library.
+ * Changes made directly in Cumulus are only seen when the cached results expire.
+ *
+ * Each invalidation increases the generation of the catalog. A result is only stored, if the generation of its
+ * catalog has not changed since the query was started, so a change made while the query was running is not lost.
+ */
+public class QueryResultCache {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    /** The default time to live for the results, in milliseconds.*/
+    public static final long DEFAULT_TIME_TO_LIVE = 10000L;
+    /** The default maximum number of results in the cache.*/
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /** The time to live for the results, in milliseconds.*/
+    protected final long timeToLive;
+    /** The cached results, in the order of their use.*/
+    protected final LinkedHashMap<Key, Entry> entries;
+    /** The number of invalidations of each catalog.*/
+    protected final Map<String, Long> generations = new HashMap<String, Long>();
+    /** The number of invalidations of all the catalogs.*/
+    protected long globalGeneration = 0L;
+    /** The number of lookups, which were found in the cache.*/
+    protected final AtomicLong hits = new AtomicLong();
+    /** The number of lookups, which were not found in the cache.*/
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param timeToLive The time to live for the results, in milliseconds.
+     * @param maxSize The maximum number of results in the cache.
+     */
+    public QueryResultCache(long timeToLive, final int maxSize) {
+        ArgumentCheck.checkPositiveLong(timeToLive, "long timeToLive");
+        ArgumentCheck.checkPositiveInt(maxSize, "int maxSize");
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the IDs of the records found by a query.
+     * @param key The key for the query.
+     * @return The IDs of the records, or null if the result is not in the cache or has expired.
+     */
+    public synchronized int[] get(Key key) {
+        ArgumentCheck.checkNotNull(key, "Key key");
+        Entry entry = entries.get(key);
+        if(entry != null && currentTimeMillis() - entry.created >= timeToLive) {
+            entries.remove(key);
+            entry = null;
+        }
+        if(entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.ids;
+    }
+
+    /**
+     * Stores the IDs of the records found by a query.
+     * @param key The key for the query.
+     * @param ids The IDs of the records. The array must not be changed afterwards.
+     */
+    public synchronized void put(Key key, int[] ids) {
+        ArgumentCheck.checkNotNull(key, "Key key");
+        ArgumentCheck.checkNotNull(ids, "int[] ids");
+        entries.put(key, new Entry(ids, currentTimeMillis()));
+    }
+
+    /**
+     * Stores the IDs of the records found by a query, unless the results of the catalog have been invalidated
+     * since the query was started.
+     * @param key The key for the query.
+     * @param ids The IDs of the records. The array must not be changed afterwards.
+     * @param generation The generation of the catalog, from before the query was started.
+     * @return Whether the result was stored.
+     */
+    public synchronized boolean put(Key key, int[] ids, long generation) {
+        ArgumentCheck.checkNotNull(key, "Key key");
+        if(getGeneration(key.catalogName) != generation) {
+            log.trace("The result of the query {} is not cached, since the catalog has been changed.", key);
+            return false;
+        }
+        put(key, ids);
+        return true;
+    }
+
+    /**
+     * Retrieves the generation of a catalog, which is increased every time its results are invalidated.
+     * @param catalogName The name of the catalog.
+     * @return The generation of the catalog.
+     */
+    public synchronized long getGeneration(String catalogName) {
+        Long generation = generations.get(catalogName);
+        return globalGeneration + (generation == null ? 0L : generation);
+    }
+
+    /**
+     * Removes the cached results for the queries of a catalog.
+     * @param catalogName The name of the catalog.
+     */
+    public synchronized void invalidate(String catalogName) {
+        Long generation = generations.get(catalogName);
+        generations.put(catalogName, generation == null ? 1L : generation + 1L);
+        Iterator<Key> keys = entries.keySet().iterator();
+        while(keys.hasNext()) {
+            if(keys.next().catalogName.equals(catalogName)) {
+                keys.remove();
+            }
+        }
+        log.trace("Invalidated the cached query results for catalog '{}'.", catalogName);
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public synchronized void invalidateAll() {
+        globalGeneration++;
+        entries.clear();
+    }
+
+    /** @return The number of results in the cache, including the expired ones not yet removed.*/
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return The number of lookups, which were found in the cache.*/
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return The number of lookups, which were not found in the cache.*/
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return The current time in milliseconds.*/
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * The cached result of a query.
+     */
+    protected static class Entry {
+        /** The IDs of the records.*/
+        protected final int[] ids;
+        /** The time when the result was created.*/
+        protected final long created;
+
+        /**
+         * Constructor.
+         * @param ids The IDs of the records.
+         * @param created The time when the result was created.
+         */
+        protected Entry(int[] ids, long created) {
+            this.ids = ids;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The normalized key for a query on a catalog.
+     * The key is a copy of the query, so later changes to the query do not change the key.
+     * The query string is normalized, so differences in line separators do not give different keys.
+     */
+    public static class Key {
+        /** The name of the catalog.*/
+        protected final String catalogName;
+        /** The normalized query.*/
+        protected final CumulusQuery query;
+
+        /**
+         * Constructor.
+         * @param catalogName The name of the catalog.
+         * @param query The query.
+         */
+        public Key(String catalogName, CumulusQuery query) {
+            ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+            ArgumentCheck.checkNotNull(query, "CumulusQuery query");
+            this.catalogName = catalogName;
+            this.query = new CumulusQuery(query.getQuery().replace("\r\n", "\n"),
+                    EnumSet.copyOf(query.getFindFlags()), query.getCombineMode());
+            this.query.setLocale(query.getLocale());
+        }
+
+        /** @return The name of the catalog.*/
+        public String getCatalogName() {
+            return catalogName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj) {
+                return true;
+            }
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return catalogName.equals(other.catalogName) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * catalogName.hashCode() + query.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "[QueryResultCache.Key: " + catalogName + ", " + query + "]";
+        }
+    }
+}
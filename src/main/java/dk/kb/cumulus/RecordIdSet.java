@@ -0,0 +1,160 @@
+package dk.kb.cumulus;
+
+import java.util.BitSet;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Set of record IDs from a catalog, represented as a bitmap.
+ *
+ * The sets are used for combining the results of queries (e.g. the records in one category, but not with a given
+ * status) without retrieving the records. Only the records of the final set needs to be retrieved through
+ * CumulusServer.getRecords.
+ * The sets are immutable, and the operations create new sets.
+ * A set belongs to the catalog of its records, since the record IDs are only unique within a catalog, and only
+ * sets of the same catalog can be combined.
+ */
+public class RecordIdSet {
+    /** The name of the catalog of the records.*/
+    protected final String catalogName;
+    /** The bitmap of the record IDs.*/
+    protected final BitSet bits;
+
+    /**
+     * Constructor.
+     * @param catalogName The name of the catalog of the records.
+     * @param bits The bitmap of the record IDs. It is not copied, so it must not be changed afterwards.
+     */
+    protected RecordIdSet(String catalogName, BitSet bits) {
+        ArgumentCheck.checkNotNullOrEmpty(catalogName, "String catalogName");
+        this.catalogName = catalogName;
+        this.bits = bits;
+    }
+
+    /**
+     * Creates the empty set for a catalog.
+     * @param catalogName The name of the catalog.
+     * @return The empty set.
+     */
+    public static RecordIdSet empty(String catalogName) {
+        return new RecordIdSet(catalogName, new BitSet());
+    }
+
+    /**
+     * Creates the set of the given record IDs.
+     * @param catalogName The name of the catalog of the records.
+     * @param ids The record IDs.
+     * @return The set of the record IDs.
+     */
+    public static RecordIdSet of(String catalogName, int... ids) {
+        ArgumentCheck.checkNotNull(ids, "int... ids");
+        BitSet bits = new BitSet();
+        for(int id : ids) {
+            ArgumentCheck.checkNotNegativeInt(id, "int id");
+            bits.set(id);
+        }
+        return new RecordIdSet(catalogName, bits);
+    }
+
+    /**
+     * Creates the set of the IDs of the records in a result set.
+     * @param records The records.
+     * @return The set of the IDs of the records.
+     */
+    public static RecordIdSet of(CumulusRecordCollection records) {
+        ArgumentCheck.checkNotNull(records, "CumulusRecordCollection records");
+        return of(records.extractor.getCatalog(), records.getRecordIds());
+    }
+
+    /** @return The name of the catalog of the records.*/
+    public String getCatalogName() {
+        return catalogName;
+    }
+
+    /**
+     * @param other The other set, which must be of the same catalog.
+     * @return The set of the IDs in both this and the other set.
+     */
+    public RecordIdSet and(RecordIdSet other) {
+        checkSameCatalog(other);
+        BitSet res = (BitSet) bits.clone();
+        res.and(other.bits);
+        return new RecordIdSet(catalogName, res);
+    }
+
+    /**
+     * @param other The other set, which must be of the same catalog.
+     * @return The set of the IDs in either this or the other set.
+     */
+    public RecordIdSet or(RecordIdSet other) {
+        checkSameCatalog(other);
+        BitSet res = (BitSet) bits.clone();
+        res.or(other.bits);
+        return new RecordIdSet(catalogName, res);
+    }
+
+    /**
+     * @param other The other set, which must be of the same catalog.
+     * @return The set of the IDs in this set, which are not in the other set.
+     */
+    public RecordIdSet andNot(RecordIdSet other) {
+        checkSameCatalog(other);
+        BitSet res = (BitSet) bits.clone();
+        res.andNot(other.bits);
+        return new RecordIdSet(catalogName, res);
+    }
+
+    /**
+     * Checks that another set can be combined with this set, i.e. that it is of the same catalog.
+     * @param other The other set.
+     */
+    protected void checkSameCatalog(RecordIdSet other) {
+        ArgumentCheck.checkNotNull(other, "RecordIdSet other");
+        if(!catalogName.equals(other.catalogName)) {
+            throw new ArgumentCheck("Cannot combine the record IDs of the catalog '" + other.catalogName
+                    + "' with the record IDs of the catalog '" + catalogName + "'.");
+        }
+    }
+
+    /** @return The number of IDs in the set.*/
+    public int cardinality() {
+        return bits.cardinality();
+    }
+
+    /** @return Whether the set is empty.*/
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    /**
+     * @param id The record ID.
+     * @return Whether the set contains the record ID.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && bits.get(id);
+    }
+
+    /** @return The IDs of the set, in ascending order.*/
+    public int[] toArray() {
+        return bits.stream().toArray();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof RecordIdSet)) {
+            return false;
+        }
+        RecordIdSet other = (RecordIdSet) obj;
+        return catalogName.equals(other.catalogName) && bits.equals(other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * catalogName.hashCode() + bits.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "[RecordIdSet: " + cardinality() + " records of catalog '" + catalogName + "']";
+    }
+}
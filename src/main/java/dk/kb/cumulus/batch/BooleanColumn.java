@@ -0,0 +1,50 @@
+package dk.kb.cumulus.batch;
+
+import java.util.BitSet;
+
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Column for the boolean fields, stored in a bit set.
+ */
+public class BooleanColumn extends Column {
+    /** The rows with the value true.*/
+    protected final BitSet values;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     */
+    protected BooleanColumn(FieldHandle field) {
+        super(field);
+        this.values = new BitSet();
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The value of the row, or false if the record does not have a value.
+     */
+    public boolean getBoolean(int row) {
+        checkRow(row);
+        return values.get(row);
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        // The bit set grows by itself.
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        if(item.getBooleanValue(fieldUID)) {
+            values.set(row);
+        }
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return String.valueOf(values.get(row));
+    }
+}
@@ -0,0 +1,156 @@
+package dk.kb.cumulus.batch;
+
+import java.util.BitSet;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * The values of a single field for all the records of a RecordBatch.
+ *
+ * The values are stored in arrays indexed by the row of the record in the batch, and whether the record has a
+ * value for the field is kept in a bit set.
+ */
+public abstract class Column {
+    /** The handle for the field of this column.*/
+    protected final FieldHandle field;
+    /** The GUID of the field.*/
+    protected final GUID fieldUID;
+    /** The rows, which have a value for the field.*/
+    protected final BitSet present;
+    /** The number of rows in the column.*/
+    protected int size = 0;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field of this column.
+     */
+    protected Column(FieldHandle field) {
+        this.field = field;
+        this.fieldUID = field.getFieldUID();
+        this.present = new BitSet();
+    }
+
+    /** @return The handle for the field of this column.*/
+    public FieldHandle getField() {
+        return field;
+    }
+
+    /** @return The number of rows in the column.*/
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return Whether or not the record does not have a value for the field.
+     */
+    public boolean isNull(int row) {
+        checkRow(row);
+        return !present.get(row);
+    }
+
+    /**
+     * Retrieves the value of a row as a string, in the same format as the string value of the extracted field.
+     * @param row The row of the record in the batch.
+     * @return The string value, or null if the record does not have a value for the field.
+     */
+    public String getString(int row) {
+        if(isNull(row)) {
+            return null;
+        }
+        return formatValue(row);
+    }
+
+    /**
+     * Reads the value of the field from the item into the next row of the column.
+     * @param item The item to read.
+     */
+    protected void append(Item item) {
+        int row = size++;
+        ensureCapacity(size);
+        if(item.hasValue(fieldUID)) {
+            present.set(row);
+            readValue(item, row);
+        }
+    }
+
+    /**
+     * Validates that the row is within the column.
+     * @param row The row.
+     */
+    protected void checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new ArgumentCheck("The row " + row + " is not within the " + size + " rows of the column for '"
+                    + field.getName() + "'.");
+        }
+    }
+
+    /**
+     * Calculates the new capacity of a value array, which cannot contain the required number of rows.
+     * @param currentCapacity The current capacity of the array.
+     * @param required The required number of rows.
+     * @return The new capacity.
+     */
+    protected static int grow(int currentCapacity, int required) {
+        return Math.max(required, Math.max(16, currentCapacity + (currentCapacity >> 1)));
+    }
+
+    /**
+     * Makes sure, that the value arrays can contain the given number of rows.
+     * @param capacity The number of rows.
+     */
+    protected abstract void ensureCapacity(int capacity);
+
+    /**
+     * Reads the value of the field from an item, which is known to have a value for the field.
+     * @param item The item.
+     * @param row The row for the value.
+     */
+    protected abstract void readValue(Item item, int row);
+
+    /**
+     * Formats the value of a row, which is known to have a value, as a string.
+     * @param row The row.
+     * @return The string value.
+     */
+    protected abstract String formatValue(int row);
+
+    /**
+     * Creates the column for the given field.
+     * The numeric fields are stored in primitive arrays, and the enumerator fields (including the string lists)
+     * and the date-only fields are dictionary encoded.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     * @return The column.
+     */
+    public static Column create(FieldHandle field, int capacity) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        switch(field.getFieldType()) {
+        case FieldTypes.FieldTypeBool:
+            return new BooleanColumn(field);
+        case FieldTypes.FieldTypeDate:
+            return new DateColumn(field, capacity);
+        case FieldTypes.FieldTypeDouble:
+            return new DoubleColumn(field, capacity);
+        case FieldTypes.FieldTypeEnum:
+            return new DictionaryColumn(field, capacity);
+        case FieldTypes.FieldTypeInteger:
+            if(field.getValueInterpretation() == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY) {
+                return new DictionaryColumn(field, capacity);
+            }
+            return new LongColumn(field, capacity);
+        case FieldTypes.FieldTypeLong:
+            return new LongColumn(field, capacity);
+        case FieldTypes.FieldTypeString:
+            return new StringColumn(field, capacity);
+        default:
+            throw new ArgumentCheck("Cannot store the field '" + field.getName() + "' of type "
+                    + field.getReader().getTypeName() + " in a column.");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dk.kb.cumulus.batch;
+
+import java.time.Instant;
+import java.util.Date;
+
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Column for the date fields, stored as the milliseconds since the epoch in a primitive long array.
+ */
+public class DateColumn extends LongColumn {
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     */
+    protected DateColumn(FieldHandle field, int capacity) {
+        super(field, capacity);
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The date of the row, or null if the record does not have a value.
+     */
+    public Instant getInstant(int row) {
+        if(isNull(row)) {
+            return null;
+        }
+        return Instant.ofEpochMilli(values[row]);
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        values[row] = item.getDateValue(fieldUID).getTime();
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return new Date(values[row]).toString();
+    }
+}
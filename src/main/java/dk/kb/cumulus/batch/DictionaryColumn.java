@@ -0,0 +1,101 @@
+package dk.kb.cumulus.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Dictionary encoded column for the fields with few distinct values, e.g. the enumerator fields (including the
+ * string lists) and the date-only fields.
+ *
+ * Each distinct value is only stored once in the dictionary, and the rows only contain the code of their value.
+ */
+public class DictionaryColumn extends Column {
+    /** The code for the rows without a value.*/
+    public static final int NO_VALUE = -1;
+
+    /** The dictionary codes of the rows.*/
+    protected int[] codes;
+    /** The distinct values, indexed by their code.*/
+    protected final List<String> dictionary = new ArrayList<String>();
+    /** The codes of the distinct values.*/
+    protected final Map<String, Integer> dictionaryCodes = new HashMap<String, Integer>();
+    /** Whether the field is a date-only field, instead of an enumerator field.*/
+    protected final boolean dateOnly;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     */
+    protected DictionaryColumn(FieldHandle field, int capacity) {
+        super(field);
+        this.codes = new int[capacity];
+        Arrays.fill(codes, NO_VALUE);
+        this.dateOnly = field.getFieldType() == FieldTypes.FieldTypeInteger;
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The dictionary code of the value of the row, or NO_VALUE if the record does not have a value.
+     */
+    public int getCode(int row) {
+        checkRow(row);
+        return codes[row];
+    }
+
+    /**
+     * @return The distinct values of the column, indexed by their dictionary code.
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * @param value The value.
+     * @return The dictionary code of the value, or NO_VALUE if no row has the value.
+     */
+    public int getCode(String value) {
+        Integer res = dictionaryCodes.get(value);
+        return res == null ? NO_VALUE : res;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if(codes.length < capacity) {
+            int oldLength = codes.length;
+            codes = Arrays.copyOf(codes, grow(oldLength, capacity));
+            Arrays.fill(codes, oldLength, codes.length, NO_VALUE);
+        }
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        String value;
+        if(dateOnly) {
+            value = item.getDateOnlyValue(fieldUID).getUniversalDisplayString();
+        } else {
+            value = item.getStringEnumValue(fieldUID).getDisplayString();
+        }
+        Integer code = dictionaryCodes.get(value);
+        if(code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+        }
+        codes[row] = code;
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return dictionary.get(codes[row]);
+    }
+}
@@ -0,0 +1,51 @@
+package dk.kb.cumulus.batch;
+
+import java.util.Arrays;
+
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Column for the double fields, stored in a primitive double array.
+ */
+public class DoubleColumn extends Column {
+    /** The values of the rows. The rows without a value have the value 0.*/
+    protected double[] values;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     */
+    protected DoubleColumn(FieldHandle field, int capacity) {
+        super(field);
+        this.values = new double[capacity];
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The value of the row, or 0 if the record does not have a value.
+     */
+    public double getDouble(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if(values.length < capacity) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        values[row] = item.getDoubleValue(fieldUID);
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return String.valueOf(values[row]);
+    }
+}
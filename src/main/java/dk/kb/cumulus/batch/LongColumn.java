@@ -0,0 +1,59 @@
+package dk.kb.cumulus.batch;
+
+import java.util.Arrays;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Column for the integer and long fields, stored in a primitive long array.
+ */
+public class LongColumn extends Column {
+    /** The values of the rows. The rows without a value have the value 0.*/
+    protected long[] values;
+    /** Whether the field is an integer field, instead of a long field.*/
+    protected final boolean integerField;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     */
+    protected LongColumn(FieldHandle field, int capacity) {
+        super(field);
+        this.values = new long[capacity];
+        this.integerField = field.getFieldType() == FieldTypes.FieldTypeInteger;
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The value of the row, or 0 if the record does not have a value.
+     */
+    public long getLong(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if(values.length < capacity) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        if(integerField) {
+            values[row] = item.getIntValue(fieldUID);
+        } else {
+            values[row] = item.getLongValue(fieldUID);
+        }
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return String.valueOf(values[row]);
+    }
+}
@@ -0,0 +1,139 @@
+package dk.kb.cumulus.batch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Columnar representation of the values of a set of fields for a batch of records.
+ *
+ * Instead of a map of Field objects for each record, the batch has one column for each of the requested fields,
+ * which contains the values of the field for all the records in the batch.
+ * The numeric fields are stored in primitive arrays, and the enumerator fields are dictionary encoded, which
+ * makes it a lot cheaper to keep many records in memory for sorting or grouping.
+ */
+public class RecordBatch {
+    /** The extractor of the layout of the fields, or null if the batch has no fields.*/
+    protected final FieldExtractor extractor;
+    /** The columns, in the order of the requested fields.*/
+    protected final List<Column> columns;
+    /** The index of the columns, by the ordinal of their field handle. Fields without a column have -1.*/
+    protected final int[] columnIndex;
+    /** The Cumulus record IDs of the rows.*/
+    protected int[] recordIds;
+    /** The number of records in the batch.*/
+    protected int size = 0;
+
+    /**
+     * Constructor.
+     * @param capacity The expected number of records in the batch.
+     * @param fields The handles for the fields to extract. They must be from the same layout.
+     * @throws ArgumentCheck If the fields are from different layouts.
+     */
+    public RecordBatch(int capacity, FieldHandle... fields) {
+        ArgumentCheck.checkNotNegativeInt(capacity, "int capacity");
+        ArgumentCheck.checkNotNull(fields, "FieldHandle... fields");
+        this.extractor = fields.length > 0 ? checkSameLayout(fields) : null;
+        Column[] cols = new Column[fields.length];
+        int maxOrdinal = -1;
+        for(int i = 0; i < fields.length; i++) {
+            cols[i] = Column.create(fields[i], capacity);
+            maxOrdinal = Math.max(maxOrdinal, fields[i].getOrdinal());
+        }
+        this.columns = Collections.unmodifiableList(Arrays.asList(cols));
+        this.columnIndex = new int[maxOrdinal + 1];
+        Arrays.fill(columnIndex, -1);
+        for(int i = fields.length - 1; i >= 0; i--) {
+            columnIndex[fields[i].getOrdinal()] = i;
+        }
+        this.recordIds = new int[capacity];
+    }
+
+    /**
+     * Checks that the fields are from the same layout, so their ordinals can be used for indexing the columns.
+     * @param fields The handles for the fields. There must be at least one.
+     * @return The extractor of the first field, which the other fields must be compatible with.
+     * @throws ArgumentCheck If the fields are from different layouts.
+     */
+    public static FieldExtractor checkSameLayout(FieldHandle... fields) {
+        ArgumentCheck.checkNotNull(fields[0], "FieldHandle field");
+        FieldExtractor res = fields[0].getExtractor();
+        for(int i = 1; i < fields.length; i++) {
+            res.checkHandle(fields[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Extracts the requested fields of the item into a new row of the batch.
+     * @param item The item to extract.
+     */
+    public void add(Item item) {
+        if(recordIds.length == size) {
+            recordIds = Arrays.copyOf(recordIds, Column.grow(recordIds.length, size + 1));
+        }
+        recordIds[size++] = item.getID();
+        for(Column column : columns) {
+            column.append(item);
+        }
+    }
+
+    /** @return The number of records in the batch.*/
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row The row of the record in the batch.
+     * @return The Cumulus record ID of the record.
+     */
+    public int getRecordId(int row) {
+        if(row < 0 || row >= size) {
+            throw new ArgumentCheck("The row " + row + " is not within the " + size + " rows of the batch.");
+        }
+        return recordIds[row];
+    }
+
+    /** @return The columns, in the order of the requested fields.*/
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Retrieves the column for the given field.
+     * @param field The handle for the field.
+     * @return The column with the values of the field.
+     */
+    public Column getColumn(FieldHandle field) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        if(extractor != null) {
+            extractor.checkHandle(field);
+        }
+        int ordinal = field.getOrdinal();
+        if(ordinal >= columnIndex.length || columnIndex[ordinal] < 0) {
+            throw new ArgumentCheck("The field '" + field.getName() + "' was not extracted into the batch.");
+        }
+        return columns.get(columnIndex[ordinal]);
+    }
+
+    /**
+     * Retrieves the column for the given field, cast to the expected type of column.
+     * @param field The handle for the field.
+     * @param columnType The expected type of column.
+     * @return The column with the values of the field.
+     */
+    public <T extends Column> T getColumn(FieldHandle field, Class<T> columnType) {
+        Column res = getColumn(field);
+        if(!columnType.isInstance(res)) {
+            throw new ArgumentCheck("The field '" + field.getName() + "' is stored in a "
+                    + res.getClass().getSimpleName() + ", not a " + columnType.getSimpleName() + ".");
+        }
+        return columnType.cast(res);
+    }
+}
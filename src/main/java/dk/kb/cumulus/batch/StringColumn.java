@@ -0,0 +1,42 @@
+package dk.kb.cumulus.batch;
+
+import java.util.Arrays;
+
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.FieldHandle;
+
+/**
+ * Column for the free text string fields.
+ */
+public class StringColumn extends Column {
+    /** The values of the rows.*/
+    protected String[] values;
+
+    /**
+     * Constructor.
+     * @param field The handle for the field.
+     * @param capacity The expected number of rows.
+     */
+    protected StringColumn(FieldHandle field, int capacity) {
+        super(field);
+        this.values = new String[capacity];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity) {
+        if(values.length < capacity) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    protected void readValue(Item item, int row) {
+        values[row] = item.getStringValue(fieldUID);
+    }
+
+    @Override
+    protected String formatValue(int row) {
+        return values[row];
+    }
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import dk.kb.cumulus.utils.ArgumentCheck;
+
 /**
  * Configuration for accessing Cumulus.
  */
@@ -18,6 +20,8 @@ public class CumulusConfiguration {
     protected String userPassword;
     /** The catalogs to go through.*/
     protected final List<String> catalogs;
+    /** The number of sessions in the pool for parallel requests, or 0 for one session per catalog.*/
+    protected int sessionPoolSize = 0;
 
     /**
      * Constructor.
@@ -60,4 +64,22 @@ public class CumulusConfiguration {
     public List<String> getCatalogs() {
         return catalogs;
     }
+
+    /**
+     * Sets the number of sessions in the pool for parallel requests. A query across several catalogs needs a
+     * session for each of the catalogs, while the result is open.
+     * @param sessionPoolSize The number of sessions.
+     */
+    public void setSessionPoolSize(int sessionPoolSize) {
+        ArgumentCheck.checkPositiveInt(sessionPoolSize, "int sessionPoolSize");
+        this.sessionPoolSize = sessionPoolSize;
+    }
+
+    /** @return The number of sessions in the pool for parallel requests. By default one for each catalog.*/
+    public int getSessionPoolSize() {
+        if(sessionPoolSize > 0) {
+            return sessionPoolSize;
+        }
+        return Math.max(1, catalogs.size());
+    }
 }
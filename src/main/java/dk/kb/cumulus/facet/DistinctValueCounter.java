@@ -0,0 +1,113 @@
+package dk.kb.cumulus.facet;
+
+import java.util.Iterator;
+import java.util.List;
+
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.Column;
+import dk.kb.cumulus.batch.DictionaryColumn;
+import dk.kb.cumulus.batch.RecordBatch;
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.utils.HyperLogLog;
+
+/**
+ * Finds the distinct values of a field in the batches of a result set, with bounded memory.
+ *
+ * Up to a maximum number of distinct values are tracked with exact counts. All the values are also added to a
+ * HyperLogLog estimator, which gives the number of distinct values, when there are too many to track.
+ */
+public class DistinctValueCounter {
+    /** The default maximum number of tracked values.*/
+    public static final int DEFAULT_MAX_VALUES = 10000;
+
+    /** The field.*/
+    protected final FieldHandle field;
+    /** The maximum number of tracked values.*/
+    protected final int maxValues;
+    /** The counts of the tracked values.*/
+    protected final FacetCounts counts;
+    /** The estimator for the number of distinct values.*/
+    protected final HyperLogLog estimator = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+    /** The number of records with a value, which was not tracked.*/
+    protected long untracked = 0L;
+    /** The number of records.*/
+    protected long records = 0L;
+
+    /**
+     * Constructor.
+     * @param field The field.
+     * @param maxValues The maximum number of tracked values.
+     */
+    public DistinctValueCounter(FieldHandle field, int maxValues) {
+        ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        ArgumentCheck.checkPositiveInt(maxValues, "int maxValues");
+        this.field = field;
+        this.maxValues = maxValues;
+        this.counts = new FacetCounts(field.getName());
+    }
+
+    /**
+     * Counts the values of the field in the batches.
+     * @param batches The batches, which must contain the field.
+     * @return The distinct values.
+     */
+    public DistinctValues count(Iterator<RecordBatch> batches) {
+        ArgumentCheck.checkNotNull(batches, "Iterator<RecordBatch> batches");
+        while(batches.hasNext()) {
+            add(batches.next());
+        }
+        return new DistinctValues(counts, untracked == 0L, estimator.estimate(), untracked, records);
+    }
+
+    /**
+     * Counts the values of the field in a batch.
+     * The values of a dictionary encoded column are counted by their codes, so each distinct value of the batch
+     * is only looked up once.
+     * @param batch The batch.
+     */
+    protected void add(RecordBatch batch) {
+        Column column = batch.getColumn(field);
+        records += column.size();
+        if(column instanceof DictionaryColumn) {
+            DictionaryColumn dictionaryColumn = (DictionaryColumn) column;
+            List<String> dictionary = dictionaryColumn.getDictionary();
+            long[] codeCounts = new long[dictionary.size()];
+            for(int row = 0; row < column.size(); row++) {
+                int code = dictionaryColumn.getCode(row);
+                if(code == DictionaryColumn.NO_VALUE) {
+                    counts.addMissing(1L);
+                } else {
+                    codeCounts[code]++;
+                }
+            }
+            for(int code = 0; code < codeCounts.length; code++) {
+                if(codeCounts[code] > 0) {
+                    add(dictionary.get(code), codeCounts[code]);
+                }
+            }
+        } else {
+            for(int row = 0; row < column.size(); row++) {
+                String value = column.getString(row);
+                if(value == null) {
+                    counts.addMissing(1L);
+                } else {
+                    add(value, 1L);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a value, which is counted if it is already tracked or there is room for tracking it.
+     * @param value The value.
+     * @param count The number of records with the value.
+     */
+    protected void add(String value, long count) {
+        estimator.add(value);
+        if(counts.contains(value) || counts.getDistinctCount() < maxValues) {
+            counts.add(value, count);
+        } else {
+            untracked += count;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dk.kb.cumulus.facet;
+
+import java.util.Map;
+
+/**
+ * The distinct values of a field in the records found by a query.
+ *
+ * The values are counted exactly, until the maximum number of tracked values is reached. The values seen after
+ * that are not tracked, and only the number of distinct values is estimated.
+ */
+public class DistinctValues {
+    /** The counts of the tracked values.*/
+    protected final FacetCounts counts;
+    /** Whether all the values were tracked.*/
+    protected final boolean exact;
+    /** The estimated number of distinct values.*/
+    protected final long estimatedDistinctCount;
+    /** The number of records with a value, which was not tracked.*/
+    protected final long untrackedCount;
+    /** The number of records.*/
+    protected final long recordCount;
+
+    /**
+     * Constructor.
+     * @param counts The counts of the tracked values.
+     * @param exact Whether all the values were tracked.
+     * @param estimatedDistinctCount The estimated number of distinct values.
+     * @param untrackedCount The number of records with a value, which was not tracked.
+     * @param recordCount The number of records.
+     */
+    public DistinctValues(FacetCounts counts, boolean exact, long estimatedDistinctCount, long untrackedCount,
+            long recordCount) {
+        this.counts = counts;
+        this.exact = exact;
+        this.estimatedDistinctCount = estimatedDistinctCount;
+        this.untrackedCount = untrackedCount;
+        this.recordCount = recordCount;
+    }
+
+    /** @return The name of the field.*/
+    public String getFieldName() {
+        return counts.getFieldName();
+    }
+
+    /** @return Whether all the values were tracked, so the values and the counts are exact.*/
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return The number of distinct values. It is exact if all the values were tracked, and otherwise it is
+     * estimated.
+     */
+    public long getDistinctCount() {
+        return exact ? counts.getDistinctCount() : estimatedDistinctCount;
+    }
+
+    /** @return The tracked values and their counts, ordered by descending count.*/
+    public Map<String, Long> getValues() {
+        return counts.asMap();
+    }
+
+    /** @return The counts of the tracked values.*/
+    public FacetCounts getCounts() {
+        return counts;
+    }
+
+    /** @return The number of records without a value.*/
+    public long getMissingCount() {
+        return counts.getMissingCount();
+    }
+
+    /** @return The number of records with a value, which was not tracked.*/
+    public long getUntrackedCount() {
+        return untrackedCount;
+    }
+
+    /** @return The number of records.*/
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public String toString() {
+        return "[DistinctValues: " + getFieldName() + ", " + getDistinctCount() + (exact ? "" : " (estimated)")
+                + " distinct values in " + recordCount + " records]";
+    }
+}
@@ -0,0 +1,174 @@
+package dk.kb.cumulus.facet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.Column;
+import dk.kb.cumulus.batch.DictionaryColumn;
+import dk.kb.cumulus.batch.RecordBatch;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Counts the records for each value of some fields in one pass over the batches of a result set.
+ *
+ * Only the facet fields are extracted into the batches. The values of dictionary encoded columns are counted by
+ * their code, so each distinct value of a batch is only looked up once.
+ * The batches are read by the calling thread, since a Cumulus session must only be used by one thread. With a
+ * parallelism above 1 the batches are counted in parallel, and the partial counts are merged afterwards.
+ */
+public class FacetCounter {
+    /** The fields to count.*/
+    protected final FieldHandle[] fields;
+    /** The number of threads for counting the batches.*/
+    protected final int parallelism;
+
+    /**
+     * Constructor.
+     * @param parallelism The number of threads for counting the batches. 1 counts on the calling thread.
+     * @param fields The fields to count.
+     */
+    public FacetCounter(int parallelism, FieldHandle... fields) {
+        ArgumentCheck.checkPositiveInt(parallelism, "int parallelism");
+        ArgumentCheck.checkNotNull(fields, "FieldHandle... fields");
+        ArgumentCheck.checkTrue(fields.length > 0, "At least one field must be given.");
+        this.parallelism = parallelism;
+        this.fields = fields.clone();
+    }
+
+    /**
+     * Counts the values of the fields in the batches.
+     * @param batches The batches, which must contain the fields.
+     * @return The facets.
+     */
+    public FacetResult count(Iterator<RecordBatch> batches) {
+        ArgumentCheck.checkNotNull(batches, "Iterator<RecordBatch> batches");
+        FacetCounts[] totals = newCounts();
+        long records = 0L;
+        if(parallelism == 1) {
+            while(batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                countBatch(batch, totals);
+                records += batch.size();
+            }
+        } else {
+            records = countInParallel(batches, totals);
+        }
+        Map<String, FacetCounts> facets = new LinkedHashMap<String, FacetCounts>();
+        for(FacetCounts counts : totals) {
+            facets.put(counts.getFieldName(), counts);
+        }
+        return new FacetResult(facets, records);
+    }
+
+    /**
+     * Counts the batches in parallel, and merges the partial counts.
+     * At most two batches per thread are read ahead, so the memory is bounded.
+     * @param batches The batches.
+     * @param totals The counts to merge the partial counts into.
+     * @return The number of records counted.
+     */
+    protected long countInParallel(Iterator<RecordBatch> batches, FacetCounts[] totals) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Semaphore readAhead = new Semaphore(parallelism * 2);
+        List<Future<FacetCounts[]>> partials = new ArrayList<Future<FacetCounts[]>>();
+        long records = 0L;
+        try {
+            while(batches.hasNext()) {
+                final RecordBatch batch = batches.next();
+                records += batch.size();
+                readAhead.acquire();
+                partials.add(executor.submit(() -> {
+                    try {
+                        FacetCounts[] res = newCounts();
+                        countBatch(batch, res);
+                        return res;
+                    } finally {
+                        readAhead.release();
+                    }
+                }));
+            }
+            for(Future<FacetCounts[]> partial : partials) {
+                FacetCounts[] counts = partial.get();
+                for(int i = 0; i < totals.length; i++) {
+                    totals[i].merge(counts[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting the facets.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not count the facets.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return records;
+    }
+
+    /**
+     * Counts the values of the fields in a batch.
+     * @param batch The batch.
+     * @param counts The counts for the fields, in the order of the fields.
+     */
+    protected void countBatch(RecordBatch batch, FacetCounts[] counts) {
+        for(int i = 0; i < fields.length; i++) {
+            Column column = batch.getColumn(fields[i]);
+            if(column instanceof DictionaryColumn) {
+                countCodes((DictionaryColumn) column, counts[i]);
+            } else {
+                for(int row = 0; row < column.size(); row++) {
+                    String value = column.getString(row);
+                    if(value == null) {
+                        counts[i].addMissing(1L);
+                    } else {
+                        counts[i].add(value, 1L);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the values of a dictionary encoded column by their codes.
+     * @param column The column.
+     * @param counts The counts for the field.
+     */
+    protected void countCodes(DictionaryColumn column, FacetCounts counts) {
+        List<String> dictionary = column.getDictionary();
+        long[] codeCounts = new long[dictionary.size()];
+        long missing = 0L;
+        for(int row = 0; row < column.size(); row++) {
+            int code = column.getCode(row);
+            if(code == DictionaryColumn.NO_VALUE) {
+                missing++;
+            } else {
+                codeCounts[code]++;
+            }
+        }
+        for(int code = 0; code < codeCounts.length; code++) {
+            if(codeCounts[code] > 0) {
+                counts.add(dictionary.get(code), codeCounts[code]);
+            }
+        }
+        counts.addMissing(missing);
+    }
+
+    /**
+     * @return New empty counts for the fields, in the order of the fields.
+     */
+    protected FacetCounts[] newCounts() {
+        FacetCounts[] res = new FacetCounts[fields.length];
+        for(int i = 0; i < fields.length; i++) {
+            res[i] = new FacetCounts(fields[i].getName());
+        }
+        return res;
+    }
+}
@@ -0,0 +1,178 @@
+package dk.kb.cumulus.facet;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * The number of records for each value of a field.
+ *
+ * Each distinct value gets a slot, and the counts are kept in a primitive array indexed by the slot, so counting
+ * a value only costs a lookup of the slot, and no objects are created for the counts.
+ */
+public class FacetCounts {
+    /** The name of the field.*/
+    protected final String fieldName;
+    /** The slots of the values.*/
+    protected final Map<String, Integer> slots = new HashMap<String, Integer>();
+    /** The values, indexed by their slot.*/
+    protected String[] values = new String[16];
+    /** The counts, indexed by the slot of their value.*/
+    protected long[] counts = new long[16];
+    /** The number of records without a value.*/
+    protected long missing = 0L;
+
+    /**
+     * Constructor.
+     * @param fieldName The name of the field.
+     */
+    public FacetCounts(String fieldName) {
+        ArgumentCheck.checkNotNullOrEmpty(fieldName, "String fieldName");
+        this.fieldName = fieldName;
+    }
+
+    /** @return The name of the field.*/
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Adds to the count of a value.
+     * @param value The value.
+     * @param count The number of records with the value.
+     */
+    public void add(String value, long count) {
+        int slot = slot(value);
+        counts[slot] += count;
+    }
+
+    /**
+     * Adds to the count of the records without a value.
+     * @param count The number of records without a value.
+     */
+    public void addMissing(long count) {
+        missing += count;
+    }
+
+    /**
+     * Adds the counts of another facet for the same field.
+     * @param other The other facet.
+     */
+    public void merge(FacetCounts other) {
+        ArgumentCheck.checkNotNull(other, "FacetCounts other");
+        for(int i = 0; i < other.slots.size(); i++) {
+            add(other.values[i], other.counts[i]);
+        }
+        missing += other.missing;
+    }
+
+    /**
+     * @param value The value.
+     * @return The number of records with the value.
+     */
+    public long getCount(String value) {
+        Integer slot = slots.get(value);
+        return slot == null ? 0L : counts[slot];
+    }
+
+    /**
+     * @param value The value.
+     * @return Whether the value has been counted.
+     */
+    public boolean contains(String value) {
+        return slots.containsKey(value);
+    }
+
+    /** @return The number of records without a value.*/
+    public long getMissingCount() {
+        return missing;
+    }
+
+    /** @return The number of distinct values.*/
+    public int getDistinctCount() {
+        return slots.size();
+    }
+
+    /**
+     * Finds the values with the highest counts, using a heap of at most k values.
+     * @param k The maximum number of values.
+     * @return The values and their counts, ordered by descending count, and ascending value for equal counts.
+     */
+    public List<Map.Entry<String, Long>> getTopK(int k) {
+        ArgumentCheck.checkPositiveInt(k, "int k");
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.min(k, slots.size()) + 1,
+                (a, b) -> compareSlots(b, a));
+        for(int slot = 0; slot < slots.size(); slot++) {
+            heap.add(slot);
+            if(heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<String, Long>> res = new ArrayList<Map.Entry<String, Long>>(heap.size());
+        while(!heap.isEmpty()) {
+            int slot = heap.poll();
+            res.add(new AbstractMap.SimpleImmutableEntry<String, Long>(values[slot], counts[slot]));
+        }
+        Collections.reverse(res);
+        return res;
+    }
+
+    /**
+     * @return The counts of all the values, ordered by descending count.
+     */
+    public Map<String, Long> asMap() {
+        Map<String, Long> res = new LinkedHashMap<String, Long>();
+        if(!slots.isEmpty()) {
+            for(Map.Entry<String, Long> entry : getTopK(slots.size())) {
+                res.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Compares the values of two slots, so the highest count, and then the lowest value, comes first.
+     * @param a The first slot.
+     * @param b The second slot.
+     * @return The comparison of the slots.
+     */
+    protected int compareSlots(int a, int b) {
+        int res = Long.compare(counts[b], counts[a]);
+        if(res == 0) {
+            res = values[a].compareTo(values[b]);
+        }
+        return res;
+    }
+
+    /**
+     * Finds the slot of a value, and creates the slot if the value is new.
+     * @param value The value.
+     * @return The slot of the value.
+     */
+    protected int slot(String value) {
+        Integer res = slots.get(value);
+        if(res == null) {
+            res = slots.size();
+            if(res == values.length) {
+                values = Arrays.copyOf(values, res * 2);
+                counts = Arrays.copyOf(counts, res * 2);
+            }
+            values[res] = value;
+            slots.put(value, res);
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "[FacetCounts: " + fieldName + ", " + slots.size() + " values, " + missing + " missing]";
+    }
+}
@@ -0,0 +1,63 @@
+package dk.kb.cumulus.facet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * The facets of the records found by a query.
+ */
+public class FacetResult {
+    /** The facets by the name of their field, in the order of the fields.*/
+    protected final Map<String, FacetCounts> facets;
+    /** The number of records counted.*/
+    protected final long recordCount;
+
+    /**
+     * Constructor.
+     * @param facets The facets by the name of their field.
+     * @param recordCount The number of records counted.
+     */
+    public FacetResult(Map<String, FacetCounts> facets, long recordCount) {
+        this.facets = Collections.unmodifiableMap(facets);
+        this.recordCount = recordCount;
+    }
+
+    /** @return The facets by the name of their field.*/
+    public Map<String, FacetCounts> getFacets() {
+        return facets;
+    }
+
+    /**
+     * @param fieldName The name of the field.
+     * @return The facet for the field.
+     */
+    public FacetCounts getFacet(String fieldName) {
+        FacetCounts res = facets.get(fieldName);
+        if(res == null) {
+            throw new ArgumentCheck("No facet for the field '" + fieldName + "'.");
+        }
+        return res;
+    }
+
+    /**
+     * @param fieldName The name of the field.
+     * @param k The maximum number of values.
+     * @return The values of the field with the highest counts, ordered by descending count.
+     */
+    public List<Map.Entry<String, Long>> getTopK(String fieldName, int k) {
+        return getFacet(fieldName).getTopK(k);
+    }
+
+    /** @return The number of records counted.*/
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public String toString() {
+        return "[FacetResult: " + recordCount + " records, " + facets.values() + "]";
+    }
+}
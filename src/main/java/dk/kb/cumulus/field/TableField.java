@@ -1,7 +1,9 @@
 package dk.kb.cumulus.field;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -10,13 +12,29 @@ import com.canto.cumulus.Item;
 import com.canto.cumulus.ItemCollection;
 
 import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
 
 /**
  * A Cumulus Table.
+ * 
+ * The rows of the table are only extracted, when they are needed. 
+ * The number of rows is retrieved directly from the item collection, and single rows or columns can be extracted
+ * without extracting the whole table.
  */
 public class TableField extends Field{
-    /** The rows of the table.*/
-    protected final List<Row> rows;
+    /** The item collection with the rows of the table.*/
+    protected final ItemCollection itemCollection;
+    /** The field extractor for the record containing the table.*/
+    protected final FieldExtractor fe;
+    /** The field extractor for the rows of the table. It is retrieved the first time it is needed.*/
+    protected FieldExtractor extractor = null;
+    /** The number of rows in the table. It is retrieved the first time it is needed.*/
+    protected int rowCount = -1;
+    /** The rows of the table, which have already been extracted, indexed by their position in the table.*/
+    protected Row[] rows = null;
+    /** Whether or not all the rows of the table have been extracted.*/
+    protected boolean allRowsExtracted = false;
     
     /**
      * Constructor.
@@ -28,24 +46,119 @@ public class TableField extends Field{
     public TableField(FieldDefinition fieldDefinition, String fieldType, ItemCollection itemCollection, 
             FieldExtractor fe) {
         super(fieldDefinition, fieldType);
-        this.rows = new ArrayList<Row>();
-        FieldExtractor extractor = new FieldExtractor(itemCollection.getLayout(), fe.getServer(), fe.getCatalog());
-        for(Item i : itemCollection) {
-            rows.add(new Row(extractor.getMap(i)));
+        this.itemCollection = itemCollection;
+        this.fe = fe;
+    }
+    
+    /**
+     * @return The number of rows in the table.
+     */
+    public int getRowCount() {
+        if(rowCount < 0) {
+            rowCount = itemCollection.getItemCount();
+        }
+        return rowCount;
+    }
+    
+    /**
+     * Extracts a single row of the table.
+     * @param index The position of the row in the table.
+     * @return The row.
+     */
+    public Row getRow(int index) {
+        if(index < 0 || index >= getRowCount()) {
+            throw new ArgumentCheck("The row " + index + " is not within the " + getRowCount() 
+                    + " rows of the table '" + getName() + "'.");
         }
+        Row[] extracted = getRowArray();
+        if(extracted[index] == null) {
+            extracted[index] = new Row(getExtractor().getMap(itemCollection.getItemByIndex(index)), false);
+        }
+        return extracted[index];
     }
     
     /**
+     * Extracts the values of a single column of the table, without extracting the other columns of the rows, 
+     * which have not already been extracted.
+     * @param columnName The name of the column.
+     * @return The values of the column in the order of the rows. Rows without a value for the column have null.
+     */
+    public List<String> getColumn(String columnName) {
+        ArgumentCheck.checkNotNullOrEmpty(columnName, "String columnName");
+        List<String> res = new ArrayList<String>(getRowCount());
+        if(getRowCount() == 0) {
+            return res;
+        }
+        FieldHandle column = getExtractor().getFieldHandle(columnName);
+        Row[] extracted = getRowArray();
+        Iterator<Item> items = itemCollection.iterator();
+        for(int i = 0; i < extracted.length && items.hasNext(); i++) {
+            Item item = items.next();
+            if(extracted[i] != null) {
+                res.add(extracted[i].getElements().get(column.getName()));
+            } else {
+                StringField f = (StringField) column.getReader().read(item, true);
+                res.add(f == null ? null : f.getStringValue());
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Extracts all the rows of the table, which have not already been extracted.
      * @return The rows of the table.
      */
     public List<Row> getRows() {
-        return rows;
+        if(!allRowsExtracted) {
+            Row[] extracted = getRowArray();
+            if(extracted.length > 0) {
+                Iterator<Item> items = itemCollection.iterator();
+                for(int i = 0; i < extracted.length && items.hasNext(); i++) {
+                    Item item = items.next();
+                    if(extracted[i] == null) {
+                        extracted[i] = new Row(getExtractor().getMap(item), false);
+                    }
+                }
+            }
+            allRowsExtracted = true;
+        }
+        return new AbstractList<Row>() {
+            @Override
+            public Row get(int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return getRowCount();
+            }
+        };
     }
 
     @Override
     public boolean isEmpty() {
-        return rows.isEmpty();
+        return getRowCount() == 0;
     };
+    
+    /**
+     * @return The array for the extracted rows. It is created the first time it is needed.
+     */
+    protected Row[] getRowArray() {
+        if(rows == null) {
+            rows = new Row[getRowCount()];
+        }
+        return rows;
+    }
+    
+    /**
+     * @return The field extractor for the rows of the table. It is shared by all the tables of the same field.
+     */
+    protected FieldExtractor getExtractor() {
+        if(extractor == null) {
+            extractor = fe.getNestedExtractor(definition, itemCollection.getLayout());
+        }
+        return extractor;
+    }
 
     /**
      * Class for containing the rows of the table.
@@ -59,7 +172,20 @@ public class TableField extends Field{
          * @param coloumns The mapping between the coloumn names and the value in the row.
          */
         public Row(Map<String, String> coloumns) {
-            this.elements = new HashMap<String, String>(coloumns);
+            this(coloumns, true);
+        }
+        
+        /**
+         * Constructor.
+         * @param coloumns The mapping between the coloumn names and the value in the row.
+         * @param copy Whether or not to copy the mapping, instead of using it directly.
+         */
+        protected Row(Map<String, String> coloumns, boolean copy) {
+            if(copy) {
+                this.elements = new HashMap<String, String>(coloumns);
+            } else {
+                this.elements = coloumns;
+            }
         }
         
         /**
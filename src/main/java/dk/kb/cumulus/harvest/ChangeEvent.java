@@ -0,0 +1,104 @@
+package dk.kb.cumulus.harvest;
+
+import java.time.Instant;
+
+/**
+ * Event for a change of a record in a catalog, detected by the CumulusChangeWatcher.
+ * The event is detached from the Cumulus session, which detected the change, so it only has the ID of the record.
+ */
+public class ChangeEvent {
+    /**
+     * The types of changes.
+     */
+    public enum Type {
+        /** The record has been created.*/
+        CREATED,
+        /** The record has been modified.*/
+        MODIFIED,
+        /** The value of a watched field of the record has changed.*/
+        FIELD_CHANGED
+    }
+
+    /** The type of change.*/
+    protected final Type type;
+    /** The name of the catalog.*/
+    protected final String catalog;
+    /** The ID of the changed record.*/
+    protected final int recordId;
+    /** The modification date of the record.*/
+    protected final Instant modified;
+    /** The name of the changed field. Only for FIELD_CHANGED events.*/
+    protected final String fieldName;
+    /** The previous value of the changed field, if it is known. Only for FIELD_CHANGED events.*/
+    protected final String oldValue;
+    /** The new value of the changed field. Only for FIELD_CHANGED events.*/
+    protected final String newValue;
+
+    /**
+     * Constructor.
+     * @param type The type of change.
+     * @param catalog The name of the catalog.
+     * @param recordId The ID of the changed record.
+     * @param modified The modification date of the record.
+     * @param fieldName The name of the changed field, or null if it is not a FIELD_CHANGED event.
+     * @param oldValue The previous value of the changed field.
+     * @param newValue The new value of the changed field.
+     */
+    protected ChangeEvent(Type type, String catalog, int recordId, Instant modified, String fieldName,
+            String oldValue, String newValue) {
+        this.type = type;
+        this.catalog = catalog;
+        this.recordId = recordId;
+        this.modified = modified;
+        this.fieldName = fieldName;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /** @return The type of change.*/
+    public Type getType() {
+        return type;
+    }
+
+    /** @return The name of the catalog.*/
+    public String getCatalog() {
+        return catalog;
+    }
+
+    /** @return The ID of the changed record.*/
+    public int getRecordId() {
+        return recordId;
+    }
+
+    /** @return The modification date of the record. This can be null.*/
+    public Instant getModified() {
+        return modified;
+    }
+
+    /** @return The name of the changed field, or null if it is not a FIELD_CHANGED event.*/
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return The previous value of the changed field. Null if it did not have a value, or if it is not known.
+     * The CumulusChangeWatcher does not keep the previous values, so it is always null from the watcher.
+     */
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    /** @return The new value of the changed field. Null if it no longer has a value.*/
+    public String getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    public String toString() {
+        String res = "[ChangeEvent: " + type + " of record " + recordId + " in " + catalog;
+        if(fieldName != null) {
+            res += ", '" + fieldName + "': '" + oldValue + "' -> '" + newValue + "'";
+        }
+        return res + "]";
+    }
+}
@@ -0,0 +1,13 @@
+package dk.kb.cumulus.harvest;
+
+/**
+ * Listener for the changes of the records in a catalog, detected by the CumulusChangeWatcher.
+ */
+public interface ChangeListener {
+    /**
+     * Called for each change of a record in the catalog, which the listener has been registered for.
+     * The listener is called on the dispatcher of the watcher, so it must retrieve the record with its own session.
+     * @param event The change.
+     */
+    void onChange(ChangeEvent event);
+}
@@ -0,0 +1,502 @@
+package dk.kb.cumulus.harvest;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQuery;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.CumulusSessionPool;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Watcher for the changes of the records in the catalogs of a Cumulus server.
+ *
+ * Each watched catalog is polled for the records modified since the previous poll, and the changes are
+ * dispatched as events to all the listeners for the catalog. Thus all the listeners of a catalog share the same
+ * poll, instead of each running their own queries.
+ *
+ * The interval between the polls adapts to the activity of the catalog: it is reset to the minimum interval after
+ * a poll which found changes, and it is doubled (up to the maximum interval) after a poll without any changes.
+ *
+ * The first poll of a catalog only establishes the state of the catalog, and does not dispatch any events.
+ * The changes of the watched fields are detected against the values of the previous poll. Only a 64 bit hash of
+ * each value is kept between the polls, so the FIELD_CHANGED events do not have the previous value of the field.
+ * The hashes are kept in primitive arrays, which take between 16 and 32 bytes per record of the catalog for each
+ * watched field, e.g. up to 320 MB for each watched field of a catalog with 10 million records. The hashes are
+ * kept for as long as the field is watched by any listener of the catalog.
+ *
+ * The events for a record from a single poll are delivered to each listener in order, as one task on the
+ * dispatcher. The events from different polls are not ordered, if the dispatcher has more than one thread and a
+ * listener is still handling the events of the previous poll.
+ *
+ * A Cumulus session must only be used by one thread at a time, so each poll runs on the scheduler with its own
+ * session borrowed from the session pool, and releases it when the poll is done. The polls of a catalog are never
+ * run concurrently, but the polls of different catalogs may be, if the scheduler has more than one thread.
+ * The events only carry the ID of the record and the detected values, not the record itself, so the listeners
+ * never use the session of the poll. A listener, which needs the record, must retrieve it by its ID with its own
+ * session, e.g. borrowed from the same pool.
+ */
+public class CumulusChangeWatcher implements Closeable {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(CumulusChangeWatcher.class);
+
+    /** The pool of sessions for the polls.*/
+    protected final CumulusSessionPool sessions;
+    /** The scheduler for the polls.*/
+    protected final ScheduledExecutorService scheduler;
+    /** The executor for dispatching the events to the listeners.*/
+    protected final Executor dispatcher;
+    /** The minimum interval between the polls of a catalog, in milliseconds.*/
+    protected final long minIntervalMillis;
+    /** The maximum interval between the polls of a catalog, in milliseconds.*/
+    protected final long maxIntervalMillis;
+    /** The watched catalogs, by their name.*/
+    protected final ConcurrentMap<String, CatalogWatch> catalogs = new ConcurrentHashMap<String, CatalogWatch>();
+    /** Whether or not the watcher has been closed.*/
+    protected volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     * @param sessions The pool of sessions for the polls.
+     * @param scheduler The scheduler for the polls.
+     * @param dispatcher The executor for dispatching the events to the listeners.
+     * @param minIntervalMillis The minimum interval between the polls of a catalog, in milliseconds.
+     * @param maxIntervalMillis The maximum interval between the polls of a catalog, in milliseconds.
+     */
+    public CumulusChangeWatcher(CumulusSessionPool sessions, ScheduledExecutorService scheduler,
+            Executor dispatcher, long minIntervalMillis, long maxIntervalMillis) {
+        ArgumentCheck.checkNotNull(sessions, "CumulusSessionPool sessions");
+        ArgumentCheck.checkNotNull(scheduler, "ScheduledExecutorService scheduler");
+        ArgumentCheck.checkNotNull(dispatcher, "Executor dispatcher");
+        ArgumentCheck.checkPositiveLong(minIntervalMillis, "long minIntervalMillis");
+        ArgumentCheck.checkTrue(maxIntervalMillis >= minIntervalMillis,
+                "The maximum interval must not be less than the minimum interval.");
+        this.sessions = sessions;
+        this.scheduler = scheduler;
+        this.dispatcher = dispatcher;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    /**
+     * Registers a listener for the changes of the records in a catalog.
+     * The catalog is polled from the first listener is registered.
+     * @param catalog The name of the catalog.
+     * @param listener The listener.
+     * @param watchedFields The names of the fields, which the listener should receive FIELD_CHANGED events for.
+     */
+    public void addListener(String catalog, ChangeListener listener, String... watchedFields) {
+        ArgumentCheck.checkNotNullOrEmpty(catalog, "String catalog");
+        ArgumentCheck.checkNotNull(listener, "ChangeListener listener");
+        if(closed) {
+            throw new IllegalStateException("The change watcher has been closed.");
+        }
+        CatalogWatch watch = catalogs.get(catalog);
+        if(watch == null) {
+            CatalogWatch created = new CatalogWatch(catalog);
+            watch = catalogs.putIfAbsent(catalog, created);
+            if(watch == null) {
+                watch = created;
+                watch.schedule(0L);
+            }
+        }
+        watch.registrations.add(new Registration(listener, watchedFields));
+    }
+
+    /**
+     * Removes a listener from a catalog.
+     * @param catalog The name of the catalog.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(String catalog, ChangeListener listener) {
+        CatalogWatch watch = catalogs.get(catalog);
+        if(watch != null) {
+            for(Registration registration : watch.registrations) {
+                if(registration.listener == listener) {
+                    watch.registrations.remove(registration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current interval between the polls of a catalog.
+     * @param catalog The name of the catalog.
+     * @return The interval in milliseconds, or -1 if the catalog is not watched.
+     */
+    public long getInterval(String catalog) {
+        CatalogWatch watch = catalogs.get(catalog);
+        return watch == null ? -1L : watch.intervalMillis;
+    }
+
+    /**
+     * Polls a catalog for changes with a session from the pool, dispatches the events and schedules the next poll.
+     * @param catalog The name of the catalog.
+     */
+    protected void poll(String catalog) {
+        CatalogWatch watch = catalogs.get(catalog);
+        if(watch == null || closed) {
+            return;
+        }
+        CumulusServer session = null;
+        try {
+            session = sessions.borrow();
+            int changes = watch.poll(session);
+            if(changes > 0) {
+                watch.intervalMillis = minIntervalMillis;
+            } else {
+                watch.intervalMillis = Math.min(maxIntervalMillis, watch.intervalMillis * 2);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to poll the catalog '" + catalog + "' for changes.", e);
+            watch.intervalMillis = maxIntervalMillis;
+        } finally {
+            if(session != null) {
+                sessions.release(session);
+            }
+        }
+        watch.schedule(watch.intervalMillis);
+    }
+
+    /**
+     * Dispatches the events for a record to the listeners of a catalog.
+     * The events are delivered to each listener in order, as one task on the dispatcher.
+     * The FIELD_CHANGED events are only dispatched to the listeners, which watch the changed field.
+     * @param watch The watch of the catalog.
+     * @param events The events for the record.
+     */
+    protected void dispatch(CatalogWatch watch, List<ChangeEvent> events) {
+        for(final Registration registration : watch.registrations) {
+            final List<ChangeEvent> relevant = new ArrayList<ChangeEvent>();
+            for(ChangeEvent event : events) {
+                if(event.getType() != ChangeEvent.Type.FIELD_CHANGED
+                        || registration.watchedFields.contains(event.getFieldName().toLowerCase(Locale.ROOT))) {
+                    relevant.add(event);
+                }
+            }
+            if(relevant.isEmpty()) {
+                continue;
+            }
+            dispatcher.execute(() -> {
+                for(ChangeEvent event : relevant) {
+                    try {
+                        registration.listener.onChange(event);
+                    } catch (RuntimeException e) {
+                        log.warn("The listener '" + registration.listener + "' failed to handle " + event, e);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for(CatalogWatch watch : catalogs.values()) {
+            if(watch.future != null) {
+                watch.future.cancel(false);
+            }
+        }
+        catalogs.clear();
+    }
+
+    /**
+     * The registration of a listener.
+     */
+    protected static class Registration {
+        /** The listener.*/
+        protected final ChangeListener listener;
+        /** The lower case names of the fields watched by the listener.*/
+        protected final Set<String> watchedFields = new HashSet<String>();
+
+        /**
+         * Constructor.
+         * @param listener The listener.
+         * @param watchedFields The names of the fields watched by the listener.
+         */
+        protected Registration(ChangeListener listener, String... watchedFields) {
+            this.listener = listener;
+            if(watchedFields != null) {
+                for(String field : watchedFields) {
+                    this.watchedFields.add(field.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of the polls of a catalog.
+     * It is only accessed by the poll of the catalog, which is never run concurrently.
+     */
+    protected class CatalogWatch {
+        /** The name of the catalog.*/
+        protected final String catalog;
+        /** The registered listeners.*/
+        protected final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+        /** The state of the changes, which have already been detected. Null before the first poll.*/
+        protected HarvestState state = null;
+        /** The hashes of the values of the watched fields, by the lower case name of the field.*/
+        protected final Map<String, FieldHashes> fieldHashes = new HashMap<String, FieldHashes>();
+        /** The current interval between the polls, in milliseconds.*/
+        protected volatile long intervalMillis;
+        /** The scheduled poll.*/
+        protected volatile ScheduledFuture<?> future;
+
+        /**
+         * Constructor.
+         * @param catalog The name of the catalog.
+         */
+        protected CatalogWatch(String catalog) {
+            this.catalog = catalog;
+            this.intervalMillis = minIntervalMillis;
+        }
+
+        /**
+         * Schedules the next poll of the catalog.
+         * @param delayMillis The delay until the poll, in milliseconds.
+         */
+        protected void schedule(long delayMillis) {
+            if(!closed) {
+                future = scheduler.schedule(() -> CumulusChangeWatcher.this.poll(catalog), delayMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * @return The lower case names of the fields watched by any of the listeners.
+         */
+        protected Set<String> getWatchedFields() {
+            Set<String> res = new HashSet<String>();
+            for(Registration registration : registrations) {
+                res.addAll(registration.watchedFields);
+            }
+            return res;
+        }
+
+        /**
+         * Polls the catalog for the records modified since the previous poll, and dispatches the events.
+         * @param session The session for the poll, which must not be used by any other thread during the poll.
+         * @return The number of changed records.
+         */
+        protected int poll(CumulusServer session) {
+            boolean initialPoll = state == null;
+            HarvestState previous = initialPoll ? new HarvestState(catalog, null, Collections.<Integer>emptySet())
+                    : state;
+            CumulusQuery query;
+            if(previous.getHighWaterMark() == null) {
+                query = CumulusQuery.getQueryForAllInCatalog(catalog);
+            } else {
+                query = CumulusQuery.getQueryForModifiedSince(catalog, previous.getHighWaterMark());
+            }
+            CumulusRecordCollection records = session.getItems(catalog, query);
+            FieldHandle modificationDate = records.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE);
+            FieldHandle creationDate = findHandle(records, Constants.FieldNames.ITEM_CREATION_DATE);
+            Map<String, FieldHandle> watched = new HashMap<String, FieldHandle>();
+            for(String field : getWatchedFields()) {
+                FieldHandle handle = findHandle(records, field);
+                if(handle != null) {
+                    watched.put(field, handle);
+                }
+            }
+            fieldHashes.keySet().retainAll(watched.keySet());
+
+            Instant previousMark = previous.getHighWaterMark();
+            HarvestState.Tracker tracker = previous.track();
+            int changes = 0;
+            for(CumulusRecord record : records) {
+                int id = record.getID();
+                Instant modified = record.getInstant(modificationDate);
+                if(!previous.isNewOrChanged(id, modified)) {
+                    continue;
+                }
+                tracker.register(id, modified);
+                List<ChangeEvent> fieldEvents = detectFieldChanges(record, modified, watched);
+                if(initialPoll) {
+                    continue;
+                }
+                changes++;
+                Instant created = creationDate == null ? null : record.getInstant(creationDate);
+                boolean isNew = created != null && previousMark != null && created.isAfter(previousMark);
+                List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+                events.add(new ChangeEvent(isNew ? ChangeEvent.Type.CREATED : ChangeEvent.Type.MODIFIED,
+                        catalog, id, modified, null, null, null));
+                events.addAll(fieldEvents);
+                dispatch(this, events);
+            }
+            state = tracker.getState();
+            log.debug("Polled catalog '{}': {} changed records, state: {}", catalog, changes, state);
+            return changes;
+        }
+
+        /**
+         * Reads the watched fields of a record, and detects the changes since the previous poll.
+         * Fields without a previous value for the record are only registered.
+         * Only the hashes of the values are kept, so the events do not have the previous value of the field.
+         * @param record The record.
+         * @param modified The modification date of the record.
+         * @param watched The handles of the watched fields, by their lower case name.
+         * @return The events for the changed fields.
+         */
+        protected List<ChangeEvent> detectFieldChanges(CumulusRecord record, Instant modified,
+                Map<String, FieldHandle> watched) {
+            List<ChangeEvent> res = new ArrayList<ChangeEvent>();
+            for(Map.Entry<String, FieldHandle> field : watched.entrySet()) {
+                FieldHashes hashes = fieldHashes.get(field.getKey());
+                if(hashes == null) {
+                    hashes = new FieldHashes();
+                    fieldHashes.put(field.getKey(), hashes);
+                }
+                String value = record.getFieldValueOrNull(field.getValue());
+                if(hashes.update(record.getID(), hash(value))) {
+                    res.add(new ChangeEvent(ChangeEvent.Type.FIELD_CHANGED, catalog, record.getID(), modified,
+                            field.getValue().getName(), null, value));
+                }
+            }
+            return res;
+        }
+
+        /**
+         * Resolves the handle for a field, if it exists in the layout.
+         * @param records The collection of records.
+         * @param fieldName The name of the field.
+         * @return The handle, or null if the field is not in the layout.
+         */
+        protected FieldHandle findHandle(CumulusRecordCollection records, String fieldName) {
+            try {
+                return records.handle(fieldName);
+            } catch (IllegalStateException e) {
+                log.debug("The field '{}' is not in the layout of catalog '{}'.", fieldName, catalog);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The hashes of the values of a field by the record ID, in an open addressing hash table of primitive arrays.
+     * Each record takes 12 bytes in the table, which is at most three quarters full, and at least three eighths full
+     * once it has grown.
+     */
+    protected static class FieldHashes {
+        /** The initial capacity of the table. It must be a power of two.*/
+        protected static final int INITIAL_CAPACITY = 1024;
+        /** The key of the empty slots. The record IDs are never negative.*/
+        protected static final int EMPTY = -1;
+
+        /** The record IDs of the slots.*/
+        protected int[] ids;
+        /** The hashes of the values of the slots.*/
+        protected long[] hashes;
+        /** The number of records in the table.*/
+        protected int size = 0;
+
+        /** Constructor.*/
+        protected FieldHashes() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        /**
+         * Registers the hash of the value of a record.
+         * @param id The ID of the record.
+         * @param hash The hash of the current value of the field for the record.
+         * @return Whether the record was already registered with another hash.
+         */
+        protected boolean update(int id, long hash) {
+            int slot = findSlot(ids, id);
+            if(ids[slot] == id) {
+                boolean changed = hashes[slot] != hash;
+                hashes[slot] = hash;
+                return changed;
+            }
+            ids[slot] = id;
+            hashes[slot] = hash;
+            if(++size > ids.length / 4 * 3) {
+                grow();
+            }
+            return false;
+        }
+
+        /** @return The number of records in the table.*/
+        protected int size() {
+            return size;
+        }
+
+        /**
+         * Finds the slot of a record ID, or the empty slot where it should be inserted.
+         * @param table The record IDs of the slots.
+         * @param id The ID of the record.
+         * @return The slot.
+         */
+        protected static int findSlot(int[] table, int id) {
+            int mask = table.length - 1;
+            int h = id * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while(table[slot] != id && table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /** Doubles the capacity of the table.*/
+        protected void grow() {
+            int[] oldIds = ids;
+            long[] oldHashes = hashes;
+            allocate(oldIds.length * 2);
+            for(int i = 0; i < oldIds.length; i++) {
+                if(oldIds[i] != EMPTY) {
+                    int slot = findSlot(ids, oldIds[i]);
+                    ids[slot] = oldIds[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        /**
+         * Allocates an empty table.
+         * @param capacity The capacity of the table. It must be a power of two.
+         */
+        protected void allocate(int capacity) {
+            ids = new int[capacity];
+            Arrays.fill(ids, EMPTY);
+            hashes = new long[capacity];
+        }
+    }
+
+    /**
+     * Calculates a 64 bit hash of a field value, so collisions between the values of a field are unlikely.
+     * @param value The value. This may be null.
+     * @return The hash of the value.
+     */
+    protected static long hash(String value) {
+        if(value == null) {
+            return 0L;
+        }
+        long res = 1125899906842597L;
+        for(int i = 0; i < value.length(); i++) {
+            res = 31 * res + value.charAt(i);
+        }
+        return res;
+    }
+}
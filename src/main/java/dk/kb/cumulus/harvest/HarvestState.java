@@ -0,0 +1,208 @@
+package dk.kb.cumulus.harvest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * The state of the incremental harvest of a catalog.
+ *
+ * The state is the high-water mark, which is the latest modification date of the harvested records, and the IDs
+ * of the harvested records, which were modified at exactly the high-water mark.
+ * Since other records can be modified at the same time after the harvest, the next harvest must include the
+ * records modified at the high-water mark, and then skip the records with these IDs.
+ */
+public class HarvestState {
+    /** The property for the catalog.*/
+    protected static final String PROPERTY_CATALOG = "catalog";
+    /** The property for the high-water mark, in milliseconds since the epoch.*/
+    protected static final String PROPERTY_HIGH_WATER_MARK = "high-water-mark";
+    /** The property for the IDs of the records modified at the high-water mark.*/
+    protected static final String PROPERTY_IDS_AT_MARK = "ids-at-mark";
+    /** The separator between the IDs.*/
+    protected static final String ID_SEPARATOR = ",";
+
+    /** The name of the catalog.*/
+    protected final String catalog;
+    /** The latest modification date of the harvested records. Null if nothing has been harvested.*/
+    protected final Instant highWaterMark;
+    /** The IDs of the harvested records, which were modified at the high-water mark.*/
+    protected final Set<Integer> idsAtMark;
+
+    /**
+     * Constructor.
+     * @param catalog The name of the catalog.
+     * @param highWaterMark The latest modification date of the harvested records. Null if nothing is harvested.
+     * @param idsAtMark The IDs of the harvested records, which were modified at the high-water mark.
+     */
+    public HarvestState(String catalog, Instant highWaterMark, Set<Integer> idsAtMark) {
+        ArgumentCheck.checkNotNullOrEmpty(catalog, "String catalog");
+        ArgumentCheck.checkNotNull(idsAtMark, "Set<Integer> idsAtMark");
+        this.catalog = catalog;
+        this.highWaterMark = highWaterMark;
+        this.idsAtMark = Collections.unmodifiableSet(new HashSet<Integer>(idsAtMark));
+    }
+
+    /** @return The name of the catalog.*/
+    public String getCatalog() {
+        return catalog;
+    }
+
+    /** @return The latest modification date of the harvested records. Null if nothing has been harvested.*/
+    public Instant getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** @return The IDs of the harvested records, which were modified at the high-water mark.*/
+    public Set<Integer> getIdsAtMark() {
+        return idsAtMark;
+    }
+
+    /**
+     * Determines whether a record has been modified since it was harvested, or has not been harvested at all.
+     * @param id The ID of the record.
+     * @param modified The modification date of the record. Null if the record does not have one.
+     * @return Whether the record should be harvested.
+     */
+    public boolean isNewOrChanged(int id, Instant modified) {
+        if(highWaterMark == null || modified == null) {
+            return highWaterMark == null;
+        }
+        int comparison = modified.compareTo(highWaterMark);
+        return comparison > 0 || (comparison == 0 && !idsAtMark.contains(id));
+    }
+
+    /**
+     * Loads the state of the harvest from a file.
+     * If the file does not exist, then the initial state without any harvested records is returned.
+     * @param file The file with the state.
+     * @param catalog The name of the catalog.
+     * @return The state of the harvest.
+     * @throws IOException If the file cannot be read.
+     */
+    public static HarvestState load(File file, String catalog) throws IOException {
+        ArgumentCheck.checkNotNull(file, "File file");
+        if(!file.isFile()) {
+            return new HarvestState(catalog, null, Collections.<Integer>emptySet());
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+        if(!catalog.equals(properties.getProperty(PROPERTY_CATALOG))) {
+            throw new IllegalStateException("The harvest state in '" + file.getAbsolutePath() + "' is for the catalog '"
+                    + properties.getProperty(PROPERTY_CATALOG) + "', not '" + catalog + "'.");
+        }
+        Instant mark = null;
+        String markValue = properties.getProperty(PROPERTY_HIGH_WATER_MARK);
+        if(markValue != null && !markValue.isEmpty()) {
+            mark = Instant.ofEpochMilli(Long.parseLong(markValue));
+        }
+        Set<Integer> ids = new HashSet<Integer>();
+        String idsValue = properties.getProperty(PROPERTY_IDS_AT_MARK, "");
+        for(String id : idsValue.split(ID_SEPARATOR)) {
+            if(!id.trim().isEmpty()) {
+                ids.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return new HarvestState(catalog, mark, ids);
+    }
+
+    /**
+     * Saves the state of the harvest to a file.
+     * The state is first written to a temporary file, which then replaces the file, so a failure during the write
+     * does not leave a broken state.
+     * @param file The file for the state.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        ArgumentCheck.checkNotNull(file, "File file");
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY_CATALOG, catalog);
+        properties.setProperty(PROPERTY_HIGH_WATER_MARK, 
+                highWaterMark == null ? "" : String.valueOf(highWaterMark.toEpochMilli()));
+        StringBuilder ids = new StringBuilder();
+        for(Integer id : idsAtMark) {
+            if(ids.length() > 0) {
+                ids.append(ID_SEPARATOR);
+            }
+            ids.append(id);
+        }
+        properties.setProperty(PROPERTY_IDS_AT_MARK, ids.toString());
+
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpFile.toPath())) {
+            properties.store(out, "Incremental harvest state");
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return A tracker for the state after harvesting from this state.
+     */
+    public Tracker track() {
+        return new Tracker(this);
+    }
+
+    @Override
+    public String toString() {
+        return "[HarvestState: " + catalog + ", high-water mark: " + highWaterMark + ", " + idsAtMark.size() 
+                + " records at the mark]";
+    }
+
+    /**
+     * Tracker for the high-water mark during a harvest.
+     * The harvested records are registered one at a time, and the resulting state includes them.
+     */
+    public static class Tracker {
+        /** The name of the catalog.*/
+        protected final String catalog;
+        /** The latest modification date of the registered records.*/
+        protected Instant mark;
+        /** The IDs of the registered records, which were modified at the mark.*/
+        protected final Set<Integer> idsAtMark;
+
+        /**
+         * Constructor.
+         * @param start The state before the harvest.
+         */
+        protected Tracker(HarvestState start) {
+            this.catalog = start.catalog;
+            this.mark = start.highWaterMark;
+            this.idsAtMark = new HashSet<Integer>(start.idsAtMark);
+        }
+
+        /**
+         * Registers a harvested record.
+         * @param id The ID of the record.
+         * @param modified The modification date of the record. Null if the record does not have one.
+         */
+        public void register(int id, Instant modified) {
+            if(modified == null) {
+                return;
+            }
+            if(mark == null || modified.isAfter(mark)) {
+                mark = modified;
+                idsAtMark.clear();
+                idsAtMark.add(id);
+            } else if(modified.equals(mark)) {
+                idsAtMark.add(id);
+            }
+        }
+
+        /** @return The state including the registered records.*/
+        public HarvestState getState() {
+            return new HarvestState(catalog, mark, idsAtMark);
+        }
+    }
+}
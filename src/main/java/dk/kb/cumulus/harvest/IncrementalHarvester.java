@@ -0,0 +1,100 @@
+package dk.kb.cumulus.harvest;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQuery;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Harvester for the records of a catalog, which have been created or modified since the last harvest.
+ *
+ * The first harvest delivers all the records of the catalog. Each following harvest only delivers the records,
+ * which have an item modification date after the high-water mark of the previous harvest (or at the high-water
+ * mark, but have not been delivered yet).
+ * The state of the harvest is only saved, when all the records of a harvest have been delivered, so a failed 
+ * harvest is repeated in full the next time.
+ */
+public class IncrementalHarvester {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(IncrementalHarvester.class);
+
+    /** The Cumulus server.*/
+    protected final CumulusServer server;
+    /** The name of the catalog to harvest.*/
+    protected final String catalog;
+    /** The file with the state of the harvest.*/
+    protected final File stateFile;
+
+    /**
+     * Constructor.
+     * @param server The Cumulus server.
+     * @param catalog The name of the catalog to harvest.
+     * @param stateFile The file with the state of the harvest. It is created by the first harvest.
+     */
+    public IncrementalHarvester(CumulusServer server, String catalog, File stateFile) {
+        ArgumentCheck.checkNotNull(server, "CumulusServer server");
+        ArgumentCheck.checkNotNullOrEmpty(catalog, "String catalog");
+        ArgumentCheck.checkNotNull(stateFile, "File stateFile");
+        this.server = server;
+        this.catalog = catalog;
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * Delivers the records, which have been created or modified since the last harvest, to the handler.
+     * @param handler The handler of the new or changed records.
+     * @return The number of records delivered to the handler.
+     * @throws IOException If the state of the harvest cannot be loaded or saved.
+     */
+    public int harvest(Consumer<CumulusRecord> handler) throws IOException {
+        ArgumentCheck.checkNotNull(handler, "Consumer<CumulusRecord> handler");
+        HarvestState state = HarvestState.load(stateFile, catalog);
+        log.info("Harvesting catalog '{}' from {}", catalog, state);
+
+        CumulusQuery query;
+        if(state.getHighWaterMark() == null) {
+            query = CumulusQuery.getQueryForAllInCatalog(catalog);
+        } else {
+            query = CumulusQuery.getQueryForModifiedSince(catalog, state.getHighWaterMark());
+        }
+        CumulusRecordCollection records = server.getItems(catalog, query);
+        FieldHandle modificationDate = records.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE);
+
+        HarvestState.Tracker tracker = state.track();
+        int count = 0;
+        for(CumulusRecord record : records) {
+            Instant modified = record.getInstant(modificationDate);
+            int id = record.getID();
+            if(!state.isNewOrChanged(id, modified)) {
+                continue;
+            }
+            handler.accept(record);
+            count++;
+            tracker.register(id, modified);
+        }
+
+        HarvestState newState = tracker.getState();
+        newState.save(stateFile);
+        log.info("Harvested {} records from catalog '{}', new state: {}", count, catalog, newState);
+        return count;
+    }
+
+    /**
+     * @return The current state of the harvest.
+     * @throws IOException If the state cannot be loaded.
+     */
+    public HarvestState getState() throws IOException {
+        return HarvestState.load(stateFile, catalog);
+    }
+}
@@ -0,0 +1,324 @@
+package dk.kb.cumulus.preservation;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQueryBuilder;
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.CumulusQueryTemplate;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.CumulusSessionPool;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Work queue for the records of a catalog, which are ready for long-term preservation.
+ *
+ * Each poll finds the records with the preservation status 'ready for archival', and claims them by setting the
+ * preservation status to the in-progress value with compare-and-set. A record is only claimed, if it still has the
+ * expected status when it is read again right before the claim is written, so a record claimed by another node in
+ * the meantime is skipped. The claimed records are processed by a bounded pool of workers, each with its own
+ * session from the session pool, and no more records are claimed than there are free workers, so the remaining
+ * records are left for the other nodes.
+ *
+ * If the processing of a record fails, then the claim is released by setting the status back to 'ready for
+ * archival'. If a node dies while processing a record, then the record is claimed again, when it has not been
+ * modified within the lease timeout. A processor, which may run for longer than the lease timeout, must renew the
+ * lease of its claim, which writes the claim again and thereby updates the modification date of the record.
+ *
+ * NOTE: Cumulus does not have conditional writes, so a claim can still be lost, if another node writes the status
+ * between the read and the write of the claim.
+ */
+public class PreservationWorkQueue implements Closeable {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(PreservationWorkQueue.class);
+
+    /** The default lease timeout for a claim, in milliseconds.*/
+    public static final long DEFAULT_LEASE_TIMEOUT = 3600000L;
+
+    /** The template for the query for the records ready for archival in a catalog.*/
+    protected static final CumulusQueryTemplate READY = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.PRESERVATION_STATUS, Operator.IS,
+                    Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL)
+            .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+    /** The template for the query for the claimed records of a catalog, which have not been modified lately.*/
+    protected static final CumulusQueryTemplate EXPIRED = new CumulusQueryBuilder()
+            .where(Constants.FieldNames.PRESERVATION_STATUS, Operator.IS)
+            .and(Constants.FieldNames.ITEM_MODIFICATION_DATE, Operator.IS_BEFORE)
+            .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+            .compile();
+
+    /** The Cumulus server for polling and claiming the records.*/
+    protected final CumulusServer server;
+    /** The pool of sessions for the workers.*/
+    protected final CumulusSessionPool sessions;
+    /** The name of the catalog.*/
+    protected final String catalog;
+    /** The preservation status of the claimed records.*/
+    protected final String inProgressValue;
+    /** The processor for the claimed records.*/
+    protected final RecordProcessor processor;
+    /** The lease timeout for a claim, in milliseconds.*/
+    protected final long leaseTimeout;
+    /** The workers.*/
+    protected final ExecutorService workers;
+    /** The free workers.*/
+    protected final Semaphore freeWorkers;
+    /** The metrics.*/
+    protected final WorkQueueMetrics metrics;
+    /** Whether the queue has been closed.*/
+    protected volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     * @param server The Cumulus server for polling and claiming the records.
+     * @param sessions The pool of sessions for the workers.
+     * @param catalog The name of the catalog.
+     * @param inProgressValue The preservation status of the claimed records.
+     * @param processor The processor for the claimed records.
+     * @param workerCount The number of workers.
+     * @param leaseTimeout The lease timeout for a claim, in milliseconds.
+     */
+    public PreservationWorkQueue(CumulusServer server, CumulusSessionPool sessions, String catalog,
+            String inProgressValue, RecordProcessor processor, int workerCount, long leaseTimeout) {
+        ArgumentCheck.checkNotNull(server, "CumulusServer server");
+        ArgumentCheck.checkNotNull(sessions, "CumulusSessionPool sessions");
+        ArgumentCheck.checkNotNullOrEmpty(catalog, "String catalog");
+        ArgumentCheck.checkNotNullOrEmpty(inProgressValue, "String inProgressValue");
+        ArgumentCheck.checkNotNull(processor, "RecordProcessor processor");
+        ArgumentCheck.checkPositiveInt(workerCount, "int workerCount");
+        ArgumentCheck.checkPositiveLong(leaseTimeout, "long leaseTimeout");
+        this.server = server;
+        this.sessions = sessions;
+        this.catalog = catalog;
+        this.inProgressValue = inProgressValue;
+        this.processor = processor;
+        this.leaseTimeout = leaseTimeout;
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread res = new Thread(runnable, "preservation-worker");
+            res.setDaemon(true);
+            return res;
+        });
+        this.freeWorkers = new Semaphore(workerCount);
+        this.metrics = new WorkQueueMetrics(currentTimeMillis());
+    }
+
+    /**
+     * Finds and claims the records ready for archival, and the records with expired claims, and hands them to the
+     * workers. At most as many records are claimed as there are free workers.
+     * The polls must be performed by one thread at a time, since they use the session of the server.
+     * @return The number of records claimed.
+     */
+    public synchronized int poll() {
+        if(closed) {
+            throw new IllegalStateException("The work queue has been closed.");
+        }
+        int res = 0;
+        if(freeWorkers.availablePermits() > 0) {
+            res += claimAll(server.getItems(catalog, READY.bind(catalog)),
+                    Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL, null);
+        }
+        if(freeWorkers.availablePermits() > 0) {
+            Instant expiredBefore = Instant.ofEpochMilli(currentTimeMillis() - leaseTimeout);
+            res += claimAll(server.getItems(catalog, EXPIRED.bind(inProgressValue, expiredBefore, catalog)),
+                    inProgressValue, expiredBefore);
+        }
+        return res;
+    }
+
+    /**
+     * Claims the found records, and hands them to the workers, while there are free workers.
+     * @param candidates The records to claim.
+     * @param expectedStatus The preservation status the records must have, to be claimed.
+     * @param expiredBefore The time the records must not have been modified since, or null if the records are not
+     * claimed by others.
+     * @return The number of records claimed.
+     */
+    protected int claimAll(CumulusRecordCollection candidates, String expectedStatus, Instant expiredBefore) {
+        int res = 0;
+        for(CumulusRecord candidate : candidates) {
+            if(!freeWorkers.tryAcquire()) {
+                break;
+            }
+            final int id = candidate.getID();
+            boolean claimed = false;
+            try {
+                claimed = claim(candidate, expectedStatus, expiredBefore);
+            } catch (RuntimeException e) {
+                log.warn("Could not claim the record " + id + " in the catalog '" + catalog + "'.", e);
+            }
+            if(!claimed) {
+                freeWorkers.release();
+                continue;
+            }
+            res++;
+            workers.execute(() -> process(id));
+        }
+        return res;
+    }
+
+    /**
+     * Claims a record, if it still has the expected status.
+     * The status is compared and set with compareAndSet, which reads the record again right before the claim is
+     * written. A record with an expired claim is also read again, to check that it has not been claimed by another
+     * node since it was found.
+     * @param candidate The record.
+     * @param expectedStatus The preservation status the record must have.
+     * @param expiredBefore The time the record must not have been modified since, or null if the record is not
+     * claimed by others.
+     * @return Whether the record was claimed.
+     */
+    protected boolean claim(CumulusRecord candidate, String expectedStatus, Instant expiredBefore) {
+        int id = candidate.getID();
+        if((expiredBefore != null && !isExpired(server.getRecordById(catalog, id), expiredBefore))
+                || !candidate.compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, expectedStatus,
+                        inProgressValue)) {
+            log.debug("The record {} in the catalog '{}' has been claimed by another.", id, catalog);
+            metrics.conflicts.incrementAndGet();
+            return false;
+        }
+        metrics.claimed.incrementAndGet();
+        if(expiredBefore != null) {
+            log.info("Claimed the record {} in the catalog '{}' again, since its claim has expired.", id, catalog);
+            metrics.expired.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @param record The record.
+     * @param expiredBefore The time the record must not have been modified since.
+     * @return Whether the record has not been modified since the given time.
+     */
+    protected boolean isExpired(CumulusRecord record, Instant expiredBefore) {
+        FieldHandle modified = server.getFieldExtractor(catalog).getFieldHandle(
+                Constants.FieldNames.ITEM_MODIFICATION_DATE);
+        Instant modifiedAt = record.getInstant(modified);
+        return modifiedAt != null && modifiedAt.isBefore(expiredBefore);
+    }
+
+    /**
+     * Processes a claimed record with a session from the pool, and releases the claim if the processing fails.
+     * @param id The ID of the record.
+     */
+    protected void process(int id) {
+        long start = currentTimeMillis();
+        metrics.inProgress.incrementAndGet();
+        CumulusServer session = null;
+        try {
+            session = sessions.borrow();
+            CumulusRecord record = session.getRecordById(catalog, id);
+            processor.process(record, new Lease(record, start));
+            metrics.completed.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Failed to process the record " + id + " in the catalog '" + catalog + "'.", e);
+            metrics.failed.incrementAndGet();
+            if(session != null) {
+                release(session, id);
+            }
+        } finally {
+            if(session != null) {
+                sessions.release(session);
+            }
+            metrics.processingTime.addAndGet(currentTimeMillis() - start);
+            metrics.inProgress.decrementAndGet();
+            freeWorkers.release();
+        }
+    }
+
+    /**
+     * Releases the claim of a record, by setting its preservation status back to 'ready for archival'.
+     * If the claim cannot be released, then the record is claimed again, when its lease expires.
+     * @param session The session of the worker.
+     * @param id The ID of the record.
+     */
+    protected void release(CumulusServer session, int id) {
+        try {
+            session.getRecordById(catalog, id).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS,
+                    inProgressValue, Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL);
+        } catch (RuntimeException e) {
+            log.warn("Could not release the claim of the record " + id + " in the catalog '" + catalog
+                    + "'. It is claimed again, when its lease expires.", e);
+        }
+    }
+
+    /**
+     * The lease of the claim of a record being processed.
+     * The claim is made by the in-progress status, and it expires when the record has not been modified within the
+     * lease timeout. Renewing the lease writes the in-progress status again with compare-and-set, which modifies
+     * the record, unless the record has been claimed or finished by others in the meantime.
+     */
+    public class Lease {
+        /** The claimed record, retrieved with the session of the worker.*/
+        protected final CumulusRecord record;
+        /** The time the lease was last renewed, in milliseconds.*/
+        protected volatile long renewedAt;
+
+        /**
+         * Constructor.
+         * @param record The claimed record, retrieved with the session of the worker.
+         * @param claimedAt The time the record was claimed, in milliseconds.
+         */
+        protected Lease(CumulusRecord record, long claimedAt) {
+            this.record = record;
+            this.renewedAt = claimedAt;
+        }
+
+        /**
+         * Renews the lease, so the claim does not expire within the next lease timeout.
+         * @return Whether the lease was renewed, or false if the record no longer has the in-progress status, e.g.
+         * because the claim had already expired and the record has been claimed by another node.
+         */
+        public boolean renew() {
+            if(!record.compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, inProgressValue, inProgressValue)) {
+                log.warn("Could not renew the lease of the record {} in the catalog '{}', since it is no longer "
+                        + "claimed.", record.getID(), catalog);
+                return false;
+            }
+            renewedAt = currentTimeMillis();
+            metrics.renewed.incrementAndGet();
+            return true;
+        }
+
+        /** @return The time until the lease expires, in milliseconds. It is negative, when it has expired.*/
+        public long getRemainingTime() {
+            return renewedAt + leaseTimeout - currentTimeMillis();
+        }
+    }
+
+    /** @return The metrics of the queue.*/
+    public WorkQueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** @return The number of free workers.*/
+    public int getFreeWorkers() {
+        return freeWorkers.availablePermits();
+    }
+
+    /**
+     * @return The current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Stops claiming records. The records being processed are finished.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.shutdown();
+    }
+}
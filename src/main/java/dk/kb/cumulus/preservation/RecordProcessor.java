@@ -0,0 +1,20 @@
+package dk.kb.cumulus.preservation;
+
+import dk.kb.cumulus.CumulusRecord;
+
+/**
+ * Processor for the records claimed from a PreservationWorkQueue.
+ */
+public interface RecordProcessor {
+    /**
+     * Processes a claimed record. The processor is responsible for setting the final preservation status of the
+     * record. If it fails, then the claim of the record is released, so it can be processed again.
+     * The claim expires, when the record has not been modified within the lease timeout of the queue, after which
+     * another node can claim the record. So the processing must either finish within the lease timeout, or renew
+     * the lease regularly.
+     * @param record The claimed record, retrieved with the session of the worker.
+     * @param lease The lease of the claim, which must only be renewed by the thread processing the record.
+     * @throws Exception If the record could not be processed.
+     */
+    void process(CumulusRecord record, PreservationWorkQueue.Lease lease) throws Exception;
+}
@@ -0,0 +1,91 @@
+package dk.kb.cumulus.preservation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of a PreservationWorkQueue.
+ */
+public class WorkQueueMetrics {
+    /** The time the metrics were started, in milliseconds since epoch.*/
+    protected final long startTime;
+    /** The number of records claimed.*/
+    protected final AtomicLong claimed = new AtomicLong();
+    /** The number of records, which were claimed by others before they could be claimed.*/
+    protected final AtomicLong conflicts = new AtomicLong();
+    /** The number of records claimed again, after the lease of another claim expired.*/
+    protected final AtomicLong expired = new AtomicLong();
+    /** The number of renewals of the leases of the claims.*/
+    protected final AtomicLong renewed = new AtomicLong();
+    /** The number of records processed successfully.*/
+    protected final AtomicLong completed = new AtomicLong();
+    /** The number of records, which failed to be processed.*/
+    protected final AtomicLong failed = new AtomicLong();
+    /** The number of records being processed.*/
+    protected final AtomicLong inProgress = new AtomicLong();
+    /** The total time spent processing the records, in milliseconds.*/
+    protected final AtomicLong processingTime = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param startTime The time the metrics were started, in milliseconds since epoch.
+     */
+    protected WorkQueueMetrics(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /** @return The number of records claimed.*/
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    /** @return The number of records, which were claimed by others before they could be claimed.*/
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /** @return The number of records claimed again, after the lease of another claim expired.*/
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /** @return The number of renewals of the leases of the claims.*/
+    public long getRenewed() {
+        return renewed.get();
+    }
+
+    /** @return The number of records processed successfully.*/
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /** @return The number of records, which failed to be processed.*/
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /** @return The number of records being processed.*/
+    public long getInProgress() {
+        return inProgress.get();
+    }
+
+    /** @return The average time spent processing a record, in milliseconds.*/
+    public double getAverageProcessingTime() {
+        long processed = completed.get() + failed.get();
+        return processed == 0L ? 0.0 : (double) processingTime.get() / processed;
+    }
+
+    /**
+     * @param now The current time, in milliseconds since epoch.
+     * @return The number of records processed successfully per second, since the metrics were started.
+     */
+    public double getThroughput(long now) {
+        long elapsed = Math.max(1L, now - startTime);
+        return completed.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "[WorkQueueMetrics: claimed " + claimed + ", conflicts " + conflicts + ", expired " + expired
+                + ", renewed " + renewed + ", completed " + completed + ", failed " + failed + ", in progress " + inProgress + "]";
+    }
+}
@@ -0,0 +1,314 @@
+package dk.kb.cumulus.rules;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.canto.cumulus.FieldTypes;
+
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.Column;
+import dk.kb.cumulus.batch.DictionaryColumn;
+import dk.kb.cumulus.batch.LongColumn;
+import dk.kb.cumulus.batch.RecordBatch;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * A compiled rule for the records, which is evaluated over the columns of record batches.
+ *
+ * Only the 'present' rule requires a value. The other rules only apply to the records with a value for their
+ * fields, so they can be combined with a 'present' rule for required fields.
+ *
+ * E.g. the QA checks of the archived files:
+ * <pre>
+ * RuleEngine engine = new RuleEngine(
+ *         RecordRule.present("has checksum", records.handle(Constants.FieldNames.ARCHIVE_MD5)),
+ *         RecordRule.checksumEquals("checksum matches", records.handle(Constants.FieldNames.ARCHIVE_MD5),
+ *                 records.handle(Constants.FieldNames.CHECKSUM_ORIGINAL_MASTER)));
+ * RuleReport report = engine.evaluate(records);
+ * </pre>
+ */
+public abstract class RecordRule {
+    /** The name of the rule, which is used in the reports.*/
+    protected final String name;
+    /** The handles for the fields of the rule.*/
+    protected final List<FieldHandle> fields;
+
+    /**
+     * Constructor.
+     * @param name The name of the rule.
+     * @param fields The handles for the fields of the rule.
+     */
+    protected RecordRule(String name, FieldHandle... fields) {
+        ArgumentCheck.checkNotNullOrEmpty(name, "String name");
+        for(FieldHandle field : fields) {
+            ArgumentCheck.checkNotNull(field, "FieldHandle field");
+        }
+        this.name = name;
+        this.fields = Arrays.asList(fields);
+    }
+
+    /** @return The name of the rule.*/
+    public String getName() {
+        return name;
+    }
+
+    /** @return The handles for the fields of the rule.*/
+    public List<FieldHandle> getFields() {
+        return fields;
+    }
+
+    /**
+     * Evaluates the rule for all the rows of a batch.
+     * @param batch The batch, which must contain the fields of the rule.
+     * @param violations The bit set for marking the rows, which violate the rule. It is cleared beforehand.
+     */
+    public abstract void evaluate(RecordBatch batch, BitSet violations);
+
+    @Override
+    public String toString() {
+        return "[" + getClass().getSimpleName() + ": " + name + "]";
+    }
+
+    /**
+     * Creates the rule, that the records must have a value for the field.
+     * @param name The name of the rule.
+     * @param field The handle for the field.
+     * @return The rule.
+     */
+    public static RecordRule present(String name, FieldHandle field) {
+        return new PresentRule(name, field);
+    }
+
+    /**
+     * Creates the rule, that the string value of the field must match a regular expression.
+     * @param name The name of the rule.
+     * @param field The handle for the field.
+     * @param pattern The regular expression, which must match the whole value.
+     * @return The rule.
+     */
+    public static RecordRule matches(String name, FieldHandle field, Pattern pattern) {
+        return new MatchesRule(name, field, pattern);
+    }
+
+    /**
+     * Creates the rule, that the value of the field must be one of the allowed values.
+     * @param name The name of the rule.
+     * @param field The handle for the field.
+     * @param allowedValues The allowed values.
+     * @return The rule.
+     */
+    public static RecordRule enumIn(String name, FieldHandle field, Collection<String> allowedValues) {
+        return new EnumInRule(name, field, allowedValues);
+    }
+
+    /**
+     * Creates the rule, that the date of the field must be before a given time.
+     * @param name The name of the rule.
+     * @param field The handle for the date field.
+     * @param limit The time, which the dates must be before.
+     * @return The rule.
+     */
+    public static RecordRule dateBefore(String name, FieldHandle field, Instant limit) {
+        return new DateBeforeRule(name, field, limit);
+    }
+
+    /**
+     * Creates the rule, that two checksum fields must be equal (ignore case).
+     * It only applies to the records with values for both fields.
+     * @param name The name of the rule.
+     * @param field The handle for the checksum field.
+     * @param expectedField The handle for the field with the expected checksum.
+     * @return The rule.
+     */
+    public static RecordRule checksumEquals(String name, FieldHandle field, FieldHandle expectedField) {
+        return new ChecksumEqualsRule(name, field, expectedField);
+    }
+
+    /**
+     * The rule, that the records must have a value for a field.
+     */
+    protected static class PresentRule extends RecordRule {
+        /**
+         * Constructor.
+         * @param name The name of the rule.
+         * @param field The handle for the field.
+         */
+        protected PresentRule(String name, FieldHandle field) {
+            super(name, field);
+        }
+
+        @Override
+        public void evaluate(RecordBatch batch, BitSet violations) {
+            Column column = batch.getColumn(fields.get(0));
+            for(int row = 0; row < column.size(); row++) {
+                if(column.isNull(row)) {
+                    violations.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * The rule, that the string value of a field must match a regular expression.
+     */
+    protected static class MatchesRule extends RecordRule {
+        /** The regular expression.*/
+        protected final Pattern pattern;
+
+        /**
+         * Constructor.
+         * @param name The name of the rule.
+         * @param field The handle for the field.
+         * @param pattern The regular expression.
+         */
+        protected MatchesRule(String name, FieldHandle field, Pattern pattern) {
+            super(name, field);
+            ArgumentCheck.checkNotNull(pattern, "Pattern pattern");
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void evaluate(RecordBatch batch, BitSet violations) {
+            Column column = batch.getColumn(fields.get(0));
+            if(column instanceof DictionaryColumn) {
+                DictionaryColumn dictionaryColumn = (DictionaryColumn) column;
+                List<String> dictionary = dictionaryColumn.getDictionary();
+                boolean[] matching = new boolean[dictionary.size()];
+                for(int code = 0; code < matching.length; code++) {
+                    matching[code] = pattern.matcher(dictionary.get(code)).matches();
+                }
+                markCodes(dictionaryColumn, matching, violations);
+                return;
+            }
+            for(int row = 0; row < column.size(); row++) {
+                String value = column.getString(row);
+                if(value != null && !pattern.matcher(value).matches()) {
+                    violations.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * The rule, that the value of a field must be one of the allowed values.
+     */
+    protected static class EnumInRule extends RecordRule {
+        /** The allowed values.*/
+        protected final Set<String> allowedValues;
+
+        /**
+         * Constructor.
+         * @param name The name of the rule.
+         * @param field The handle for the field.
+         * @param allowedValues The allowed values.
+         */
+        protected EnumInRule(String name, FieldHandle field, Collection<String> allowedValues) {
+            super(name, field);
+            ArgumentCheck.checkNotNull(allowedValues, "Collection<String> allowedValues");
+            this.allowedValues = new HashSet<String>(allowedValues);
+        }
+
+        @Override
+        public void evaluate(RecordBatch batch, BitSet violations) {
+            Column column = batch.getColumn(fields.get(0));
+            if(column instanceof DictionaryColumn) {
+                DictionaryColumn dictionaryColumn = (DictionaryColumn) column;
+                List<String> dictionary = dictionaryColumn.getDictionary();
+                boolean[] allowed = new boolean[dictionary.size()];
+                for(int code = 0; code < allowed.length; code++) {
+                    allowed[code] = allowedValues.contains(dictionary.get(code));
+                }
+                markCodes(dictionaryColumn, allowed, violations);
+                return;
+            }
+            for(int row = 0; row < column.size(); row++) {
+                String value = column.getString(row);
+                if(value != null && !allowedValues.contains(value)) {
+                    violations.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * The rule, that the date of a field must be before a given time.
+     */
+    protected static class DateBeforeRule extends RecordRule {
+        /** The time in milliseconds since epoch, which the dates must be before.*/
+        protected final long limit;
+
+        /**
+         * Constructor.
+         * @param name The name of the rule.
+         * @param field The handle for the date field.
+         * @param limit The time, which the dates must be before.
+         */
+        protected DateBeforeRule(String name, FieldHandle field, Instant limit) {
+            super(name, field);
+            ArgumentCheck.checkNotNull(limit, "Instant limit");
+            ArgumentCheck.checkTrue(field.getFieldType() == FieldTypes.FieldTypeDate, "The field '"
+                    + field.getName() + "' is not a date field.");
+            this.limit = limit.toEpochMilli();
+        }
+
+        @Override
+        public void evaluate(RecordBatch batch, BitSet violations) {
+            LongColumn column = batch.getColumn(fields.get(0), LongColumn.class);
+            for(int row = 0; row < column.size(); row++) {
+                if(!column.isNull(row) && column.getLong(row) >= limit) {
+                    violations.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * The rule, that two checksum fields must be equal (ignore case).
+     */
+    protected static class ChecksumEqualsRule extends RecordRule {
+        /**
+         * Constructor.
+         * @param name The name of the rule.
+         * @param field The handle for the checksum field.
+         * @param expectedField The handle for the field with the expected checksum.
+         */
+        protected ChecksumEqualsRule(String name, FieldHandle field, FieldHandle expectedField) {
+            super(name, field, expectedField);
+        }
+
+        @Override
+        public void evaluate(RecordBatch batch, BitSet violations) {
+            Column column = batch.getColumn(fields.get(0));
+            Column expectedColumn = batch.getColumn(fields.get(1));
+            for(int row = 0; row < column.size(); row++) {
+                String checksum = column.getString(row);
+                String expected = expectedColumn.getString(row);
+                if(checksum != null && expected != null && !checksum.trim().equalsIgnoreCase(expected.trim())) {
+                    violations.set(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the rows of a dictionary column, whose value is not accepted.
+     * The values are only checked once for each code of the dictionary.
+     * @param column The column.
+     * @param accepted Whether the value of each code is accepted.
+     * @param violations The bit set for marking the rows with values, which are not accepted.
+     */
+    protected static void markCodes(DictionaryColumn column, boolean[] accepted, BitSet violations) {
+        for(int row = 0; row < column.size(); row++) {
+            int code = column.getCode(row);
+            if(code != DictionaryColumn.NO_VALUE && !accepted[code]) {
+                violations.set(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dk.kb.cumulus.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.RecordBatch;
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.validation.RecordReport;
+import dk.kb.cumulus.validation.RecordViolation;
+
+/**
+ * Evaluates a set of rules for the records of a collection.
+ *
+ * The fields of all the rules are extracted together into record batches, so the records are only read once,
+ * regardless of the number of rules. Each rule is then evaluated over the columns of the whole batch, and the
+ * violations are counted for each rule.
+ */
+public class RuleEngine {
+    /** The number of records in each batch.*/
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The rules.*/
+    protected final RecordRule[] rules;
+    /** The handles for the fields of all the rules, without duplicates.*/
+    protected final FieldHandle[] fields;
+
+    /**
+     * Constructor.
+     * @param rules The rules. Their fields must be from the same layout, and their names must be unique.
+     * @throws ArgumentCheck If the names are not unique, or the fields are from different layouts.
+     */
+    public RuleEngine(RecordRule... rules) {
+        ArgumentCheck.checkNotNull(rules, "RecordRule... rules");
+        ArgumentCheck.checkTrue(rules.length > 0, "At least one rule must be given.");
+        Map<String, RecordRule> names = new LinkedHashMap<String, RecordRule>();
+        List<FieldHandle> allFields = new ArrayList<FieldHandle>();
+        for(RecordRule rule : rules) {
+            ArgumentCheck.checkNotNull(rule, "RecordRule rule");
+            if(names.put(rule.getName(), rule) != null) {
+                throw new ArgumentCheck("More than one rule is named '" + rule.getName() + "'.");
+            }
+            allFields.addAll(rule.getFields());
+        }
+        Map<Integer, FieldHandle> handles = new LinkedHashMap<Integer, FieldHandle>();
+        if(!allFields.isEmpty()) {
+            RecordBatch.checkSameLayout(allFields.toArray(new FieldHandle[allFields.size()]));
+        }
+        for(FieldHandle field : allFields) {
+            handles.put(field.getOrdinal(), field);
+        }
+        this.rules = rules.clone();
+        this.fields = handles.values().toArray(new FieldHandle[handles.size()]);
+    }
+
+    /** @return The handles for the fields of all the rules, which must be extracted into the batches.*/
+    public FieldHandle[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * Evaluates the rules for the records of a collection.
+     * @param records The records, which must have the layout of the fields of the rules.
+     * @return The report.
+     */
+    public RuleReport evaluate(CumulusRecordCollection records) {
+        ArgumentCheck.checkNotNull(records, "CumulusRecordCollection records");
+        return evaluate(records.getBatches(DEFAULT_BATCH_SIZE, fields));
+    }
+
+    /**
+     * Evaluates the rules for the records of the batches.
+     * @param batches The batches, which must contain the fields of all the rules.
+     * @return The report.
+     */
+    public RuleReport evaluate(Iterator<RecordBatch> batches) {
+        ArgumentCheck.checkNotNull(batches, "Iterator<RecordBatch> batches");
+        long[] counts = new long[rules.length];
+        BitSet[] ruleViolations = new BitSet[rules.length];
+        for(int i = 0; i < rules.length; i++) {
+            ruleViolations[i] = new BitSet();
+        }
+        BitSet invalidRows = new BitSet();
+        List<RecordViolation> violations = new ArrayList<RecordViolation>();
+        long records = 0L;
+        long invalid = 0L;
+        while(batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            records += batch.size();
+            invalidRows.clear();
+            for(int i = 0; i < rules.length; i++) {
+                ruleViolations[i].clear();
+                rules[i].evaluate(batch, ruleViolations[i]);
+                counts[i] += ruleViolations[i].cardinality();
+                invalidRows.or(ruleViolations[i]);
+            }
+            invalid += invalidRows.cardinality();
+            for(int row = invalidRows.nextSetBit(0);
+                    row >= 0 && violations.size() < RecordReport.DEFAULT_MAX_VIOLATIONS;
+                    row = invalidRows.nextSetBit(row + 1)) {
+                List<String> ruleNames = new ArrayList<String>();
+                for(int i = 0; i < rules.length; i++) {
+                    if(ruleViolations[i].get(row)) {
+                        ruleNames.add(rules[i].getName());
+                    }
+                }
+                violations.add(new RecordViolation(batch.getRecordId(row), ruleNames));
+            }
+        }
+        Map<String, Long> violationCounts = new LinkedHashMap<String, Long>();
+        for(int i = 0; i < rules.length; i++) {
+            violationCounts.put(rules[i].getName(), counts[i]);
+        }
+        return new RuleReport(records, invalid, violationCounts, violations);
+    }
+}
@@ -0,0 +1,38 @@
+package dk.kb.cumulus.rules;
+
+import java.util.List;
+import java.util.Map;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.validation.RecordReport;
+import dk.kb.cumulus.validation.RecordViolation;
+
+/**
+ * The result of evaluating a set of rules for some records.
+ * The checks of the report are the rules, and the violations have the names of the violated rules.
+ */
+public class RuleReport extends RecordReport {
+    /**
+     * Constructor.
+     * @param recordCount The number of records evaluated.
+     * @param invalidCount The number of records, which violate at least one rule.
+     * @param violationCounts The number of records violating each rule, by the name of the rule.
+     * @param violations The first violations, in the order of the records.
+     */
+    public RuleReport(long recordCount, long invalidCount, Map<String, Long> violationCounts,
+            List<RecordViolation> violations) {
+        super(recordCount, invalidCount, violationCounts, violations);
+    }
+
+    /**
+     * @param ruleName The name of the rule.
+     * @return The number of records violating the rule.
+     */
+    public long getViolationCount(String ruleName) {
+        Long res = violationCounts.get(ruleName);
+        if(res == null) {
+            throw new ArgumentCheck("No rule named '" + ruleName + "'.");
+        }
+        return res;
+    }
+}
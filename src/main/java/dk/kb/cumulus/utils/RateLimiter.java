@@ -0,0 +1,62 @@
+package dk.kb.cumulus.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of operations shared by several threads, by spacing the operations evenly in time.
+ * Each operation acquires a permit before it is performed, and waits until the next free time slot.
+ */
+public class RateLimiter {
+    /** The time between two permits, in nanoseconds.*/
+    protected final long interval;
+    /** The time of the next free slot, in nanoseconds.*/
+    protected long nextSlot;
+
+    /**
+     * Constructor.
+     * @param permitsPerSecond The maximum number of permits per second.
+     */
+    public RateLimiter(double permitsPerSecond) {
+        ArgumentCheck.checkTrue(permitsPerSecond > 0.0, "The permits per second must be positive, but was "
+                + permitsPerSecond);
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1L) / permitsPerSecond);
+        this.nextSlot = nanoTime();
+    }
+
+    /**
+     * Acquires a permit, and waits until the time slot of the permit.
+     */
+    public void acquire() {
+        long wait;
+        synchronized(this) {
+            long now = nanoTime();
+            if(nextSlot < now) {
+                nextSlot = now;
+            }
+            wait = nextSlot - now;
+            nextSlot += interval;
+        }
+        if(wait > 0L) {
+            try {
+                sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a permit.", e);
+            }
+        }
+    }
+
+    /** @return The current time, in nanoseconds.*/
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Waits for the given time.
+     * @param nanos The time to wait, in nanoseconds.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    protected void sleep(long nanos) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+}
@@ -1,5 +1,6 @@
 package dk.kb.cumulus.utils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -54,6 +55,37 @@ public class StringUtils {
         return s;
     }
     
+    /**
+     * Splits a multi-lined string into its lines, in a single pass without regular expressions.
+     * It gives the same result as split("\n"), thus trailing empty lines are removed.
+     * @param s The string to split.
+     * @return The lines of the string.
+     */
+    public static List<String> splitLines(String s) {
+        ArgumentCheck.checkNotNull(s, "String s");
+        List<String> res = new ArrayList<String>();
+        if(s.isEmpty()) {
+            res.add(s);
+            return res;
+        }
+        int start = 0;
+        int end;
+        while((end = s.indexOf('\n', start)) >= 0) {
+            res.add(s.substring(start, end));
+            start = end + 1;
+        }
+        if(start == 0) {
+            res.add(s);
+            return res;
+        }
+        res.add(s.substring(start));
+        int size = res.size();
+        while(size > 0 && res.get(size - 1).isEmpty()) {
+            res.remove(--size);
+        }
+        return res;
+    }
+    
     /**
      * Checks whether or not a given string is either null or empty.
      * @param s The string to check.
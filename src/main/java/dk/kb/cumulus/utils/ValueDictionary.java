@@ -0,0 +1,102 @@
+package dk.kb.cumulus.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded dictionary for deduplicating repeated string values, e.g. the values of an enumerator field.
+ *
+ * Every value given to the dictionary is replaced by the first equal instance, so all the records with the same
+ * value share the same String instance.
+ * The dictionary only keeps up to a maximum number of distinct values. When it is full, the values which are
+ * not already in the dictionary are returned unchanged, so fields with many distinct values do not make the
+ * dictionary grow without limit.
+ */
+public class ValueDictionary {
+    /** The default maximum number of distinct values in a dictionary.*/
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /** The maximum number of distinct values in the dictionary.*/
+    protected final int maxSize;
+    /** The distinct values.*/
+    protected final ConcurrentMap<String, String> values;
+    /** The number of values in the dictionary, including the ones being added. Never more than the maximum size.*/
+    protected final AtomicInteger reserved = new AtomicInteger();
+    /** The number of values, which were replaced by a value in the dictionary.*/
+    protected final AtomicLong hits = new AtomicLong();
+    /** The number of values, which were not in the dictionary, and could not be added since it was full.*/
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxSize The maximum number of distinct values in the dictionary.
+     */
+    public ValueDictionary(int maxSize) {
+        ArgumentCheck.checkPositiveInt(maxSize, "int maxSize");
+        this.maxSize = maxSize;
+        this.values = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * Retrieves the instance in the dictionary, which is equal to the given value.
+     * If the value is not in the dictionary, then it is added, unless the dictionary is full.
+     * @param value The value.
+     * @return The instance in the dictionary, or the value itself if it is not in the dictionary.
+     */
+    public String intern(String value) {
+        if(value == null) {
+            return null;
+        }
+        String res = values.get(value);
+        if(res != null) {
+            hits.incrementAndGet();
+            return res;
+        }
+        // Reserve the room for the value before adding it, so concurrent calls cannot exceed the maximum size.
+        if(reserved.incrementAndGet() > maxSize) {
+            reserved.decrementAndGet();
+            misses.incrementAndGet();
+            return value;
+        }
+        res = values.putIfAbsent(value, value);
+        if(res != null) {
+            reserved.decrementAndGet();
+            hits.incrementAndGet();
+            return res;
+        }
+        return value;
+    }
+
+    /** @return The number of distinct values in the dictionary.*/
+    public int size() {
+        return values.size();
+    }
+
+    /** @return The maximum number of distinct values in the dictionary.*/
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return Whether or not the dictionary is full.*/
+    public boolean isFull() {
+        return values.size() >= maxSize;
+    }
+
+    /** @return The number of values, which were replaced by a value in the dictionary.*/
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return The number of values, which were not in the dictionary, and could not be added since it was full.*/
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "[ValueDictionary: " + values.size() + " of " + maxSize + " values, " + hits.get() + " hits, "
+                + misses.get() + " misses]";
+    }
+}
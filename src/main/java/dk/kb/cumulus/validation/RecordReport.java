@@ -0,0 +1,75 @@
+package dk.kb.cumulus.validation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of checking a number of records against some named checks.
+ *
+ * The counts are exact, but only the first violations are kept, so the memory of the report is bounded.
+ */
+public class RecordReport {
+    /** The default maximum number of violations to keep in a report.*/
+    public static final int DEFAULT_MAX_VIOLATIONS = 1000;
+
+    /** The number of records checked.*/
+    protected final long recordCount;
+    /** The number of records, which violate at least one check.*/
+    protected final long invalidCount;
+    /** The number of records violating each check, by the name of the check, in the order of the checks.*/
+    protected final Map<String, Long> violationCounts;
+    /** The first violations, in the order of the records.*/
+    protected final List<RecordViolation> violations;
+
+    /**
+     * Constructor.
+     * @param recordCount The number of records checked.
+     * @param invalidCount The number of records, which violate at least one check.
+     * @param violationCounts The number of records violating each check, by the name of the check.
+     * @param violations The first violations, in the order of the records.
+     */
+    public RecordReport(long recordCount, long invalidCount, Map<String, Long> violationCounts,
+            List<RecordViolation> violations) {
+        this.recordCount = recordCount;
+        this.invalidCount = invalidCount;
+        this.violationCounts = Collections.unmodifiableMap(violationCounts);
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+    /** @return Whether all the records pass all the checks.*/
+    public boolean isValid() {
+        return invalidCount == 0L;
+    }
+
+    /** @return The number of records checked.*/
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /** @return The number of records, which violate at least one check.*/
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /** @return The number of records violating each check, by the name of the check.*/
+    public Map<String, Long> getViolationCounts() {
+        return violationCounts;
+    }
+
+    /** @return The first violations, in the order of the records.*/
+    public List<RecordViolation> getViolations() {
+        return violations;
+    }
+
+    /** @return Whether there were more violations than the kept violations.*/
+    public boolean isTruncated() {
+        return violations.size() < invalidCount;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getClass().getSimpleName() + ": " + recordCount + " records, " + invalidCount
+                + " invalid, violations: " + violationCounts + "]";
+    }
+}
@@ -0,0 +1,39 @@
+package dk.kb.cumulus.validation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The checks violated by a record, e.g. the rules it violates or the required fields without a value.
+ */
+public class RecordViolation {
+    /** The ID of the record.*/
+    protected final int recordId;
+    /** The names of the violated checks.*/
+    protected final List<String> names;
+
+    /**
+     * Constructor.
+     * @param recordId The ID of the record.
+     * @param names The names of the violated checks.
+     */
+    public RecordViolation(int recordId, List<String> names) {
+        this.recordId = recordId;
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /** @return The ID of the record.*/
+    public int getRecordId() {
+        return recordId;
+    }
+
+    /** @return The names of the violated checks.*/
+    public List<String> getNames() {
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return "[RecordViolation: " + recordId + " " + names + "]";
+    }
+}
@@ -0,0 +1,165 @@
+package dk.kb.cumulus.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+/**
+ * Validates the required fields of all the records in a collection, and aggregates the result in a report.
+ *
+ * The rules are compiled once against the layout of the records: the required fields, which do not exist in the
+ * layout, are found once, and the existing fields are resolved to their GUIDs. Each record is then only checked
+ * with 'hasValue' for the GUIDs of the required fields, so no field values are extracted.
+ * The items are checked on the calling thread, since the items must only be accessed by the thread using the
+ * Cumulus session, and the 'hasValue' checks are the only costly part of the validation.
+ */
+public class RequiredFieldsValidator {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(RequiredFieldsValidator.class);
+
+    /** The names of the required fields.*/
+    protected final List<String> requiredFields;
+    /** The required fields, which do not exist in the layout.*/
+    protected final List<String> missingFields;
+    /** The names of the required fields, which exist in the layout.*/
+    protected final String[] fieldNames;
+    /** The GUIDs of the required fields, which exist in the layout, in the order of the names.*/
+    protected final GUID[] fieldUIDs;
+    /** Whether the required fields must have a value, or only exist.*/
+    protected final boolean requireValue;
+
+    /**
+     * Constructor.
+     * @param extractor The field extractor with the layout of the records.
+     * @param requiredFields The names of the required fields.
+     * @param requireValue Whether the required fields must have a value, or only exist in the layout.
+     */
+    public RequiredFieldsValidator(FieldExtractor extractor, Collection<String> requiredFields,
+            boolean requireValue) {
+        ArgumentCheck.checkNotNull(extractor, "FieldExtractor extractor");
+        ArgumentCheck.checkNotNull(requiredFields, "Collection<String> requiredFields");
+        this.requiredFields = new ArrayList<String>(requiredFields);
+        this.requireValue = requireValue;
+
+        List<String> missing = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<GUID> guids = new ArrayList<GUID>();
+        for(String field : this.requiredFields) {
+            if(!extractor.hasField(field)) {
+                missing.add(field);
+            } else {
+                names.add(field);
+                guids.add(extractor.getFieldHandle(field).getFieldUID());
+            }
+        }
+        this.missingFields = missing;
+        this.fieldNames = names.toArray(new String[names.size()]);
+        this.fieldUIDs = guids.toArray(new GUID[guids.size()]);
+        if(!missing.isEmpty()) {
+            log.warn("The required field(s) " + missing + " do not exist in the layout.");
+        }
+    }
+
+    /**
+     * Validates the records of a collection.
+     * @param records The records, which must have the layout the rules were compiled against.
+     * @return The report of the validation.
+     */
+    public ValidationReport validate(CumulusRecordCollection records) {
+        ArgumentCheck.checkNotNull(records, "CumulusRecordCollection records");
+        if(!requireValue) {
+            return toReport(new Tally(fieldNames.length), records.getCount());
+        }
+        return validate(records.getCumulusItems().iterator());
+    }
+
+    /**
+     * Validates the items.
+     * @param items The items, which must have the layout the rules were compiled against.
+     * @return The report of the validation.
+     */
+    public ValidationReport validate(Iterator<Item> items) {
+        ArgumentCheck.checkNotNull(items, "Iterator<Item> items");
+        Tally total = new Tally(fieldNames.length);
+        while(items.hasNext()) {
+            check(items.next(), total);
+        }
+        return toReport(total, total.records);
+    }
+
+    /**
+     * Checks the required fields of an item.
+     * @param item The item.
+     * @param tally The result to add the item to.
+     */
+    protected void check(Item item, Tally tally) {
+        tally.records++;
+        List<String> emptyFields = null;
+        for(int i = 0; i < fieldUIDs.length; i++) {
+            if(!item.hasValue(fieldUIDs[i])) {
+                tally.emptyCounts[i]++;
+                if(emptyFields == null) {
+                    emptyFields = new ArrayList<String>();
+                }
+                emptyFields.add(fieldNames[i]);
+            }
+        }
+        if(emptyFields != null) {
+            tally.invalid++;
+            if(tally.violations.size() < RecordReport.DEFAULT_MAX_VIOLATIONS) {
+                tally.violations.add(new RecordViolation(item.getID(), emptyFields));
+            }
+        }
+    }
+
+    /**
+     * Creates the report from the result.
+     * @param tally The result of checking the records.
+     * @param recordCount The number of records validated.
+     * @return The report.
+     */
+    protected ValidationReport toReport(Tally tally, long recordCount) {
+        Map<String, Long> emptyCounts = new LinkedHashMap<String, Long>();
+        for(int i = 0; i < fieldNames.length; i++) {
+            emptyCounts.put(fieldNames[i], tally.emptyCounts[i]);
+        }
+        return new ValidationReport(requiredFields, missingFields, recordCount, tally.invalid, emptyCounts,
+                tally.violations);
+    }
+
+    /**
+     * The mutable result of checking some records.
+     */
+    protected static class Tally {
+        /** The number of records checked.*/
+        protected long records = 0L;
+        /** The number of records with required fields without a value.*/
+        protected long invalid = 0L;
+        /** The number of records without a value for each of the existing required fields.*/
+        protected final long[] emptyCounts;
+        /** The first violations.*/
+        protected final List<RecordViolation> violations =
+                new ArrayList<RecordViolation>();
+
+        /**
+         * Constructor.
+         * @param fieldCount The number of existing required fields.
+         */
+        protected Tally(int fieldCount) {
+            this.emptyCounts = new long[fieldCount];
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dk.kb.cumulus.validation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregated result of validating the required fields of a collection of records.
+ * The checks of the report are the existing required fields, and the violations have the names of the required
+ * fields without a value.
+ */
+public class ValidationReport extends RecordReport {
+    /** The names of the required fields.*/
+    protected final List<String> requiredFields;
+    /** The required fields, which do not exist in the layout of the records.*/
+    protected final List<String> missingFields;
+
+    /**
+     * Constructor.
+     * @param requiredFields The names of the required fields.
+     * @param missingFields The required fields, which do not exist in the layout of the records.
+     * @param recordCount The number of records validated.
+     * @param invalidCount The number of records with required fields without a value.
+     * @param emptyCounts The number of records without a value for each required field.
+     * @param violations The first violations, in the order of the records.
+     */
+    public ValidationReport(List<String> requiredFields, List<String> missingFields, long recordCount,
+            long invalidCount, Map<String, Long> emptyCounts, List<RecordViolation> violations) {
+        super(recordCount, invalidCount, emptyCounts, violations);
+        this.requiredFields = Collections.unmodifiableList(requiredFields);
+        this.missingFields = Collections.unmodifiableList(missingFields);
+    }
+
+    /**
+     * When a required field does not exist in the layout, then none of the records are valid.
+     * @return Whether all the required fields exist, and all the records have the required values.
+     */
+    @Override
+    public boolean isValid() {
+        return missingFields.isEmpty() && super.isValid();
+    }
+
+    /** @return The names of the required fields.*/
+    public List<String> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /** @return The required fields, which do not exist in the layout of the records.*/
+    public List<String> getMissingFields() {
+        return missingFields;
+    }
+
+    /** @return The number of records without a value for each of the existing required fields.*/
+    public Map<String, Long> getEmptyCounts() {
+        return violationCounts;
+    }
+
+    @Override
+    public String toString() {
+        return "[ValidationReport: " + recordCount + " records, " + invalidCount + " invalid, missing fields: "
+                + missingFields + ", empty fields: " + violationCounts + "]";
+    }
+}
@@ -0,0 +1,140 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.config.CumulusConfiguration;
+
+public class BulkUpdaterTest extends ExtendedTestCase {
+
+    static final String CATALOG = "catalog";
+
+    CumulusConfiguration configuration;
+    CumulusServer session;
+    FieldUpdates updates;
+
+    protected CumulusRecord mockRecord(int id, boolean changed) {
+        CumulusRecord res = mock(CumulusRecord.class);
+        when(res.update(eq(updates))).thenReturn(changed);
+        when(session.getRecordById(CATALOG, id)).thenReturn(res);
+        return res;
+    }
+
+    @BeforeMethod
+    public void setupSession() {
+        configuration = new CumulusConfiguration(false, "http://localhost", "user", "password",
+                Arrays.asList(CATALOG));
+        session = mock(CumulusServer.class);
+        updates = new FieldUpdates().set(Constants.FieldNames.PRESERVATION_STATUS,
+                Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL);
+    }
+
+    protected CumulusSessionPool createPool(final CumulusServer connection) {
+        return new CumulusSessionPool(configuration, 2, 1000L) {
+            @Override
+            protected CumulusServer openSession() {
+                if(connection == null) {
+                    throw new IllegalStateException("Could not connect");
+                }
+                return connection;
+            }
+        };
+    }
+
+    @Test
+    public void testUpdate() {
+        addDescription("Test updating records in parallel, where a record fails and a record is already updated.");
+        mockRecord(1, true);
+        mockRecord(2, true);
+        mockRecord(3, false);
+        CumulusRecord broken = mockRecord(4, true);
+        when(broken.update(eq(updates))).thenThrow(new IllegalStateException("Locked by another user"));
+        mockRecord(5, true);
+        CumulusSessionPool pool = createPool(session);
+        try {
+            BulkUpdateResult res = new BulkUpdater(pool, 4, 1000.0).update(CATALOG, new int[] {1, 2, 3, 4, 5},
+                    updates);
+            Assert.assertEquals(res.getRecordCount(), 5L);
+            Assert.assertEquals(res.getUpdatedCount(), 3L);
+            Assert.assertEquals(res.getSkippedCount(), 1L);
+            Assert.assertEquals(res.getFailedCount(), 1L);
+            Assert.assertFalse(res.isSuccess());
+            Assert.assertFalse(res.isTruncated());
+            Assert.assertEquals(res.getFailures().get(4).getMessage(), "Locked by another user");
+            Assert.assertTrue(pool.getOpenedCount() <= 2);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testNoSession() {
+        addDescription("Test that the records are reported as failed, when no session can be opened.");
+        CumulusSessionPool pool = createPool(null);
+        try {
+            BulkUpdateResult res = new BulkUpdater(pool, 2, BulkUpdater.NO_RATE_LIMIT).update(CATALOG,
+                    new int[] {1, 2, 3}, updates);
+            Assert.assertEquals(res.getUpdatedCount(), 0L);
+            Assert.assertEquals(res.getFailedCount(), 3L);
+            Assert.assertEquals(res.getFailures().keySet().size(), 3);
+            Assert.assertEquals(res.getFailures().get(2).getMessage(), "Could not connect");
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBulkUpdate() {
+        addDescription("Test the bulk update of the records found by a query through the server, with its own "
+                + "session pool.");
+        mockRecord(7, true);
+        mockRecord(8, false);
+        CumulusSessionPool pool = createPool(session);
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor fe = mock(FieldExtractor.class);
+        FieldHandle status = mock(FieldHandle.class);
+        when(status.getFieldType()).thenReturn(FieldTypes.FieldTypeEnum);
+        when(fe.hasField(Constants.FieldNames.PRESERVATION_STATUS)).thenReturn(true);
+        when(fe.getFieldHandle(Constants.FieldNames.PRESERVATION_STATUS)).thenReturn(status);
+        CumulusRecordCollection found = mock(CumulusRecordCollection.class);
+        when(found.getRecordIds()).thenReturn(new int[] {7, 8});
+        when(server.getFieldExtractor(CATALOG)).thenReturn(fe);
+        when(server.getItems(eq(CATALOG), any(CumulusQuery.class))).thenReturn(found);
+        when(server.createSessionPool(2)).thenReturn(pool);
+        doCallRealMethod().when(server).bulkUpdate(eq(CATALOG), any(CumulusQuery.class), any(FieldUpdates.class),
+                anyInt(), anyDouble());
+
+        CumulusQuery query = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.CATALOG_NAME, Operator.IS, CATALOG)
+                .compile()
+                .bind();
+        try {
+            BulkUpdateResult res = server.bulkUpdate(CATALOG, query, updates, 2, BulkUpdater.NO_RATE_LIMIT);
+            Assert.assertEquals(res.getRecordCount(), 2L);
+            Assert.assertEquals(res.getUpdatedCount(), 1L);
+            Assert.assertEquals(res.getSkippedCount(), 1L);
+            Assert.assertTrue(res.isSuccess());
+            verify(server).recordChanged(CATALOG);
+            verify(server, never()).getSessionPool();
+        } finally {
+            pool.close();
+        }
+    }
+}
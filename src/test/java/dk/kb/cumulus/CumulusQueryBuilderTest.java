@@ -0,0 +1,112 @@
+package dk.kb.cumulus;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Locale;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.constants.CombineMode;
+import com.canto.cumulus.constants.FindFlag;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.utils.ArgumentCheck;
+import dk.kb.cumulus.utils.StringUtils;
+
+public class CumulusQueryBuilderTest extends ExtendedTestCase {
+
+    @Test
+    public void testTemplate() {
+        addDescription("Test compiling a query with parameters, and binding the parameters.");
+        CumulusQueryTemplate template = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.RECORD_NAME, Operator.IS)
+                .and(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+                .compile();
+        Assert.assertEquals(template.getParameterCount(), 2);
+
+        CumulusQuery query = template.bind("record.tif", "Catalog");
+        String expected = String.format(StringUtils.replaceSpacesToTabs("%s is %s\nand %s is %s"),
+                Constants.FieldNames.RECORD_NAME, "record.tif", Constants.FieldNames.CATALOG_NAME, "Catalog");
+        Assert.assertEquals(query.getQuery(), expected);
+        Assert.assertEquals(query.getFindFlags(), EnumSet.of(FindFlag.FIND_MISSING_FIELDS_ARE_ERROR,
+                FindFlag.FIND_MISSING_STRING_LIST_VALUES_ARE_ERROR));
+        Assert.assertEquals(query.getCombineMode(), CombineMode.FIND_NEW);
+        Assert.assertNull(query.getLocale());
+
+        addStep("Bind other values", "The template is reused");
+        Assert.assertTrue(template.bind("other.tif", "Catalog").getQuery().contains("other.tif"));
+    }
+
+    @Test
+    public void testFactoriesGiveSameQueries() {
+        addDescription("Test that the precompiled factories give the same queries as formatting the query string.");
+        Assert.assertEquals(CumulusQuery.getQueryForAllInCatalog("Catalog").getQuery(),
+                String.format(StringUtils.replaceSpacesToTabs("%s is %s"),
+                        Constants.FieldNames.CATALOG_NAME, "Catalog"));
+        Assert.assertEquals(CumulusQuery.getQueryForSpecificGUID("Catalog", "uuid").getQuery(),
+                String.format(StringUtils.replaceSpacesToTabs("%s contains %s\nand %s is %s\nand %s is %s"),
+                        Constants.FieldNames.GUID, "uuid",
+                        Constants.FieldNames.REGISTRATIONSTATE, Constants.FieldValues.REGISTRATIONSTATE_FINISHED,
+                        Constants.FieldNames.CATALOG_NAME, "Catalog"));
+    }
+
+    @Test
+    public void testGroupsAndSettings() {
+        addDescription("Test a query with a group, constant values, dates and settings.");
+        Instant date = Instant.parse("2020-01-01T00:00:00Z");
+        CumulusQuery query = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.CATALOG_NAME, Operator.IS, "Catalog")
+                .and(new CumulusQueryBuilder()
+                        .where(Constants.FieldNames.PRESERVATION_STATUS, Operator.IS)
+                        .or(Constants.FieldNames.ITEM_MODIFICATION_DATE, Operator.IS_AFTER))
+                .findFlags(EnumSet.of(FindFlag.FIND_MISSING_FIELDS_ARE_ERROR))
+                .combineMode(CombineMode.FIND_NARROW)
+                .locale(Locale.ROOT)
+                .compile()
+                .bind("New", date);
+        Assert.assertEquals(query.getQuery(), Constants.FieldNames.CATALOG_NAME + "\tis\tCatalog\nand\t("
+                + Constants.FieldNames.PRESERVATION_STATUS + "\tis\tNew\nor\t"
+                + Constants.FieldNames.ITEM_MODIFICATION_DATE + "\tis after\t" 
+                + CumulusQuery.QUERY_DATE_FORMAT.format(date) + ")");
+        Assert.assertEquals(query.getFindFlags(), EnumSet.of(FindFlag.FIND_MISSING_FIELDS_ARE_ERROR));
+        Assert.assertEquals(query.getCombineMode(), CombineMode.FIND_NARROW);
+        Assert.assertEquals(query.getLocale(), Locale.ROOT);
+    }
+
+    @Test
+    public void testBuildWithoutParameters() {
+        addDescription("Test building a query without parameters.");
+        CumulusQuery query = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.CATALOG_NAME, Operator.IS, "Catalog")
+                .build();
+        Assert.assertEquals(query.getQuery(), Constants.FieldNames.CATALOG_NAME + "\tis\tCatalog");
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testWrongNumberOfValues() {
+        addDescription("Test binding the wrong number of values.");
+        new CumulusQueryBuilder().where(Constants.FieldNames.CATALOG_NAME, Operator.IS).compile().bind("a", "b");
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testValueWithNewline() {
+        addDescription("Test that values cannot add extra conditions to the query.");
+        new CumulusQueryBuilder().where(Constants.FieldNames.CATALOG_NAME, Operator.IS).compile()
+                .bind("Catalog\nor\tGUID\tcontains\ta");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAndBeforeWhere() {
+        addDescription("Test that the first condition must be given with where.");
+        new CumulusQueryBuilder().and(Constants.FieldNames.CATALOG_NAME, Operator.IS);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testWhereTwice() {
+        addDescription("Test that where can only be used for the first condition.");
+        new CumulusQueryBuilder().where(Constants.FieldNames.CATALOG_NAME, Operator.IS)
+                .where(Constants.FieldNames.GUID, Operator.IS);
+    }
+}
@@ -1,5 +1,6 @@
 package dk.kb.cumulus;
 
+import java.time.Instant;
 import java.util.EnumSet;
 import java.util.Locale;
 import java.util.UUID;
@@ -67,4 +68,17 @@ public class CumulusQueryTest extends ExtendedTestCase {
         
         Assert.assertTrue(q.toString().contains(query));
     }
+
+    @Test
+    public void testGetQueryForModifiedSince() {
+        addDescription("Test the query for the records modified since a given time.");
+        String catalogName = UUID.randomUUID().toString();
+        Instant since = Instant.parse("2020-02-29T12:30:45.500Z");
+        CumulusQuery cq = CumulusQuery.getQueryForModifiedSince(catalogName, since);
+        
+        Assert.assertTrue(cq.getQuery().contains(catalogName));
+        Assert.assertTrue(cq.getQuery().startsWith(Constants.FieldNames.ITEM_MODIFICATION_DATE + "\tis after\t"));
+        Assert.assertTrue(cq.getQuery().contains(
+                CumulusQuery.QUERY_DATE_FORMAT.format(Instant.parse("2020-02-29T12:30:44Z"))), cq.getQuery());
+    }
 }
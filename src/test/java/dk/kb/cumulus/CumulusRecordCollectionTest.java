@@ -1,12 +1,110 @@
 package dk.kb.cumulus;
 
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
 import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.RecordItemCollection;
+
 public class CumulusRecordCollectionTest extends ExtendedTestCase {
 
     @Test
     public void teststuff() {
         
     }
+
+    @Test
+    public void testPickIndices() {
+        addDescription("Test picking distinct random indices.");
+        int[] indices = CumulusRecordCollection.pickIndices(1000000, 100, new Random(42L));
+        Assert.assertEquals(indices.length, 100);
+        for(int i = 1; i < indices.length; i++) {
+            Assert.assertTrue(indices[i - 1] < indices[i]);
+        }
+        Assert.assertTrue(indices[0] >= 0 && indices[indices.length - 1] < 1000000);
+        Assert.assertEquals(CumulusRecordCollection.pickIndices(1000000, 100, new Random(42L)), indices);
+        Assert.assertEquals(CumulusRecordCollection.pickIndices(3, 5, new Random(42L)), new int[] {0, 1, 2});
+    }
+
+    @Test
+    public void testSample() {
+        addDescription("Test that a sample only retrieves the sampled records, and is reproducible.");
+        RecordItemCollection items = mock(RecordItemCollection.class);
+        when(items.getItemCount()).thenReturn(10000);
+        RecordItem item = mock(RecordItem.class);
+        when(items.getItemByIndex(anyInt())).thenReturn(item);
+        CumulusRecordCollection records = new CumulusRecordCollection(items, mock(CumulusServer.class), "catalog");
+
+        List<CumulusRecord> sample = records.sampleFraction(0.01, 7L);
+        Assert.assertEquals(sample.size(), 100);
+        verify(items, times(100)).getItemByIndex(anyInt());
+        verify(items, never()).iterator();
+        Assert.assertTrue(records.sample(0, 7L).isEmpty());
+    }
+
+    @Test
+    public void testTopK() {
+        addDescription("Test finding the most recently modified records, and only retrieving those records.");
+        GUID modifiedGuid = mock(GUID.class);
+        FieldDefinition fd = mock(FieldDefinition.class);
+        when(fd.getName()).thenReturn(Constants.FieldNames.ITEM_MODIFICATION_DATE);
+        when(fd.getFieldType()).thenReturn(FieldTypes.FieldTypeDate);
+        when(fd.getFieldUID()).thenReturn(modifiedGuid);
+        List<FieldDefinition> definitions = Arrays.asList(fd);
+        Layout layout = mock(Layout.class);
+        when(layout.iterator()).thenReturn(definitions.iterator());
+
+        long[] modified = new long[] {5000L, 1000L, -1L, 9000L, 7000L, 9000L, 3000L};
+        final List<Item> items = new ArrayList<Item>();
+        for(long time : modified) {
+            RecordItem item = mock(RecordItem.class);
+            if(time >= 0) {
+                when(item.hasValue(eq(modifiedGuid))).thenReturn(true);
+                when(item.getDateValue(eq(modifiedGuid))).thenReturn(new Date(time));
+            }
+            items.add(item);
+        }
+        RecordItemCollection collection = mock(RecordItemCollection.class);
+        when(collection.getLayout()).thenReturn(layout);
+        when(collection.getItemCount()).thenReturn(items.size());
+        when(collection.iterator()).thenAnswer(invocation -> items.iterator());
+        when(collection.getItemByIndex(anyInt())).thenAnswer(invocation -> items.get(
+                (Integer) invocation.getArguments()[0]));
+        CumulusRecordCollection records = new CumulusRecordCollection(collection, mock(CumulusServer.class),
+                "catalog");
+        FieldHandle field = records.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE);
+
+        List<CumulusRecord> newest = records.topK(field, 3, true);
+        Assert.assertEquals(newest.size(), 3);
+        Assert.assertSame(newest.get(0).item, items.get(3));
+        Assert.assertSame(newest.get(1).item, items.get(5));
+        Assert.assertSame(newest.get(2).item, items.get(4));
+        verify(collection, times(3)).getItemByIndex(anyInt());
+
+        addStep("Find the oldest records", "The records without a value are ignored");
+        List<CumulusRecord> oldest = records.topK(field, 10, false);
+        Assert.assertEquals(oldest.size(), 6);
+        Assert.assertSame(oldest.get(0).item, items.get(1));
+        Assert.assertSame(oldest.get(5).item, items.get(5));
+    }
 }
@@ -0,0 +1,536 @@
+package dk.kb.cumulus;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static dk.kb.cumulus.TestUtils.mockLayout;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.Pixmap;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.fieldvalue.DateOnlyFieldValue;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class CumulusRecordValueTest extends ExtendedTestCase {
+
+    GUID sizeGuid;
+    GUID countGuid;
+    GUID ratioGuid;
+    GUID flagGuid;
+    GUID modifiedGuid;
+    GUID dayGuid;
+    FieldExtractor fe;
+
+    @BeforeMethod
+    public void setupLayout() {
+        sizeGuid = mock(GUID.class);
+        countGuid = mock(GUID.class);
+        ratioGuid = mock(GUID.class);
+        flagGuid = mock(GUID.class);
+        modifiedGuid = mock(GUID.class);
+        dayGuid = mock(GUID.class);
+        fe = mockExtractor("catalog",
+                mockDefinition(Constants.FieldNames.FILE_DATA_SIZE, FieldTypes.FieldTypeLong, 0, sizeGuid),
+                mockDefinition("count", FieldTypes.FieldTypeInteger, 0, countGuid),
+                mockDefinition("ratio", FieldTypes.FieldTypeDouble, 0, ratioGuid),
+                mockDefinition("flag", FieldTypes.FieldTypeBool, 0, flagGuid),
+                mockDefinition(Constants.FieldNames.ITEM_MODIFICATION_DATE, FieldTypes.FieldTypeDate, 0, modifiedGuid),
+                mockDefinition("day", FieldTypes.FieldTypeInteger, FieldTypes.VALUE_INTERPRETATION_DATE_ONLY, dayGuid));
+    }
+
+    @Test
+    public void testFieldHandles() {
+        addDescription("Test resolving the field handles.");
+        FieldHandle handle = fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE.toUpperCase());
+        Assert.assertEquals(handle.getOrdinal(), 0);
+        Assert.assertEquals(handle.getName(), Constants.FieldNames.FILE_DATA_SIZE);
+        Assert.assertEquals(handle.getFieldUID(), sizeGuid);
+        Assert.assertEquals(handle.getFieldType(), FieldTypes.FieldTypeLong);
+        Assert.assertEquals(fe.getFieldHandle("day").getOrdinal(), 5);
+        Assert.assertEquals(fe.getFieldCount(), 6);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testFieldHandleMissing() {
+        addDescription("Test resolving the handle for a field, which is not in the layout.");
+        fe.getFieldHandle("THIS IS NOT THE NAME OF THE FIELD");
+    }
+
+    @Test
+    public void testForeignFieldHandle() {
+        addDescription("Test that the handles can only be used with the records of a layout with the same fields.");
+        FieldExtractor same = mockExtractor("catalog",
+                mockDefinition(Constants.FieldNames.FILE_DATA_SIZE, FieldTypes.FieldTypeLong, 0, sizeGuid),
+                mockDefinition("count", FieldTypes.FieldTypeInteger, 0, countGuid));
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(countGuid))).thenReturn(true);
+        when(item.getIntValue(eq(countGuid))).thenReturn(42);
+        Assert.assertEquals(new CumulusRecord(same, item).getInt(fe.getFieldHandle("count"), -1), 42);
+
+        addStep("Use a handle for a field at another position", "Rejected");
+        FieldExtractor other = mockExtractor("other",
+                mockDefinition("count", FieldTypes.FieldTypeInteger, 0, countGuid));
+        CumulusRecord record = new CumulusRecord(other, item);
+        try {
+            record.getFieldValueOrNull(fe.getFieldHandle("ratio"));
+            Assert.fail("A handle beyond the layout should be rejected.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+        try {
+            record.setStringValueInField(fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE), "1");
+            Assert.fail("A handle for another field at the position should be rejected.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+        verify(item, never()).setStringValue(eq(sizeGuid), eq("1"));
+
+        addStep("Write and read through a handle for another field", "Rejected before anything is written or saved");
+        FieldHandle size = fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE);
+        for(Runnable access : Arrays.<Runnable>asList(() -> record.setStringEnumValueForField(size, "1"),
+                () -> record.setDateValueInField(size, new Date()), () -> record.setBooleanValueInField(size, true),
+                () -> record.getAssetReference(size))) {
+            try {
+                access.run();
+                Assert.fail("A handle for another field at the position should be rejected.");
+            } catch (ArgumentCheck e) {
+                // expected
+            }
+        }
+        verify(item, never()).getStringEnumValue(eq(sizeGuid));
+        verify(item, never()).setDateValue(eq(sizeGuid), any(Date.class));
+        verify(item, never()).setBooleanValue(eq(sizeGuid), any(Boolean.class));
+        verify(item, never()).getAssetReferenceValue(eq(sizeGuid));
+        verify(item, never()).save();
+    }
+
+    @Test
+    public void testPrimitiveValues() {
+        addDescription("Test extracting the primitive values through the field handles.");
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(sizeGuid))).thenReturn(true);
+        when(item.getLongValue(eq(sizeGuid))).thenReturn(123456789012L);
+        when(item.hasValue(eq(countGuid))).thenReturn(true);
+        when(item.getIntValue(eq(countGuid))).thenReturn(42);
+        when(item.hasValue(eq(ratioGuid))).thenReturn(true);
+        when(item.getDoubleValue(eq(ratioGuid))).thenReturn(0.5);
+        when(item.hasValue(eq(flagGuid))).thenReturn(true);
+        when(item.getBooleanValue(eq(flagGuid))).thenReturn(true);
+        CumulusRecord record = new CumulusRecord(fe, item);
+
+        Assert.assertEquals(record.getLong(fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE), -1L),
+                123456789012L);
+        Assert.assertEquals(record.getLong(fe.getFieldHandle("count"), -1L), 42L);
+        Assert.assertEquals(record.getInt(fe.getFieldHandle("count"), -1), 42);
+        Assert.assertEquals(record.getDouble(fe.getFieldHandle("ratio"), -1.0), 0.5);
+        Assert.assertTrue(record.getBoolean(fe.getFieldHandle("flag"), false));
+    }
+
+    @Test
+    public void testDefaultValues() {
+        addDescription("Test that the default values are returned for the empty fields.");
+        RecordItem item = mock(RecordItem.class);
+        CumulusRecord record = new CumulusRecord(fe, item);
+
+        Assert.assertEquals(record.getLong(fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE), -1L), -1L);
+        Assert.assertEquals(record.getInt(fe.getFieldHandle("count"), -1), -1);
+        Assert.assertEquals(record.getDouble(fe.getFieldHandle("ratio"), -1.0), -1.0);
+        Assert.assertFalse(record.getBoolean(fe.getFieldHandle("flag"), false));
+        Assert.assertNull(record.getInstant(fe.getFieldHandle(Constants.FieldNames.ITEM_MODIFICATION_DATE)));
+        Assert.assertNull(record.getLocalDate(fe.getFieldHandle("day")));
+    }
+
+    @Test
+    public void testDateValues() {
+        addDescription("Test extracting the dates through the field handles.");
+        RecordItem item = mock(RecordItem.class);
+        Date modified = new Date(1500000000000L);
+        when(item.hasValue(eq(modifiedGuid))).thenReturn(true);
+        when(item.getDateValue(eq(modifiedGuid))).thenReturn(modified);
+        DateOnlyFieldValue day = mock(DateOnlyFieldValue.class);
+        when(day.getYear()).thenReturn(2020);
+        when(day.getMonth()).thenReturn(2);
+        when(day.getDay()).thenReturn(29);
+        when(item.hasValue(eq(dayGuid))).thenReturn(true);
+        when(item.getDateOnlyValue(eq(dayGuid))).thenReturn(day);
+        CumulusRecord record = new CumulusRecord(fe, item);
+
+        Assert.assertEquals(record.getInstant(fe.getFieldHandle(Constants.FieldNames.ITEM_MODIFICATION_DATE)),
+                Instant.ofEpochMilli(1500000000000L));
+        Assert.assertEquals(record.getLocalDate(fe.getFieldHandle("day")), LocalDate.of(2020, 2, 29));
+    }
+
+    @Test
+    public void testDateOnlyMonthIsOneBased() {
+        addDescription("Test that the month of a date-only value is read as 1-based, as its universal display string.");
+        DateOnlyFieldValue day = mock(DateOnlyFieldValue.class);
+        when(day.getYear()).thenReturn(2020);
+        when(day.getMonth()).thenReturn(1);
+        when(day.getDay()).thenReturn(31);
+        when(day.getUniversalDisplayString()).thenReturn("2020-01-31");
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(dayGuid))).thenReturn(true);
+        when(item.getDateOnlyValue(eq(dayGuid))).thenReturn(day);
+        CumulusRecord record = new CumulusRecord(fe, item);
+
+        LocalDate date = record.getLocalDate(fe.getFieldHandle("day"));
+        Assert.assertEquals(date.getMonth(), Month.JANUARY);
+        Assert.assertEquals(date, LocalDate.parse(day.getUniversalDisplayString()));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testDateOnlyWithoutField() {
+        addDescription("Test extracting a date-only value without a field handle.");
+        new CumulusRecord(fe, mock(RecordItem.class)).getLocalDate(null);
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testWrongFieldType() {
+        addDescription("Test extracting a long field as a date.");
+        CumulusRecord record = new CumulusRecord(fe, mock(RecordItem.class));
+        record.getInstant(fe.getFieldHandle(Constants.FieldNames.FILE_DATA_SIZE));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testNotDateOnlyField() {
+        addDescription("Test extracting a plain integer field as a date-only field.");
+        CumulusRecord record = new CumulusRecord(fe, mock(RecordItem.class));
+        record.getLocalDate(fe.getFieldHandle("count"));
+    }
+
+    @Test
+    public void testStringValuesThroughHandles() {
+        addDescription("Test that string values extracted through the handles are only extracted once.");
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(countGuid))).thenReturn(true);
+        when(item.getStringValue(eq(countGuid))).thenReturn("42");
+        CumulusRecord record = new CumulusRecord(fe, item);
+        FieldHandle count = fe.getFieldHandle("count");
+
+        Assert.assertEquals(record.getFieldValue(count), "42");
+        Assert.assertEquals(record.getFieldValueOrNull(count), "42");
+        Assert.assertEquals(record.getFieldValue("COUNT"), "42");
+        verify(item, times(1)).getStringValue(eq(countGuid));
+
+        Assert.assertNull(record.getFieldValueOrNull(fe.getFieldHandle("ratio")));
+    }
+
+    @Test
+    public void testSetBooleanValueThroughHandle() {
+        addDescription("Test that setting a value through the handle discards the previously extracted value.");
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(flagGuid))).thenReturn(true);
+        when(item.getStringValue(eq(flagGuid))).thenReturn("false", "true");
+        CumulusRecord record = new CumulusRecord(fe, item);
+        FieldHandle flag = fe.getFieldHandle("flag");
+
+        Assert.assertEquals(record.getFieldValue(flag), "false");
+        record.setBooleanValueInField(flag, true);
+        verify(item).setBooleanValue(eq(flagGuid), eq(true));
+        verify(item).save();
+        Assert.assertEquals(record.getFieldValue(flag), "true");
+    }
+
+    @Test
+    public void testSaveInvalidatesCachedQueries() {
+        addDescription("Test that saving a change of a record notifies the server of the change in the catalog.");
+        RecordItem item = mock(RecordItem.class);
+        CumulusRecord record = new CumulusRecord(fe, item);
+        record.setStringValueInField(fe.getFieldHandle("count"), "1");
+        verify(item).save();
+        verify(fe.getServer()).recordChanged(eq("catalog"));
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        addDescription("Test that compare-and-set reads the record again, and only saves the expected value.");
+        GUID statusGuid = mock(GUID.class);
+        GUID noteGuid = mock(GUID.class);
+        Layout layout = mockLayout(
+                mockDefinition(Constants.FieldNames.PRESERVATION_STATUS, FieldTypes.FieldTypeEnum, 0, statusGuid),
+                mockDefinition("note", FieldTypes.FieldTypeString, 0, noteGuid),
+                mockDefinition("count", FieldTypes.FieldTypeInteger, 0, countGuid));
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor extractor = new FieldExtractor(layout, server, "catalog");
+        FieldHandle status = extractor.getFieldHandle(Constants.FieldNames.PRESERVATION_STATUS);
+
+        RecordItem item = mock(RecordItem.class);
+        when(item.getID()).thenReturn(42);
+        RecordItem fresh = mock(RecordItem.class);
+        StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(fresh.hasValue(eq(statusGuid))).thenReturn(true);
+        when(enumValue.getDisplayString()).thenReturn(Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL);
+        when(fresh.getStringEnumValue(eq(statusGuid))).thenReturn(enumValue);
+        when(server.getRecordItemByID(eq("catalog"), eq(42))).thenReturn(fresh);
+        CumulusRecord record = new CumulusRecord(extractor, item);
+
+        addStep("Set the status, when it has the expected value", "The fresh record is saved");
+        Assert.assertTrue(record.compareAndSet(status, Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL,
+                Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE));
+        verify(enumValue).setFromDisplayString(Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE);
+        verify(fresh).setStringEnumValue(eq(statusGuid), eq(enumValue));
+        verify(fresh).save();
+        verify(server).compareAndSetPerformed(false);
+        Assert.assertEquals(record.getFieldValue(status), Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE);
+
+        addStep("Set the status, when it has been changed by another", "Nothing is saved, and the current value "
+                + "is returned afterwards");
+        Assert.assertFalse(record.compareAndSet(Constants.FieldNames.PRESERVATION_STATUS,
+                Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE,
+                Constants.FieldValues.PRESERVATIONSTATE_ARCHIVAL_COMPLETED));
+        verify(fresh, times(1)).save();
+        verify(server).compareAndSetPerformed(true);
+        Assert.assertEquals(record.getFieldValue(status), Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL);
+
+        addStep("Set an empty string field, which is expected to be empty", "The value is set");
+        Assert.assertTrue(record.compareAndSet("note", null, "claimed"));
+        verify(fresh).setStringValue(eq(noteGuid), eq("claimed"));
+
+        addStep("Set a numeric field", "Not supported");
+        try {
+            record.compareAndSet("count", "1", "2");
+            Assert.fail("Compare-and-set should not be supported for integer fields.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+        verify(item, never()).save();
+    }
+
+    @Test
+    public void testUpdate() {
+        addDescription("Test that the updates only change the fields without the new values, and save once.");
+        GUID statusGuid = mock(GUID.class);
+        GUID noteGuid = mock(GUID.class);
+        Layout layout = mockLayout(
+                mockDefinition(Constants.FieldNames.PRESERVATION_STATUS, FieldTypes.FieldTypeEnum, 0, statusGuid),
+                mockDefinition("note", FieldTypes.FieldTypeString, 0, noteGuid),
+                mockDefinition("count", FieldTypes.FieldTypeInteger, 0, countGuid));
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor extractor = new FieldExtractor(layout, server, "catalog");
+
+        RecordItem item = mock(RecordItem.class);
+        StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(item.hasValue(eq(statusGuid))).thenReturn(true);
+        when(enumValue.getDisplayString()).thenReturn(Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL);
+        when(item.getStringEnumValue(eq(statusGuid))).thenReturn(enumValue);
+        CumulusRecord record = new CumulusRecord(extractor, item);
+
+        addStep("Update a record, where only the note differs", "Only the note is set, and the record is saved");
+        FieldUpdates updates = new FieldUpdates()
+                .set(Constants.FieldNames.PRESERVATION_STATUS,
+                        Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL)
+                .set("note", "bulk");
+        Assert.assertTrue(record.update(updates));
+        verify(item).setStringValue(eq(noteGuid), eq("bulk"));
+        verify(item, never()).setStringEnumValue(eq(statusGuid), eq(enumValue));
+        verify(item, times(1)).save();
+        verify(server).recordChanged("catalog");
+
+        addStep("Update a record, which already has the new values", "Nothing is saved");
+        when(item.hasValue(eq(noteGuid))).thenReturn(true);
+        when(item.getStringValue(eq(noteGuid))).thenReturn("bulk");
+        Assert.assertFalse(record.update(updates));
+        verify(item, times(1)).save();
+
+        addStep("Change the enumerator", "The enumerator is set from the display string");
+        updates.set(Constants.FieldNames.PRESERVATION_STATUS, Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE);
+        Assert.assertTrue(record.update(updates));
+        verify(enumValue).setFromDisplayString(Constants.FieldValues.PRESERVATIONSTATE_SEND_TO_ARCHIVE);
+        verify(item).setStringEnumValue(eq(statusGuid), eq(enumValue));
+        verify(item, times(2)).save();
+
+        addStep("Validate updates of a numeric field", "Not supported");
+        try {
+            new FieldUpdates().set("count", "2").validate(extractor);
+            Assert.fail("Updates should not be supported for integer fields.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUpdateNotSaved() {
+        addDescription("Test that the extracted values are kept, when the updated record cannot be saved.");
+        GUID noteGuid = mock(GUID.class);
+        FieldExtractor extractor = mockExtractor("catalog",
+                mockDefinition("note", FieldTypes.FieldTypeString, 0, noteGuid));
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(noteGuid))).thenReturn(true);
+        when(item.getStringValue(eq(noteGuid))).thenReturn("old");
+        doThrow(new IllegalStateException("Cannot save")).when(item).save();
+        CumulusRecord record = new CumulusRecord(extractor, item);
+        FieldHandle note = extractor.getFieldHandle("note");
+        Assert.assertEquals(record.getFieldValue(note), "old");
+
+        try {
+            record.update(new FieldUpdates().set("note", "new"));
+            Assert.fail("The update should fail, when the record cannot be saved.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verify(item).setStringValue(eq(noteGuid), eq("new"));
+        Assert.assertEquals(record.getFieldValue(note), "old");
+    }
+
+    protected FieldExtractor contentExtractor(GUID pictureGuid, GUID binaryGuid) {
+        return mockExtractor("catalog",
+                mockDefinition("Thumbnail", FieldTypes.FieldTypePicture, 0, pictureGuid),
+                mockDefinition("Payload", FieldTypes.FieldTypeBinary, 0, binaryGuid),
+                mockDefinition(Constants.FieldNames.RELATED_SUB_ASSETS, FieldTypes.FieldTypeBinary, 0,
+                        mock(GUID.class)));
+    }
+
+    @Test
+    public void testWriteFieldContent() throws Exception {
+        addDescription("Test writing the content of picture and binary fields.");
+        GUID pictureGuid = mock(GUID.class);
+        GUID binaryGuid = mock(GUID.class);
+        FieldExtractor extractor = contentExtractor(pictureGuid, binaryGuid);
+        byte[] jpeg = new byte[200000];
+        for(int i = 0; i < jpeg.length; i++) {
+            jpeg[i] = (byte) i;
+        }
+        Pixmap pixmap = mock(Pixmap.class);
+        when(pixmap.getAsJPEG()).thenReturn(jpeg);
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(pictureGuid))).thenReturn(true);
+        when(item.getPictureValue(eq(pictureGuid))).thenReturn(pixmap);
+        when(item.hasValue(eq(binaryGuid))).thenReturn(true);
+        when(item.getBinaryValue(eq(binaryGuid))).thenReturn(new byte[] {1, 2, 3});
+        CumulusRecord record = new CumulusRecord(extractor, item);
+
+        addStep("Write the picture to an output stream", "The JPEG bytes");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(record.writeFieldContent(extractor.getFieldHandle("Thumbnail"), out,
+                CumulusRecord.NO_SIZE_LIMIT), jpeg.length);
+        Assert.assertEquals(out.toByteArray(), jpeg);
+
+        addStep("Write the binary field to a channel", "The binary content");
+        out = new ByteArrayOutputStream();
+        Assert.assertEquals(record.writeFieldContent(extractor.getFieldHandle("Payload"), Channels.newChannel(out),
+                3L), 3L);
+        Assert.assertEquals(out.toByteArray(), new byte[] {1, 2, 3});
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testWriteFieldContentTooLarge() throws Exception {
+        addDescription("Test that content larger than the limit is not written.");
+        GUID binaryGuid = mock(GUID.class);
+        FieldExtractor extractor = contentExtractor(mock(GUID.class), binaryGuid);
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(binaryGuid))).thenReturn(true);
+        when(item.getBinaryValue(eq(binaryGuid))).thenReturn(new byte[] {1, 2, 3});
+        CumulusRecord record = new CumulusRecord(extractor, item);
+        record.writeFieldContent(extractor.getFieldHandle("Payload"), new ByteArrayOutputStream(), 2L);
+    }
+
+    @Test
+    public void testWriteFieldContentEmptyAndWrongFields() throws Exception {
+        addDescription("Test writing the content of empty fields and fields without content.");
+        FieldExtractor extractor = contentExtractor(mock(GUID.class), mock(GUID.class));
+        CumulusRecord record = new CumulusRecord(extractor, mock(RecordItem.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(record.writeFieldContent(extractor.getFieldHandle("Thumbnail"), out,
+                CumulusRecord.NO_SIZE_LIMIT), 0L);
+        Assert.assertEquals(out.size(), 0);
+        try {
+            record.writeFieldContent(extractor.getFieldHandle(Constants.FieldNames.RELATED_SUB_ASSETS), out,
+                    CumulusRecord.NO_SIZE_LIMIT);
+            Assert.fail("Asset relations do not have any binary content.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+        try {
+            record.writeFieldContent(fe.getFieldHandle("count"), out, CumulusRecord.NO_SIZE_LIMIT);
+            Assert.fail("Integer fields do not have any binary content.");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetValues() throws Exception {
+        addDescription("Test extracting the lines of a multi-value field.");
+        GUID linesGuid = mock(GUID.class);
+        FieldExtractor extractor = mockExtractor("catalog",
+                mockDefinition("lines", FieldTypes.FieldTypeString, 0, linesGuid),
+                mockDefinition("empty", FieldTypes.FieldTypeString, 0, mock(GUID.class)));
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(linesGuid))).thenReturn(true);
+        when(item.getStringValue(eq(linesGuid))).thenReturn("first\n<second>\n\n");
+        CumulusRecord record = new CumulusRecord(extractor, item);
+        FieldHandle lines = extractor.getFieldHandle("lines");
+
+        List<String> values = record.getValues(lines);
+        Assert.assertEquals(values, Arrays.asList("first", "<second>"));
+        Assert.assertSame(record.getValues(lines), values);
+        verify(item, times(1)).getStringValue(eq(linesGuid));
+        Assert.assertTrue(record.getValues(extractor.getFieldHandle("empty")).isEmpty());
+        try {
+            values.add("third");
+            Assert.fail("The values must be immutable.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        addStep("Write the metadata", "The cached values are written, and only the values are xml encoded");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record.writeFieldMetadata(out);
+        String xml = out.toString();
+        Assert.assertTrue(xml.contains("<value>first</value>"), xml);
+        Assert.assertTrue(xml.contains("<value>&amp;lt;second&amp;gt;</value>"), xml);
+        verify(item, times(2)).getStringValue(eq(linesGuid));
+    }
+
+    @Test
+    public void testWriteFieldMetadataWithDuplicateNames() throws Exception {
+        addDescription("Test that only the last of the fields with the same name is written, as in the map of fields, "
+                + "and that names which only differ in case are different fields.");
+        GUID firstGuid = mock(GUID.class);
+        GUID lastGuid = mock(GUID.class);
+        GUID upperGuid = mock(GUID.class);
+        FieldExtractor extractor = mockExtractor("catalog",
+                mockDefinition("note", FieldTypes.FieldTypeString, 0, firstGuid),
+                mockDefinition("note", FieldTypes.FieldTypeString, 0, lastGuid),
+                mockDefinition("NOTE", FieldTypes.FieldTypeString, 0, upperGuid));
+        RecordItem item = mock(RecordItem.class);
+        when(item.hasValue(eq(firstGuid))).thenReturn(true);
+        when(item.getStringValue(eq(firstGuid))).thenReturn("first");
+        when(item.hasValue(eq(lastGuid))).thenReturn(true);
+        when(item.getStringValue(eq(lastGuid))).thenReturn("last");
+        when(item.hasValue(eq(upperGuid))).thenReturn(true);
+        when(item.getStringValue(eq(upperGuid))).thenReturn("upper");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CumulusRecord(extractor, item).writeFieldMetadata(out);
+        String xml = out.toString();
+        Assert.assertFalse(xml.contains("<value>first</value>"), xml);
+        Assert.assertTrue(xml.contains("<value>last</value>"), xml);
+        Assert.assertTrue(xml.contains("<value>upper</value>"), xml);
+    }
+}
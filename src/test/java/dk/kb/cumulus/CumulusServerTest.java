@@ -0,0 +1,46 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.RecordItem;
+
+public class CumulusServerTest extends ExtendedTestCase {
+
+    @Test
+    public void testGetRecordsByIds() {
+        addDescription("Test retrieving records by their ID with the shared extractor for the layout.");
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor fe = mock(FieldExtractor.class);
+        RecordItem first = mock(RecordItem.class);
+        RecordItem second = mock(RecordItem.class);
+        when(first.getID()).thenReturn(3);
+        when(second.getID()).thenReturn(1);
+        when(server.getFieldExtractor(eq("catalog"))).thenReturn(fe);
+        when(server.getRecordItemByID(eq("catalog"), eq(3))).thenReturn(first);
+        when(server.getRecordItemByID(eq("catalog"), eq(1))).thenReturn(second);
+        doCallRealMethod().when(server).getRecordsByIds(anyString(), any(int[].class));
+        doCallRealMethod().when(server).getRecordById(anyString(), anyInt());
+
+        List<CumulusRecord> records = server.getRecordsByIds("catalog", new int[] {3, 1});
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(records.get(0).getID(), 3);
+        Assert.assertEquals(records.get(1).getID(), 1);
+        Assert.assertEquals(server.getRecordById("catalog", 1).getID(), 1);
+        verify(server, times(2)).getFieldExtractor(eq("catalog"));
+        verify(server, times(0)).getItems(anyString(), any(CumulusQuery.class));
+    }
+}
@@ -0,0 +1,71 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import dk.kb.cumulus.config.CumulusConfiguration;
+
+public class CumulusSessionPoolTest extends ExtendedTestCase {
+
+    protected CumulusSessionPool createPool(int size, long timeout) {
+        CumulusConfiguration configuration = new CumulusConfiguration(false, "http://localhost", "user", "password",
+                Arrays.asList("catalog"));
+        return new CumulusSessionPool(configuration, size, timeout) {
+            @Override
+            protected CumulusServer openSession() {
+                return mock(CumulusServer.class);
+            }
+        };
+    }
+
+    @Test
+    public void testBorrowAndRelease() {
+        addDescription("Test that sessions are opened when needed, and reused when released.");
+        CumulusSessionPool pool = createPool(2, 10L);
+        CumulusServer first = pool.borrow();
+        CumulusServer second = pool.borrow();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(pool.getOpenedCount(), 2);
+
+        addStep("Borrow from the full pool", "Fails after the timeout");
+        try {
+            pool.borrow();
+            Assert.fail("Should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(pool.getOpenedCount(), 2);
+
+        addStep("Release a session and borrow again", "The released session is reused");
+        pool.release(first);
+        Assert.assertSame(pool.borrow(), first);
+        Assert.assertEquals(pool.getOpenedCount(), 2);
+        pool.close();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        addDescription("Test that the sessions are closed with the pool.");
+        CumulusSessionPool pool = createPool(2, 10L);
+        CumulusServer idle = pool.borrow();
+        CumulusServer borrowed = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+        verify(idle).close();
+        pool.release(borrowed);
+        verify(borrowed).close();
+        try {
+            pool.borrow();
+            Assert.fail("Should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
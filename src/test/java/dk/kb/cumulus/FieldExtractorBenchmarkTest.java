@@ -0,0 +1,311 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.fieldvalue.DateOnlyFieldValue;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.field.EmptyField;
+import dk.kb.cumulus.field.Field;
+import dk.kb.cumulus.field.StringField;
+
+/**
+ * Benchmark of the extraction through the compiled field readers against the original extraction, where the
+ * field definition is resolved by a switch for every field of every item.
+ *
+ * Every call to a field definition or an item is a call through the Cumulus SDK, so the number of these calls is
+ * verified for every build. The timing is only run with '-Dbenchmark=true', since the Cumulus classes are mocked
+ * without a Cumulus server: the mocked calls stand in for the calls into the SDK, and the absolute numbers are
+ * only indicative.
+ */
+public class FieldExtractorBenchmarkTest extends ExtendedTestCase {
+    /** The logger.*/
+    private static final Logger log = LoggerFactory.getLogger(FieldExtractorBenchmarkTest.class);
+
+    /** The system property for enabling the timing of the benchmark.*/
+    protected static final String BENCHMARK_PROPERTY = "benchmark";
+    /** The field types of the layout, modelled on a catalog with mostly string fields.*/
+    protected static final int[] FIELD_TYPES = new int[] {FieldTypes.FieldTypeString, FieldTypes.FieldTypeString,
+            FieldTypes.FieldTypeString, FieldTypes.FieldTypeEnum, FieldTypes.FieldTypeString,
+            FieldTypes.FieldTypeDate, FieldTypes.FieldTypeString, FieldTypes.FieldTypeInteger,
+            FieldTypes.FieldTypeString, FieldTypes.FieldTypeEnum, FieldTypes.FieldTypeLong,
+            FieldTypes.FieldTypeString, FieldTypes.FieldTypeBool, FieldTypes.FieldTypeString,
+            FieldTypes.FieldTypeDouble};
+    /** The number of fields in the layout.*/
+    protected static final int NUMBER_OF_FIELDS = 60;
+    /** Every n'th field of the layout is empty.*/
+    protected static final int EMPTY_FIELD_INTERVAL = 5;
+    /** Every n'th integer field of the layout is a date-only field.*/
+    protected static final int DATE_ONLY_INTERVAL = 2;
+    /** The number of items to extract in each round.*/
+    protected static final int NUMBER_OF_ITEMS = 1000;
+    /** The number of rounds for warming up, which are not measured.*/
+    protected static final int WARMUP_ROUNDS = 5;
+    /** The number of measured rounds.*/
+    protected static final int MEASURED_ROUNDS = 10;
+
+    /** The number of calls to the mocked Cumulus classes.*/
+    AtomicLong cumulusCalls;
+    List<FieldDefinition> definitions;
+    Item item;
+    FieldExtractor fe;
+
+    @BeforeMethod
+    public void setupLayout() {
+        cumulusCalls = new AtomicLong();
+        definitions = new ArrayList<FieldDefinition>();
+        Set<GUID> emptyFields = new HashSet<GUID>();
+        int integerFields = 0;
+        for(int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            int fieldType = FIELD_TYPES[i % FIELD_TYPES.length];
+            int interpretation = 0;
+            if(fieldType == FieldTypes.FieldTypeInteger && integerFields++ % DATE_ONLY_INTERVAL == 0) {
+                interpretation = FieldTypes.VALUE_INTERPRETATION_DATE_ONLY;
+            }
+            GUID guid = mock(GUID.class);
+            if(i % EMPTY_FIELD_INTERVAL == EMPTY_FIELD_INTERVAL - 1) {
+                emptyFields.add(guid);
+            }
+            definitions.add(mockCumulus(FieldDefinition.class, counting(Arrays.asList("field-" + i, fieldType,
+                    interpretation, guid))));
+        }
+        Layout layout = mock(Layout.class);
+        when(layout.iterator()).thenAnswer(invocation -> definitions.iterator());
+        item = mockCumulus(Item.class, mockItemValues(emptyFields));
+        fe = new FieldExtractor(layout, mock(CumulusServer.class), "catalog");
+    }
+
+    @Test
+    public void testCumulusCallsPerItem() {
+        addDescription("Test that the compiled readers extract the same fields as the original switch, with fewer "
+                + "calls into the Cumulus SDK per item.");
+        Map<String, Field> compiled = fe.getAllFields(item);
+        Map<String, Field> original = extractWithSwitch(item);
+        Assert.assertEquals(compiled.size(), NUMBER_OF_FIELDS);
+        Assert.assertEquals(compiled.keySet(), original.keySet());
+        for(Map.Entry<String, Field> entry : original.entrySet()) {
+            Field field = compiled.get(entry.getKey());
+            Assert.assertEquals(field.getClass(), entry.getValue().getClass(), entry.getKey());
+            Assert.assertEquals(field.getType(), entry.getValue().getType(), entry.getKey());
+            if(field instanceof StringField) {
+                Assert.assertEquals(((StringField) field).getStringValue(),
+                        ((StringField) entry.getValue()).getStringValue(), entry.getKey());
+            }
+        }
+
+        addStep("Count the calls into the Cumulus SDK for extracting an item", "Fewer through the compiled readers");
+        cumulusCalls.set(0);
+        fe.getAllFields(item);
+        long compiledCalls = cumulusCalls.getAndSet(0);
+        extractWithSwitch(item);
+        long originalCalls = cumulusCalls.getAndSet(0);
+        addStep("Calls per item", "Compiled readers: " + compiledCalls + ", original switch: " + originalCalls);
+        Assert.assertTrue(compiledCalls < originalCalls, compiledCalls + " < " + originalCalls);
+    }
+
+    @Test
+    public void benchmarkCompiledReaders() {
+        addDescription("Benchmark the extraction through the compiled readers against the original switch.");
+        if(!Boolean.getBoolean(BENCHMARK_PROPERTY)) {
+            throw new SkipException("The benchmark is only run with -D" + BENCHMARK_PROPERTY + "=true");
+        }
+        long fields = 0;
+        for(int round = 0; round < WARMUP_ROUNDS; round++) {
+            fields += extractCompiled() + extractOriginal();
+        }
+        long[] compiledTimes = new long[MEASURED_ROUNDS];
+        long[] originalTimes = new long[MEASURED_ROUNDS];
+        for(int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            fields += extractCompiled();
+            compiledTimes[round] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            fields += extractOriginal();
+            originalTimes[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(compiledTimes);
+        Arrays.sort(originalTimes);
+        long compiled = compiledTimes[MEASURED_ROUNDS / 2] / NUMBER_OF_ITEMS;
+        long original = originalTimes[MEASURED_ROUNDS / 2] / NUMBER_OF_ITEMS;
+        addStep("Median of " + MEASURED_ROUNDS + " rounds of " + NUMBER_OF_ITEMS + " items with "
+                + NUMBER_OF_FIELDS + " fields", "Compiled readers: " + compiled + " ns/item, original switch: "
+                + original + " ns/item");
+        log.info("Extraction of an item with {} fields - compiled readers: {} ns, original switch: {} ns "
+                + "({} fields extracted)", NUMBER_OF_FIELDS, compiled, original, fields);
+    }
+
+    /** @return The number of fields extracted through the compiled readers in a round.*/
+    protected long extractCompiled() {
+        long res = 0;
+        for(int i = 0; i < NUMBER_OF_ITEMS; i++) {
+            res += fe.getFields(item).size();
+        }
+        return res;
+    }
+
+    /** @return The number of fields extracted through the original switch in a round.*/
+    protected long extractOriginal() {
+        long res = 0;
+        for(int i = 0; i < NUMBER_OF_ITEMS; i++) {
+            res += extractWithSwitch(item).size();
+        }
+        return res;
+    }
+
+    /**
+     * Extracts all the fields of an item, as FieldExtractor did before the readers were compiled.
+     * @param item The item to extract.
+     * @return The map between field name and field.
+     */
+    protected Map<String, Field> extractWithSwitch(Item item) {
+        Map<String, Field> res = new HashMap<String, Field>();
+        for(FieldDefinition fd : definitions) {
+            Field f = getFieldValueWithSwitch(fd, item);
+            res.put(f.getName(), f);
+        }
+        return res;
+    }
+
+    /**
+     * The original extraction of a field, where the field definition is resolved for every item.
+     * Only the field types of the benchmark layout are handled. The original logged every field at debug level,
+     * which is logged at trace level here, so the arguments are evaluated without writing the log.
+     * @param fd The definition of the field.
+     * @param item The item to extract the field from.
+     * @return The field.
+     */
+    protected Field getFieldValueWithSwitch(FieldDefinition fd, Item item) {
+        if(!item.hasValue(fd.getFieldUID())) {
+            log.trace("No element at uid " + fd.getFieldUID());
+            return new EmptyField(fd, fe.getFieldTypeName(fd.getFieldType()));
+        }
+        log.trace("Reading field '{}' with type '{}'", fd.getName(), fe.getFieldTypeName(fd.getFieldType()));
+        switch(fd.getFieldType()) {
+        case FieldTypes.FieldTypeBool:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    String.valueOf(item.getBooleanValue(fd.getFieldUID())));
+        case FieldTypes.FieldTypeDate:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    item.getDateValue(fd.getFieldUID()).toString());
+        case FieldTypes.FieldTypeDouble:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    String.valueOf(item.getDoubleValue(fd.getFieldUID())));
+        case FieldTypes.FieldTypeEnum:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    item.getStringEnumValue(fd.getFieldUID()).getDisplayString());
+        case FieldTypes.FieldTypeInteger:
+            if(fd.getValueInterpretation() == FieldTypes.VALUE_INTERPRETATION_DATE_ONLY) {
+                return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                        item.getDateOnlyValue(fd.getFieldUID()).getUniversalDisplayString());
+            }
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    String.valueOf(item.getIntValue(fd.getFieldUID())));
+        case FieldTypes.FieldTypeLong:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    String.valueOf(item.getLongValue(fd.getFieldUID())));
+        case FieldTypes.FieldTypeString:
+            return new StringField(fd, fe.getFieldTypeName(fd.getFieldType()),
+                    item.getStringValue(fd.getFieldUID()));
+        default:
+            return new EmptyField(fd, fe.getFieldTypeName(fd.getFieldType()));
+        }
+    }
+
+    /**
+     * Mocks a Cumulus class without recording the invocations, so the mocks do not grow during the benchmark.
+     * @param type The Cumulus class.
+     * @param answer The answer for all the calls.
+     * @return The mock.
+     */
+    protected <T> T mockCumulus(Class<T> type, Answer<Object> answer) {
+        return mock(type, withSettings().stubOnly().defaultAnswer(answer));
+    }
+
+    /**
+     * Answers the getters of a field definition, and counts the calls.
+     * @param values The name, field type, value interpretation and GUID of the field.
+     * @return The answer.
+     */
+    protected Answer<Object> counting(List<Object> values) {
+        return invocation -> {
+            cumulusCalls.incrementAndGet();
+            switch(invocation.getMethod().getName()) {
+            case "getName":
+                return values.get(0);
+            case "getFieldType":
+                return values.get(1);
+            case "getValueInterpretation":
+                return values.get(2);
+            case "getFieldUID":
+                return values.get(3);
+            default:
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Answers the values of an item, and counts the calls.
+     * @param emptyFields The GUIDs of the fields without a value.
+     * @return The answer.
+     */
+    protected Answer<Object> mockItemValues(Set<GUID> emptyFields) {
+        final StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(enumValue.getDisplayString()).thenReturn("Ready for archival");
+        final DateOnlyFieldValue dateOnlyValue = mock(DateOnlyFieldValue.class);
+        when(dateOnlyValue.getUniversalDisplayString()).thenReturn("2020-01-31");
+        final Date date = new Date(0L);
+        return invocation -> {
+            cumulusCalls.incrementAndGet();
+            switch(invocation.getMethod().getName()) {
+            case "hasValue":
+                return !emptyFields.contains(invocation.getArguments()[0]);
+            case "getStringValue":
+                return "value of the field";
+            case "getStringEnumValue":
+                return enumValue;
+            case "getDateOnlyValue":
+                return dateOnlyValue;
+            case "getDateValue":
+                return date;
+            case "getIntValue":
+                return Integer.MAX_VALUE;
+            case "getLongValue":
+                return Long.MAX_VALUE;
+            case "getBooleanValue":
+                return Boolean.TRUE;
+            case "getDoubleValue":
+                return Math.PI;
+            default:
+                return null;
+            }
+        };
+    }
+}
@@ -1,14 +1,22 @@
 package dk.kb.cumulus;
 
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.jaccept.structure.ExtendedTestCase;
@@ -22,7 +30,9 @@ import com.canto.cumulus.Item;
 import com.canto.cumulus.Layout;
 import com.canto.cumulus.fieldvalue.AssetReference;
 import com.canto.cumulus.fieldvalue.AssetReferencePart;
+import com.canto.cumulus.fieldvalue.AssetXRefFieldValue;
 
+import dk.kb.cumulus.field.AssetsField;
 import dk.kb.cumulus.field.Field;
 import dk.kb.cumulus.field.StringField;
 
@@ -168,7 +178,7 @@ public class FieldExtractorTest extends ExtendedTestCase {
         Assert.assertEquals(f.getName(), fieldName);
         Assert.assertEquals(((StringField) f).getStringValue(), displayValue);
         
-        verify(fd, times(4)).getName();
+        verify(fd, times(3)).getName();
         verify(fd).getFieldType();
         verify(fd).getFieldUID();
         verifyNoMoreInteractions(fd);
@@ -179,4 +189,57 @@ public class FieldExtractorTest extends ExtendedTestCase {
         verifyZeroInteractions(server);
         verifyZeroInteractions(layout);
     }
+
+    @Test
+    public void testNestedExtractorIsShared() {
+        addDescription("Test that the extractor for the rows of a table field is shared between the tables.");
+        FieldExtractor fe = new FieldExtractor(mock(Layout.class), mock(CumulusServer.class), "catalog");
+        FieldDefinition tableField = mock(FieldDefinition.class);
+        when(tableField.getFieldUID()).thenReturn(mock(GUID.class));
+        FieldDefinition otherTableField = mock(FieldDefinition.class);
+        when(otherTableField.getFieldUID()).thenReturn(mock(GUID.class));
+        Layout tableLayout = mock(Layout.class);
+
+        FieldExtractor nested = fe.getNestedExtractor(tableField, tableLayout);
+        Assert.assertSame(fe.getNestedExtractor(tableField, mock(Layout.class)), nested);
+        Assert.assertNotSame(fe.getNestedExtractor(otherTableField, tableLayout), nested);
+        Assert.assertEquals(nested.getCatalog(), "catalog");
+        verifyZeroInteractions(tableLayout);
+    }
+
+    @Test
+    public void testAssetsResolvedById() {
+        addDescription("Test that the related assets are retrieved by their record ID instead of being searched for.");
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor fe = new FieldExtractor(mock(Layout.class), server, "catalog");
+        FieldDefinition fd = mock(FieldDefinition.class);
+        GUID fieldGuid = mock(GUID.class);
+        GUID relation = mock(GUID.class);
+        when(fd.getName()).thenReturn(Constants.FieldNames.RELATED_SUB_ASSETS);
+        when(fd.getFieldUID()).thenReturn(fieldGuid);
+        Item item = mock(Item.class);
+        AssetXRefFieldValue references = mock(AssetXRefFieldValue.class);
+        Set<Integer> ids = new HashSet<Integer>(Arrays.asList(5, 9));
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        names.put(5, "b.tif");
+        names.put(9, "a.tif");
+        when(item.getAssetXRefValue(eq(fieldGuid))).thenReturn(references);
+        when(references.getRelations()).thenReturn(Collections.singleton(relation));
+        when(references.getReferences(eq(relation))).thenReturn(ids);
+        when(references.getReferencedItemNames(eq(ids))).thenReturn(names);
+        CumulusRecord asset = mock(CumulusRecord.class);
+        String uuid = UUID.randomUUID().toString();
+        when(asset.getFieldValueOrNull(eq(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY)))
+                .thenReturn(uuid);
+        when(asset.getFieldValue(eq(Constants.FieldNames.RELATED_OBJECT_IDENTIFIER_VALUE_INTELLECTUEL_ENTITY)))
+                .thenReturn(uuid);
+        when(server.getRecordById(eq("catalog"), eq(9))).thenReturn(asset);
+        when(server.getRecordById(eq("catalog"), eq(5))).thenThrow(new IllegalStateException("Deleted"));
+
+        AssetsField res = (AssetsField) fe.extractAssetsField(fd, "Binary", item);
+        Assert.assertEquals(new ArrayList<String>(res.getNames()), Arrays.asList("a.tif", "b.tif"));
+        Assert.assertEquals(res.getGuid("a.tif"), uuid);
+        Assert.assertEquals(res.getGuid("b.tif"), "N/A");
+        verify(server, never()).findCumulusRecordByName(anyString(), anyString());
+    }
 }
@@ -0,0 +1,194 @@
+package dk.kb.cumulus;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static dk.kb.cumulus.TestUtils.mockLayout;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.fieldvalue.DateOnlyFieldValue;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.field.EmptyField;
+import dk.kb.cumulus.field.Field;
+import dk.kb.cumulus.field.StringField;
+import dk.kb.cumulus.utils.ValueDictionary;
+
+public class FieldReaderTest extends ExtendedTestCase {
+
+    @Test
+    public void testCompileResolvesDefinitionOnce() {
+        addDescription("Test that the reader resolves the field definition at compile time, and not for each item.");
+        FieldExtractor fe = mockExtractor("catalog");
+        GUID guid = mock(GUID.class);
+        String name = UUID.randomUUID().toString();
+        FieldDefinition fd = mockDefinition(name, FieldTypes.FieldTypeLong, 0, guid);
+
+        FieldReader reader = FieldReader.compile(fd, fe);
+        Assert.assertEquals(reader.getFieldName(), name);
+        Assert.assertEquals(reader.getTypeName(), "long");
+        Assert.assertEquals(reader.getFieldType(), FieldTypes.FieldTypeLong);
+        Assert.assertEquals(reader.getFieldUID(), guid);
+
+        Item item = mock(Item.class);
+        when(item.hasValue(eq(guid))).thenReturn(true);
+        when(item.getLongValue(eq(guid))).thenReturn(1234L);
+
+        for(int i = 0; i < 10; i++) {
+            Field f = reader.read(item, true);
+            Assert.assertTrue(f instanceof StringField);
+            Assert.assertEquals(((StringField) f).getStringValue(), "1234");
+        }
+
+        verify(fd, times(1)).getFieldType();
+        verify(fd, times(1)).getValueInterpretation();
+        verify(fd, times(1)).getFieldUID();
+    }
+
+    @Test
+    public void testReadEmptyField() {
+        addDescription("Test reading a field without any value.");
+        FieldExtractor fe = mockExtractor("catalog");
+        GUID guid = mock(GUID.class);
+        FieldReader reader = FieldReader.compile(mockDefinition("empty", FieldTypes.FieldTypeString, 0, guid), fe);
+
+        Item item = mock(Item.class);
+        when(item.hasValue(eq(guid))).thenReturn(false);
+
+        addStep("Read while ignoring empty fields", "Should give null");
+        Assert.assertNull(reader.read(item, true));
+
+        addStep("Read without ignoring empty fields", "Should give an empty field");
+        Field f = reader.read(item, false);
+        Assert.assertTrue(f instanceof EmptyField);
+        Assert.assertEquals(f.getType(), "string");
+    }
+
+    @Test
+    public void testReadTypedFields() {
+        addDescription("Test the conversion of the different types of fields.");
+        FieldExtractor fe = mockExtractor("catalog");
+        Item item = mock(Item.class);
+        when(item.hasValue(org.mockito.Matchers.any(GUID.class))).thenReturn(true);
+
+        addStep("Boolean field", "Converted through String.valueOf");
+        GUID boolGuid = mock(GUID.class);
+        when(item.getBooleanValue(eq(boolGuid))).thenReturn(true);
+        assertStringValue(FieldReader.compile(mockDefinition("b", FieldTypes.FieldTypeBool, 0, boolGuid), fe), item,
+                "true");
+
+        addStep("Date field", "Converted through Date.toString");
+        GUID dateGuid = mock(GUID.class);
+        Date date = new Date();
+        when(item.getDateValue(eq(dateGuid))).thenReturn(date);
+        assertStringValue(FieldReader.compile(mockDefinition("d", FieldTypes.FieldTypeDate, 0, dateGuid), fe), item,
+                date.toString());
+
+        addStep("Enum field", "The display string");
+        GUID enumGuid = mock(GUID.class);
+        StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(enumValue.getDisplayString()).thenReturn("Langtidsbevaret");
+        when(item.getStringEnumValue(eq(enumGuid))).thenReturn(enumValue);
+        assertStringValue(FieldReader.compile(mockDefinition("e", FieldTypes.FieldTypeEnum, 0, enumGuid), fe), item,
+                "Langtidsbevaret");
+
+        addStep("Integer field", "Converted through String.valueOf");
+        GUID intGuid = mock(GUID.class);
+        when(item.getIntValue(eq(intGuid))).thenReturn(42);
+        assertStringValue(FieldReader.compile(mockDefinition("i", FieldTypes.FieldTypeInteger, 0, intGuid), fe), item,
+                "42");
+
+        addStep("Date only field", "The universal display string of the date only value");
+        GUID dateOnlyGuid = mock(GUID.class);
+        DateOnlyFieldValue dateOnly = mock(DateOnlyFieldValue.class);
+        when(dateOnly.getUniversalDisplayString()).thenReturn("2020-01-31");
+        when(item.getDateOnlyValue(eq(dateOnlyGuid))).thenReturn(dateOnly);
+        assertStringValue(FieldReader.compile(mockDefinition("do", FieldTypes.FieldTypeInteger,
+                FieldTypes.VALUE_INTERPRETATION_DATE_ONLY, dateOnlyGuid), fe), item, "2020-01-31");
+
+        addStep("Unhandled field type", "Always an empty field");
+        FieldReader unhandled = FieldReader.compile(mockDefinition("p", FieldTypes.FieldTypePicture, 0,
+                mock(GUID.class)), fe);
+        Assert.assertTrue(unhandled.read(item, true) instanceof EmptyField);
+    }
+
+    @Test
+    public void testExtractorCompilesReadersOnce() {
+        addDescription("Test that the extractor only iterates the layout once, when extracting multiple items.");
+        GUID guid = mock(GUID.class);
+        String name = UUID.randomUUID().toString();
+        Layout layout = mockLayout(mockDefinition(name, FieldTypes.FieldTypeString, 0, guid));
+
+        FieldExtractor fe = new FieldExtractor(layout, mock(CumulusServer.class), "catalog");
+        Item item = mock(Item.class);
+        when(item.hasValue(eq(guid))).thenReturn(true);
+        when(item.getStringValue(eq(guid))).thenReturn("value");
+
+        for(int i = 0; i < 5; i++) {
+            Assert.assertEquals(fe.getMap(item).get(name), "value");
+        }
+        verify(layout, times(1)).iterator();
+    }
+
+    @Test
+    public void testEnumValuesAreInterned() {
+        addDescription("Test that equal values of an enumerator field share the same instance.");
+        FieldExtractor fe = mockExtractor("catalog");
+        GUID enumGuid = mock(GUID.class);
+        FieldReader reader = FieldReader.compile(mockDefinition("e", FieldTypes.FieldTypeEnum, 0, enumGuid), fe);
+        StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(enumValue.getDisplayString()).thenReturn(new String("Archived"), new String("Archived"));
+        Item item = mock(Item.class);
+        when(item.hasValue(eq(enumGuid))).thenReturn(true);
+        when(item.getStringEnumValue(eq(enumGuid))).thenReturn(enumValue);
+
+        String first = ((StringField) reader.read(item, true)).getStringValue();
+        String second = ((StringField) reader.read(item, true)).getStringValue();
+        Assert.assertSame(first, second);
+        Assert.assertEquals(reader.getDictionary().size(), 1);
+        Assert.assertEquals(reader.getDictionary().getHits(), 1L);
+
+        addStep("Read a string field", "The values are not interned");
+        FieldReader stringReader = FieldReader.compile(mockDefinition("s", FieldTypes.FieldTypeString, 0,
+                mock(GUID.class)), fe);
+        Assert.assertNull(stringReader.getDictionary());
+        String value = new String("value");
+        Assert.assertSame(stringReader.intern(value), value);
+    }
+
+    @Test
+    public void testDictionaryOfServer() {
+        addDescription("Test that the readers of the extractors for a catalog use the dictionaries of the server.");
+        GUID enumGuid = mock(GUID.class);
+        ValueDictionary shared = new ValueDictionary(ValueDictionary.DEFAULT_MAX_SIZE);
+        CumulusServer server = mock(CumulusServer.class);
+        when(server.getValueDictionary(eq("catalog"), eq(enumGuid))).thenReturn(shared);
+        FieldDefinition fd = mockDefinition("e", FieldTypes.FieldTypeEnum, 0, enumGuid);
+
+        FieldExtractor first = new FieldExtractor(mockLayout(fd), server, "catalog");
+        FieldExtractor second = new FieldExtractor(mockLayout(fd), server, "catalog");
+        Assert.assertSame(first.getFieldHandle("e").getReader().getDictionary(), shared);
+        Assert.assertSame(second.getFieldHandle("e").getReader().getDictionary(), shared);
+    }
+
+    protected void assertStringValue(FieldReader reader, Item item, String expected) {
+        Field f = reader.read(item, true);
+        Assert.assertTrue(f instanceof StringField);
+        Assert.assertEquals(((StringField) f).getStringValue(), expected);
+    }
+}
@@ -0,0 +1,111 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.Item;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.RecordItemCollection;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.config.CumulusConfiguration;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class MultiCatalogRecordCollectionTest extends ExtendedTestCase {
+
+    @Test
+    public void testFanOut() {
+        addDescription("Test querying several catalogs in parallel, where one of the catalogs fails.");
+        CumulusServer session = mock(CumulusServer.class);
+        CumulusRecordCollection first = new CumulusRecordCollection(mockItems(2), session, "First");
+        CumulusRecordCollection second = new CumulusRecordCollection(mockItems(0), session, "Second");
+        when(session.getItems(eq("First"), any(CumulusQuery.class))).thenReturn(first);
+        when(session.getItems(eq("Second"), any(CumulusQuery.class))).thenReturn(second);
+        when(session.getItems(eq("Broken"), any(CumulusQuery.class))).thenThrow(
+                new IllegalStateException("Broken catalog"));
+        final List<CumulusServer> released = new ArrayList<CumulusServer>();
+        CumulusConfiguration configuration = new CumulusConfiguration(false, "http://localhost", "user", "password",
+                Arrays.asList("First", "Second", "Broken"));
+        CumulusSessionPool pool = new CumulusSessionPool(configuration, 3, 1000L) {
+            @Override
+            protected CumulusServer openSession() {
+                return session;
+            }
+            @Override
+            public void release(CumulusServer borrowed) {
+                synchronized(released) {
+                    released.add(borrowed);
+                }
+            }
+        };
+        CumulusServer server = mock(CumulusServer.class);
+        when(server.getSessionPool()).thenReturn(pool);
+        doCallRealMethod().when(server).getItems(any(Collection.class), any(CumulusQueryTemplate.class));
+
+        CumulusQueryTemplate template = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.RECORD_NAME, Operator.IS, "name")
+                .compile();
+        MultiCatalogRecordCollection res = server.getItems(Arrays.asList("First", "Broken", "Second"), template);
+        Assert.assertEquals(new ArrayList<String>(res.getCatalogs()), Arrays.asList("First", "Second"));
+        Assert.assertTrue(res.hasFailures());
+        Assert.assertEquals(res.getFailures().keySet().iterator().next(), "Broken");
+        Assert.assertEquals(res.getFailures().get("Broken").getMessage(), "Broken catalog");
+        Assert.assertEquals(released.size(), 1);
+
+        addStep("Iterate the records", "The records of all the catalogs are tagged with their catalog");
+        Assert.assertEquals(res.getCount(), 2);
+        int count = 0;
+        for(CumulusRecord record : res) {
+            Assert.assertEquals(record.getCatalogName(), "First");
+            count++;
+        }
+        Assert.assertEquals(count, 2);
+
+        addStep("Close the result", "The sessions are released");
+        res.close();
+        Assert.assertEquals(released.size(), 3);
+        pool.close();
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testMoreCatalogsThanSessions() {
+        addDescription("Test that a query across more catalogs than sessions in the pool fails at once.");
+        CumulusConfiguration configuration = new CumulusConfiguration(false, "http://localhost", "user", "password",
+                Arrays.asList("First", "Second", "Third"));
+        CumulusSessionPool pool = new CumulusSessionPool(configuration, 2, 1000L);
+        CumulusServer server = mock(CumulusServer.class);
+        when(server.getSessionPool()).thenReturn(pool);
+        doCallRealMethod().when(server).getItems(any(Collection.class), any(CumulusQueryTemplate.class));
+        CumulusQueryTemplate template = new CumulusQueryBuilder()
+                .where(Constants.FieldNames.RECORD_NAME, Operator.IS, "name")
+                .compile();
+        try {
+            server.getItems(Arrays.asList("First", "Second", "Third", "First"), template);
+        } finally {
+            pool.close();
+        }
+    }
+
+    protected RecordItemCollection mockItems(int count) {
+        final Item[] items = new Item[count];
+        for(int i = 0; i < count; i++) {
+            items[i] = mock(RecordItem.class);
+        }
+        RecordItemCollection res = mock(RecordItemCollection.class);
+        when(res.getItemCount()).thenReturn(count);
+        when(res.iterator()).thenAnswer(invocation -> Arrays.asList(items).iterator());
+        return res;
+    }
+}
@@ -0,0 +1,106 @@
+package dk.kb.cumulus;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockLayout;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Layout;
+
+import dk.kb.cumulus.CumulusQueryBuilder.Operator;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class PreparedCumulusQueryTest extends ExtendedTestCase {
+
+    @Test
+    public void testPrepareAndExecute() {
+        addDescription("Test preparing a query against the layout, and executing it with different values.");
+        CumulusServer server = createServer();
+        CumulusQueryTemplate template = new CumulusQueryBuilder()
+                .where("Title", Operator.CONTAINS)
+                .and("Size", Operator.IS_GREATER_THAN)
+                .and("Modified", Operator.IS_AFTER)
+                .and("Day", Operator.IS_BEFORE)
+                .compile();
+        PreparedCumulusQuery prepared = new PreparedCumulusQuery(server, "catalog", template);
+        Assert.assertEquals(prepared.getCatalogName(), "catalog");
+        Assert.assertSame(prepared.getTemplate(), template);
+
+        Instant date = Instant.parse("2020-01-01T00:00:00Z");
+        CumulusQuery query = prepared.bind("title", 42, date, LocalDate.of(2020, 1, 2));
+        Assert.assertEquals(query.getQuery(), "Title\tcontains\ttitle\nand\tSize\tis greater than\t42\nand\t"
+                + "Modified\tis after\t" + CumulusQuery.QUERY_DATE_FORMAT.format(date)
+                + "\nand\tDay\tis before\t2020-01-02");
+        Assert.assertEquals(prepared.bind("title", 42L, Date.from(date), LocalDate.of(2020, 1, 2)).getQuery(),
+                query.getQuery());
+
+        addStep("Execute the query", "The query is given to the server for the catalog");
+        prepared.execute("other", 1, date, LocalDate.of(2020, 1, 2));
+        verify(server).getItems(eq("catalog"), any(CumulusQuery.class));
+        verify(server, times(1)).getFieldExtractor(eq("catalog"));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testBindWrongType() {
+        addDescription("Test that binding a value of the wrong type for the field fails.");
+        PreparedCumulusQuery prepared = new PreparedCumulusQuery(createServer(), "catalog",
+                new CumulusQueryBuilder().where("Size", Operator.IS).compile());
+        prepared.bind("not a number");
+    }
+
+    @Test
+    public void testPrepareInvalidQuery() {
+        addDescription("Test that preparing a query with unknown fields, unsupported operators or invalid values "
+                + "fails with all the problems.");
+        CumulusQueryTemplate template = new CumulusQueryBuilder()
+                .where("Unknown", Operator.IS)
+                .and("Title", Operator.IS_GREATER_THAN)
+                .and("Size", Operator.IS, "large")
+                .and("title", Operator.IS, "any")
+                .and("Modified", Operator.IS_AFTER, "yesterday")
+                .and("Modified", Operator.IS_BEFORE, "2020-01-02")
+                .and("Day", Operator.IS_AFTER, "2020-01-02 10:00:00")
+                .compile();
+        try {
+            new PreparedCumulusQuery(createServer(), "catalog", template);
+            Assert.fail("Should fail");
+        } catch (ArgumentCheck e) {
+            Assert.assertTrue(e.getMessage().contains("'Unknown'"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("'is greater than'"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("'large'"), e.getMessage());
+            Assert.assertFalse(e.getMessage().contains("'any'"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("'Title' of type 'string'"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains(
+                    "'yesterday' is not valid for the field 'Modified' of type 'date'"), e.getMessage());
+            Assert.assertFalse(e.getMessage().contains("'2020-01-02'"), e.getMessage());
+            Assert.assertTrue(e.getMessage().contains("of type 'integer (date only)'"), e.getMessage());
+        }
+    }
+
+    protected CumulusServer createServer() {
+        Layout layout = mockLayout(
+                mockDefinition("Title", FieldTypes.FieldTypeString, mock(GUID.class)),
+                mockDefinition("Size", FieldTypes.FieldTypeLong, mock(GUID.class)),
+                mockDefinition("Modified", FieldTypes.FieldTypeDate, mock(GUID.class)),
+                mockDefinition("Day", FieldTypes.FieldTypeInteger, FieldTypes.VALUE_INTERPRETATION_DATE_ONLY,
+                        mock(GUID.class)));
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor fe = new FieldExtractor(layout, server, "catalog");
+        when(server.getFieldExtractor(eq("catalog"))).thenReturn(fe);
+        return server;
+    }
+}
@@ -0,0 +1,139 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Locale;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.constants.CombineMode;
+import com.canto.cumulus.constants.FindFlag;
+
+public class QueryResultCacheTest extends ExtendedTestCase {
+
+    @Test
+    public void testKeyNormalization() {
+        addDescription("Test that equal queries on the same catalog give equal keys.");
+        CumulusQuery query = CumulusQuery.getQueryForSpecificRecordName("Catalog", "record");
+        Assert.assertTrue(query.getQuery().contains("\n"));
+        CumulusQuery same = new CumulusQuery(query.getQuery().replace("\n", "\r\n"),
+                EnumSet.copyOf(query.getFindFlags()), query.getCombineMode());
+        Assert.assertNotEquals(same, query);
+
+        QueryResultCache.Key key = new QueryResultCache.Key("Catalog", query);
+        Assert.assertEquals(new QueryResultCache.Key("Catalog", same), key);
+        Assert.assertEquals(new QueryResultCache.Key("Catalog", same).hashCode(), key.hashCode());
+        Assert.assertNotEquals(new QueryResultCache.Key("Other", query), key);
+
+        addStep("Add trailing whitespace to the query", "Different key, since it may be part of a value");
+        CumulusQuery padded = new CumulusQuery(query.getQuery() + " ", EnumSet.copyOf(query.getFindFlags()),
+                query.getCombineMode());
+        Assert.assertNotEquals(new QueryResultCache.Key("Catalog", padded), key);
+
+        addStep("Change the locale of the query", "The key is not changed, but a new key is different");
+        query.setLocale(Locale.ROOT);
+        Assert.assertEquals(new QueryResultCache.Key("Catalog", same), key);
+        Assert.assertNotEquals(new QueryResultCache.Key("Catalog", query), key);
+
+        addStep("Different combine mode", "Different key");
+        CumulusQuery narrow = new CumulusQuery(same.getQuery(), EnumSet.copyOf(same.getFindFlags()),
+                CombineMode.FIND_NARROW);
+        Assert.assertNotEquals(new QueryResultCache.Key("Catalog", narrow), key);
+        CumulusQuery flags = new CumulusQuery(same.getQuery(), EnumSet.of(FindFlag.FIND_MISSING_FIELDS_ARE_ERROR),
+                same.getCombineMode());
+        Assert.assertNotEquals(new QueryResultCache.Key("Catalog", flags), key);
+    }
+
+    @Test
+    public void testExpiry() {
+        addDescription("Test that the results expire after the time to live.");
+        final long[] now = new long[] {1000L};
+        QueryResultCache cache = new QueryResultCache(100L, 10) {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        QueryResultCache.Key key = new QueryResultCache.Key("Catalog", CumulusQuery.getQueryForAllInCatalog("Catalog"));
+        Assert.assertNull(cache.get(key));
+        cache.put(key, new int[] {1, 2, 3});
+        now[0] += 99L;
+        Assert.assertEquals(cache.get(key), new int[] {1, 2, 3});
+        now[0] += 1L;
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getHits(), 1L);
+        Assert.assertEquals(cache.getMisses(), 2L);
+    }
+
+    @Test
+    public void testInvalidationAndSize() {
+        addDescription("Test invalidating the results of a catalog, and removing the least recently used results.");
+        QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_TIME_TO_LIVE, 2);
+        QueryResultCache.Key first = new QueryResultCache.Key("First", CumulusQuery.getQueryForAllInCatalog("First"));
+        QueryResultCache.Key second = new QueryResultCache.Key("Second",
+                CumulusQuery.getQueryForAllInCatalog("Second"));
+        QueryResultCache.Key third = new QueryResultCache.Key("Second",
+                CumulusQuery.getQueryForSpecificRecordName("Second", "record"));
+        cache.put(first, new int[] {1});
+        cache.put(second, new int[] {2});
+        Assert.assertNotNull(cache.get(first));
+        cache.put(third, new int[] {3});
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertNull(cache.get(second));
+
+        cache.invalidate("Second");
+        Assert.assertNull(cache.get(third));
+        Assert.assertNotNull(cache.get(first));
+        cache.invalidateAll();
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testInvalidationDuringQuery() {
+        addDescription("Test that a result is not stored, when the catalog is invalidated while the query runs.");
+        QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_TIME_TO_LIVE, 10);
+        QueryResultCache.Key key = new QueryResultCache.Key("Catalog", CumulusQuery.getQueryForAllInCatalog("Catalog"));
+        long generation = cache.getGeneration("Catalog");
+        cache.invalidate("Catalog");
+        Assert.assertFalse(cache.put(key, new int[] {1}, generation));
+        Assert.assertNull(cache.get(key));
+
+        addStep("Invalidate another catalog, and then all catalogs", "Only the latter prevents the result");
+        generation = cache.getGeneration("Catalog");
+        cache.invalidate("Other");
+        Assert.assertTrue(cache.put(key, new int[] {1}, generation));
+        cache.invalidateAll();
+        Assert.assertFalse(cache.put(key, new int[] {1}, generation));
+    }
+
+    @Test
+    public void testLazyHydration() {
+        addDescription("Test that the records of a cached result are only retrieved, when they are accessed.");
+        CumulusServer server = mock(CumulusServer.class);
+        FieldExtractor fe = mock(FieldExtractor.class);
+        RecordItem item = mock(RecordItem.class);
+        when(server.getFieldExtractor(eq("Catalog"))).thenReturn(fe);
+        when(server.getRecordItemByID(eq("Catalog"), eq(7))).thenReturn(item);
+
+        CachedRecordCollection records = new CachedRecordCollection(server, "Catalog", new int[] {7});
+        Assert.assertEquals(records.getCount(), 1);
+        Assert.assertEquals(records.getRecordIds(), new int[] {7});
+        verifyZeroInteractions(server);
+
+        Iterator<CumulusRecord> iterator = records.iterator();
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertNotNull(iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        verify(server).getRecordItemByID(eq("Catalog"), eq(7));
+    }
+}
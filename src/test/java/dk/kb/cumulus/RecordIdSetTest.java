@@ -0,0 +1,155 @@
+package dk.kb.cumulus;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.InOrder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.Catalog;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.RecordItemCollection;
+import com.canto.cumulus.constants.CombineMode;
+
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class RecordIdSetTest extends ExtendedTestCase {
+
+    @Test
+    public void testSetAlgebra() {
+        addDescription("Test combining sets of record IDs.");
+        RecordIdSet category = RecordIdSet.of("catalog", 1, 2, 3, 5, 8);
+        RecordIdSet status = RecordIdSet.of("catalog", 2, 3, 4);
+
+        Assert.assertEquals(category.and(status).toArray(), new int[] {2, 3});
+        Assert.assertEquals(category.or(status).toArray(), new int[] {1, 2, 3, 4, 5, 8});
+        Assert.assertEquals(category.andNot(status).toArray(), new int[] {1, 5, 8});
+        Assert.assertEquals(category.andNot(status).cardinality(), 3);
+        Assert.assertTrue(category.andNot(category).isEmpty());
+        Assert.assertEquals(category.andNot(category), RecordIdSet.empty("catalog"));
+
+        addStep("Check the original sets", "They are unchanged");
+        Assert.assertEquals(category.cardinality(), 5);
+        Assert.assertTrue(category.contains(8));
+        Assert.assertFalse(category.contains(4));
+        Assert.assertFalse(category.contains(-1));
+        Assert.assertEquals(status, RecordIdSet.of("catalog", 4, 3, 2, 2));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testNegativeId() {
+        addDescription("Test that record IDs cannot be negative.");
+        RecordIdSet.of("catalog", 1, -2);
+    }
+
+    @Test
+    public void testFromRecordCollection() {
+        addDescription("Test extracting the IDs of a result set without extracting the records.");
+        RecordItemCollection items = mockItems(7, 3, 11);
+        CumulusRecordCollection records = new CumulusRecordCollection(items, mock(CumulusServer.class), "catalog");
+        Assert.assertEquals(records.getRecordIds(), new int[] {7, 3, 11});
+        Assert.assertEquals(RecordIdSet.of(records).toArray(), new int[] {3, 7, 11});
+        Assert.assertEquals(RecordIdSet.of(records).getCatalogName(), "catalog");
+    }
+
+    @Test
+    public void testDifferentCatalogs() {
+        addDescription("Test that sets of record IDs from different catalogs cannot be combined.");
+        RecordIdSet first = RecordIdSet.of("first", 1, 2);
+        RecordIdSet second = RecordIdSet.of("second", 1, 2);
+        Assert.assertNotEquals(first, second);
+        for(Runnable combination : Arrays.<Runnable>asList(() -> first.and(second), () -> first.or(second),
+                () -> first.andNot(second))) {
+            try {
+                combination.run();
+                Assert.fail("Combining sets of different catalogs should fail");
+            } catch (ArgumentCheck e) {
+                Assert.assertTrue(e.getMessage().contains("first"), e.getMessage());
+                Assert.assertTrue(e.getMessage().contains("second"), e.getMessage());
+            }
+        }
+
+        addStep("Retrieve the records of a set from another catalog", "It fails");
+        CumulusServer server = mock(CumulusServer.class);
+        doCallRealMethod().when(server).getRecords(anyString(), any(RecordIdSet.class));
+        try {
+            server.getRecords("second", first);
+            Assert.fail("Retrieving the records of another catalog should fail");
+        } catch (ArgumentCheck e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testItemsMatchingAll() {
+        addDescription("Test that queries, which must all match, are narrowed on the server.");
+        CumulusServer server = mock(CumulusServer.class);
+        Catalog catalog = mock(Catalog.class);
+        RecordItemCollection items = mockItems(1);
+        when(server.getCatalog(anyString())).thenReturn(catalog);
+        when(catalog.newRecordItemCollection(eq(true))).thenReturn(items);
+        doCallRealMethod().when(server).getItemsMatchingAll(anyString(), any(CumulusQuery.class),
+                any(CumulusQuery.class));
+        doCallRealMethod().when(server).getItemsCombined(anyString(), any(CombineMode.class),
+                any(CumulusQuery.class), any(CumulusQuery.class));
+
+        CumulusQuery first = CumulusQuery.getQueryForAllInCatalog("catalog");
+        CumulusQuery second = CumulusQuery.getQueryForSpecificRecordName("catalog", "name");
+        CumulusRecordCollection res = server.getItemsMatchingAll("catalog", first, second);
+        Assert.assertEquals(res.getRecordIds(), new int[] {1});
+
+        InOrder order = inOrder(items);
+        order.verify(items).find(eq(first.getQuery()), any(EnumSet.class), eq(CombineMode.FIND_NEW),
+                any(Locale.class));
+        order.verify(items).find(eq(second.getQuery()), any(EnumSet.class), eq(CombineMode.FIND_NARROW),
+                any(Locale.class));
+    }
+
+    @Test
+    public void testItemsMatchingAny() {
+        addDescription("Test that queries, of which any must match, are widened on the server.");
+        CumulusServer server = mock(CumulusServer.class);
+        Catalog catalog = mock(Catalog.class);
+        RecordItemCollection items = mockItems(1, 2);
+        when(server.getCatalog(anyString())).thenReturn(catalog);
+        when(catalog.newRecordItemCollection(eq(true))).thenReturn(items);
+        doCallRealMethod().when(server).getItemsMatchingAny(anyString(), any(CumulusQuery.class),
+                any(CumulusQuery.class));
+        doCallRealMethod().when(server).getItemsCombined(anyString(), any(CombineMode.class),
+                any(CumulusQuery.class), any(CumulusQuery.class));
+
+        CumulusQuery first = CumulusQuery.getQueryForSpecificRecordName("catalog", "first");
+        CumulusQuery second = CumulusQuery.getQueryForSpecificRecordName("catalog", "second");
+        CumulusRecordCollection res = server.getItemsMatchingAny("catalog", first, second);
+        Assert.assertEquals(res.getRecordIds(), new int[] {1, 2});
+
+        InOrder order = inOrder(items);
+        order.verify(items).find(eq(first.getQuery()), any(EnumSet.class), eq(CombineMode.FIND_NEW),
+                any(Locale.class));
+        order.verify(items).find(eq(second.getQuery()), any(EnumSet.class), eq(CombineMode.FIND_WIDEN),
+                any(Locale.class));
+    }
+
+    protected RecordItemCollection mockItems(int... ids) {
+        final Item[] items = new Item[ids.length];
+        for(int i = 0; i < ids.length; i++) {
+            items[i] = mock(Item.class);
+            when(items[i].getID()).thenReturn(ids[i]);
+        }
+        RecordItemCollection res = mock(RecordItemCollection.class);
+        when(res.getItemCount()).thenReturn(ids.length);
+        when(res.iterator()).thenAnswer(invocation -> Arrays.asList(items).iterator());
+        return res;
+    }
+}
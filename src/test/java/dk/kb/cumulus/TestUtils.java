@@ -1,13 +1,23 @@
 package dk.kb.cumulus;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.SkipException;
 import org.yaml.snakeyaml.Yaml;
 
+import com.canto.cumulus.FieldDefinition;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Layout;
+
 import dk.kb.cumulus.config.CumulusConfiguration;
 
 public class TestUtils {
@@ -30,4 +40,60 @@ public class TestUtils {
         
         return new CumulusConfiguration(true, serverUrl, userName, userPassword, Arrays.asList(catalog));
     }
+
+    /**
+     * Mocks the definition of a field without any value interpretation.
+     * @param name The name of the field.
+     * @param fieldType The type of the field.
+     * @param guid The GUID of the field.
+     * @return The mocked field definition.
+     */
+    public static FieldDefinition mockDefinition(String name, int fieldType, GUID guid) {
+        return mockDefinition(name, fieldType, 0, guid);
+    }
+
+    /**
+     * Mocks the definition of a field.
+     * @param name The name of the field.
+     * @param fieldType The type of the field.
+     * @param interpretation The value interpretation of the field.
+     * @param guid The GUID of the field.
+     * @return The mocked field definition.
+     */
+    public static FieldDefinition mockDefinition(String name, int fieldType, int interpretation, GUID guid) {
+        FieldDefinition fd = mock(FieldDefinition.class);
+        when(fd.getName()).thenReturn(name);
+        when(fd.getFieldType()).thenReturn(fieldType);
+        when(fd.getValueInterpretation()).thenReturn(interpretation);
+        when(fd.getFieldUID()).thenReturn(guid);
+        return fd;
+    }
+
+    /**
+     * Mocks a layout with the given field definitions.
+     * Each iteration of the layout starts over, so it can be iterated more than once.
+     * @param definitions The definitions of the fields of the layout.
+     * @return The mocked layout.
+     */
+    public static Layout mockLayout(FieldDefinition... definitions) {
+        final List<FieldDefinition> fields = Arrays.asList(definitions);
+        Layout layout = mock(Layout.class);
+        when(layout.iterator()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return fields.iterator();
+            }
+        });
+        return layout;
+    }
+
+    /**
+     * Creates a field extractor for a mocked layout with the given field definitions, and a mocked server.
+     * @param catalog The name of the catalog.
+     * @param definitions The definitions of the fields of the layout.
+     * @return The field extractor.
+     */
+    public static FieldExtractor mockExtractor(String catalog, FieldDefinition... definitions) {
+        return new FieldExtractor(mockLayout(definitions), mock(CumulusServer.class), catalog);
+    }
 }
@@ -0,0 +1,182 @@
+package dk.kb.cumulus.batch;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static dk.kb.cumulus.TestUtils.mockLayout;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.RecordItemCollection;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class RecordBatchTest extends ExtendedTestCase {
+
+    GUID sizeGuid;
+    GUID statusGuid;
+    GUID dateGuid;
+    GUID flagGuid;
+    GUID nameGuid;
+    GUID tableGuid;
+    Layout layout;
+    FieldExtractor fe;
+
+    @BeforeMethod
+    public void setupLayout() {
+        sizeGuid = mock(GUID.class);
+        statusGuid = mock(GUID.class);
+        dateGuid = mock(GUID.class);
+        flagGuid = mock(GUID.class);
+        nameGuid = mock(GUID.class);
+        tableGuid = mock(GUID.class);
+        layout = mockLayout(
+                mockDefinition("size", FieldTypes.FieldTypeLong, sizeGuid),
+                mockDefinition("status", FieldTypes.FieldTypeEnum, statusGuid),
+                mockDefinition("date", FieldTypes.FieldTypeDate, dateGuid),
+                mockDefinition("flag", FieldTypes.FieldTypeBool, flagGuid),
+                mockDefinition("name", FieldTypes.FieldTypeString, nameGuid),
+                mockDefinition("table", FieldTypes.FieldTypeTable, tableGuid));
+        fe = new FieldExtractor(layout, mock(CumulusServer.class), "catalog");
+    }
+
+    protected Item mockItem(int id, long size, String status, boolean flag) {
+        StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+        when(enumValue.getDisplayString()).thenReturn(status);
+        RecordItem item = mock(RecordItem.class);
+        when(item.getID()).thenReturn(id);
+        when(item.hasValue(eq(sizeGuid))).thenReturn(true);
+        when(item.getLongValue(eq(sizeGuid))).thenReturn(size);
+        when(item.hasValue(eq(statusGuid))).thenReturn(true);
+        when(item.getStringEnumValue(eq(statusGuid))).thenReturn(enumValue);
+        when(item.hasValue(eq(flagGuid))).thenReturn(true);
+        when(item.getBooleanValue(eq(flagGuid))).thenReturn(flag);
+        return item;
+    }
+
+    @Test
+    public void testColumns() {
+        addDescription("Test extracting records into the columns of a batch.");
+        FieldHandle size = fe.getFieldHandle("size");
+        FieldHandle status = fe.getFieldHandle("status");
+        FieldHandle date = fe.getFieldHandle("date");
+        FieldHandle flag = fe.getFieldHandle("flag");
+        FieldHandle name = fe.getFieldHandle("name");
+        RecordBatch batch = new RecordBatch(2, size, status, date, flag, name);
+
+        Item first = mockItem(11, 1024L, "Archived", true);
+        when(first.hasValue(eq(dateGuid))).thenReturn(true);
+        when(first.getDateValue(eq(dateGuid))).thenReturn(new Date(1000L));
+        when(first.hasValue(eq(nameGuid))).thenReturn(true);
+        when(first.getStringValue(eq(nameGuid))).thenReturn("first.tif");
+        batch.add(first);
+        batch.add(mockItem(12, 2048L, "New", false));
+        batch.add(mockItem(13, 4096L, "Archived", false));
+
+        Assert.assertEquals(batch.size(), 3);
+        Assert.assertEquals(batch.getRecordId(2), 13);
+
+        LongColumn sizes = batch.getColumn(size, LongColumn.class);
+        Assert.assertEquals(sizes.getLong(0), 1024L);
+        Assert.assertEquals(sizes.getLong(2), 4096L);
+
+        DictionaryColumn statuses = batch.getColumn(status, DictionaryColumn.class);
+        Assert.assertEquals(statuses.getDictionary(), Arrays.asList("Archived", "New"));
+        Assert.assertEquals(statuses.getCode(0), statuses.getCode(2));
+        Assert.assertEquals(statuses.getCode("New"), 1);
+        Assert.assertEquals(statuses.getString(1), "New");
+
+        DateColumn dates = batch.getColumn(date, DateColumn.class);
+        Assert.assertEquals(dates.getInstant(0), Instant.ofEpochMilli(1000L));
+        Assert.assertTrue(dates.isNull(1));
+        Assert.assertNull(dates.getInstant(1));
+
+        BooleanColumn flags = batch.getColumn(flag, BooleanColumn.class);
+        Assert.assertTrue(flags.getBoolean(0));
+        Assert.assertFalse(flags.getBoolean(1));
+
+        Column names = batch.getColumn(name);
+        Assert.assertTrue(names instanceof StringColumn);
+        Assert.assertEquals(names.getString(0), "first.tif");
+        Assert.assertNull(names.getString(2));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testUnsupportedFieldType() {
+        addDescription("Test that table fields cannot be stored in a column.");
+        new RecordBatch(10, fe.getFieldHandle("table"));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testFieldNotInBatch() {
+        addDescription("Test retrieving the column of a field, which was not extracted.");
+        RecordBatch batch = new RecordBatch(10, fe.getFieldHandle("size"));
+        batch.getColumn(fe.getFieldHandle("flag"));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testFieldsFromDifferentLayouts() {
+        addDescription("Test that the fields of a batch must be from the same layout.");
+        FieldExtractor otherFe = mockExtractor("other", mockDefinition("name", FieldTypes.FieldTypeString, nameGuid));
+        new RecordBatch(10, fe.getFieldHandle("size"), otherFe.getFieldHandle("name"));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testRowOutOfRange() {
+        addDescription("Test retrieving a row outside the batch.");
+        RecordBatch batch = new RecordBatch(10, fe.getFieldHandle("size"));
+        batch.add(mockItem(1, 1L, "New", true));
+        batch.getColumn(fe.getFieldHandle("size"), LongColumn.class).getLong(1);
+    }
+
+    @Test
+    public void testBatchesFromCollection() {
+        addDescription("Test extracting the records of a collection in batches.");
+        List<Item> items = new ArrayList<Item>();
+        for(int i = 0; i < 5; i++) {
+            items.add(mockItem(i, i * 10L, i % 2 == 0 ? "Even" : "Odd", i % 2 == 0));
+        }
+        RecordItemCollection itemCollection = mock(RecordItemCollection.class);
+        when(itemCollection.getLayout()).thenReturn(layout);
+        when(itemCollection.iterator()).thenReturn(items.iterator());
+        CumulusRecordCollection collection = new CumulusRecordCollection(itemCollection,
+                mock(CumulusServer.class), "catalog");
+        FieldHandle size = collection.handle("size");
+
+        Iterator<RecordBatch> batches = collection.getBatches(2, size, collection.handle("status"));
+        int[] expectedSizes = new int[] {2, 2, 1};
+        long expectedValue = 0L;
+        for(int expectedSize : expectedSizes) {
+            Assert.assertTrue(batches.hasNext());
+            RecordBatch batch = batches.next();
+            Assert.assertEquals(batch.size(), expectedSize);
+            for(int row = 0; row < batch.size(); row++) {
+                Assert.assertEquals(batch.getColumn(size, LongColumn.class).getLong(row), expectedValue);
+                expectedValue += 10L;
+            }
+        }
+        Assert.assertFalse(batches.hasNext());
+    }
+}
@@ -31,5 +31,13 @@ public class CumulusConfigurationTest extends ExtendedTestCase {
         Assert.assertTrue(conf.getCatalogs().contains(catalog));
     }
 
+    @Test
+    public void testSessionPoolSize() {
+        addDescription("Test that the session pool has a session per catalog, unless the size is configured.");
+        CumulusConfiguration conf = new CumulusConfiguration(false, "http://localhost", "user", "password",
+                Arrays.asList("First", "Second"));
+        Assert.assertEquals(conf.getSessionPoolSize(), 2);
+        conf.setSessionPoolSize(5);
+        Assert.assertEquals(conf.getSessionPoolSize(), 5);
+    }
 }
-
@@ -0,0 +1,79 @@
+package dk.kb.cumulus.facet;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.RecordItem;
+
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.RecordBatch;
+
+public class DistinctValueCounterTest extends ExtendedTestCase {
+
+    GUID valueGuid;
+    FieldHandle field;
+
+    @BeforeMethod
+    public void setupField() {
+        valueGuid = mock(GUID.class);
+        field = mockExtractor("catalog", mockDefinition("Bevarings metadata", FieldTypes.FieldTypeString, valueGuid))
+                .getFieldHandle("Bevarings metadata");
+    }
+
+    protected List<RecordBatch> createBatches(int records, int distinct) {
+        List<RecordBatch> res = new ArrayList<RecordBatch>();
+        RecordBatch batch = null;
+        for(int i = 0; i < records; i++) {
+            RecordItem item = mock(RecordItem.class);
+            if(i % 10 != 9) {
+                when(item.hasValue(eq(valueGuid))).thenReturn(true);
+                when(item.getStringValue(eq(valueGuid))).thenReturn("value-" + (i % distinct));
+            }
+            if(batch == null || batch.size() == 50) {
+                batch = new RecordBatch(50, field);
+                res.add(batch);
+            }
+            batch.add(item);
+        }
+        return res;
+    }
+
+    @Test
+    public void testExactCounts() {
+        addDescription("Test that the values are counted exactly, when they can all be tracked.");
+        DistinctValues res = new DistinctValueCounter(field, 10).count(createBatches(200, 5).iterator());
+        Assert.assertTrue(res.isExact());
+        Assert.assertEquals(res.getDistinctCount(), 5L);
+        Assert.assertEquals(res.getRecordCount(), 200L);
+        Assert.assertEquals(res.getMissingCount(), 20L);
+        Assert.assertEquals(res.getUntrackedCount(), 0L);
+        long total = 0L;
+        for(long count : res.getValues().values()) {
+            total += count;
+        }
+        Assert.assertEquals(total, 180L);
+    }
+
+    @Test
+    public void testEstimatedCounts() {
+        addDescription("Test that the number of distinct values is estimated, when there are too many to track.");
+        DistinctValues res = new DistinctValueCounter(field, 20).count(createBatches(500, 500).iterator());
+        Assert.assertFalse(res.isExact());
+        Assert.assertEquals(res.getValues().size(), 20);
+        Assert.assertEquals(res.getUntrackedCount(), 450L - 20L);
+        Assert.assertTrue(Math.abs(res.getDistinctCount() - 450L) <= 25L, "Estimate: " + res.getDistinctCount());
+    }
+}
@@ -0,0 +1,94 @@
+package dk.kb.cumulus.facet;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.batch.RecordBatch;
+
+public class FacetCounterTest extends ExtendedTestCase {
+
+    GUID statusGuid;
+    GUID collectionGuid;
+    FieldHandle status;
+    FieldHandle collection;
+    List<RecordBatch> batches;
+
+    protected Item mockItem(String statusValue, String collectionValue) {
+        RecordItem item = mock(RecordItem.class);
+        if(statusValue != null) {
+            StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+            when(enumValue.getDisplayString()).thenReturn(statusValue);
+            when(item.hasValue(eq(statusGuid))).thenReturn(true);
+            when(item.getStringEnumValue(eq(statusGuid))).thenReturn(enumValue);
+        }
+        when(item.hasValue(eq(collectionGuid))).thenReturn(true);
+        when(item.getStringValue(eq(collectionGuid))).thenReturn(collectionValue);
+        return item;
+    }
+
+    @BeforeMethod
+    public void setupBatches() {
+        statusGuid = mock(GUID.class);
+        collectionGuid = mock(GUID.class);
+        FieldExtractor fe = mockExtractor("catalog",
+                mockDefinition("status", FieldTypes.FieldTypeEnum, statusGuid),
+                mockDefinition("collection", FieldTypes.FieldTypeString, collectionGuid));
+        status = fe.getFieldHandle("status");
+        collection = fe.getFieldHandle("collection");
+
+        List<Item> items = new ArrayList<Item>();
+        for(int i = 0; i < 25; i++) {
+            items.add(mockItem(i % 5 == 0 ? null : (i % 2 == 0 ? "New" : "Done"), "collection-" + (i % 3)));
+        }
+        batches = new ArrayList<RecordBatch>();
+        RecordBatch batch = null;
+        for(Item item : items) {
+            if(batch == null || batch.size() == 4) {
+                batch = new RecordBatch(4, status, collection);
+                batches.add(batch);
+            }
+            batch.add(item);
+        }
+    }
+
+    @DataProvider(name = "parallelism")
+    public Object[][] parallelism() {
+        return new Object[][] {{1}, {3}};
+    }
+
+    @Test(dataProvider = "parallelism")
+    public void testCount(int parallelism) {
+        addDescription("Test counting the values of the fields over all the batches.");
+        FacetResult res = new FacetCounter(parallelism, status, collection).count(batches.iterator());
+        Assert.assertEquals(res.getRecordCount(), 25L);
+
+        FacetCounts statusCounts = res.getFacet("status");
+        Assert.assertEquals(statusCounts.getMissingCount(), 5L);
+        Assert.assertEquals(statusCounts.getCount("New"), 10L);
+        Assert.assertEquals(statusCounts.getCount("Done"), 10L);
+
+        Assert.assertEquals(res.getFacet("collection").getCount("collection-0"), 9L);
+        Assert.assertEquals(res.getTopK("collection", 1).get(0).getKey(), "collection-0");
+        Assert.assertEquals(res.getFacet("collection").getMissingCount(), 0L);
+    }
+}
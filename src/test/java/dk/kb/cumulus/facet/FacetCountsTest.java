@@ -0,0 +1,57 @@
+package dk.kb.cumulus.facet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FacetCountsTest extends ExtendedTestCase {
+
+    @Test
+    public void testCountsAndTopK() {
+        addDescription("Test counting values, merging counts and finding the values with the highest counts.");
+        FacetCounts counts = new FacetCounts("status");
+        for(int i = 0; i < 40; i++) {
+            counts.add("value-" + i, i % 7);
+        }
+        counts.add("New", 100L);
+        counts.addMissing(3L);
+
+        FacetCounts other = new FacetCounts("status");
+        other.add("Done", 100L);
+        other.add("New", 1L);
+        other.addMissing(2L);
+        counts.merge(other);
+
+        Assert.assertEquals(counts.getCount("New"), 101L);
+        Assert.assertEquals(counts.getCount("Unknown"), 0L);
+        Assert.assertEquals(counts.getMissingCount(), 5L);
+        Assert.assertEquals(counts.getDistinctCount(), 42);
+
+        List<Map.Entry<String, Long>> top = counts.getTopK(4);
+        Assert.assertEquals(top.size(), 4);
+        Assert.assertEquals(top.get(0).getKey(), "New");
+        Assert.assertEquals(top.get(1).getKey(), "Done");
+        Assert.assertEquals(top.get(2).getKey(), "value-13");
+        Assert.assertEquals(top.get(3).getKey(), "value-20");
+        Assert.assertEquals(top.get(3).getValue(), Long.valueOf(6L));
+
+        Map<String, Long> all = counts.asMap();
+        Assert.assertEquals(all.size(), 42);
+        Assert.assertEquals(all.keySet().iterator().next(), "New");
+    }
+
+    @Test
+    public void testTopKOfEmpty() {
+        addDescription("Test the top values of a field without any values.");
+        FacetCounts counts = new FacetCounts("status");
+        Assert.assertTrue(counts.getTopK(3).isEmpty());
+        Assert.assertTrue(counts.asMap().isEmpty());
+        Assert.assertEquals(new FacetResult(Collections.singletonMap("status", counts), 0L)
+                .getTopK("status", 1), Arrays.asList());
+    }
+}
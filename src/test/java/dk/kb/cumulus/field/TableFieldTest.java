@@ -17,6 +17,7 @@ import com.canto.cumulus.ItemCollection;
 import com.canto.cumulus.Layout;
 
 import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.utils.ArgumentCheck;
 
 public class TableFieldTest extends ExtendedTestCase {
 
@@ -85,6 +86,9 @@ public class TableFieldTest extends ExtendedTestCase {
         Mockito.when(layout.iterator()).thenReturn(Arrays.asList(rowFieldDefinition).iterator());
         Mockito.when(itemCollection.getLayout()).thenReturn(layout);
         Mockito.when(itemCollection.iterator()).thenReturn(Arrays.asList(item).iterator());
+        Mockito.when(itemCollection.getItemCount()).thenReturn(1);
+        FieldExtractor rowExtractor = new FieldExtractor(layout, null, null);
+        Mockito.when(fe.getNestedExtractor(fieldDefinition, layout)).thenReturn(rowExtractor);
         
         TableField f = new TableField(fieldDefinition, fieldType, itemCollection, fe);
         
@@ -97,4 +101,65 @@ public class TableFieldTest extends ExtendedTestCase {
         Assert.assertTrue(f.getRows().get(0).getElements().containsKey(rowName));
         Assert.assertEquals(f.getRows().get(0).getElements().get(rowName), rowValue);
     }
+
+    @Test
+    public void tableFieldLazyRowsTest() {
+        addDescription("Test that the rows of the table are only extracted when needed.");
+        FieldDefinition fieldDefinition = Mockito.mock(FieldDefinition.class);
+        ItemCollection itemCollection = Mockito.mock(ItemCollection.class);
+        FieldExtractor fe = Mockito.mock(FieldExtractor.class);
+        
+        Layout layout = Mockito.mock(Layout.class);
+        GUID nameGuid = Mockito.mock(GUID.class);
+        GUID valueGuid = Mockito.mock(GUID.class);
+        FieldDefinition nameDefinition = Mockito.mock(FieldDefinition.class);
+        Mockito.when(nameDefinition.getFieldType()).thenReturn(FieldTypes.FieldTypeString);
+        Mockito.when(nameDefinition.getName()).thenReturn("name");
+        Mockito.when(nameDefinition.getFieldUID()).thenReturn(nameGuid);
+        FieldDefinition valueDefinition = Mockito.mock(FieldDefinition.class);
+        Mockito.when(valueDefinition.getFieldType()).thenReturn(FieldTypes.FieldTypeString);
+        Mockito.when(valueDefinition.getName()).thenReturn("value");
+        Mockito.when(valueDefinition.getFieldUID()).thenReturn(valueGuid);
+        Mockito.when(layout.iterator()).thenReturn(Arrays.asList(nameDefinition, valueDefinition).iterator());
+        
+        Item first = Mockito.mock(Item.class);
+        Mockito.when(first.hasValue(Mockito.any(GUID.class))).thenReturn(true);
+        Mockito.when(first.getStringValue(nameGuid)).thenReturn("first");
+        Mockito.when(first.getStringValue(valueGuid)).thenReturn("1");
+        Item second = Mockito.mock(Item.class);
+        Mockito.when(second.hasValue(nameGuid)).thenReturn(true);
+        Mockito.when(second.getStringValue(nameGuid)).thenReturn("second");
+        
+        Mockito.when(itemCollection.getLayout()).thenReturn(layout);
+        Mockito.when(itemCollection.getItemCount()).thenReturn(2);
+        Mockito.when(itemCollection.getItemByIndex(1)).thenReturn(second);
+        Mockito.when(itemCollection.iterator()).thenReturn(Arrays.asList(first, second).iterator());
+        Mockito.when(fe.getNestedExtractor(fieldDefinition, layout)).thenReturn(new FieldExtractor(layout, null, null));
+        
+        TableField f = new TableField(fieldDefinition, "table", itemCollection, fe);
+        
+        addStep("Check the size of the table", "No rows are extracted");
+        Assert.assertFalse(f.isEmpty());
+        Assert.assertEquals(f.getRowCount(), 2);
+        Mockito.verify(itemCollection, Mockito.never()).iterator();
+        Mockito.verifyZeroInteractions(first, second);
+        
+        addStep("Extract the second row", "Only the second row is extracted");
+        Assert.assertEquals(f.getRow(1).getElements().get("name"), "second");
+        Assert.assertFalse(f.getRow(1).getElements().containsKey("value"));
+        Mockito.verifyZeroInteractions(first);
+        
+        addStep("Extract the value column", "Only the value column of the first row is extracted");
+        Assert.assertEquals(f.getColumn("value"), Arrays.asList("1", null));
+        Mockito.verify(first, Mockito.never()).getStringValue(nameGuid);
+    }
+    
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void tableFieldRowOutOfRangeTest() {
+        addDescription("Test extracting a row outside the table.");
+        ItemCollection itemCollection = Mockito.mock(ItemCollection.class);
+        TableField f = new TableField(Mockito.mock(FieldDefinition.class), "table", itemCollection,
+                Mockito.mock(FieldExtractor.class));
+        f.getRow(0);
+    }
 }
@@ -0,0 +1,193 @@
+package dk.kb.cumulus.harvest;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQuery;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.CumulusSessionPool;
+import dk.kb.cumulus.FieldHandle;
+
+public class CumulusChangeWatcherTest extends ExtendedTestCase {
+
+    FieldHandle modifiedHandle;
+    FieldHandle createdHandle;
+    FieldHandle statusHandle;
+    CumulusServer server;
+    CumulusSessionPool sessions;
+    ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    public void setup() {
+        modifiedHandle = mock(FieldHandle.class);
+        createdHandle = mock(FieldHandle.class);
+        statusHandle = mock(FieldHandle.class);
+        when(statusHandle.getName()).thenReturn(Constants.FieldNames.PRESERVATION_STATUS);
+        server = mock(CumulusServer.class);
+        sessions = mock(CumulusSessionPool.class);
+        when(sessions.borrow()).thenReturn(server);
+        scheduler = mock(ScheduledExecutorService.class);
+    }
+
+    protected CumulusRecord mockRecord(int id, long created, long modified, String status) {
+        CumulusRecord record = mock(CumulusRecord.class);
+        when(record.getID()).thenReturn(id);
+        when(record.getInstant(modifiedHandle)).thenReturn(Instant.ofEpochMilli(modified));
+        when(record.getInstant(createdHandle)).thenReturn(Instant.ofEpochMilli(created));
+        when(record.getFieldValueOrNull(statusHandle)).thenReturn(status);
+        return record;
+    }
+
+    protected void mockPollResult(CumulusRecord... records) {
+        CumulusRecordCollection collection = mock(CumulusRecordCollection.class);
+        when(collection.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE)).thenReturn(modifiedHandle);
+        when(collection.handle(Constants.FieldNames.ITEM_CREATION_DATE)).thenReturn(createdHandle);
+        when(collection.handle(Constants.FieldNames.PRESERVATION_STATUS.toLowerCase())).thenReturn(statusHandle);
+        when(collection.iterator()).thenReturn(Arrays.asList(records).iterator());
+        when(server.getItems(eq("catalog"), any(CumulusQuery.class))).thenReturn(collection);
+    }
+
+    @Test
+    public void testChangeEvents() {
+        addDescription("Test that the changes are dispatched to the listeners.");
+        CumulusChangeWatcher watcher = new CumulusChangeWatcher(sessions, scheduler, Runnable::run, 100L, 1000L);
+        final List<ChangeEvent> allEvents = new ArrayList<ChangeEvent>();
+        final List<ChangeEvent> statusEvents = new ArrayList<ChangeEvent>();
+        watcher.addListener("catalog", allEvents::add);
+        watcher.addListener("catalog", statusEvents::add, Constants.FieldNames.PRESERVATION_STATUS);
+        verify(scheduler).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+
+        addStep("Poll the first time", "The state is established without any events");
+        mockPollResult(mockRecord(1, 1000L, 1000L, "New"), mockRecord(2, 1000L, 2000L, "New"));
+        watcher.poll("catalog");
+        Assert.assertTrue(allEvents.isEmpty());
+        Assert.assertTrue(statusEvents.isEmpty());
+        Assert.assertEquals(watcher.getInterval("catalog"), 200L);
+
+        addStep("Poll after a record has been modified and another has been created", 
+                "Created, modified and field changed events");
+        CumulusRecord modified = mockRecord(1, 1000L, 3000L, "Archived");
+        CumulusRecord created = mockRecord(3, 2500L, 2500L, "New");
+        mockPollResult(mockRecord(2, 1000L, 2000L, "New"), modified, created);
+        watcher.poll("catalog");
+        Assert.assertEquals(allEvents.size(), 2);
+        Assert.assertEquals(allEvents.get(0).getType(), ChangeEvent.Type.MODIFIED);
+        Assert.assertEquals(allEvents.get(0).getRecordId(), 1);
+        Assert.assertEquals(allEvents.get(1).getType(), ChangeEvent.Type.CREATED);
+        Assert.assertEquals(allEvents.get(1).getRecordId(), 3);
+        Assert.assertEquals(statusEvents.size(), 3);
+        ChangeEvent statusChange = statusEvents.get(1);
+        Assert.assertEquals(statusChange.getType(), ChangeEvent.Type.FIELD_CHANGED);
+        Assert.assertEquals(statusChange.getRecordId(), 1);
+        Assert.assertEquals(statusChange.getFieldName(), Constants.FieldNames.PRESERVATION_STATUS);
+        Assert.assertNull(statusChange.getOldValue());
+        Assert.assertEquals(statusChange.getNewValue(), "Archived");
+        Assert.assertEquals(watcher.getInterval("catalog"), 100L);
+
+        addStep("Poll without any changes", "No events, and the interval grows up to the maximum");
+        for(int i = 0; i < 5; i++) {
+            mockPollResult(mockRecord(1, 1000L, 3000L, "Archived"));
+            watcher.poll("catalog");
+        }
+        Assert.assertEquals(allEvents.size(), 2);
+        Assert.assertEquals(watcher.getInterval("catalog"), 1000L);
+        verify(server, times(7)).getItems(eq("catalog"), any(CumulusQuery.class));
+        verify(sessions, times(7)).borrow();
+        verify(sessions, times(7)).release(server);
+        watcher.close();
+    }
+
+    @Test
+    public void testFailingListener() {
+        addDescription("Test that a failing listener does not prevent the other listeners from the events.");
+        CumulusChangeWatcher watcher = new CumulusChangeWatcher(sessions, scheduler, Runnable::run, 100L, 1000L);
+        final List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+        watcher.addListener("catalog", event -> {
+            throw new IllegalStateException("Failure");
+        });
+        watcher.addListener("catalog", events::add);
+        mockPollResult(mockRecord(1, 1000L, 1000L, "New"));
+        watcher.poll("catalog");
+        mockPollResult(mockRecord(1, 1000L, 2000L, "New"));
+        watcher.poll("catalog");
+        Assert.assertEquals(events.size(), 1);
+    }
+
+    @Test
+    public void testFailingPoll() {
+        addDescription("Test that a failing poll is retried after the maximum interval.");
+        CumulusChangeWatcher watcher = new CumulusChangeWatcher(sessions, scheduler, Runnable::run, 100L, 1000L);
+        watcher.addListener("catalog", event -> { });
+        when(server.getItems(eq("catalog"), any(CumulusQuery.class))).thenThrow(new IllegalStateException("Down"));
+        watcher.poll("catalog");
+        Assert.assertEquals(watcher.getInterval("catalog"), 1000L);
+        verify(scheduler).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        verify(sessions).release(server);
+
+        watcher.close();
+        watcher.poll("catalog");
+        verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFieldHashes() {
+        addDescription("Test the primitive table of the hashes of the field values by record ID.");
+        CumulusChangeWatcher.FieldHashes hashes = new CumulusChangeWatcher.FieldHashes();
+        Assert.assertFalse(hashes.update(0, 42L));
+        Assert.assertFalse(hashes.update(0, 42L));
+        Assert.assertTrue(hashes.update(0, 43L));
+        Assert.assertEquals(hashes.size(), 1);
+
+        addStep("Register more records than the initial capacity", "The table grows, and keeps all the hashes");
+        int count = CumulusChangeWatcher.FieldHashes.INITIAL_CAPACITY * 10;
+        for(int id = 1; id <= count; id++) {
+            Assert.assertFalse(hashes.update(id * 1024, id));
+        }
+        Assert.assertEquals(hashes.size(), count + 1);
+        Assert.assertTrue(hashes.ids.length <= count * 4);
+        for(int id = 1; id <= count; id++) {
+            Assert.assertFalse(hashes.update(id * 1024, id));
+        }
+        Assert.assertTrue(hashes.update(0, 42L));
+        Assert.assertEquals(hashes.size(), count + 1);
+    }
+
+    @Test
+    public void testEventsOfRecordInOrder() {
+        addDescription("Test that the events for a record are dispatched to a listener as a single task.");
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        CumulusChangeWatcher watcher = new CumulusChangeWatcher(sessions, scheduler, tasks::add, 100L, 1000L);
+        final List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+        watcher.addListener("catalog", events::add, Constants.FieldNames.PRESERVATION_STATUS);
+        mockPollResult(mockRecord(1, 1000L, 1000L, "New"));
+        watcher.poll("catalog");
+        mockPollResult(mockRecord(1, 1000L, 2000L, "Archived"));
+        watcher.poll("catalog");
+
+        Assert.assertEquals(tasks.size(), 1);
+        tasks.get(0).run();
+        Assert.assertEquals(events.size(), 2);
+        Assert.assertEquals(events.get(0).getType(), ChangeEvent.Type.MODIFIED);
+        Assert.assertEquals(events.get(1).getType(), ChangeEvent.Type.FIELD_CHANGED);
+    }
+}
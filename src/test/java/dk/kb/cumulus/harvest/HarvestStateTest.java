@@ -0,0 +1,77 @@
+package dk.kb.cumulus.harvest;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HarvestStateTest extends ExtendedTestCase {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        addDescription("Test that the state is the same after it has been saved and loaded.");
+        File file = new File("target", UUID.randomUUID().toString() + ".properties");
+        file.deleteOnExit();
+        Instant mark = Instant.ofEpochMilli(1500000000123L);
+        HarvestState state = new HarvestState("catalog", mark, new HashSet<Integer>(Arrays.asList(1, 2, 3)));
+        state.save(file);
+
+        HarvestState loaded = HarvestState.load(file, "catalog");
+        Assert.assertEquals(loaded.getCatalog(), "catalog");
+        Assert.assertEquals(loaded.getHighWaterMark(), mark);
+        Assert.assertEquals(loaded.getIdsAtMark(), new HashSet<Integer>(Arrays.asList(1, 2, 3)));
+    }
+
+    @Test
+    public void testLoadMissingFile() throws Exception {
+        addDescription("Test loading the state, when there has not been any harvests.");
+        HarvestState state = HarvestState.load(new File("target", UUID.randomUUID().toString()), "catalog");
+        Assert.assertNull(state.getHighWaterMark());
+        Assert.assertTrue(state.getIdsAtMark().isEmpty());
+        Assert.assertTrue(state.isNewOrChanged(1, null));
+        Assert.assertTrue(state.isNewOrChanged(1, Instant.EPOCH));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testLoadOtherCatalog() throws Exception {
+        addDescription("Test loading the state of another catalog.");
+        File file = new File("target", UUID.randomUUID().toString() + ".properties");
+        file.deleteOnExit();
+        new HarvestState("catalog", null, Collections.<Integer>emptySet()).save(file);
+        HarvestState.load(file, "other catalog");
+    }
+
+    @Test
+    public void testNewOrChanged() {
+        addDescription("Test which records are new or changed since the high-water mark.");
+        Instant mark = Instant.ofEpochMilli(1000L);
+        HarvestState state = new HarvestState("catalog", mark, Collections.singleton(1));
+        Assert.assertFalse(state.isNewOrChanged(1, mark));
+        Assert.assertTrue(state.isNewOrChanged(2, mark));
+        Assert.assertFalse(state.isNewOrChanged(2, mark.minusMillis(1)));
+        Assert.assertTrue(state.isNewOrChanged(1, mark.plusMillis(1)));
+        Assert.assertFalse(state.isNewOrChanged(3, null));
+    }
+
+    @Test
+    public void testTracker() {
+        addDescription("Test that the tracker moves the high-water mark to the latest registered record.");
+        Instant mark = Instant.ofEpochMilli(1000L);
+        HarvestState.Tracker tracker = new HarvestState("catalog", mark, Collections.singleton(1)).track();
+        tracker.register(2, mark);
+        tracker.register(3, null);
+        Assert.assertEquals(tracker.getState().getHighWaterMark(), mark);
+        Assert.assertEquals(tracker.getState().getIdsAtMark(), new HashSet<Integer>(Arrays.asList(1, 2)));
+
+        tracker.register(4, mark.plusMillis(1));
+        tracker.register(5, mark);
+        Assert.assertEquals(tracker.getState().getHighWaterMark(), mark.plusMillis(1));
+        Assert.assertEquals(tracker.getState().getIdsAtMark(), Collections.singleton(4));
+    }
+}
@@ -0,0 +1,105 @@
+package dk.kb.cumulus.harvest;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQuery;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.FieldHandle;
+
+public class IncrementalHarvesterTest extends ExtendedTestCase {
+
+    protected CumulusRecord mockRecord(FieldHandle handle, int id, long modified) {
+        CumulusRecord record = mock(CumulusRecord.class);
+        when(record.getID()).thenReturn(id);
+        when(record.getInstant(handle)).thenReturn(Instant.ofEpochMilli(modified));
+        return record;
+    }
+
+    protected CumulusRecordCollection mockCollection(FieldHandle handle, CumulusRecord... records) {
+        CumulusRecordCollection collection = mock(CumulusRecordCollection.class);
+        when(collection.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE)).thenReturn(handle);
+        when(collection.iterator()).thenReturn(Arrays.asList(records).iterator());
+        return collection;
+    }
+
+    @Test
+    public void testIncrementalHarvest() throws Exception {
+        addDescription("Test that only new or changed records are delivered by the following harvests.");
+        File stateFile = new File("target", UUID.randomUUID().toString() + ".properties");
+        stateFile.deleteOnExit();
+        FieldHandle handle = mock(FieldHandle.class);
+        CumulusServer server = mock(CumulusServer.class);
+        IncrementalHarvester harvester = new IncrementalHarvester(server, "catalog", stateFile);
+
+        addStep("Harvest the catalog the first time", "All records are delivered");
+        CumulusRecord first = mockRecord(handle, 1, 1000L);
+        CumulusRecord second = mockRecord(handle, 2, 2000L);
+        CumulusRecordCollection initial = mockCollection(handle, first, second);
+        when(server.getItems(eq("catalog"), any(CumulusQuery.class))).thenReturn(initial);
+        List<CumulusRecord> harvested = new ArrayList<CumulusRecord>();
+        Assert.assertEquals(harvester.harvest(harvested::add), 2);
+        Assert.assertEquals(harvested, Arrays.asList(first, second));
+        Assert.assertEquals(harvester.getState().getHighWaterMark(), Instant.ofEpochMilli(2000L));
+        Assert.assertEquals(harvester.getState().getIdsAtMark(), new HashSet<Integer>(Arrays.asList(2)));
+
+        addStep("Harvest again, where the query also finds the record at the high-water mark", 
+                "Only the new records are delivered, also the new record at the high-water mark");
+        CumulusRecord third = mockRecord(handle, 3, 2000L);
+        CumulusRecord fourth = mockRecord(handle, 4, 3000L);
+        CumulusRecordCollection incremental = mockCollection(handle, mockRecord(handle, 2, 2000L), third, fourth);
+        when(server.getItems(eq("catalog"), any(CumulusQuery.class))).thenReturn(incremental);
+        harvested.clear();
+        Assert.assertEquals(harvester.harvest(harvested::add), 2);
+        Assert.assertEquals(harvested, Arrays.asList(third, fourth));
+        Assert.assertEquals(harvester.getState().getHighWaterMark(), Instant.ofEpochMilli(3000L));
+        Assert.assertEquals(harvester.getState().getIdsAtMark(), new HashSet<Integer>(Arrays.asList(4)));
+
+        ArgumentCaptor<CumulusQuery> queries = ArgumentCaptor.forClass(CumulusQuery.class);
+        Mockito.verify(server, Mockito.times(2)).getItems(eq("catalog"), queries.capture());
+        Assert.assertTrue(queries.getAllValues().get(1).getQuery().contains(
+                Constants.FieldNames.ITEM_MODIFICATION_DATE));
+    }
+
+    @Test
+    public void testFailedHarvestIsRepeated() throws Exception {
+        addDescription("Test that the state is not changed, when the handler fails.");
+        File stateFile = new File("target", UUID.randomUUID().toString() + ".properties");
+        stateFile.deleteOnExit();
+        FieldHandle handle = mock(FieldHandle.class);
+        CumulusServer server = mock(CumulusServer.class);
+        CumulusRecordCollection collection = mockCollection(handle, mockRecord(handle, 1, 1000L));
+        when(server.getItems(eq("catalog"), any(CumulusQuery.class))).thenReturn(collection);
+        IncrementalHarvester harvester = new IncrementalHarvester(server, "catalog", stateFile);
+
+        try {
+            harvester.harvest(record -> {
+                throw new IllegalStateException("Failure");
+            });
+            Assert.fail("The failure of the handler must be thrown.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertFalse(stateFile.exists());
+        Assert.assertNull(harvester.getState().getHighWaterMark());
+    }
+}
@@ -0,0 +1,214 @@
+package dk.kb.cumulus.preservation;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusQuery;
+import dk.kb.cumulus.CumulusRecord;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.CumulusSessionPool;
+import dk.kb.cumulus.FieldExtractor;
+import dk.kb.cumulus.FieldHandle;
+
+public class PreservationWorkQueueTest extends ExtendedTestCase {
+
+    static final String CATALOG = "catalog";
+    static final String IN_PROGRESS = "Under langtidsbevaring";
+
+    CumulusServer server;
+    CumulusServer session;
+    CumulusSessionPool sessions;
+    FieldHandle modified;
+
+    protected CumulusRecordCollection mockCollection(final List<CumulusRecord> records) {
+        CumulusRecordCollection res = mock(CumulusRecordCollection.class);
+        when(res.iterator()).thenAnswer(invocation -> records.iterator());
+        return res;
+    }
+
+    protected CumulusRecord mockCandidate(int id) {
+        CumulusRecord res = mock(CumulusRecord.class);
+        when(res.getID()).thenReturn(id);
+        return res;
+    }
+
+    protected CumulusRecord mockCandidate(int id, String expectedStatus, boolean claimable) {
+        CumulusRecord res = mockCandidate(id);
+        when(res.compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, expectedStatus, IN_PROGRESS))
+                .thenReturn(claimable);
+        return res;
+    }
+
+    protected CumulusRecord mockCurrent(CumulusServer owner, int id, long modifiedAt) {
+        CumulusRecord res = mockCandidate(id);
+        when(res.getInstant(modified)).thenReturn(Instant.ofEpochMilli(modifiedAt));
+        when(owner.getRecordById(CATALOG, id)).thenReturn(res);
+        return res;
+    }
+
+    @BeforeMethod
+    public void setupServer() {
+        server = mock(CumulusServer.class);
+        session = mock(CumulusServer.class);
+        sessions = mock(CumulusSessionPool.class);
+        when(sessions.borrow()).thenReturn(session);
+        modified = mock(FieldHandle.class);
+        FieldExtractor fe = mock(FieldExtractor.class);
+        when(fe.getFieldHandle(Constants.FieldNames.ITEM_MODIFICATION_DATE)).thenReturn(modified);
+        when(server.getFieldExtractor(CATALOG)).thenReturn(fe);
+    }
+
+    protected PreservationWorkQueue createQueue(RecordProcessor processor, int workers) {
+        return new PreservationWorkQueue(server, sessions, CATALOG, IN_PROGRESS, processor, workers, 1000L) {
+            @Override
+            protected long currentTimeMillis() {
+                return 10000L;
+            }
+        };
+    }
+
+    protected void awaitWorkers(PreservationWorkQueue queue, int workers) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000L;
+        while(queue.getFreeWorkers() < workers && System.currentTimeMillis() < end) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(queue.getFreeWorkers(), workers);
+    }
+
+    @Test
+    public void testPollClaimsAndProcesses() throws Exception {
+        addDescription("Test that the ready records are claimed and processed, and that the claim of a failed record "
+                + "is released.");
+        String ready = Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL;
+        CumulusRecord first = mockCandidate(1, ready, true);
+        CumulusRecord second = mockCandidate(2, ready, false);
+        CumulusRecord third = mockCandidate(3, ready, true);
+        CumulusRecord fourth = mockCandidate(4, ready, true);
+        CumulusRecordCollection candidates = mockCollection(Arrays.asList(first, second, third, fourth));
+        when(server.getItems(eq(CATALOG), any(CumulusQuery.class))).thenReturn(candidates);
+        mockCurrent(session, 1, 0L);
+        CumulusRecord failing = mockCurrent(session, 3, 0L);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        PreservationWorkQueue queue = createQueue((record, lease) -> {
+            started.await(10, TimeUnit.SECONDS);
+            if(record.getID() == 3) {
+                throw new IllegalStateException("Failed to package the record");
+            }
+        }, 2);
+        try {
+            Assert.assertEquals(queue.poll(), 2);
+            started.countDown();
+            awaitWorkers(queue, 2);
+
+            addStep("Check the claims", "The record claimed by another and the record without a free worker are "
+                    + "not claimed");
+            verify(first).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, ready, IN_PROGRESS);
+            verify(second).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, ready, IN_PROGRESS);
+            verify(third).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, ready, IN_PROGRESS);
+            verify(fourth, never()).compareAndSet(anyString(), anyString(), anyString());
+            verify(server, times(1)).getItems(eq(CATALOG), any(CumulusQuery.class));
+
+            addStep("Check the processing", "The claim of the failed record is released");
+            verify(failing).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, IN_PROGRESS, ready);
+            verify(sessions, times(2)).release(session);
+            WorkQueueMetrics metrics = queue.getMetrics();
+            Assert.assertEquals(metrics.getClaimed(), 2L);
+            Assert.assertEquals(metrics.getConflicts(), 1L);
+            Assert.assertEquals(metrics.getCompleted(), 1L);
+            Assert.assertEquals(metrics.getFailed(), 1L);
+            Assert.assertEquals(metrics.getInProgress(), 0L);
+            Assert.assertEquals(metrics.getThroughput(11000L), 1.0);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testExpiredLease() throws Exception {
+        addDescription("Test that a claimed record is claimed again, when its lease has expired.");
+        CumulusRecordCollection ready = mockCollection(Collections.<CumulusRecord>emptyList());
+        CumulusRecord renewed = mockCandidate(5, IN_PROGRESS, true);
+        CumulusRecord abandoned = mockCandidate(6, IN_PROGRESS, true);
+        CumulusRecordCollection expired = mockCollection(Arrays.asList(renewed, abandoned));
+        when(server.getItems(eq(CATALOG), any(CumulusQuery.class))).thenReturn(ready, expired);
+        mockCurrent(server, 5, 9500L);
+        mockCurrent(server, 6, 5000L);
+        mockCurrent(session, 6, 10000L);
+
+        PreservationWorkQueue queue = createQueue((record, lease) -> {}, 1);
+        try {
+            Assert.assertEquals(queue.poll(), 1);
+            awaitWorkers(queue, 1);
+
+            verify(renewed, never()).compareAndSet(anyString(), anyString(), anyString());
+            verify(abandoned).compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, IN_PROGRESS, IN_PROGRESS);
+            Assert.assertEquals(queue.getMetrics().getExpired(), 1L);
+            Assert.assertEquals(queue.getMetrics().getConflicts(), 1L);
+            Assert.assertEquals(queue.getMetrics().getCompleted(), 1L);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testRenewLease() throws Exception {
+        addDescription("Test that a long-running processor can renew the lease of its claim.");
+        String ready = Constants.FieldValues.PRESERVATIONSTATE_READY_FOR_ARCHIVAL;
+        CumulusRecord candidate = mockCandidate(7, ready, true);
+        CumulusRecordCollection candidates = mockCollection(Arrays.asList(candidate));
+        when(server.getItems(eq(CATALOG), any(CumulusQuery.class))).thenReturn(candidates);
+        CumulusRecord claimed = mockCurrent(session, 7, 0L);
+        when(claimed.compareAndSet(Constants.FieldNames.PRESERVATION_STATUS, IN_PROGRESS, IN_PROGRESS))
+                .thenReturn(true, false);
+
+        final List<Boolean> renewals = new ArrayList<Boolean>();
+        final List<Long> remaining = new ArrayList<Long>();
+        PreservationWorkQueue queue = createQueue((record, lease) -> {
+            remaining.add(lease.getRemainingTime());
+            renewals.add(lease.renew());
+            renewals.add(lease.renew());
+        }, 1);
+        try {
+            Assert.assertEquals(queue.poll(), 1);
+            awaitWorkers(queue, 1);
+
+            addStep("Check the renewals", "The second renewal fails, since the record is no longer claimed");
+            Assert.assertEquals(renewals, Arrays.asList(true, false));
+            Assert.assertEquals(remaining, Arrays.asList(1000L));
+            Assert.assertEquals(queue.getMetrics().getRenewed(), 1L);
+            Assert.assertEquals(queue.getMetrics().getCompleted(), 1L);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPollAfterClose() {
+        addDescription("Test that a closed queue cannot be polled.");
+        PreservationWorkQueue queue = createQueue((record, lease) -> {}, 1);
+        queue.close();
+        queue.poll();
+    }
+}
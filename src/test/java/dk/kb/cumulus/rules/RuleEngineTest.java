@@ -0,0 +1,152 @@
+package dk.kb.cumulus.rules;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static dk.kb.cumulus.TestUtils.mockLayout;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.Layout;
+import com.canto.cumulus.RecordItem;
+import com.canto.cumulus.RecordItemCollection;
+import com.canto.cumulus.fieldvalue.StringEnumFieldValue;
+
+import dk.kb.cumulus.Constants;
+import dk.kb.cumulus.CumulusRecordCollection;
+import dk.kb.cumulus.CumulusServer;
+import dk.kb.cumulus.FieldHandle;
+import dk.kb.cumulus.utils.ArgumentCheck;
+
+public class RuleEngineTest extends ExtendedTestCase {
+
+    GUID nameGuid;
+    GUID statusGuid;
+    GUID md5Guid;
+    GUID masterGuid;
+    GUID modifiedGuid;
+    List<Item> items;
+    CumulusRecordCollection records;
+
+    protected void mockString(RecordItem item, GUID guid, String value) {
+        if(value != null) {
+            when(item.hasValue(eq(guid))).thenReturn(true);
+            when(item.getStringValue(eq(guid))).thenReturn(value);
+        }
+    }
+
+    protected Item mockItem(int id, String name, String status, String md5, String master, long modified) {
+        RecordItem item = mock(RecordItem.class);
+        when(item.getID()).thenReturn(id);
+        mockString(item, nameGuid, name);
+        mockString(item, md5Guid, md5);
+        mockString(item, masterGuid, master);
+        if(status != null) {
+            StringEnumFieldValue enumValue = mock(StringEnumFieldValue.class);
+            when(enumValue.getDisplayString()).thenReturn(status);
+            when(item.hasValue(eq(statusGuid))).thenReturn(true);
+            when(item.getStringEnumValue(eq(statusGuid))).thenReturn(enumValue);
+        }
+        when(item.hasValue(eq(modifiedGuid))).thenReturn(true);
+        when(item.getDateValue(eq(modifiedGuid))).thenReturn(new Date(modified));
+        return item;
+    }
+
+    @BeforeMethod
+    public void setupRecords() {
+        nameGuid = mock(GUID.class);
+        statusGuid = mock(GUID.class);
+        md5Guid = mock(GUID.class);
+        masterGuid = mock(GUID.class);
+        modifiedGuid = mock(GUID.class);
+        Layout layout = mockLayout(
+                mockDefinition(Constants.FieldNames.RECORD_NAME, FieldTypes.FieldTypeString, nameGuid),
+                mockDefinition(Constants.DeprecatedFieldNames.QA_STATUS, FieldTypes.FieldTypeEnum, statusGuid),
+                mockDefinition(Constants.FieldNames.ARCHIVE_MD5, FieldTypes.FieldTypeString, md5Guid),
+                mockDefinition(Constants.FieldNames.CHECKSUM_ORIGINAL_MASTER, FieldTypes.FieldTypeString, masterGuid),
+                mockDefinition(Constants.FieldNames.ITEM_MODIFICATION_DATE, FieldTypes.FieldTypeDate, modifiedGuid));
+
+        items = new ArrayList<Item>();
+        items.add(mockItem(10, "image-1.tif", "OK", "abc123", "ABC123", 1000L));
+        items.add(mockItem(11, "image-2.jpg", "OK", null, "def456", 2000L));
+        items.add(mockItem(12, "image-3.tif", "UNKNOWN", "0123ff", "0123fe", 9000L));
+        items.add(mockItem(13, "image-4.tif", null, "aaaa", null, 3000L));
+        RecordItemCollection collection = mock(RecordItemCollection.class);
+        when(collection.getLayout()).thenReturn(layout);
+        when(collection.getItemCount()).thenReturn(items.size());
+        when(collection.iterator()).thenAnswer(invocation -> items.iterator());
+        records = new CumulusRecordCollection(collection, mock(CumulusServer.class), "catalog");
+    }
+
+    @Test
+    public void testEvaluate() {
+        addDescription("Test evaluating all the kinds of rules in one pass over the records.");
+        FieldHandle md5 = records.handle(Constants.FieldNames.ARCHIVE_MD5);
+        RuleEngine engine = new RuleEngine(
+                RecordRule.present("has md5", md5),
+                RecordRule.matches("tiff", records.handle(Constants.FieldNames.RECORD_NAME),
+                        Pattern.compile(".*\\.tif")),
+                RecordRule.enumIn("known status", records.handle(Constants.DeprecatedFieldNames.QA_STATUS),
+                        Arrays.asList("OK", Constants.FieldValues.QA_STATUS_FAILED_RECORD_KNOWN_STATE)),
+                RecordRule.dateBefore("old", records.handle(Constants.FieldNames.ITEM_MODIFICATION_DATE),
+                        Instant.ofEpochMilli(5000L)),
+                RecordRule.checksumEquals("md5 matches", md5,
+                        records.handle(Constants.FieldNames.CHECKSUM_ORIGINAL_MASTER)));
+        Assert.assertEquals(engine.getFields().length, 5);
+
+        RuleReport report = engine.evaluate(records);
+        Assert.assertFalse(report.isValid());
+        Assert.assertEquals(report.getRecordCount(), 4L);
+        Assert.assertEquals(report.getInvalidCount(), 2L);
+        Assert.assertEquals(report.getViolationCount("has md5"), 1L);
+        Assert.assertEquals(report.getViolationCount("tiff"), 1L);
+        Assert.assertEquals(report.getViolationCount("known status"), 1L);
+        Assert.assertEquals(report.getViolationCount("old"), 1L);
+        Assert.assertEquals(report.getViolationCount("md5 matches"), 1L);
+
+        addStep("Check the violations of each record", "In the order of the records and the rules");
+        Assert.assertEquals(report.getViolations().size(), 2);
+        Assert.assertEquals(report.getViolations().get(0).getRecordId(), 11);
+        Assert.assertEquals(report.getViolations().get(0).getNames(), Arrays.asList("has md5", "tiff"));
+        Assert.assertEquals(report.getViolations().get(1).getRecordId(), 12);
+        Assert.assertEquals(report.getViolations().get(1).getNames(),
+                Arrays.asList("known status", "old", "md5 matches"));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testDuplicateRuleNames() {
+        addDescription("Test that the names of the rules must be unique.");
+        FieldHandle md5 = records.handle(Constants.FieldNames.ARCHIVE_MD5);
+        new RuleEngine(RecordRule.present("rule", md5), RecordRule.matches("rule", md5, Pattern.compile("[0-9a-f]*")));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testFieldsFromDifferentLayouts() {
+        addDescription("Test that the fields of the rules must be from the same layout.");
+        FieldHandle foreign = mockExtractor("other", mockDefinition("other", FieldTypes.FieldTypeString,
+                mock(GUID.class))).getFieldHandle("other");
+        new RuleEngine(RecordRule.present("has md5", records.handle(Constants.FieldNames.RECORD_NAME)),
+                RecordRule.present("has other", foreign));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testDateBeforeRequiresDateField() {
+        addDescription("Test that the date rule cannot be compiled for a non-date field.");
+        RecordRule.dateBefore("old", records.handle(Constants.FieldNames.RECORD_NAME), Instant.now());
+    }
+}
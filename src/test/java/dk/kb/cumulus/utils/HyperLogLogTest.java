@@ -0,0 +1,52 @@
+package dk.kb.cumulus.utils;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HyperLogLogTest extends ExtendedTestCase {
+
+    @Test
+    public void testSmallCardinality() {
+        addDescription("Test that small numbers of distinct values are estimated almost exactly.");
+        HyperLogLog hll = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        Assert.assertEquals(hll.estimate(), 0L);
+        for(int i = 0; i < 1000; i++) {
+            hll.add("value-" + (i % 10));
+        }
+        Assert.assertEquals(hll.estimate(), 10L);
+    }
+
+    @Test
+    public void testLargeCardinality() {
+        addDescription("Test that large numbers of distinct values are estimated within the expected error.");
+        HyperLogLog first = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        HyperLogLog second = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        for(int i = 0; i < 100000; i++) {
+            first.add("record-" + i);
+            second.add("record-" + (i + 50000));
+        }
+        assertWithin(first.estimate(), 100000L, 0.05);
+
+        addStep("Merge the estimators", "The estimate covers the union of the values");
+        first.merge(second);
+        assertWithin(first.estimate(), 150000L, 0.05);
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testInvalidPrecision() {
+        addDescription("Test that the precision must be within the bounds.");
+        new HyperLogLog(HyperLogLog.MAX_PRECISION + 1);
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testMergeDifferentPrecision() {
+        addDescription("Test that estimators with different precision cannot be merged.");
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    protected void assertWithin(long actual, long expected, double error) {
+        Assert.assertTrue(Math.abs(actual - expected) <= expected * error,
+                "Expected " + expected + " within " + error + ", but was " + actual);
+    }
+}
@@ -0,0 +1,45 @@
+package dk.kb.cumulus.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RateLimiterTest extends ExtendedTestCase {
+
+    @Test
+    public void testAcquire() {
+        addDescription("Test that the permits are spaced evenly, and that idle time is not saved up.");
+        final long[] now = new long[] {0L};
+        final List<Long> waits = new ArrayList<Long>();
+        RateLimiter limiter = new RateLimiter(4.0) {
+            @Override
+            protected long nanoTime() {
+                return now[0];
+            }
+            @Override
+            protected void sleep(long nanos) {
+                waits.add(nanos);
+            }
+        };
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        Assert.assertEquals(waits, Arrays.asList(250000000L, 500000000L));
+
+        addStep("Acquire a permit after a long pause", "No waiting, and the next permit is a full interval later");
+        now[0] = 10000000000L;
+        limiter.acquire();
+        limiter.acquire();
+        Assert.assertEquals(waits, Arrays.asList(250000000L, 500000000L, 250000000L));
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testInvalidRate() {
+        addDescription("Test that the rate must be positive.");
+        new RateLimiter(0.0);
+    }
+}
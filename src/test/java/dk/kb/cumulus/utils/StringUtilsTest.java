@@ -98,4 +98,15 @@ public class StringUtilsTest extends ExtendedTestCase {
         addDescription("Test the isNullOrEmpty when the string has content");
         Assert.assertFalse(StringUtils.isNullOrEmpty(UUID.randomUUID().toString()));
     }
+
+    @Test
+    public void testSplitLines() {
+        addDescription("Test that splitting lines gives the same result as split.");
+        String[] values = new String[] {"", "a", "a\nb", "a\n\nb", "\na", "a\n", "a\n\n", "\n", "\n\n", 
+                "a\r\nb", " \n "};
+        for(String value : values) {
+            assertEquals(StringUtils.splitLines(value), Arrays.asList(value.split("\n")), 
+                    "Splitting '" + value + "'");
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package dk.kb.cumulus.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ValueDictionaryTest extends ExtendedTestCase {
+
+    @Test
+    public void testIntern() {
+        addDescription("Test that equal values are replaced by the same instance.");
+        ValueDictionary dictionary = new ValueDictionary(10);
+        String first = new String("value");
+        String second = new String("value");
+        Assert.assertNotSame(first, second);
+
+        Assert.assertSame(dictionary.intern(first), first);
+        Assert.assertSame(dictionary.intern(second), first);
+        Assert.assertEquals(dictionary.size(), 1);
+        Assert.assertEquals(dictionary.getHits(), 1L);
+        Assert.assertEquals(dictionary.getMisses(), 0L);
+        Assert.assertNull(dictionary.intern(null));
+    }
+
+    @Test
+    public void testFullDictionary() {
+        addDescription("Test that a full dictionary returns the new values unchanged.");
+        ValueDictionary dictionary = new ValueDictionary(2);
+        String a = new String("a");
+        dictionary.intern(a);
+        dictionary.intern("b");
+        Assert.assertTrue(dictionary.isFull());
+
+        String c = new String("c");
+        Assert.assertSame(dictionary.intern(c), c);
+        Assert.assertNotSame(dictionary.intern(new String("c")), c);
+        Assert.assertSame(dictionary.intern(new String("a")), a);
+        Assert.assertEquals(dictionary.size(), 2);
+        Assert.assertEquals(dictionary.getMisses(), 2L);
+    }
+
+    @Test
+    public void testConcurrentIntern() throws Exception {
+        addDescription("Test that concurrent additions cannot make the dictionary exceed its maximum size.");
+        final ValueDictionary dictionary = new ValueDictionary(10);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for(int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for(int i = 0; i < 1000; i++) {
+                        dictionary.intern("value-" + thread + "-" + i);
+                    }
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(dictionary.size(), 10);
+        Assert.assertEquals(dictionary.getMisses(), 3990L);
+    }
+
+    @Test(expectedExceptions = ArgumentCheck.class)
+    public void testBadSize() {
+        addDescription("Test that the dictionary must have a positive size.");
+        new ValueDictionary(0);
+    }
+}
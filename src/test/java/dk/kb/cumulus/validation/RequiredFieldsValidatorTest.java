@@ -0,0 +1,105 @@
+package dk.kb.cumulus.validation;
+
+import static dk.kb.cumulus.TestUtils.mockDefinition;
+import static dk.kb.cumulus.TestUtils.mockExtractor;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.canto.cumulus.FieldTypes;
+import com.canto.cumulus.GUID;
+import com.canto.cumulus.Item;
+import com.canto.cumulus.RecordItem;
+
+import dk.kb.cumulus.FieldExtractor;
+
+public class RequiredFieldsValidatorTest extends ExtendedTestCase {
+
+    GUID titleGuid;
+    GUID creatorGuid;
+    FieldExtractor fe;
+    List<Item> items;
+
+    protected Item mockItem(int id, boolean hasTitle, boolean hasCreator) {
+        RecordItem item = mock(RecordItem.class);
+        when(item.getID()).thenReturn(id);
+        when(item.hasValue(eq(titleGuid))).thenReturn(hasTitle);
+        when(item.hasValue(eq(creatorGuid))).thenReturn(hasCreator);
+        return item;
+    }
+
+    @BeforeMethod
+    public void setupItems() {
+        titleGuid = mock(GUID.class);
+        creatorGuid = mock(GUID.class);
+        fe = mockExtractor("catalog",
+                mockDefinition("Title", FieldTypes.FieldTypeString, titleGuid),
+                mockDefinition("Creator", FieldTypes.FieldTypeString, creatorGuid));
+
+        items = new ArrayList<Item>();
+        for(int i = 0; i < 2500; i++) {
+            items.add(mockItem(i, i % 10 != 0, i % 25 != 0));
+        }
+    }
+
+    @Test
+    public void testValidate() {
+        addDescription("Test validating the required fields of the items.");
+        RequiredFieldsValidator validator = new RequiredFieldsValidator(fe, Arrays.asList("title", "Creator"),
+                true);
+        ValidationReport report = validator.validate(items.iterator());
+
+        Assert.assertFalse(report.isValid());
+        Assert.assertTrue(report.getMissingFields().isEmpty());
+        Assert.assertEquals(report.getRecordCount(), 2500L);
+        Assert.assertEquals(report.getInvalidCount(), 300L);
+        Assert.assertEquals(report.getEmptyCounts().get("title"), Long.valueOf(250L));
+        Assert.assertEquals(report.getEmptyCounts().get("Creator"), Long.valueOf(100L));
+        Assert.assertEquals(report.getViolations().size(), 300);
+        Assert.assertFalse(report.isTruncated());
+
+        addStep("Check the first violation", "Both fields are empty for the first item");
+        RecordViolation first = report.getViolations().get(0);
+        Assert.assertEquals(first.getRecordId(), 0);
+        Assert.assertEquals(first.getNames(), Arrays.asList("title", "Creator"));
+        Assert.assertEquals(report.getViolations().get(1).getNames(), Arrays.asList("title"));
+        verify(items.get(1), never()).getStringValue(any(GUID.class));
+    }
+
+    @Test
+    public void testMissingField() {
+        addDescription("Test that a required field, which is not in the layout, is reported once.");
+        RequiredFieldsValidator validator = new RequiredFieldsValidator(fe, Arrays.asList("Title", "Subject"),
+                true);
+        ValidationReport report = validator.validate(items.subList(1, 10).iterator());
+
+        Assert.assertFalse(report.isValid());
+        Assert.assertEquals(report.getMissingFields(), Arrays.asList("Subject"));
+        Assert.assertEquals(report.getInvalidCount(), 0L);
+        Assert.assertEquals(report.getEmptyCounts().keySet(), new HashSet<String>(Arrays.asList("Title")));
+    }
+
+    @Test
+    public void testAllValid() {
+        addDescription("Test the report, when all the items have the required fields.");
+        RequiredFieldsValidator validator = new RequiredFieldsValidator(fe, Arrays.asList("Title", "Creator"),
+                true);
+        ValidationReport report = validator.validate(items.subList(1, 10).iterator());
+        Assert.assertTrue(report.isValid());
+        Assert.assertEquals(report.getRecordCount(), 9L);
+        Assert.assertTrue(report.getViolations().isEmpty());
+    }
+}